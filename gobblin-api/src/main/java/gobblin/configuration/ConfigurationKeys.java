@@ -79,6 +79,12 @@ public class ConfigurationKeys {
   public static final int DEFAULT_TASK_EXECUTOR_THREADPOOL_SIZE = 2;
   public static final int DEFAULT_TASK_STATE_TRACKER_THREAD_POOL_CORE_SIZE = 1;
   public static final int DEFAULT_TASK_RETRY_THREAD_POOL_CORE_SIZE = 1;
+  public static final String TASK_EXECUTOR_FAIR_SCHEDULING_ENABLED_KEY = "taskexecutor.fair.scheduling.enabled";
+  public static final boolean DEFAULT_TASK_EXECUTOR_FAIR_SCHEDULING_ENABLED = false;
+  public static final String FORK_EXECUTOR_COOPERATIVE_ENABLED_KEY = "forkexecutor.cooperative.enabled";
+  public static final boolean DEFAULT_FORK_EXECUTOR_COOPERATIVE_ENABLED = false;
+  // Defaults to the task executor thread pool size
+  public static final String FORK_EXECUTOR_THREADPOOL_SIZE_KEY = "forkexecutor.threadpool.size";
 
   /**
    * Common job configuration properties.
@@ -103,10 +109,33 @@ public class ConfigurationKeys {
   public static final String JOB_LOCK_ENABLED_KEY = "job.lock.enabled";
   public static final String JOB_MAX_FAILURES_KEY = "job.max.failures";
   public static final int DEFAULT_JOB_MAX_FAILURES = 1;
+  public static final String JOB_SCHEDULING_WEIGHT_KEY = "job.scheduling.weight";
+  public static final int DEFAULT_JOB_SCHEDULING_WEIGHT = 1;
+  public static final String JOB_SCHEDULING_PRIORITY_KEY = "job.scheduling.priority";
+  public static final int DEFAULT_JOB_SCHEDULING_PRIORITY = 0;
+  public static final String JOB_MAX_CONCURRENT_TASKS_KEY = "job.max.concurrent.tasks";
+  public static final int DEFAULT_JOB_MAX_CONCURRENT_TASKS = 0;
   public static final String MAX_TASK_RETRIES_KEY = "task.maxretries";
   public static final int DEFAULT_MAX_TASK_RETRIES = 5;
   public static final String TASK_RETRY_INTERVAL_IN_SEC_KEY = "task.retry.intervalinsec";
   public static final long DEFAULT_TASK_RETRY_INTERVAL_IN_SEC = 300;
+  public static final String TASK_RETRY_ADAPTIVE_ENABLED_KEY = "task.retry.adaptive.enabled";
+  public static final boolean DEFAULT_TASK_RETRY_ADAPTIVE_ENABLED = false;
+  public static final String TASK_RETRY_MAX_INTERVAL_IN_SEC_KEY = "task.retry.max.intervalinsec";
+  public static final long DEFAULT_TASK_RETRY_MAX_INTERVAL_IN_SEC = 3600;
+  public static final String TASK_RETRY_BUDGET_PER_MINUTE_KEY = "task.retry.budget.per.minute";
+  public static final int DEFAULT_TASK_RETRY_BUDGET_PER_MINUTE = 60;
+  public static final String TASK_RETRY_CIRCUIT_BREAKER_KEY_PROPERTIES_KEY =
+      "task.retry.circuit.breaker.key.properties";
+  public static final String DEFAULT_TASK_RETRY_CIRCUIT_BREAKER_KEY_PROPERTIES = "source.conn.host,topic.name";
+  public static final String TASK_RETRY_CIRCUIT_BREAKER_FAILURE_THRESHOLD_KEY =
+      "task.retry.circuit.breaker.failure.threshold";
+  public static final int DEFAULT_TASK_RETRY_CIRCUIT_BREAKER_FAILURE_THRESHOLD = 5;
+  public static final String TASK_RETRY_CIRCUIT_BREAKER_WINDOW_IN_SEC_KEY =
+      "task.retry.circuit.breaker.window.insec";
+  public static final long DEFAULT_TASK_RETRY_CIRCUIT_BREAKER_WINDOW_IN_SEC = 60;
+  public static final String TASK_RETRY_CIRCUIT_BREAKER_OPEN_IN_SEC_KEY = "task.retry.circuit.breaker.open.insec";
+  public static final long DEFAULT_TASK_RETRY_CIRCUIT_BREAKER_OPEN_IN_SEC = 300;
   public static final String OVERWRITE_CONFIGS_IN_STATESTORE = "overwrite.configs.in.statestore";
   public static final boolean DEFAULT_OVERWRITE_CONFIGS_IN_STATESTORE = false;
   public static final String CLEANUP_STAGING_DATA_PER_TASK = "cleanup.staging.data.per.task";
@@ -462,6 +491,11 @@ public class ConfigurationKeys {
   public static final String DEFAULT_REST_SERVER_HOST = "localhost";
   public static final String REST_SERVER_PORT_KEY = "rest.server.port";
   public static final String DEFAULT_REST_SERVER_PORT = "8080";
+  public static final String REST_SERVER_CACHE_ENABLED_KEY = "rest.server.cache.enabled";
+  public static final String REST_SERVER_CACHE_MAX_SIZE_KEY = "rest.server.cache.max.size";
+  public static final long DEFAULT_REST_SERVER_CACHE_MAX_SIZE = 1000;
+  public static final String REST_SERVER_CACHE_LATEST_TTL_SECONDS_KEY = "rest.server.cache.latest.ttl.seconds";
+  public static final long DEFAULT_REST_SERVER_CACHE_LATEST_TTL_SECONDS = 60;
 
   /**
    * Kafka job configurations.
@@ -479,6 +513,10 @@ public class ConfigurationKeys {
   public static final String DEFAULT_JOB_HISTORY_STORE_USER = "gobblin";
   public static final String JOB_HISTORY_STORE_PASSWORD_KEY = "job.history.store.password";
   public static final String DEFAULT_JOB_HISTORY_STORE_PASSWORD = "gobblin";
+  public static final String JOB_HISTORY_STORE_ASYNC_ENABLED_KEY = "job.history.store.async.enabled";
+  public static final String JOB_HISTORY_STORE_ASYNC_MAX_PENDING_RECORDS_KEY =
+      "job.history.store.async.max.pending.records";
+  public static final int DEFAULT_JOB_HISTORY_STORE_ASYNC_MAX_PENDING_RECORDS = 100;
 
   /**
    * Password encryption and decryption properties.
@@ -18,6 +18,7 @@ import java.util.List;
 import org.apache.hadoop.fs.Path;
 
 import com.google.common.collect.Lists;
+import com.google.common.primitives.Longs;
 
 import gobblin.configuration.State;
 
@@ -108,6 +109,7 @@ public class Dataset implements Comparable<Dataset> {
 
   private State jobProps;
   private double priority;
+  private long inputSize;
   private DatasetState state;
 
   private Dataset(Builder builder) {
@@ -199,6 +201,17 @@ public class Dataset implements Comparable<Dataset> {
     return this.priority;
   }
 
+  /**
+   * Estimated size in bytes of the data to be compacted for this {@link Dataset}, which is 0 if not estimated.
+   */
+  public long inputSize() {
+    return this.inputSize;
+  }
+
+  public void setInputSize(long inputSize) {
+    this.inputSize = inputSize;
+  }
+
   public DatasetState state() {
     return this.state;
   }
@@ -241,9 +254,14 @@ public class Dataset implements Comparable<Dataset> {
     this.throwables.add(t);
   }
 
+  /**
+   * {@link Dataset}s with higher priorities come first. Among {@link Dataset}s with the same priority, those
+   * with larger input sizes come first, so that the longest compactions are started as early as possible.
+   */
   @Override
   public int compareTo(Dataset o) {
-    return Double.compare(o.priority, this.priority);
+    int result = Double.compare(o.priority, this.priority);
+    return result != 0 ? result : Longs.compare(o.inputSize, this.inputSize);
   }
 
   @Override
@@ -55,6 +55,10 @@ public class CompactionSlaEventHelper {
     state.setProp(SlaEventKeys.UPSTREAM_TS_IN_MILLI_SECS_KEY, Long.toString(time));
   }
 
+  public static void setRecordCount(State state, long recordCount) {
+    state.setProp(SlaEventKeys.RECORD_COUNT_KEY, Long.toString(recordCount));
+  }
+
   private static void setDatasetUrn(Dataset dataset) {
     dataset.jobProps().setProp(SlaEventKeys.DATASET_URN_KEY,
         new Path(dataset.jobProps().getProp(MRCompactor.COMPACTION_DEST_DIR), dataset.topic()).toString());
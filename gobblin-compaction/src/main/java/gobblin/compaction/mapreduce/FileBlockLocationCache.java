@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.compaction.mapreduce;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import gobblin.util.ExecutorsUtils;
+
+
+/**
+ * A cache of {@link FileStatus}es and {@link BlockLocation}s of compaction input files.
+ *
+ * <p>
+ *   Input files are listed level by level, listing all directories of a level in parallel, and the
+ *   {@link BlockLocation}s of files not in the cache are fetched in parallel. A cached entry is reused only if
+ *   the length and modification time of the file are unchanged, so that a file rewritten during the run is
+ *   not planned with stale {@link BlockLocation}s.
+ * </p>
+ *
+ * <p>
+ *   There is a single instance per JVM, shared by the compaction jobs of all {@link gobblin.compaction.Dataset}s
+ *   in a compaction run. {@link MRCompactor} clears it at the end of the run.
+ * </p>
+ */
+public class FileBlockLocationCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(FileBlockLocationCache.class);
+
+  private static final FileBlockLocationCache INSTANCE = new FileBlockLocationCache();
+
+  private final ConcurrentMap<Path, FileBlocks> cache = Maps.newConcurrentMap();
+
+  public static FileBlockLocationCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Recursively list files in the given directories that are accepted by the {@link PathFilter}, and get
+   * the {@link BlockLocation}s of these files.
+   *
+   * @param numThreads number of threads used for listing directories and getting {@link BlockLocation}s.
+   */
+  public List<FileBlocks> getFileBlocks(final FileSystem fs, List<Path> dirs, PathFilter fileFilter, int numThreads)
+      throws IOException {
+    ExecutorService executor =
+        Executors.newFixedThreadPool(numThreads, ExecutorsUtils.newThreadFactory(Optional.of(LOG)));
+    try {
+      List<FileStatus> files = listFilesRecursively(fs, dirs, fileFilter, executor);
+
+      List<FileBlocks> fileBlocks = Lists.newArrayListWithCapacity(files.size());
+      List<Future<FileBlocks>> futures = Lists.newArrayList();
+      for (final FileStatus file : files) {
+        FileBlocks cached = this.cache.get(file.getPath());
+        if (cached != null && cached.getStatus().getLen() == file.getLen()
+            && cached.getStatus().getModificationTime() == file.getModificationTime()) {
+          fileBlocks.add(cached);
+        } else {
+          futures.add(executor.submit(new Callable<FileBlocks>() {
+            @Override
+            public FileBlocks call() throws IOException {
+              FileBlocks blocks = new FileBlocks(file, fs.getFileBlockLocations(file, 0, file.getLen()));
+              FileBlockLocationCache.this.cache.put(file.getPath(), blocks);
+              return blocks;
+            }
+          }));
+        }
+      }
+      LOG.info(String.format("Found %d files, %d of which have cached block locations", files.size(),
+          fileBlocks.size()));
+
+      for (Future<FileBlocks> future : futures) {
+        fileBlocks.add(getUninterruptibly(future));
+      }
+      return fileBlocks;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static List<FileStatus> listFilesRecursively(final FileSystem fs, List<Path> dirs, PathFilter fileFilter,
+      ExecutorService executor) throws IOException {
+    List<FileStatus> files = Lists.newArrayList();
+    List<Path> currentLevel = Lists.newArrayList(dirs);
+
+    while (!currentLevel.isEmpty()) {
+      List<Future<FileStatus[]>> futures = Lists.newArrayListWithCapacity(currentLevel.size());
+      for (final Path dir : currentLevel) {
+        futures.add(executor.submit(new Callable<FileStatus[]>() {
+          @Override
+          public FileStatus[] call() throws IOException {
+            return fs.listStatus(dir);
+          }
+        }));
+      }
+
+      List<Path> nextLevel = Lists.newArrayList();
+      for (Future<FileStatus[]> future : futures) {
+        FileStatus[] statuses = getUninterruptibly(future);
+        if (statuses == null) {
+          continue;
+        }
+        for (FileStatus status : Arrays.asList(statuses)) {
+          if (status.isDir()) {
+            nextLevel.add(status.getPath());
+          } else if (fileFilter.accept(status.getPath())) {
+            files.add(status);
+          }
+        }
+      }
+      currentLevel = nextLevel;
+    }
+    return files;
+  }
+
+  private static <T> T getUninterruptibly(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while listing files", e);
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  public int size() {
+    return this.cache.size();
+  }
+
+  public void clear() {
+    this.cache.clear();
+  }
+
+  /**
+   * The {@link FileStatus} of a file and the {@link BlockLocation}s of its blocks.
+   */
+  public static class FileBlocks {
+    private final FileStatus status;
+    private final BlockLocation[] blocks;
+
+    public FileBlocks(FileStatus status, BlockLocation[] blocks) {
+      this.status = status;
+      this.blocks = blocks == null ? new BlockLocation[0] : blocks;
+    }
+
+    public FileStatus getStatus() {
+      return this.status;
+    }
+
+    public BlockLocation[] getBlocks() {
+      return this.blocks;
+    }
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.compaction.mapreduce;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.fs.Path;
+
+
+/**
+ * An interface for {@link MRCompactorJobRunner}s that are able to compact late data files against the already
+ * compacted data of a {@link gobblin.compaction.Dataset}, see {@link MRCompactor#COMPACTION_INCREMENTAL_FOR_LATE_DATA}.
+ */
+public interface IncrementalCompactionJobRunner {
+
+  /**
+   * Compact the given late data files against the already compacted data in
+   * {@link gobblin.compaction.Dataset#outputPath()}, and write into {@link gobblin.compaction.Dataset#outputTmpPath()}
+   * the files that contain the records not already in the output, as well as any index files that replace their
+   * counterparts in the output path. Index files should be named with a leading underscore, so that they are
+   * published after the data files.
+   *
+   * @return the number of records written.
+   */
+  public long compactIncrementally(List<Path> lateFilePaths) throws IOException;
+}
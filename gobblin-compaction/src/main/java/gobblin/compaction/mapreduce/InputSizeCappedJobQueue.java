@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.compaction.mapreduce;
+
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+
+
+/**
+ * A queue of compaction jobs that submits jobs to an {@link ExecutorService} in their natural order, as long as
+ * the total input size of the submitted jobs that have not been released stays within a cap.
+ *
+ * <p>
+ *   When no job is submitted, the first pending job is always submitted regardless of its input size, so that a
+ *   job larger than the cap can still run, alone.
+ * </p>
+ */
+class InputSizeCappedJobQueue<T extends Runnable & Comparable<? super T>> {
+
+  private final ExecutorService executor;
+  private final Function<T, Long> inputSizeFunction;
+  private final long maxConcurrentInputSize;
+
+  private final Queue<T> pendingJobs = new PriorityQueue<T>();
+  private long submittedInputSize = 0;
+  private int numSubmittedJobs = 0;
+
+  /**
+   * @param executor {@link ExecutorService} to submit jobs to
+   * @param inputSizeFunction {@link Function} returning the input size of a job
+   * @param maxConcurrentInputSize maximum total input size of the submitted jobs
+   */
+  InputSizeCappedJobQueue(ExecutorService executor, Function<T, Long> inputSizeFunction,
+      long maxConcurrentInputSize) {
+    Preconditions.checkArgument(maxConcurrentInputSize > 0, "Maximum concurrent input size should be positive");
+    this.executor = executor;
+    this.inputSizeFunction = inputSizeFunction;
+    this.maxConcurrentInputSize = maxConcurrentInputSize;
+  }
+
+  /**
+   * Add a job to the queue, submitting it and any other pending job that fits within the cap.
+   */
+  synchronized void add(T job) {
+    this.pendingJobs.add(job);
+    submitPendingJobs();
+  }
+
+  /**
+   * Release the input size of a submitted job once it finishes, submitting pending jobs that now fit within the cap
+   * unless the {@link ExecutorService} is shut down.
+   */
+  synchronized void release(T job) {
+    Preconditions.checkState(this.numSubmittedJobs > 0, "No submitted job to release");
+    this.submittedInputSize -= this.inputSizeFunction.apply(job);
+    this.numSubmittedJobs--;
+    if (!this.executor.isShutdown()) {
+      submitPendingJobs();
+    }
+  }
+
+  synchronized int getNumPendingJobs() {
+    return this.pendingJobs.size();
+  }
+
+  synchronized int getNumSubmittedJobs() {
+    return this.numSubmittedJobs;
+  }
+
+  synchronized long getSubmittedInputSize() {
+    return this.submittedInputSize;
+  }
+
+  private void submitPendingJobs() {
+    while (!this.pendingJobs.isEmpty()) {
+      long inputSize = this.inputSizeFunction.apply(this.pendingJobs.peek());
+      if (this.numSubmittedJobs > 0 && inputSize > this.maxConcurrentInputSize - this.submittedInputSize) {
+        return;
+      }
+      this.submittedInputSize += inputSize;
+      this.numSubmittedJobs++;
+      this.executor.execute(this.pendingJobs.poll());
+    }
+  }
+}
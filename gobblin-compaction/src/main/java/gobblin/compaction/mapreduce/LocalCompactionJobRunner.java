@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.compaction.mapreduce;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.fs.Path;
+
+
+/**
+ * An interface for {@link MRCompactorJobRunner}s that are able to compact a {@link gobblin.compaction.Dataset}
+ * in process instead of launching an MR job, see {@link MRCompactorJobRunner#COMPACTION_JOB_LOCAL_MAX_INPUT_SIZE}.
+ */
+public interface LocalCompactionJobRunner {
+
+  /**
+   * Compact the data in the given input paths in process, and write the output files into
+   * {@link gobblin.compaction.Dataset#outputTmpPath()}, from which they will be published in the same way as the
+   * output of an MR job.
+   *
+   * @return the number of records written.
+   */
+  public long compactLocally(List<Path> inputPaths) throws IOException;
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.compaction.mapreduce;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Longs;
+
+
+/**
+ * Plans {@link CombineFileSplit}s from the {@link BlockLocation}s of input files, grouping blocks by node,
+ * then by rack, up to a target split size.
+ *
+ * <ul>
+ *   <li>For each node, starting from the node with the most bytes, blocks local to that node are combined into
+ *   splits of the target size. Blocks that do not fill a split are left for the next step.</li>
+ *   <li>For each rack, the remaining blocks on that rack are combined into splits of the target size.</li>
+ *   <li>The remaining blocks are combined into splits of the target size, ordered by rack so that a split
+ *   tends to span few racks.</li>
+ * </ul>
+ *
+ * Unlike {@link org.apache.hadoop.mapreduce.lib.input.CombineFileInputFormat}, partial splits are never emitted
+ * per node or per rack, so all splits except the last one are at least the target size, and each split is
+ * at most the target size plus one block.
+ */
+public class LocalitySplitPlanner {
+
+  private static final String DEFAULT_RACK = "/default-rack";
+
+  private final long targetSplitSize;
+  private final int maxNumLocations;
+
+  public LocalitySplitPlanner(long targetSplitSize, int maxNumLocations) {
+    Preconditions.checkArgument(targetSplitSize > 0, "Target split size must be positive");
+    Preconditions.checkArgument(maxNumLocations > 0, "Max number of locations must be positive");
+    this.targetSplitSize = targetSplitSize;
+    this.maxNumLocations = maxNumLocations;
+  }
+
+  public List<InputSplit> plan(List<FileBlockLocationCache.FileBlocks> files) {
+    List<Block> blocks = Lists.newArrayList();
+    Map<String, List<Block>> blocksByNode = Maps.newHashMap();
+    Map<String, List<Block>> blocksByRack = Maps.newHashMap();
+
+    for (FileBlockLocationCache.FileBlocks file : files) {
+      if (file.getStatus().getLen() == 0) {
+        continue;
+      }
+      if (file.getBlocks().length == 0) {
+        blocks.add(new Block(file.getStatus().getPath(), 0, file.getStatus().getLen(), new String[0],
+            new String[0]));
+        continue;
+      }
+      for (BlockLocation location : file.getBlocks()) {
+        Block block = new Block(file.getStatus().getPath(), location.getOffset(), location.getLength(),
+            location.getHosts(), location.getTopologyPaths());
+        blocks.add(block);
+        for (String host : block.hosts) {
+          getOrCreate(blocksByNode, host).add(block);
+        }
+        for (String rack : block.racks) {
+          getOrCreate(blocksByRack, rack).add(block);
+        }
+      }
+    }
+
+    List<InputSplit> splits = Lists.newArrayList();
+    for (String node : sortByBytes(blocksByNode)) {
+      createFullSplits(blocksByNode.get(node), splits, Collections.singletonList(node));
+    }
+    for (String rack : sortByBytes(blocksByRack)) {
+      createFullSplits(blocksByRack.get(rack), splits, null);
+    }
+    createRemainingSplits(blocks, splits);
+    return splits;
+  }
+
+  /**
+   * Combine the unassigned blocks in the given list into splits of the target size.
+   * If locations is null, the locations of a split are the hosts that have the most bytes of the split.
+   */
+  private void createFullSplits(List<Block> candidates, List<InputSplit> splits, List<String> locations) {
+    List<Block> unassigned = Lists.newArrayList();
+    long unassignedSize = 0;
+    for (Block block : candidates) {
+      if (!block.assigned) {
+        unassigned.add(block);
+        unassignedSize += block.length;
+      }
+    }
+
+    List<Block> current = Lists.newArrayList();
+    long currentSize = 0;
+    for (Block block : unassigned) {
+      if (currentSize + unassignedSize < this.targetSplitSize) {
+        break;
+      }
+      current.add(block);
+      currentSize += block.length;
+      unassignedSize -= block.length;
+      if (currentSize >= this.targetSplitSize) {
+        splits.add(createSplit(current, locations));
+        current.clear();
+        currentSize = 0;
+      }
+    }
+  }
+
+  private void createRemainingSplits(List<Block> blocks, List<InputSplit> splits) {
+    List<Block> unassigned = Lists.newArrayList();
+    for (Block block : blocks) {
+      if (!block.assigned) {
+        unassigned.add(block);
+      }
+    }
+    Collections.sort(unassigned, new Comparator<Block>() {
+      @Override
+      public int compare(Block b1, Block b2) {
+        return b1.firstRack().compareTo(b2.firstRack());
+      }
+    });
+
+    List<Block> current = Lists.newArrayList();
+    long currentSize = 0;
+    for (Block block : unassigned) {
+      current.add(block);
+      currentSize += block.length;
+      if (currentSize >= this.targetSplitSize) {
+        splits.add(createSplit(current, null));
+        current.clear();
+        currentSize = 0;
+      }
+    }
+    if (!current.isEmpty()) {
+      splits.add(createSplit(current, null));
+    }
+  }
+
+  private CombineFileSplit createSplit(List<Block> blocks, List<String> locations) {
+    Path[] paths = new Path[blocks.size()];
+    long[] offsets = new long[blocks.size()];
+    long[] lengths = new long[blocks.size()];
+    for (int i = 0; i < blocks.size(); i++) {
+      Block block = blocks.get(i);
+      block.assigned = true;
+      paths[i] = block.path;
+      offsets[i] = block.offset;
+      lengths[i] = block.length;
+    }
+    List<String> splitLocations = locations == null ? getHostsWithMostBytes(blocks) : locations;
+    return new CombineFileSplit(paths, offsets, lengths, splitLocations.toArray(new String[splitLocations.size()]));
+  }
+
+  private List<String> getHostsWithMostBytes(List<Block> blocks) {
+    final Map<String, Long> bytesByHost = Maps.newHashMap();
+    for (Block block : blocks) {
+      for (String host : block.hosts) {
+        Long bytes = bytesByHost.get(host);
+        bytesByHost.put(host, (bytes == null ? 0 : bytes) + block.length);
+      }
+    }
+    List<String> hosts = Lists.newArrayList(bytesByHost.keySet());
+    Collections.sort(hosts, new Comparator<String>() {
+      @Override
+      public int compare(String h1, String h2) {
+        return Longs.compare(bytesByHost.get(h2), bytesByHost.get(h1));
+      }
+    });
+    return hosts.size() > this.maxNumLocations ? hosts.subList(0, this.maxNumLocations) : hosts;
+  }
+
+  private static List<String> sortByBytes(Map<String, List<Block>> blocksByLocation) {
+    final Map<String, Long> bytesByLocation = Maps.newHashMap();
+    for (Map.Entry<String, List<Block>> entry : blocksByLocation.entrySet()) {
+      long bytes = 0;
+      for (Block block : entry.getValue()) {
+        bytes += block.length;
+      }
+      bytesByLocation.put(entry.getKey(), bytes);
+    }
+    List<String> locations = Lists.newArrayList(blocksByLocation.keySet());
+    Collections.sort(locations, new Comparator<String>() {
+      @Override
+      public int compare(String l1, String l2) {
+        int result = Longs.compare(bytesByLocation.get(l2), bytesByLocation.get(l1));
+        return result != 0 ? result : l1.compareTo(l2);
+      }
+    });
+    return locations;
+  }
+
+  private static List<Block> getOrCreate(Map<String, List<Block>> map, String key) {
+    List<Block> list = map.get(key);
+    if (list == null) {
+      list = Lists.newArrayList();
+      map.put(key, list);
+    }
+    return list;
+  }
+
+  /**
+   * A block of an input file, and the hosts and racks where it is stored.
+   */
+  private static class Block {
+    private final Path path;
+    private final long offset;
+    private final long length;
+    private final String[] hosts;
+    private final String[] racks;
+    private boolean assigned = false;
+
+    private Block(Path path, long offset, long length, String[] hosts, String[] topologyPaths) {
+      this.path = path;
+      this.offset = offset;
+      this.length = length;
+      this.hosts = hosts;
+      this.racks = getRacks(hosts, topologyPaths);
+    }
+
+    /**
+     * A topology path is in the form of /rack/host:port. If topology paths are not available,
+     * all hosts are considered on {@link #DEFAULT_RACK}.
+     */
+    private static String[] getRacks(String[] hosts, String[] topologyPaths) {
+      if (hosts.length == 0) {
+        return new String[0];
+      }
+      Set<String> racks = Sets.newTreeSet();
+      if (topologyPaths == null || topologyPaths.length == 0) {
+        racks.add(DEFAULT_RACK);
+      } else {
+        for (String topologyPath : topologyPaths) {
+          int index = topologyPath.lastIndexOf(Path.SEPARATOR);
+          racks.add(index <= 0 ? DEFAULT_RACK : topologyPath.substring(0, index));
+        }
+      }
+      return racks.toArray(new String[racks.size()]);
+    }
+
+    private String firstRack() {
+      return this.racks.length == 0 ? "" : this.racks[0];
+    }
+  }
+}
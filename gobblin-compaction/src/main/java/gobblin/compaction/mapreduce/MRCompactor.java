@@ -26,6 +26,7 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -42,6 +43,8 @@ import org.apache.hadoop.mapreduce.Job;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Gauge;
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Stopwatch;
@@ -62,6 +65,7 @@ import gobblin.compaction.verify.DataCompletenessVerifier.Results;
 import gobblin.configuration.ConfigurationKeys;
 import gobblin.configuration.State;
 import gobblin.metrics.GobblinMetrics;
+import gobblin.metrics.MetricContext;
 import gobblin.metrics.Tag;
 import gobblin.metrics.event.EventSubmitter;
 import gobblin.metrics.event.sla.SlaEventSubmitter;
@@ -87,6 +91,12 @@ import gobblin.util.recordcount.IngestionRecordCountProvider;
  * If a particular day's data of this topic is considered a {@link Dataset}, e.g.,
  * '/inputdata/mytopic/daily/2015/08/09', then data under this folder will be compacted.
  *
+ * Before compaction jobs are submitted, the input size of each {@link Dataset} is estimated. Among {@link Dataset}s
+ * of the same priority, larger ones are compacted first. The total estimated input size of the compaction jobs
+ * submitted to {@link #COMPACTION_THREAD_POOL_SIZE} threads at any time is capped by
+ * {@link #COMPACTION_MAX_CONCURRENT_INPUT_SIZE}, though a single {@link Dataset} larger than the cap is still
+ * compacted when no other job is running.
+ *
  * @author ziliu
  */
 
@@ -103,6 +113,10 @@ public class MRCompactor implements Compactor {
   public static final int DEFAULT_COMPACTION_THREAD_POOL_SIZE = 30;
   public static final String COMPACTION_INPUT_DIR = COMPACTION_PREFIX + "input.dir";
 
+  // The maximum total estimated input size in bytes of the compaction jobs running concurrently.
+  public static final String COMPACTION_MAX_CONCURRENT_INPUT_SIZE = COMPACTION_PREFIX + "max.concurrent.input.size";
+  public static final long DEFAULT_COMPACTION_MAX_CONCURRENT_INPUT_SIZE = Long.MAX_VALUE;
+
   // The subdir name of input dataset paths, e.g., "hourly" in "/data/input/PasswordChangeEvent/hourly/2015/09/06".
   public static final String COMPACTION_INPUT_SUBDIR = COMPACTION_PREFIX + "input.subdir";
   public static final String DEFAULT_COMPACTION_INPUT_SUBDIR = "hourly";
@@ -151,6 +165,12 @@ public class MRCompactor implements Compactor {
       COMPACTION_PREFIX + "recompact.from.input.for.late.data";
   public static final boolean DEFAULT_COMPACTION_RECOMPACT_FROM_INPUT_FOR_LATE_DATA = false;
 
+  // If a dataset has already been compacted and new (late) data is found, whether to compact the late data against
+  // the key index of the compacted data, and publish the records not already compacted into the output folder.
+  // This only applies if the output is deduplicated and the dataset is not recompacted from input.
+  public static final String COMPACTION_INCREMENTAL_FOR_LATE_DATA = COMPACTION_PREFIX + "incremental.for.late.data";
+  public static final boolean DEFAULT_COMPACTION_INCREMENTAL_FOR_LATE_DATA = false;
+
   // Whether the input data for the compaction is deduplicated.
   public static final String COMPACTION_INPUT_DEDUPLICATED = COMPACTION_PREFIX + "input.deduplicated";
   public static final boolean DEFAULT_COMPACTION_INPUT_DEDUPLICATED = false;
@@ -200,6 +220,7 @@ public class MRCompactor implements Compactor {
   public static final String COMPACTION_JOB_LATE_DATA_MOVEMENT_TASK = COMPACTION_PREFIX + "job.late.data.movement.task";
   public static final String COMPACTION_JOB_LATE_DATA_FILES = COMPACTION_PREFIX + "job.late.data.files";
   public static final String COMPACTION_COMPLETE_FILE_NAME = "_COMPACTION_COMPLETE";
+  public static final String COMPACTION_KEY_INDEX_FILE_NAME = "_COMPACTION_KEY_INDEX";
   public static final String COMPACTION_LATE_FILES_DIRECTORY = "late";
   public static final String COMPACTION_JARS = COMPACTION_PREFIX + "jars";
   public static final String COMPACTION_TRACKING_EVENTS_NAMESPACE = COMPACTION_PREFIX + "tracking.events";
@@ -210,6 +231,14 @@ public class MRCompactor implements Compactor {
   private static final long COMPACTION_JOB_WAIT_INTERVAL_SECONDS = 10;
   private static final Map<Dataset, Job> RUNNING_MR_JOBS = Maps.newConcurrentMap();
 
+  /**
+   * Names of the metrics of compaction job scheduling.
+   */
+  private static final String PENDING_JOBS_GAUGE = "gobblin.compaction.jobs.pending";
+  private static final String RUNNING_JOBS_GAUGE = "gobblin.compaction.jobs.running";
+  private static final String SUBMITTED_INPUT_SIZE_GAUGE = "gobblin.compaction.jobs.submitted.input.size";
+  private static final String JOB_WAIT_TIMER = "gobblin.compaction.jobs.wait.time";
+
   private final State state;
   private final Configuration conf;
   private final String inputDir;
@@ -223,6 +252,8 @@ public class MRCompactor implements Compactor {
   private final JobRunnerExecutor jobExecutor;
   private final Set<Dataset> datasets;
   private final Map<Dataset, MRCompactorJobRunner> jobRunnables;
+  private final InputSizeCappedJobQueue<MRCompactorJobRunner> jobRunnerQueue;
+  private final Map<Dataset, Long> jobRunnerEnqueueTimes;
   private final Closer closer;
   private final Optional<DataCompletenessVerifier> verifier;
   private final Stopwatch stopwatch;
@@ -249,6 +280,15 @@ public class MRCompactor implements Compactor {
     this.datasets = Sets.newHashSet();
     this.jobExecutor = createJobExecutor();
     this.jobRunnables = Maps.newConcurrentMap();
+    this.jobRunnerQueue = new InputSizeCappedJobQueue<MRCompactorJobRunner>(this.jobExecutor,
+        new Function<MRCompactorJobRunner, Long>() {
+          @Override
+          public Long apply(MRCompactorJobRunner jobRunner) {
+            return jobRunner.getDataset().inputSize();
+          }
+        }, this.state.getPropAsLong(COMPACTION_MAX_CONCURRENT_INPUT_SIZE,
+            DEFAULT_COMPACTION_MAX_CONCURRENT_INPUT_SIZE));
+    this.jobRunnerEnqueueTimes = Maps.newConcurrentMap();
     this.closer = Closer.create();
     this.stopwatch = Stopwatch.createStarted();
     this.gobblinMetrics = initializeMetrics();
@@ -259,10 +299,11 @@ public class MRCompactor implements Compactor {
     this.dataVerifTimeoutMinutes = getDataVerifTimeoutMinutes();
     this.compactionTimeoutMinutes = getCompactionTimeoutMinutes();
     this.shouldVerifDataCompl = shouldVerifyDataCompleteness();
-    this.verifier =
-        this.shouldVerifDataCompl ? Optional.of(this.closer.register(new DataCompletenessVerifier(this.state)))
-            : Optional.<DataCompletenessVerifier> absent();
+    this.verifier = this.shouldVerifDataCompl
+        ? Optional.of(this.closer.register(new DataCompletenessVerifier(this.state, this.fs)))
+        : Optional.<DataCompletenessVerifier> absent();
     this.shouldPublishDataIfCannotVerifyCompl = shouldPublishDataIfCannotVerifyCompl();
+    registerSchedulingMetrics();
   }
 
   private String getInputDir() {
@@ -324,6 +365,28 @@ public class MRCompactor implements Compactor {
     return gobblinMetrics;
   }
 
+  private void registerSchedulingMetrics() {
+    MetricContext metricContext = this.gobblinMetrics.getMetricContext();
+    metricContext.register(PENDING_JOBS_GAUGE, new Gauge<Integer>() {
+      @Override
+      public Integer getValue() {
+        return getNumPendingJobs();
+      }
+    });
+    metricContext.register(RUNNING_JOBS_GAUGE, new Gauge<Integer>() {
+      @Override
+      public Integer getValue() {
+        return MRCompactor.this.jobExecutor.getActiveCount();
+      }
+    });
+    metricContext.register(SUBMITTED_INPUT_SIZE_GAUGE, new Gauge<Long>() {
+      @Override
+      public Long getValue() {
+        return MRCompactor.this.jobRunnerQueue.getSubmittedInputSize();
+      }
+    });
+  }
+
   @Override
   public void compact() throws IOException {
     try {
@@ -343,6 +406,7 @@ public class MRCompactor implements Compactor {
         this.closer.close();
       } finally {
         deleteDependencyJars();
+        FileBlockLocationCache.getInstance().clear();
         gobblinMetrics.stopMetricReporting();
       }
     }
@@ -482,6 +546,8 @@ public class MRCompactor implements Compactor {
   }
 
   private void processCompactionJobs() throws IOException {
+    estimateInputSizes();
+
     if (this.shouldVerifDataCompl) {
       verifyDataCompleteness();
     } else {
@@ -491,6 +557,59 @@ public class MRCompactor implements Compactor {
     this.submitCompactionJobsAndWaitForCompletion();
   }
 
+  /**
+   * Estimate the input sizes of all {@link Dataset}s in parallel, using {@link #COMPACTION_THREAD_POOL_SIZE} threads.
+   */
+  private void estimateInputSizes() {
+    Stopwatch estimationStopwatch = Stopwatch.createStarted();
+    try {
+      ExecutorsUtils.parallelize(Lists.newArrayList(this.datasets), new Function<Dataset, Void>() {
+        @Override
+        public Void apply(Dataset dataset) {
+          try {
+            dataset.setInputSize(estimateInputSize(dataset));
+          } catch (IOException e) {
+            LOG.warn("Failed to estimate input size of dataset " + dataset, e);
+          }
+          return null;
+        }
+      }, getThreadPoolSize(), Integer.MAX_VALUE, Optional.of(LOG));
+    } catch (ExecutionException e) {
+      LOG.warn("Failed to estimate input sizes of datasets", e);
+    }
+    LOG.info(String.format("Estimated input sizes of %d datasets in %d ms", this.datasets.size(),
+        estimationStopwatch.elapsed(TimeUnit.MILLISECONDS)));
+  }
+
+  /**
+   * The input size of a late data movement job is the total size of the late data files. Otherwise it is the
+   * total size of the input paths. Blank entries of {@link #COMPACTION_JOB_LATE_DATA_FILES} and late data files
+   * that no longer exist are skipped.
+   */
+  private long estimateInputSize(Dataset dataset) throws IOException {
+    long inputSize = 0;
+    if (dataset.jobProps().getPropAsBoolean(COMPACTION_JOB_LATE_DATA_MOVEMENT_TASK, false)) {
+      for (String lateFile : dataset.jobProps().getPropAsList(COMPACTION_JOB_LATE_DATA_FILES, StringUtils.EMPTY)) {
+        if (StringUtils.isBlank(lateFile)) {
+          continue;
+        }
+        Path lateFilePath = new Path(lateFile);
+        if (this.fs.exists(lateFilePath)) {
+          inputSize += this.fs.getFileStatus(lateFilePath).getLen();
+        }
+      }
+    } else {
+      List<Path> inputPaths = Lists.newArrayList(dataset.inputPath());
+      inputPaths.addAll(dataset.additionalInputPaths());
+      for (Path inputPath : inputPaths) {
+        if (this.fs.exists(inputPath)) {
+          inputSize += this.fs.getContentSummary(inputPath).getLength();
+        }
+      }
+    }
+    return inputSize;
+  }
+
   private boolean shouldVerifyDataCompleteness() {
     return this.state.getPropAsBoolean(COMPACTION_COMPLETENESS_VERIFICATION_ENABLED,
         DEFAULT_COMPACTION_COMPLETENESS_VERIFICATION_ENABLED);
@@ -719,7 +838,16 @@ public class MRCompactor implements Compactor {
     if (proceed) {
       jobRunner.proceed();
     }
-    this.jobExecutor.execute(jobRunner);
+    enqueueJobRunner(jobRunner);
+  }
+
+  private void enqueueJobRunner(MRCompactorJobRunner jobRunner) {
+    this.jobRunnerEnqueueTimes.put(jobRunner.getDataset(), System.nanoTime());
+    this.jobRunnerQueue.add(jobRunner);
+  }
+
+  private int getNumPendingJobs() {
+    return this.jobRunnerQueue.getNumPendingJobs() + this.jobExecutor.getQueue().size();
   }
 
   /**
@@ -821,6 +949,21 @@ public class MRCompactor implements Compactor {
       super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue);
     }
 
+    /**
+     * Record the time the {@link MRCompactorJobRunner} waited since it was enqueued.
+     */
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+      if (r instanceof MRCompactorJobRunner) {
+        Long enqueueTime = MRCompactor.this.jobRunnerEnqueueTimes.remove(((MRCompactorJobRunner) r).getDataset());
+        if (enqueueTime != null) {
+          MRCompactor.this.gobblinMetrics.getMetricContext().timer(JOB_WAIT_TIMER)
+              .update(System.nanoTime() - enqueueTime, TimeUnit.NANOSECONDS);
+        }
+      }
+      super.beforeExecute(t, r);
+    }
+
     /**
      * When a compaction job for a {@link Dataset} finishes, if it successfully published the data (t == null
      * && jobRunner.status() == {@link MRCompactorJobRunner.Status#COMMITTED}, or if it
@@ -837,6 +980,7 @@ public class MRCompactor implements Compactor {
 
       MRCompactorJobRunner jobRunner = (MRCompactorJobRunner) r;
       MRCompactor.this.jobRunnables.remove(jobRunner.getDataset());
+      MRCompactor.this.jobRunnerQueue.release(jobRunner);
       if (t == null) {
         if (jobRunner.status() == COMMITTED) {
 
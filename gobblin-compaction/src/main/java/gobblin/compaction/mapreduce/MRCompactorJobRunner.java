@@ -19,6 +19,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.filecache.DistributedCache;
 import org.apache.hadoop.fs.FSDataOutputStream;
@@ -68,6 +69,16 @@ import gobblin.util.recordcount.LateFileRecordCountProvider;
  * {@value MRCompactor#COMPACTION_JOB_LATE_DATA_FILES} to a 'late' subdirectory within
  * the output directory.
  *
+ * If {@value MRCompactor#COMPACTION_INCREMENTAL_FOR_LATE_DATA} is also set to true, the output is deduplicated
+ * and the subclass implements {@link IncrementalCompactionJobRunner}, the late data files are instead compacted
+ * against the key index of the output directory, and only the records whose keys are not already in the
+ * output directory are published into it as a new file.
+ *
+ * If {@value #COMPACTION_JOB_LOCAL_MAX_INPUT_SIZE} is set to a positive value, and the input size of the
+ * {@link Dataset} does not exceed it, the compaction is performed in process instead of launching an MR job, if
+ * the subclass implements {@link LocalCompactionJobRunner}. Publishing, late data handling and the
+ * {@value MRCompactor#COMPACTION_COMPLETE_FILE_NAME} marker are the same in both cases.
+ *
  * @author ziliu
  */
 @SuppressWarnings("deprecation")
@@ -95,6 +106,11 @@ public abstract class MRCompactorJobRunner implements Runnable, Comparable<MRCom
   private static final String COMPACTION_JOB_ABORT_UPON_NEW_DATA = COMPACTION_JOB_PREFIX + "abort.upon.new.data";
   private static final boolean DEFAULT_COMPACTION_JOB_ABORT_UPON_NEW_DATA = false;
 
+  // Datasets whose input size does not exceed this value are compacted in process rather than by an MR job.
+  // A non-positive value disables local compaction.
+  public static final String COMPACTION_JOB_LOCAL_MAX_INPUT_SIZE = COMPACTION_JOB_PREFIX + "local.max.input.size";
+  public static final long DEFAULT_COMPACTION_JOB_LOCAL_MAX_INPUT_SIZE = 0;
+
   private static final String HADOOP_JOB_NAME = "Gobblin MR Compaction";
   private static final long MR_JOB_CHECK_COMPLETE_INTERVAL_MS = 5000;
 
@@ -185,24 +201,35 @@ public abstract class MRCompactorJobRunner implements Runnable, Comparable<MRCom
       if (this.dataset.jobProps().getPropAsBoolean(MRCompactor.COMPACTION_JOB_LATE_DATA_MOVEMENT_TASK, false)) {
         List<Path> newLateFilePaths = Lists.newArrayList();
         for (String filePathString : this.dataset.jobProps()
-            .getPropAsList(MRCompactor.COMPACTION_JOB_LATE_DATA_FILES)) {
-          if (FilenameUtils.isExtension(filePathString, getApplicableFileExtensions())) {
+            .getPropAsList(MRCompactor.COMPACTION_JOB_LATE_DATA_FILES, StringUtils.EMPTY)) {
+          if (!StringUtils.isBlank(filePathString)
+              && FilenameUtils.isExtension(filePathString, getApplicableFileExtensions())) {
             newLateFilePaths.add(new Path(filePathString));
           }
         }
 
-        Path lateDataOutputPath = this.outputDeduplicated ? this.dataset.outputLatePath() : this.dataset.outputPath();
-        LOG.info(String.format("Copying %d late data files to %s", newLateFilePaths.size(), lateDataOutputPath));
-        if (this.outputDeduplicated) {
-          if (!fs.exists(lateDataOutputPath)) {
-            if (!fs.mkdirs(lateDataOutputPath)) {
-              throw new RuntimeException(
-                  String.format("Failed to create late data output directory: %s.", lateDataOutputPath.toString()));
+        if (shouldCompactIncrementally()) {
+          LOG.info(String.format("Incrementally compacting %d late data files into %s", newLateFilePaths.size(),
+              this.dataset.outputPath()));
+          // The late records are merged into the output directory rather than copied into its late subdirectory
+          this.submitLateRecordCountsEvent(newLateFilePaths, this.dataset.outputPath());
+          ((IncrementalCompactionJobRunner) this).compactIncrementally(newLateFilePaths);
+          moveTmpPathIntoOutputPath();
+        } else {
+          Path lateDataOutputPath =
+              this.outputDeduplicated ? this.dataset.outputLatePath() : this.dataset.outputPath();
+          LOG.info(String.format("Copying %d late data files to %s", newLateFilePaths.size(), lateDataOutputPath));
+          if (this.outputDeduplicated) {
+            if (!fs.exists(lateDataOutputPath)) {
+              if (!fs.mkdirs(lateDataOutputPath)) {
+                throw new RuntimeException(
+                    String.format("Failed to create late data output directory: %s.", lateDataOutputPath.toString()));
+              }
             }
           }
+          this.submitLateRecordCountsEvent(newLateFilePaths, lateDataOutputPath);
+          this.copyDataFiles(lateDataOutputPath, newLateFilePaths);
         }
-        this.submitLateRecordCountsEvent(newLateFilePaths, lateDataOutputPath);
-        this.copyDataFiles(lateDataOutputPath, newLateFilePaths);
         this.status = Status.COMMITTED;
       } else {
         if (this.fs.exists(this.dataset.outputPath()) && !canOverwriteOutputDir()) {
@@ -211,10 +238,16 @@ public abstract class MRCompactorJobRunner implements Runnable, Comparable<MRCom
           this.status = Status.COMMITTED;
           return;
         }
-        addJars(conf);
-        Job job = Job.getInstance(conf);
-        this.configureJob(job);
-        this.submitAndWait(job);
+        Optional<Job> job = Optional.absent();
+        if (shouldCompactLocally()) {
+          long recordCount = ((LocalCompactionJobRunner) this).compactLocally(getInputPaths());
+          CompactionSlaEventHelper.setRecordCount(this.dataset.jobProps(), recordCount);
+        } else {
+          addJars(conf);
+          job = Optional.of(Job.getInstance(conf));
+          this.configureJob(job.get());
+          this.submitAndWait(job.get());
+        }
         if (shouldPublishData(compactionTimestamp)) {
           moveTmpPathToOutputPath();
           if (this.recompactFromDestPaths) {
@@ -306,7 +339,7 @@ public abstract class MRCompactorJobRunner implements Runnable, Comparable<MRCom
     FileOutputFormat.setOutputPath(job, this.dataset.outputTmpPath());
   }
 
-  private List<Path> getInputPaths() {
+  protected List<Path> getInputPaths() {
     List<Path> inputPaths = Lists.newArrayList(this.dataset.inputPath());
     inputPaths.addAll(this.dataset.additionalInputPaths());
     return inputPaths;
@@ -349,13 +382,44 @@ public abstract class MRCompactorJobRunner implements Runnable, Comparable<MRCom
 
   protected abstract Collection<String> getApplicableFileExtensions();
 
+  private boolean shouldCompactIncrementally() {
+    return this.outputDeduplicated && this instanceof IncrementalCompactionJobRunner
+        && this.dataset.jobProps().getPropAsBoolean(MRCompactor.COMPACTION_INCREMENTAL_FOR_LATE_DATA,
+            MRCompactor.DEFAULT_COMPACTION_INCREMENTAL_FOR_LATE_DATA);
+  }
+
+  /**
+   * A {@link Dataset} is compacted locally if the job runner is a {@link LocalCompactionJobRunner}, and the total
+   * input size does not exceed {@link #COMPACTION_JOB_LOCAL_MAX_INPUT_SIZE}.
+   */
+  private boolean shouldCompactLocally() throws IOException {
+    long maxInputSize = this.dataset.jobProps().getPropAsLong(COMPACTION_JOB_LOCAL_MAX_INPUT_SIZE,
+        DEFAULT_COMPACTION_JOB_LOCAL_MAX_INPUT_SIZE);
+    if (maxInputSize <= 0 || !(this instanceof LocalCompactionJobRunner)) {
+      return false;
+    }
+    long inputSize = getInputSize();
+    if (inputSize > maxInputSize) {
+      return false;
+    }
+    LOG.info(String.format("Input size of dataset %s is %d bytes. Will compact locally.", this.dataset, inputSize));
+    return true;
+  }
+
   protected void setNumberOfReducers(Job job) throws IOException {
     long inputSize = getInputSize();
     long targetFileSize = getTargetFileSize();
     job.setNumReduceTasks(Math.min(Ints.checkedCast(inputSize / targetFileSize) + 1, getMaxNumReducers()));
   }
 
+  /**
+   * Get the total input size, using the estimate of {@link MRCompactor} unless it was not estimated.
+   */
   private long getInputSize() throws IOException {
+    if (this.dataset.inputSize() > 0) {
+      return this.dataset.inputSize();
+    }
+
     long inputSize = 0;
     for (Path inputPath : this.getInputPaths()) {
       inputSize += this.fs.getContentSummary(inputPath).getLength();
@@ -449,14 +513,43 @@ public abstract class MRCompactorJobRunner implements Runnable, Comparable<MRCom
     }
   }
 
+  /**
+   * Move the files in {@link Dataset#outputTmpPath()} into {@link Dataset#outputPath()}, replacing existing files
+   * of the same names. Files whose names start with an underscore are moved last, so that an index file is never
+   * updated before the data it indexes is published.
+   */
+  private void moveTmpPathIntoOutputPath() throws IOException {
+    List<FileStatus> indexFiles = Lists.newArrayList();
+    for (FileStatus status : this.fs.listStatus(this.dataset.outputTmpPath())) {
+      if (status.getPath().getName().startsWith("_")) {
+        indexFiles.add(status);
+      } else {
+        moveIntoOutputPath(status.getPath());
+      }
+    }
+    for (FileStatus status : indexFiles) {
+      moveIntoOutputPath(status.getPath());
+    }
+    this.fs.delete(this.dataset.outputTmpPath(), true);
+  }
+
+  private void moveIntoOutputPath(Path src) throws IOException {
+    Path dst = new Path(this.dataset.outputPath(), src.getName());
+    LOG.info(String.format("Moving %s to %s", src, dst));
+    this.fs.delete(dst, false);
+    if (!this.fs.rename(src, dst)) {
+      throw new IOException(String.format("Unable to move %s to %s", src, dst));
+    }
+  }
+
   private void deleteAdditionalInputPaths() throws IOException {
     for (Path path : this.dataset.additionalInputPaths()) {
       HadoopUtils.deletePathAndEmptyAncestors(this.fs, path, true);
     }
   }
 
-  private void submitSlaEvent(Job job) {
-    CompactionSlaEventHelper.populateState(this.dataset, Optional.of(job), fs);
+  private void submitSlaEvent(Optional<Job> job) {
+    CompactionSlaEventHelper.populateState(this.dataset, job, fs);
     new SlaEventSubmitter(this.eventSubmitter, "CompactionCompleted", this.dataset.jobProps().getProperties()).submit();
   }
 
@@ -481,7 +574,7 @@ public abstract class MRCompactorJobRunner implements Runnable, Comparable<MRCom
 
   @Override
   public int compareTo(MRCompactorJobRunner o) {
-    return Double.compare(o.dataset.priority(), this.dataset.priority());
+    return this.dataset.compareTo(o.dataset);
   }
 
   private List<Path> getCumulativeLateFilePaths(Path lateDataDir) throws FileNotFoundException, IOException {
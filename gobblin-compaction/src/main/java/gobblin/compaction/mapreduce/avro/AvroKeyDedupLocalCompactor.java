@@ -0,0 +1,495 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.compaction.mapreduce.avro;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.mapred.FsInput;
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.io.Closer;
+import com.google.common.io.Files;
+import com.google.common.primitives.Ints;
+
+import gobblin.util.recordcount.CompactionRecordCountProvider;
+
+
+/**
+ * A class that compacts Avro files in process, which is used by {@link MRCompactorAvroKeyDedupJobRunner}
+ * for small {@link gobblin.compaction.Dataset}s instead of launching an MR job.
+ *
+ * If a key schema is given, records are deduplicated on their projection on the key schema, using an external sort:
+ * input records are buffered in memory up to a configurable number of records, sorted by key and spilled to
+ * local files, and the sorted runs are then combined with a k-way merge. If there are multiple records with the same
+ * key, the last one read is kept, as is the case in {@link AvroKeyDedupReducer}. If no key schema is given,
+ * input records are simply concatenated.
+ *
+ * The output file is named in the same way as by {@link AvroKeyCompactorOutputCommitter}, so that record counts
+ * can be obtained from {@link CompactionRecordCountProvider}.
+ *
+ * For incremental compaction, see {@link #compactAgainstKeyIndex(List, List, Path, Path)}, a key index of the
+ * already compacted data is maintained: an Avro file of all distinct keys, sorted. New input records are sorted and
+ * deduplicated as above, and then merge-joined with the key index, so that only records whose keys are not yet in
+ * the index are written, and the cost is proportional to the size of the new input and of the index, rather than
+ * the size of the compacted data.
+ */
+public class AvroKeyDedupLocalCompactor {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AvroKeyDedupLocalCompactor.class);
+
+  private static final String TMP_OUTPUT_FILE_NAME = "_local_compaction.avro.tmp";
+  private static final String TMP_KEY_INDEX_FILE_NAME = "_key_index.avro.tmp";
+  private static final String SPILL_FILE_PREFIX = "run-";
+  private static final String AVRO_EXTENSION = ".avro";
+
+  private final FileSystem fs;
+  private final Schema schema;
+  private final Optional<Schema> keySchema;
+  private final int maxRecordsInMemory;
+
+  /**
+   * @param fs the {@link FileSystem} where the input and output files are.
+   * @param schema the schema used to read input records and write output records.
+   * @param keySchema the schema on which records are deduplicated. If absent, records will not be deduplicated.
+   * @param maxRecordsInMemory the maximum number of records to be buffered in memory before spilling to disk.
+   */
+  public AvroKeyDedupLocalCompactor(FileSystem fs, Schema schema, Optional<Schema> keySchema,
+      int maxRecordsInMemory) {
+    Preconditions.checkArgument(maxRecordsInMemory > 0, "maxRecordsInMemory should be positive");
+    this.fs = fs;
+    this.schema = schema;
+    this.keySchema = keySchema;
+    this.maxRecordsInMemory = maxRecordsInMemory;
+  }
+
+  /**
+   * Compact the given input files into a single output file in the given output directory.
+   *
+   * @return the number of records written.
+   */
+  public long compact(List<Path> inputFiles, Path outputDir) throws IOException {
+    if (!this.fs.exists(outputDir) && !this.fs.mkdirs(outputDir)) {
+      throw new IOException("Failed to create output directory " + outputDir);
+    }
+
+    Path tmpOutputFile = new Path(outputDir, TMP_OUTPUT_FILE_NAME);
+    long recordCount;
+    Closer closer = Closer.create();
+    try {
+      DataFileWriter<GenericRecord> writer = closer.register(createWriter(this.schema, tmpOutputFile));
+      recordCount = this.keySchema.isPresent() ? sortAndDedup(inputFiles, new ValueWriterSink(writer))
+          : concat(inputFiles, writer);
+    } catch (Throwable t) {
+      throw closer.rethrow(t);
+    } finally {
+      closer.close();
+    }
+
+    publishOutputFile(tmpOutputFile, recordCount);
+    LOG.info(String.format("Compacted %d input files into %s", inputFiles.size(), outputDir));
+    return recordCount;
+  }
+
+  /**
+   * Compact the given input files incrementally against already compacted data, whose distinct keys are stored in
+   * the given key index file. Only records whose keys are not in the key index are written into a single output
+   * file in the given output directory, together with an updated key index named the same as keyIndexFile.
+   *
+   * If the key index does not exist, or it was created with a different key schema, it is first rebuilt from
+   * the given compacted files.
+   *
+   * @return the number of records written.
+   */
+  public long compactAgainstKeyIndex(List<Path> inputFiles, List<Path> compactedFiles, Path keyIndexFile,
+      Path outputDir) throws IOException {
+    Preconditions.checkState(this.keySchema.isPresent(), "Incremental compaction requires a key schema");
+    if (!this.fs.exists(outputDir) && !this.fs.mkdirs(outputDir)) {
+      throw new IOException("Failed to create output directory " + outputDir);
+    }
+
+    Path currentKeyIndexFile = keyIndexFile;
+    if (!isKeyIndexValid(keyIndexFile)) {
+      LOG.info(String.format("Rebuilding key index %s from %d compacted files", keyIndexFile, compactedFiles.size()));
+      currentKeyIndexFile = new Path(outputDir, TMP_KEY_INDEX_FILE_NAME);
+      buildKeyIndex(compactedFiles, currentKeyIndexFile);
+    }
+
+    Path tmpOutputFile = new Path(outputDir, TMP_OUTPUT_FILE_NAME);
+    Path newKeyIndexFile = new Path(outputDir, keyIndexFile.getName());
+    IndexJoiningSink sink;
+    Closer closer = Closer.create();
+    try {
+      DataFileReader<GenericRecord> keyIndexReader = closer.register(
+          new DataFileReader<GenericRecord>(new FsInput(currentKeyIndexFile, this.fs.getConf()),
+              new GenericDatumReader<GenericRecord>(this.keySchema.get())));
+      DataFileWriter<GenericRecord> writer = closer.register(createWriter(this.schema, tmpOutputFile));
+      DataFileWriter<GenericRecord> keyIndexWriter = closer.register(createWriter(this.keySchema.get(),
+          newKeyIndexFile));
+      sink = new IndexJoiningSink(keyIndexReader, writer, keyIndexWriter);
+      sortAndDedup(inputFiles, sink);
+      sink.flushKeyIndex();
+    } catch (Throwable t) {
+      throw closer.rethrow(t);
+    } finally {
+      closer.close();
+    }
+    if (!currentKeyIndexFile.equals(keyIndexFile)) {
+      this.fs.delete(currentKeyIndexFile, false);
+    }
+
+    publishOutputFile(tmpOutputFile, sink.recordCount);
+    LOG.info(String.format("Incrementally compacted %d input files into %s: %d new records, %d already compacted",
+        inputFiles.size(), outputDir, sink.recordCount, sink.existingCount));
+    return sink.recordCount;
+  }
+
+  /**
+   * A key index is valid if it exists and is written with the current key schema.
+   */
+  private boolean isKeyIndexValid(Path keyIndexFile) throws IOException {
+    if (!this.fs.exists(keyIndexFile)) {
+      return false;
+    }
+    Closer closer = Closer.create();
+    try {
+      DataFileReader<GenericRecord> reader = closer.register(new DataFileReader<GenericRecord>(
+          new FsInput(keyIndexFile, this.fs.getConf()), new GenericDatumReader<GenericRecord>()));
+      return reader.getSchema().equals(this.keySchema.get());
+    } catch (Throwable t) {
+      throw closer.rethrow(t);
+    } finally {
+      closer.close();
+    }
+  }
+
+  private void buildKeyIndex(List<Path> compactedFiles, Path keyIndexFile) throws IOException {
+    Closer closer = Closer.create();
+    try {
+      final DataFileWriter<GenericRecord> keyIndexWriter =
+          closer.register(createWriter(this.keySchema.get(), keyIndexFile));
+      sortAndDedup(compactedFiles, new RecordSink() {
+        @Override
+        public void write(KeyedRecord record) throws IOException {
+          keyIndexWriter.append(record.key);
+        }
+      });
+    } catch (Throwable t) {
+      throw closer.rethrow(t);
+    } finally {
+      closer.close();
+    }
+  }
+
+  private DataFileWriter<GenericRecord> createWriter(Schema writerSchema, Path file) throws IOException {
+    DataFileWriter<GenericRecord> writer =
+        new DataFileWriter<GenericRecord>(new GenericDatumWriter<GenericRecord>(writerSchema))
+            .setCodec(CodecFactory.deflateCodec(CodecFactory.DEFAULT_DEFLATE_LEVEL));
+    return writer.create(writerSchema, this.fs.create(file, true));
+  }
+
+  /**
+   * Rename the temporary output file so that its name contains the record count, or delete it if it is empty.
+   */
+  private void publishOutputFile(Path tmpOutputFile, long recordCount) throws IOException {
+    if (recordCount == 0) {
+      this.fs.delete(tmpOutputFile, false);
+      return;
+    }
+
+    String fileNamePrefix = this.keySchema.isPresent() ? CompactionRecordCountProvider.MR_OUTPUT_FILE_PREFIX
+        : CompactionRecordCountProvider.M_OUTPUT_FILE_PREFIX;
+    Path outputFile = new Path(tmpOutputFile.getParent(),
+        new CompactionRecordCountProvider().constructFileName(fileNamePrefix, recordCount));
+    if (!this.fs.rename(tmpOutputFile, outputFile)) {
+      throw new IOException(String.format("Unable to move %s to %s", tmpOutputFile, outputFile));
+    }
+  }
+
+  private long concat(List<Path> inputFiles, DataFileWriter<GenericRecord> writer) throws IOException {
+    long recordCount = 0;
+    for (Path inputFile : inputFiles) {
+      Closer closer = Closer.create();
+      try {
+        DataFileReader<GenericRecord> reader = closer.register(openReader(inputFile));
+        while (reader.hasNext()) {
+          writer.append(reader.next());
+          recordCount++;
+        }
+      } catch (Throwable t) {
+        throw closer.rethrow(t);
+      } finally {
+        closer.close();
+      }
+    }
+    return recordCount;
+  }
+
+  /**
+   * Read all input files, spilling sorted runs of at most {@link #maxRecordsInMemory} records to local files,
+   * and merge the runs into the sink. The last run is kept in memory.
+   *
+   * @return the number of distinct records passed to the sink.
+   */
+  private long sortAndDedup(List<Path> inputFiles, RecordSink sink) throws IOException {
+    File spillDir = Files.createTempDir();
+    Closer closer = Closer.create();
+    try {
+      List<Iterator<GenericRecord>> runs = Lists.newArrayList();
+      List<KeyedRecord> buffer = Lists.newArrayList();
+      for (Path inputFile : inputFiles) {
+        Closer readerCloser = Closer.create();
+        try {
+          DataFileReader<GenericRecord> reader = readerCloser.register(openReader(inputFile));
+          while (reader.hasNext()) {
+            buffer.add(new KeyedRecord(reader.next()));
+            if (buffer.size() >= this.maxRecordsInMemory) {
+              File spillFile = new File(spillDir, SPILL_FILE_PREFIX + runs.size() + AVRO_EXTENSION);
+              spill(buffer, spillFile);
+              runs.add(closer.register(new DataFileReader<GenericRecord>(spillFile,
+                  new GenericDatumReader<GenericRecord>(this.schema))));
+              buffer.clear();
+            }
+          }
+        } catch (Throwable t) {
+          throw readerCloser.rethrow(t);
+        } finally {
+          readerCloser.close();
+        }
+      }
+
+      Collections.sort(buffer);
+      List<GenericRecord> lastRun = Lists.newArrayListWithCapacity(buffer.size());
+      for (KeyedRecord record : buffer) {
+        lastRun.add(record.value);
+      }
+      buffer.clear();
+      runs.add(lastRun.iterator());
+
+      LOG.info(String.format("Merging %d sorted runs", runs.size()));
+      return merge(runs, sink);
+    } catch (Throwable t) {
+      throw closer.rethrow(t);
+    } finally {
+      try {
+        closer.close();
+      } finally {
+        FileUtils.deleteQuietly(spillDir);
+      }
+    }
+  }
+
+  /**
+   * Sort the buffered records by key and write them into a local file. The sort is stable, so records with
+   * the same key remain in the order they are read.
+   */
+  private void spill(List<KeyedRecord> buffer, File spillFile) throws IOException {
+    Collections.sort(buffer);
+    Closer closer = Closer.create();
+    try {
+      DataFileWriter<GenericRecord> spillWriter =
+          closer.register(new DataFileWriter<GenericRecord>(new GenericDatumWriter<GenericRecord>(this.schema)));
+      spillWriter.create(this.schema, spillFile);
+      for (KeyedRecord record : buffer) {
+        spillWriter.append(record.value);
+      }
+    } catch (Throwable t) {
+      throw closer.rethrow(t);
+    } finally {
+      closer.close();
+    }
+  }
+
+  /**
+   * Merge the sorted runs. Ties between runs are broken by run index, so that among records with the same key,
+   * the one read last is passed to the sink. Records are passed to the sink in key order.
+   */
+  private long merge(List<Iterator<GenericRecord>> runs, RecordSink sink) throws IOException {
+    PriorityQueue<RunHead> heads = new PriorityQueue<RunHead>(Math.max(runs.size(), 1));
+    for (int i = 0; i < runs.size(); i++) {
+      RunHead head = new RunHead(i, runs.get(i));
+      if (head.advance()) {
+        heads.add(head);
+      }
+    }
+
+    long recordCount = 0;
+    long dedupedCount = 0;
+    KeyedRecord pending = null;
+    while (!heads.isEmpty()) {
+      RunHead head = heads.poll();
+      if (pending != null && pending.compareTo(head.current) == 0) {
+        dedupedCount++;
+      } else if (pending != null) {
+        sink.write(pending);
+        recordCount++;
+      }
+      pending = head.current;
+      if (head.advance()) {
+        heads.add(head);
+      }
+    }
+    if (pending != null) {
+      sink.write(pending);
+      recordCount++;
+    }
+
+    LOG.info(String.format("Merged %d records, %d duplicate records removed", recordCount, dedupedCount));
+    return recordCount;
+  }
+
+  private DataFileReader<GenericRecord> openReader(Path inputFile) throws IOException {
+    return new DataFileReader<GenericRecord>(new FsInput(inputFile, this.fs.getConf()),
+        new GenericDatumReader<GenericRecord>(this.schema));
+  }
+
+  /**
+   * A record along with its projection on the key schema.
+   */
+  private class KeyedRecord implements Comparable<KeyedRecord> {
+    private final GenericRecord key;
+    private final GenericRecord value;
+
+    private KeyedRecord(GenericRecord value) {
+      this.value = value;
+      this.key = new GenericData.Record(AvroKeyDedupLocalCompactor.this.keySchema.get());
+      AvroKeyMapper.populateComparableKeyRecord(value, this.key);
+    }
+
+    @Override
+    public int compareTo(KeyedRecord o) {
+      return compareKeys(this.key, o.key);
+    }
+  }
+
+  /**
+   * Receives deduplicated records in key order.
+   */
+  private interface RecordSink {
+    void write(KeyedRecord record) throws IOException;
+  }
+
+  /**
+   * A {@link RecordSink} that writes the records.
+   */
+  private static class ValueWriterSink implements RecordSink {
+    private final DataFileWriter<GenericRecord> writer;
+
+    private ValueWriterSink(DataFileWriter<GenericRecord> writer) {
+      this.writer = writer;
+    }
+
+    @Override
+    public void write(KeyedRecord record) throws IOException {
+      this.writer.append(record.value);
+    }
+  }
+
+  /**
+   * A {@link RecordSink} that merge-joins records with a sorted key index. Records whose keys are not in the
+   * key index are written, and the union of the existing and new keys is written as the new key index.
+   */
+  private class IndexJoiningSink implements RecordSink {
+    private final Iterator<GenericRecord> keyIndex;
+    private final DataFileWriter<GenericRecord> writer;
+    private final DataFileWriter<GenericRecord> keyIndexWriter;
+    private GenericRecord currentKey;
+    private long recordCount = 0;
+    private long existingCount = 0;
+
+    private IndexJoiningSink(Iterator<GenericRecord> keyIndex, DataFileWriter<GenericRecord> writer,
+        DataFileWriter<GenericRecord> keyIndexWriter) {
+      this.keyIndex = keyIndex;
+      this.writer = writer;
+      this.keyIndexWriter = keyIndexWriter;
+      this.currentKey = keyIndex.hasNext() ? keyIndex.next() : null;
+    }
+
+    @Override
+    public void write(KeyedRecord record) throws IOException {
+      int result = -1;
+      while (this.currentKey != null && (result = compareKeys(this.currentKey, record.key)) < 0) {
+        advanceKeyIndex();
+      }
+      if (this.currentKey != null && result == 0) {
+        this.existingCount++;
+        return;
+      }
+      this.writer.append(record.value);
+      this.keyIndexWriter.append(record.key);
+      this.recordCount++;
+    }
+
+    private void flushKeyIndex() throws IOException {
+      while (this.currentKey != null) {
+        advanceKeyIndex();
+      }
+    }
+
+    private void advanceKeyIndex() throws IOException {
+      this.keyIndexWriter.append(this.currentKey);
+      this.currentKey = this.keyIndex.hasNext() ? this.keyIndex.next() : null;
+    }
+  }
+
+  private int compareKeys(GenericRecord key1, GenericRecord key2) {
+    return GenericData.get().compare(key1, key2, this.keySchema.get());
+  }
+
+  /**
+   * The current record of a sorted run.
+   */
+  private class RunHead implements Comparable<RunHead> {
+    private final int index;
+    private final Iterator<GenericRecord> run;
+    private KeyedRecord current;
+
+    private RunHead(int index, Iterator<GenericRecord> run) {
+      this.index = index;
+      this.run = run;
+    }
+
+    private boolean advance() {
+      if (!this.run.hasNext()) {
+        return false;
+      }
+      this.current = new KeyedRecord(this.run.next());
+      return true;
+    }
+
+    @Override
+    public int compareTo(RunHead o) {
+      int result = this.current.compareTo(o.current);
+      return result != 0 ? result : Ints.compare(this.index, o.index);
+    }
+  }
+}
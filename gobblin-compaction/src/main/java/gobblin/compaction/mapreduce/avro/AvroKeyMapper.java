@@ -72,7 +72,7 @@ public class AvroKeyMapper extends Mapper<AvroKey<GenericRecord>, NullWritable,
    * Target record's schema cannot have MAP, ARRAY or ENUM fields, or UNION fields that
    * contain these fields.
    */
-  private static void populateComparableKeyRecord(GenericRecord source, GenericRecord target) {
+  static void populateComparableKeyRecord(GenericRecord source, GenericRecord target) {
     for (Field field : target.getSchema().getFields()) {
       if (field.schema().getType() == Schema.Type.UNION) {
 
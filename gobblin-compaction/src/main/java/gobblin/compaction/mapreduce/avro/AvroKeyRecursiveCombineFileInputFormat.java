@@ -12,6 +12,8 @@
 
 package gobblin.compaction.mapreduce.avro;
 
+import gobblin.compaction.mapreduce.FileBlockLocationCache;
+import gobblin.compaction.mapreduce.LocalitySplitPlanner;
 import gobblin.util.FileListUtils;
 
 import java.io.FileNotFoundException;
@@ -25,6 +27,7 @@ import org.apache.commons.io.FilenameUtils;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.Job;
@@ -44,6 +47,11 @@ import com.google.common.collect.Lists;
  * This class is able to handle the case where the input path has subdirs which contain data files, which
  * is not the case with {@link org.apache.hadoop.mapreduce.lib.input.CombineFileInputFormat}.
  *
+ * If {@link #COMPACTION_JOB_LOCALITY_SPLIT_PLANNING_ENABLED} is true, splits are planned by
+ * {@link LocalitySplitPlanner}, which groups blocks by node then rack up to the max split size, using
+ * file statuses and block locations from {@link FileBlockLocationCache} that are shared across the compaction
+ * jobs in the same compaction run.
+ *
  * @author ziliu
  */
 public class AvroKeyRecursiveCombineFileInputFormat
@@ -58,6 +66,11 @@ public class AvroKeyRecursiveCombineFileInputFormat
   private static final long DEFAULT_COMPACTION_JOB_MAPRED_MAX_SPLIT_SIZE = 268435456;
   private static final String COMPACTION_JOB_MAPRED_MIN_SPLIT_SIZE = COMPACTION_JOB_PREFIX + "mapred.min.split.size";
   private static final long DEFAULT_COMPACTION_JOB_MAPRED_MIN_SPLIT_SIZE = 268435456;
+  public static final String COMPACTION_JOB_LOCALITY_SPLIT_PLANNING_ENABLED =
+      COMPACTION_JOB_PREFIX + "locality.split.planning.enabled";
+  private static final boolean DEFAULT_COMPACTION_JOB_LOCALITY_SPLIT_PLANNING_ENABLED = false;
+  public static final String COMPACTION_JOB_SPLIT_PLANNING_THREADS = COMPACTION_JOB_PREFIX + "split.planning.threads";
+  private static final int DEFAULT_COMPACTION_JOB_SPLIT_PLANNING_THREADS = 20;
 
   private static final long GET_SPLIT_NUM_FILES_TRHESHOLD = 5000;
   private static final int SPLIT_MAX_NUM_LOCATIONS = 10;
@@ -65,11 +78,30 @@ public class AvroKeyRecursiveCombineFileInputFormat
 
   @Override
   public List<InputSplit> getSplits(JobContext cx) throws IOException {
+    if (cx.getConfiguration().getBoolean(COMPACTION_JOB_LOCALITY_SPLIT_PLANNING_ENABLED,
+        DEFAULT_COMPACTION_JOB_LOCALITY_SPLIT_PLANNING_ENABLED)) {
+      return getLocalitySplits(cx);
+    }
     setSplitSize(cx);
     List<InputSplit> splits = getSplits(cx, Arrays.asList(getInputPaths(cx)));
     return cleanSplits(splits);
   }
 
+  private List<InputSplit> getLocalitySplits(JobContext cx) throws IOException {
+    FileSystem fs = FileSystem.get(cx.getConfiguration());
+    List<FileBlockLocationCache.FileBlocks> files = FileBlockLocationCache.getInstance().getFileBlocks(fs,
+        Arrays.asList(getInputPaths(cx)), new PathFilter() {
+          @Override
+          public boolean accept(Path path) {
+            return FilenameUtils.isExtension(path.getName(), AVRO);
+          }
+        }, cx.getConfiguration().getInt(COMPACTION_JOB_SPLIT_PLANNING_THREADS,
+            DEFAULT_COMPACTION_JOB_SPLIT_PLANNING_THREADS));
+    long targetSplitSize = cx.getConfiguration().getLong(COMPACTION_JOB_MAPRED_MAX_SPLIT_SIZE,
+        DEFAULT_COMPACTION_JOB_MAPRED_MAX_SPLIT_SIZE);
+    return new LocalitySplitPlanner(targetSplitSize, SPLIT_MAX_NUM_LOCATIONS).plan(files);
+  }
+
   private void setSplitSize(JobContext cx) {
     super.setMaxSplitSize(cx.getConfiguration().getLong(COMPACTION_JOB_MAPRED_MAX_SPLIT_SIZE,
         DEFAULT_COMPACTION_JOB_MAPRED_MAX_SPLIT_SIZE));
@@ -44,8 +44,12 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 
 import gobblin.compaction.Dataset;
+import gobblin.compaction.mapreduce.MRCompactor;
+import gobblin.compaction.mapreduce.IncrementalCompactionJobRunner;
+import gobblin.compaction.mapreduce.LocalCompactionJobRunner;
 import gobblin.compaction.mapreduce.MRCompactorJobRunner;
 import gobblin.util.AvroUtils;
+import gobblin.util.FileListUtils;
 
 
 /**
@@ -55,9 +59,19 @@ import gobblin.util.AvroUtils;
  * To dedup using entire records set compaction.use.all.attributes=true. Otherwise, a schema needs
  * to be provided by compaction.avro.key.schema.loc, based on which the dedup is performed.
  *
+ * Small datasets may be compacted in process by {@link AvroKeyDedupLocalCompactor} instead of an MR job,
+ * see {@link MRCompactorJobRunner#COMPACTION_JOB_LOCAL_MAX_INPUT_SIZE}. The maximum number of records buffered
+ * in memory by the local compaction is controlled by compaction.job.local.max.records.in.memory.
+ *
+ * Late data can be compacted incrementally against a key index of the output directory, see
+ * {@link MRCompactor#COMPACTION_INCREMENTAL_FOR_LATE_DATA}. The key index is stored
+ * in a file named {@link MRCompactor#COMPACTION_KEY_INDEX_FILE_NAME} in the output
+ * directory, and is built from the output directory the first time late data is compacted incrementally.
+ *
  * @author ziliu
  */
-public class MRCompactorAvroKeyDedupJobRunner extends MRCompactorJobRunner {
+public class MRCompactorAvroKeyDedupJobRunner extends MRCompactorJobRunner
+    implements LocalCompactionJobRunner, IncrementalCompactionJobRunner {
 
   private static final Logger LOG = LoggerFactory.getLogger(MRCompactorAvroKeyDedupJobRunner.class);
 
@@ -68,6 +82,9 @@ public class MRCompactorAvroKeyDedupJobRunner extends MRCompactorJobRunner {
    */
   private static final String COMPACTION_JOB_AVRO_KEY_SCHEMA_LOC = COMPACTION_JOB_PREFIX + "avro.key.schema.loc";
   private static final String COMPACTION_JOB_DEDUP_KEY = COMPACTION_JOB_PREFIX + "dedup.key";
+  private static final String COMPACTION_JOB_LOCAL_MAX_RECORDS_IN_MEMORY =
+      COMPACTION_JOB_PREFIX + "local.max.records.in.memory";
+  private static final int DEFAULT_COMPACTION_JOB_LOCAL_MAX_RECORDS_IN_MEMORY = 100000;
 
   private static final String AVRO = "avro";
   private static final String SCHEMA_DEDUP_FIELD_ANNOTATOR = "primarykey";
@@ -98,9 +115,9 @@ public class MRCompactorAvroKeyDedupJobRunner extends MRCompactorJobRunner {
   }
 
   private void configureSchema(Job job) throws IOException {
-    Schema newestSchema = getNewestSchemaFromSource(job);
+    Schema newestSchema = getNewestSchemaFromSource(Arrays.asList(FileInputFormat.getInputPaths(job)));
     AvroJob.setInputKeySchema(job, newestSchema);
-    AvroJob.setMapOutputKeySchema(job, this.shouldDeduplicate ? getKeySchema(job, newestSchema) : newestSchema);
+    AvroJob.setMapOutputKeySchema(job, this.shouldDeduplicate ? getDedupKeySchema(newestSchema) : newestSchema);
     AvroJob.setMapOutputValueSchema(job, newestSchema);
     AvroJob.setOutputKeySchema(job, newestSchema);
   }
@@ -112,7 +129,7 @@ public class MRCompactorAvroKeyDedupJobRunner extends MRCompactorJobRunner {
    * If compaction.dedup.key=custom, it reads the schema from compaction.avro.key.schema.loc.
    * If the read fails, or if the custom key schema is incompatible with topicSchema, option "key" will be used.
    */
-  private Schema getKeySchema(Job job, Schema topicSchema) throws IOException {
+  private Schema getDedupKeySchema(Schema topicSchema) throws IOException {
     Schema keySchema = null;
     DedupKeyOption dedupKeyOption = getDedupKeyOption();
     if (dedupKeyOption == DedupKeyOption.ALL) {
@@ -202,9 +219,7 @@ public class MRCompactorAvroKeyDedupJobRunner extends MRCompactorJobRunner {
         .equals(SchemaCompatibilityType.COMPATIBLE);
   }
 
-  private Schema getNewestSchemaFromSource(Job job) throws IOException {
-    Path[] sourceDirs = FileInputFormat.getInputPaths(job);
-
+  private Schema getNewestSchemaFromSource(List<Path> sourceDirs) throws IOException {
     List<FileStatus> files = new ArrayList<FileStatus>();
 
     for (Path sourceDir : sourceDirs) {
@@ -255,6 +270,61 @@ public class MRCompactorAvroKeyDedupJobRunner extends MRCompactorJobRunner {
     return new Path(this.dataset.jobProps().getProp(COMPACTION_JOB_AVRO_KEY_SCHEMA_LOC));
   }
 
+  @Override
+  public long compactLocally(List<Path> inputPaths) throws IOException {
+    //Output path must not exist when compaction starts, so delete if exists.
+    this.fs.delete(this.dataset.outputTmpPath(), true);
+
+    Schema newestSchema = getNewestSchemaFromSource(inputPaths);
+    if (newestSchema == null) {
+      LOG.warn("No Avro file found in " + inputPaths);
+      this.fs.mkdirs(this.dataset.outputTmpPath());
+      return 0;
+    }
+    Optional<Schema> keySchema =
+        this.shouldDeduplicate ? Optional.of(getDedupKeySchema(newestSchema)) : Optional.<Schema> absent();
+
+    List<Path> inputFiles = getAvroFiles(inputPaths);
+    return getLocalCompactor(newestSchema, keySchema).compact(inputFiles, this.dataset.outputTmpPath());
+  }
+
+  @Override
+  public long compactIncrementally(List<Path> lateFilePaths) throws IOException {
+    this.fs.delete(this.dataset.outputTmpPath(), true);
+    this.fs.mkdirs(this.dataset.outputTmpPath());
+    if (lateFilePaths.isEmpty()) {
+      return 0;
+    }
+
+    List<Path> compactedPaths = Lists.newArrayList(this.dataset.outputPath());
+    if (this.fs.exists(this.dataset.outputLatePath())) {
+      compactedPaths.add(this.dataset.outputLatePath());
+    }
+    List<Path> schemaSourcePaths = Lists.newArrayList(lateFilePaths);
+    schemaSourcePaths.addAll(compactedPaths);
+    Schema newestSchema = getNewestSchemaFromSource(schemaSourcePaths);
+    Schema keySchema = getDedupKeySchema(newestSchema);
+
+    return getLocalCompactor(newestSchema, Optional.of(keySchema)).compactAgainstKeyIndex(lateFilePaths,
+        getAvroFiles(compactedPaths), new Path(this.dataset.outputPath(), MRCompactor.COMPACTION_KEY_INDEX_FILE_NAME),
+        this.dataset.outputTmpPath());
+  }
+
+  private AvroKeyDedupLocalCompactor getLocalCompactor(Schema schema, Optional<Schema> keySchema) {
+    return new AvroKeyDedupLocalCompactor(this.fs, schema, keySchema, this.dataset.jobProps().getPropAsInt(
+        COMPACTION_JOB_LOCAL_MAX_RECORDS_IN_MEMORY, DEFAULT_COMPACTION_JOB_LOCAL_MAX_RECORDS_IN_MEMORY));
+  }
+
+  private List<Path> getAvroFiles(List<Path> paths) throws IOException {
+    List<Path> avroFiles = Lists.newArrayList();
+    for (FileStatus status : FileListUtils.listFilesRecursively(this.fs, paths)) {
+      if (FilenameUtils.isExtension(status.getPath().getName(), AVRO)) {
+        avroFiles.add(status.getPath());
+      }
+    }
+    return avroFiles;
+  }
+
   @Override
   protected void setInputFormatClass(Job job) {
     job.setInputFormatClass(AvroKeyRecursiveCombineFileInputFormat.class);
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.compaction.verify;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Closer;
+
+import gobblin.compaction.Dataset;
+import gobblin.util.FileListUtils;
+
+
+/**
+ * A cache of data completeness verification results that persists across compaction runs.
+ *
+ * <p>
+ *   For each {@link Dataset} that passed verification, a file is kept in the cache directory whose name is derived
+ *   from the {@link Dataset}'s input path, and whose content is a fingerprint of the input file listing (path,
+ *   length and modification time of every file under {@link Dataset#inputPath()} and
+ *   {@link Dataset#additionalInputPaths()}) at the time of verification. A {@link Dataset} whose current
+ *   fingerprint matches the cached one is considered verified without running verification again.
+ * </p>
+ *
+ * <p>
+ *   Only passed verifications are cached, since a failed verification may pass later with the same input,
+ *   e.g., when the source it is verified against catches up.
+ * </p>
+ */
+public class DataCompletenessVerificationCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DataCompletenessVerificationCache.class);
+
+  private final FileSystem fs;
+  private final Path cacheDir;
+
+  public DataCompletenessVerificationCache(FileSystem fs, Path cacheDir) {
+    this.fs = fs;
+    this.cacheDir = cacheDir;
+  }
+
+  /**
+   * Compute the fingerprint of the input file listing of a {@link Dataset}.
+   */
+  public String getFingerprint(Dataset dataset) throws IOException {
+    List<Path> inputPaths = Lists.newArrayList(dataset.inputPath());
+    inputPaths.addAll(dataset.additionalInputPaths());
+    List<FileStatus> files = Lists.newArrayList();
+    for (Path inputPath : inputPaths) {
+      if (this.fs.exists(inputPath)) {
+        files.addAll(FileListUtils.listFilesRecursively(this.fs, inputPath));
+      }
+    }
+    Collections.sort(files, new Comparator<FileStatus>() {
+      @Override
+      public int compare(FileStatus f1, FileStatus f2) {
+        return f1.getPath().compareTo(f2.getPath());
+      }
+    });
+
+    Hasher hasher = Hashing.md5().newHasher();
+    for (FileStatus file : files) {
+      hasher.putString(file.getPath().toString(), Charsets.UTF_8).putLong(file.getLen())
+          .putLong(file.getModificationTime());
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Whether the {@link Dataset} passed verification with the input file listing of the given fingerprint.
+   */
+  public boolean isVerified(Dataset dataset, String fingerprint) {
+    Optional<String> cachedFingerprint = readFingerprint(dataset);
+    return cachedFingerprint.isPresent() && cachedFingerprint.get().equals(fingerprint);
+  }
+
+  /**
+   * Record that the {@link Dataset} passed verification with the input file listing of the given fingerprint.
+   */
+  public void putVerified(Dataset dataset, String fingerprint) throws IOException {
+    Path cacheFile = getCacheFile(dataset);
+    Path tmpFile = new Path(cacheFile.getParent(), "_" + cacheFile.getName() + ".tmp");
+    Closer closer = Closer.create();
+    try {
+      FSDataOutputStream out = closer.register(this.fs.create(tmpFile, true));
+      out.writeUTF(fingerprint);
+    } catch (Throwable t) {
+      throw closer.rethrow(t);
+    } finally {
+      closer.close();
+    }
+    this.fs.delete(cacheFile, false);
+    if (!this.fs.rename(tmpFile, cacheFile)) {
+      throw new IOException(String.format("Unable to move %s to %s", tmpFile, cacheFile));
+    }
+  }
+
+  private Optional<String> readFingerprint(Dataset dataset) {
+    Path cacheFile = getCacheFile(dataset);
+    try {
+      if (!this.fs.exists(cacheFile)) {
+        return Optional.absent();
+      }
+      Closer closer = Closer.create();
+      try {
+        FSDataInputStream in = closer.register(this.fs.open(cacheFile));
+        return Optional.of(in.readUTF());
+      } catch (Throwable t) {
+        throw closer.rethrow(t);
+      } finally {
+        closer.close();
+      }
+    } catch (IOException e) {
+      LOG.warn("Failed to read verification cache file " + cacheFile, e);
+      return Optional.absent();
+    }
+  }
+
+  private Path getCacheFile(Dataset dataset) {
+    return new Path(this.cacheDir,
+        Hashing.md5().hashString(dataset.inputPath().toString(), Charsets.UTF_8).toString());
+  }
+}
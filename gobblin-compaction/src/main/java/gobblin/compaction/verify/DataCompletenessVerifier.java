@@ -15,20 +15,39 @@ package gobblin.compaction.verify;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 
 import gobblin.compaction.Dataset;
+import gobblin.compaction.mapreduce.MRCompactor;
 import gobblin.configuration.ConfigurationKeys;
 import gobblin.configuration.State;
 import gobblin.util.ExecutorsUtils;
@@ -42,6 +61,21 @@ import gobblin.util.executors.ScalingThreadPoolExecutor;
  * which returns a {@link Results} object. The (fully qualified) name of the class that extends {@link AbstractRunner}
  * should be associated with property {@link ConfigurationKeys#COMPACTION_DATA_COMPLETENESS_VERIFICATION_CLASS}.
  *
+ * <p>
+ *   {@link Dataset}s passed to {@link #verify(Iterable)} are put into a queue shared by all calls. Whenever a thread
+ *   is free, it takes up to {@link MRCompactor#COMPACTION_COMPLETENESS_VERIFICATION_NUM_DATASETS_VERIFIED_TOGETHER}
+ *   {@link Dataset}s from the queue and verifies them in one {@link AbstractRunner}, so that a slow group of
+ *   {@link Dataset}s does not hold back the others. A runner that does not finish within
+ *   {@link #COMPACTION_COMPLETENESS_VERIFICATION_RUNNER_TIMEOUT_SECONDS} is cancelled, and its {@link Dataset}s
+ *   fail verification.
+ * </p>
+ *
+ * <p>
+ *   If {@link #COMPACTION_COMPLETENESS_VERIFICATION_CACHE_DIR} is set and a {@link FileSystem} is provided,
+ *   {@link Dataset}s whose input files have not changed since they last passed verification are not verified
+ *   again. See {@link DataCompletenessVerificationCache}.
+ * </p>
+ *
  * @author ziliu
  */
 public class DataCompletenessVerifier implements Closeable {
@@ -53,16 +87,33 @@ public class DataCompletenessVerifier implements Closeable {
   /**
    * Configuration properties related to data completeness verification.
    */
-  private static final String COMPACTION_COMPLETENESS_VERIFICATION_CLASS =
+  @VisibleForTesting
+  static final String COMPACTION_COMPLETENESS_VERIFICATION_CLASS =
       COMPACTION_COMPLETENESS_VERIFICATION_PREFIX + "class";
-  private static final String COMPACTION_COMPLETENESS_VERIFICATION_THREAD_POOL_SIZE =
+  @VisibleForTesting
+  static final String COMPACTION_COMPLETENESS_VERIFICATION_THREAD_POOL_SIZE =
       COMPACTION_COMPLETENESS_VERIFICATION_PREFIX + "thread.pool.size";
   private static final int DEFAULT_COMPACTION_COMPLETENESS_VERIFICATION_THREAD_POOL_SIZE = 20;
+  public static final String COMPACTION_COMPLETENESS_VERIFICATION_RUNNER_TIMEOUT_SECONDS =
+      COMPACTION_COMPLETENESS_VERIFICATION_PREFIX + "runner.timeout.seconds";
+  public static final long DEFAULT_COMPACTION_COMPLETENESS_VERIFICATION_RUNNER_TIMEOUT_SECONDS = 1800;
+
+  // Directory where results of passed verifications are cached across compaction runs. Caching is disabled if not set.
+  public static final String COMPACTION_COMPLETENESS_VERIFICATION_CACHE_DIR =
+      COMPACTION_COMPLETENESS_VERIFICATION_PREFIX + "cache.dir";
 
   private final State props;
   private final int threadPoolSize;
+  private final int numDatasetsPerRunner;
+  private final long runnerTimeoutSeconds;
   private final ListeningExecutorService exeSvc;
+  private final ScheduledExecutorService timeoutExecutor;
   private final Class<? extends AbstractRunner> runnerClass;
+  private final Optional<DataCompletenessVerificationCache> cache;
+
+  // Datasets waiting for a free thread, and the number of runners currently running. Guarded by this.
+  private final Queue<PendingDataset> pendingDatasets = new LinkedList<PendingDataset>();
+  private int numRunningRunners = 0;
 
   /**
    * The given {@link State} object must specify property
@@ -70,10 +121,38 @@ public class DataCompletenessVerifier implements Closeable {
    * {@link ConfigurationKeys#COMPACTION_DATA_COMPLETENESS_VERIFICATION_THREAD_POOL_SIZE}.
    */
   public DataCompletenessVerifier(State props) {
+    this(props, Optional.<FileSystem> absent());
+  }
+
+  /**
+   * Same as {@link #DataCompletenessVerifier(State)}, and in addition caches verification results in
+   * {@link #COMPACTION_COMPLETENESS_VERIFICATION_CACHE_DIR} on the given {@link FileSystem}, if the property is set.
+   */
+  public DataCompletenessVerifier(State props, FileSystem fs) {
+    this(props, Optional.of(fs));
+  }
+
+  private DataCompletenessVerifier(State props, Optional<FileSystem> fs) {
     this.props = props;
     this.threadPoolSize = getDataCompletenessVerificationThreadPoolSize();
+    this.numDatasetsPerRunner = Math.max(1,
+        this.props.getPropAsInt(MRCompactor.COMPACTION_COMPLETENESS_VERIFICATION_NUM_DATASETS_VERIFIED_TOGETHER,
+            MRCompactor.DEFAULT_COMPACTION_COMPLETENESS_VERIFICATION_NUM_DATASETS_VERIFIED_TOGETHER));
+    this.runnerTimeoutSeconds = this.props.getPropAsLong(COMPACTION_COMPLETENESS_VERIFICATION_RUNNER_TIMEOUT_SECONDS,
+        DEFAULT_COMPACTION_COMPLETENESS_VERIFICATION_RUNNER_TIMEOUT_SECONDS);
     this.exeSvc = getExecutorService();
+    this.timeoutExecutor =
+        Executors.newSingleThreadScheduledExecutor(ExecutorsUtils.newThreadFactory(Optional.of(LOG)));
     this.runnerClass = getRunnerClass();
+    this.cache = getCache(fs);
+  }
+
+  private Optional<DataCompletenessVerificationCache> getCache(Optional<FileSystem> fs) {
+    if (!fs.isPresent() || !this.props.contains(COMPACTION_COMPLETENESS_VERIFICATION_CACHE_DIR)) {
+      return Optional.absent();
+    }
+    return Optional.of(new DataCompletenessVerificationCache(fs.get(),
+        new Path(this.props.getProp(COMPACTION_COMPLETENESS_VERIFICATION_CACHE_DIR))));
   }
 
   private ListeningExecutorService getExecutorService() {
@@ -107,7 +186,114 @@ public class DataCompletenessVerifier implements Closeable {
    * Callers can add listeners or callbacks to it.
    */
   public ListenableFuture<Results> verify(Iterable<Dataset> datasets) {
-    return this.exeSvc.submit(getRunner(datasets));
+    if (this.exeSvc.isShutdown()) {
+      throw new RejectedExecutionException("Data completeness verifier is closed");
+    }
+    VerificationGroup group = new VerificationGroup(datasets);
+    synchronized (this) {
+      for (Dataset dataset : datasets) {
+        this.pendingDatasets.add(new PendingDataset(dataset, group));
+      }
+      submitPendingDatasets();
+    }
+    return group.future;
+  }
+
+  /**
+   * Take {@link Dataset}s from {@link #pendingDatasets} and submit them for verification, until either
+   * the queue is empty or all threads are busy.
+   */
+  private synchronized void submitPendingDatasets() {
+    while (this.numRunningRunners < this.threadPoolSize && !this.pendingDatasets.isEmpty()) {
+      final List<PendingDataset> batch = Lists.newArrayList();
+      while (batch.size() < this.numDatasetsPerRunner && !this.pendingDatasets.isEmpty()) {
+        batch.add(this.pendingDatasets.poll());
+      }
+
+      final BatchRunner runner = new BatchRunner(batch);
+      try {
+        this.exeSvc.execute(runner);
+      } catch (RejectedExecutionException e) {
+        LOG.error("Failed to submit completeness verification", e);
+        completeBatch(batch, Optional.<Results> absent());
+        continue;
+      }
+      this.numRunningRunners++;
+
+      final Optional<ScheduledFuture<?>> timeout = scheduleTimeout(runner);
+      Futures.addCallback(runner.future, new FutureCallback<Results>() {
+        @Override
+        public void onSuccess(Results results) {
+          onBatchFinished(batch, Optional.of(results), timeout);
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          LOG.error("Completeness verification failed or timed out for " + batch.size() + " datasets", t);
+          onBatchFinished(batch, Optional.<Results> absent(), timeout);
+        }
+      });
+    }
+  }
+
+  private Optional<ScheduledFuture<?>> scheduleTimeout(final BatchRunner runner) {
+    if (this.runnerTimeoutSeconds <= 0) {
+      return Optional.absent();
+    }
+    try {
+      return Optional.<ScheduledFuture<?>> of(this.timeoutExecutor.schedule(new Runnable() {
+        @Override
+        public void run() {
+          runner.timeOut();
+        }
+      }, this.runnerTimeoutSeconds, TimeUnit.SECONDS));
+    } catch (RejectedExecutionException e) {
+      return Optional.absent();
+    }
+  }
+
+  /**
+   * Called when the {@link Dataset}s of a batch are verified, fail verification or time out. The thread of the
+   * batch is only released by {@link #onRunnerExited()}, since a timed-out {@link AbstractRunner} may not stop
+   * right away.
+   */
+  private void onBatchFinished(List<PendingDataset> batch, Optional<Results> results,
+      Optional<ScheduledFuture<?>> timeout) {
+    if (timeout.isPresent()) {
+      timeout.get().cancel(false);
+    }
+    completeBatch(batch, results);
+  }
+
+  /**
+   * Called when a {@link BatchRunner} exits, freeing its thread for pending {@link Dataset}s.
+   */
+  private synchronized void onRunnerExited() {
+    this.numRunningRunners--;
+    submitPendingDatasets();
+  }
+
+  @VisibleForTesting
+  synchronized int getNumRunningRunners() {
+    return this.numRunningRunners;
+  }
+
+  /**
+   * Complete the {@link Dataset}s of a batch with the given {@link Results}. {@link Dataset}s that are not
+   * in the {@link Results} fail verification.
+   */
+  private static void completeBatch(List<PendingDataset> batch, Optional<Results> results) {
+    Map<Dataset, Results.Result.Status> statuses = Maps.newHashMap();
+    if (results.isPresent()) {
+      for (Results.Result result : results.get()) {
+        statuses.put(result.dataset(), result.status());
+      }
+    }
+    for (PendingDataset pending : batch) {
+      Results.Result.Status status = statuses.get(pending.dataset);
+      pending.group.complete(new Results.Result(pending.dataset,
+          status == null ? Results.Result.Status.FAILED : status));
+    }
   }
 
   private AbstractRunner getRunner(Iterable<Dataset> datasets) {
@@ -121,11 +307,144 @@ public class DataCompletenessVerifier implements Closeable {
 
   @Override
   public void close() throws IOException {
-    ExecutorsUtils.shutdownExecutorService(this.exeSvc, Optional.of(LOG));
+    try {
+      ExecutorsUtils.shutdownExecutorService(this.exeSvc, Optional.of(LOG));
+    } finally {
+      this.timeoutExecutor.shutdownNow();
+    }
   }
 
   public void closeNow() throws IOException {
-    ExecutorsUtils.shutdownExecutorService(this.exeSvc, Optional.of(LOG), 0, TimeUnit.NANOSECONDS);
+    try {
+      ExecutorsUtils.shutdownExecutorService(this.exeSvc, Optional.of(LOG), 0, TimeUnit.NANOSECONDS);
+    } finally {
+      this.timeoutExecutor.shutdownNow();
+    }
+  }
+
+  /**
+   * Verifies a batch of {@link Dataset}s. {@link Dataset}s found in the {@link DataCompletenessVerificationCache}
+   * pass without being verified, and the other {@link Dataset}s are verified by an {@link AbstractRunner}.
+   *
+   * <p>
+   *   The {@link Results} are set to {@link #future}. When the batch times out, {@link #future} fails right away
+   *   and the running thread is interrupted, but the thread counts as running until {@link #run()} returns.
+   * </p>
+   */
+  private class BatchRunner implements Runnable {
+    private final List<PendingDataset> batch;
+    private final SettableFuture<Results> future = SettableFuture.create();
+    // The thread running this batch, guarded by this
+    private Thread runningThread;
+
+    private BatchRunner(List<PendingDataset> batch) {
+      this.batch = batch;
+    }
+
+    @Override
+    public void run() {
+      synchronized (this) {
+        this.runningThread = Thread.currentThread();
+      }
+      try {
+        if (!this.future.isDone()) {
+          this.future.set(verifyBatch());
+        }
+      } catch (Throwable t) {
+        this.future.setException(t);
+      } finally {
+        synchronized (this) {
+          this.runningThread = null;
+          // Do not leak an interrupt from timeOut() to the next task run by this thread
+          Thread.interrupted();
+        }
+        onRunnerExited();
+      }
+    }
+
+    private synchronized void timeOut() {
+      TimeoutException timeout = new TimeoutException(String.format(
+          "Completeness verification did not finish in %d seconds",
+          DataCompletenessVerifier.this.runnerTimeoutSeconds));
+      if (this.future.setException(timeout) && this.runningThread != null) {
+        this.runningThread.interrupt();
+      }
+    }
+
+    private Results verifyBatch() throws Exception {
+      List<Results.Result> results = Lists.newArrayList();
+      List<Dataset> datasetsToVerify = Lists.newArrayList();
+      Map<Dataset, String> fingerprints = Maps.newHashMap();
+
+      for (PendingDataset pending : this.batch) {
+        if (DataCompletenessVerifier.this.cache.isPresent()) {
+          try {
+            String fingerprint = DataCompletenessVerifier.this.cache.get().getFingerprint(pending.dataset);
+            if (DataCompletenessVerifier.this.cache.get().isVerified(pending.dataset, fingerprint)) {
+              LOG.info("Input of dataset " + pending.dataset + " is unchanged since it passed verification");
+              results.add(new Results.Result(pending.dataset, Results.Result.Status.PASSED));
+              continue;
+            }
+            fingerprints.put(pending.dataset, fingerprint);
+          } catch (IOException e) {
+            LOG.warn("Failed to get fingerprint of dataset " + pending.dataset, e);
+          }
+        }
+        datasetsToVerify.add(pending.dataset);
+      }
+
+      if (!datasetsToVerify.isEmpty()) {
+        for (Results.Result result : getRunner(datasetsToVerify).call()) {
+          results.add(result);
+          if (result.status() == Results.Result.Status.PASSED && fingerprints.containsKey(result.dataset())) {
+            try {
+              DataCompletenessVerifier.this.cache.get().putVerified(result.dataset(),
+                  fingerprints.get(result.dataset()));
+            } catch (IOException e) {
+              LOG.warn("Failed to cache verification result of dataset " + result.dataset(), e);
+            }
+          }
+        }
+      }
+      return new Results(results);
+    }
+  }
+
+  private static class PendingDataset {
+    private final Dataset dataset;
+    private final VerificationGroup group;
+
+    private PendingDataset(Dataset dataset, VerificationGroup group) {
+      this.dataset = dataset;
+      this.group = group;
+    }
+  }
+
+  /**
+   * The {@link Dataset}s passed to one call of {@link #verify(Iterable)}. Its future is completed when all of its
+   * {@link Dataset}s are verified, which may happen in different {@link BatchRunner}s.
+   */
+  private static class VerificationGroup {
+    private final SettableFuture<Results> future = SettableFuture.create();
+    private final int numDatasets;
+    private final List<Results.Result> results = Lists.newArrayList();
+
+    private VerificationGroup(Iterable<Dataset> datasets) {
+      this.numDatasets = Iterables.size(datasets);
+      if (this.numDatasets == 0) {
+        this.future.set(new Results(this.results));
+      }
+    }
+
+    private void complete(Results.Result result) {
+      synchronized (this) {
+        this.results.add(result);
+        if (this.results.size() < this.numDatasets) {
+          return;
+        }
+      }
+      this.future.set(new Results(this.results));
+    }
   }
 
   /**
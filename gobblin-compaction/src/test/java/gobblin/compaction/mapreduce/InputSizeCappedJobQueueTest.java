@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.compaction.mapreduce;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Longs;
+import com.google.common.util.concurrent.MoreExecutors;
+
+
+/**
+ * Unit tests for {@link InputSizeCappedJobQueue}.
+ */
+@Test(groups = { "gobblin.compaction.mapreduce" })
+public class InputSizeCappedJobQueueTest {
+
+  private static final Function<TestJob, Long> INPUT_SIZE = new Function<TestJob, Long>() {
+    @Override
+    public Long apply(TestJob job) {
+      return job.inputSize;
+    }
+  };
+
+  private final List<String> submitted = Lists.newArrayList();
+
+  @Test
+  public void testAdmissionWithinCap() {
+    this.submitted.clear();
+    InputSizeCappedJobQueue<TestJob> queue = createQueue(MoreExecutors.sameThreadExecutor(), 100);
+
+    TestJob first = new TestJob("first", 60);
+    TestJob second = new TestJob("second", 40);
+    TestJob third = new TestJob("third", 30);
+    queue.add(first);
+    queue.add(second);
+    queue.add(third);
+    Assert.assertEquals(this.submitted, Lists.newArrayList("first", "second"));
+    Assert.assertEquals(queue.getSubmittedInputSize(), 100);
+    Assert.assertEquals(queue.getNumSubmittedJobs(), 2);
+    Assert.assertEquals(queue.getNumPendingJobs(), 1);
+
+    // Releasing a job makes room for the pending job
+    queue.release(second);
+    Assert.assertEquals(this.submitted, Lists.newArrayList("first", "second", "third"));
+    Assert.assertEquals(queue.getSubmittedInputSize(), 90);
+    Assert.assertEquals(queue.getNumPendingJobs(), 0);
+
+    queue.release(first);
+    queue.release(third);
+    Assert.assertEquals(queue.getSubmittedInputSize(), 0);
+    Assert.assertEquals(queue.getNumSubmittedJobs(), 0);
+  }
+
+  @Test
+  public void testPendingJobsSubmittedInOrder() {
+    this.submitted.clear();
+    InputSizeCappedJobQueue<TestJob> queue = createQueue(MoreExecutors.sameThreadExecutor(), 100);
+
+    TestJob running = new TestJob("running", 100);
+    queue.add(running);
+    queue.add(new TestJob("small", 10));
+    queue.add(new TestJob("large", 50));
+    Assert.assertEquals(this.submitted, Lists.newArrayList("running"));
+
+    // Pending jobs are submitted largest first
+    queue.release(running);
+    Assert.assertEquals(this.submitted, Lists.newArrayList("running", "large", "small"));
+    Assert.assertEquals(queue.getSubmittedInputSize(), 60);
+  }
+
+  @Test
+  public void testJobLargerThanCap() {
+    this.submitted.clear();
+    InputSizeCappedJobQueue<TestJob> queue = createQueue(MoreExecutors.sameThreadExecutor(), 100);
+
+    TestJob small = new TestJob("small", 10);
+    TestJob huge = new TestJob("huge", 500);
+    queue.add(small);
+    queue.add(huge);
+    // The job larger than the cap waits for the running job
+    Assert.assertEquals(this.submitted, Lists.newArrayList("small"));
+
+    // Then runs alone
+    queue.release(small);
+    queue.add(new TestJob("other", 10));
+    Assert.assertEquals(this.submitted, Lists.newArrayList("small", "huge"));
+    Assert.assertEquals(queue.getSubmittedInputSize(), 500);
+
+    queue.release(huge);
+    Assert.assertEquals(this.submitted, Lists.newArrayList("small", "huge", "other"));
+    Assert.assertEquals(queue.getSubmittedInputSize(), 10);
+  }
+
+  @Test
+  public void testJobsWithoutEstimatedInputSize() {
+    this.submitted.clear();
+    InputSizeCappedJobQueue<TestJob> queue = createQueue(MoreExecutors.sameThreadExecutor(), 100);
+
+    // A running job without an estimated input size still counts as running
+    queue.add(new TestJob("unestimated", 0));
+    queue.add(new TestJob("huge", 500));
+    Assert.assertEquals(this.submitted, Lists.newArrayList("unestimated"));
+    Assert.assertEquals(queue.getNumPendingJobs(), 1);
+  }
+
+  @Test
+  public void testNoSubmissionAfterShutdown() {
+    this.submitted.clear();
+    ExecutorService executor = MoreExecutors.sameThreadExecutor();
+    InputSizeCappedJobQueue<TestJob> queue = createQueue(executor, 100);
+
+    TestJob running = new TestJob("running", 100);
+    queue.add(running);
+    queue.add(new TestJob("pending", 10));
+
+    executor.shutdown();
+    queue.release(running);
+    Assert.assertEquals(this.submitted, Lists.newArrayList("running"));
+    Assert.assertEquals(queue.getSubmittedInputSize(), 0);
+    Assert.assertEquals(queue.getNumPendingJobs(), 1);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void testReleaseWithoutSubmittedJob() {
+    createQueue(MoreExecutors.sameThreadExecutor(), 100).release(new TestJob("job", 10));
+  }
+
+  private InputSizeCappedJobQueue<TestJob> createQueue(ExecutorService executor, long maxConcurrentInputSize) {
+    return new InputSizeCappedJobQueue<TestJob>(executor, INPUT_SIZE, maxConcurrentInputSize);
+  }
+
+  private class TestJob implements Runnable, Comparable<TestJob> {
+
+    private final String name;
+    private final long inputSize;
+
+    TestJob(String name, long inputSize) {
+      this.name = name;
+      this.inputSize = inputSize;
+    }
+
+    @Override
+    public void run() {
+      InputSizeCappedJobQueueTest.this.submitted.add(this.name);
+    }
+
+    @Override
+    public int compareTo(TestJob o) {
+      return Longs.compare(o.inputSize, this.inputSize);
+    }
+  }
+}
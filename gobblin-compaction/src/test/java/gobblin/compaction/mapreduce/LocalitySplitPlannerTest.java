@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.compaction.mapreduce;
+
+import java.util.List;
+
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Lists;
+
+
+/**
+ * Unit tests for {@link LocalitySplitPlanner}.
+ */
+@Test(groups = { "gobblin.compaction.mapreduce" })
+public class LocalitySplitPlannerTest {
+
+  @Test
+  public void testNodeLocalSplits() throws Exception {
+    List<FileBlockLocationCache.FileBlocks> files = Lists.newArrayList();
+    files.add(createFile("/data/f1.avro", 100, "host1", "/rack1"));
+    files.add(createFile("/data/f2.avro", 100, "host2", "/rack2"));
+    files.add(createFile("/data/f3.avro", 100, "host1", "/rack1"));
+    files.add(createFile("/data/f4.avro", 100, "host2", "/rack2"));
+
+    List<InputSplit> splits = new LocalitySplitPlanner(200, 10).plan(files);
+    Assert.assertEquals(splits.size(), 2);
+    for (InputSplit split : splits) {
+      CombineFileSplit combineSplit = (CombineFileSplit) split;
+      Assert.assertEquals(combineSplit.getLength(), 200);
+      Assert.assertEquals(combineSplit.getLocations().length, 1);
+      String host = combineSplit.getLocations()[0];
+      for (Path path : combineSplit.getPaths()) {
+        Assert.assertTrue(host.equals("host1") ? path.getName().matches("f[13].avro")
+            : path.getName().matches("f[24].avro"));
+      }
+    }
+  }
+
+  @Test
+  public void testRackLocalAndRemainingSplits() throws Exception {
+    List<FileBlockLocationCache.FileBlocks> files = Lists.newArrayList();
+    files.add(createFile("/data/f1.avro", 100, "host1", "/rack1"));
+    files.add(createFile("/data/f2.avro", 100, "host2", "/rack1"));
+    files.add(createFile("/data/f3.avro", 100, "host3", "/rack2"));
+
+    List<InputSplit> splits = new LocalitySplitPlanner(200, 10).plan(files);
+    Assert.assertEquals(splits.size(), 2);
+
+    // f1 and f2 are not on the same node, but on the same rack.
+    CombineFileSplit rackSplit = (CombineFileSplit) splits.get(0);
+    Assert.assertEquals(rackSplit.getNumPaths(), 2);
+    Assert.assertEquals(rackSplit.getLocations().length, 2);
+
+    CombineFileSplit remainingSplit = (CombineFileSplit) splits.get(1);
+    Assert.assertEquals(remainingSplit.getPath(0).getName(), "f3.avro");
+    Assert.assertEquals(remainingSplit.getLocations(), new String[] { "host3" });
+  }
+
+  private static FileBlockLocationCache.FileBlocks createFile(String path, long length, String host, String rack) {
+    FileStatus status = new FileStatus(length, false, 1, length, 0, new Path(path));
+    BlockLocation block = new BlockLocation(new String[] { host + ":50010" }, new String[] { host },
+        new String[] { rack + "/" + host + ":50010" }, 0, length);
+    return new FileBlockLocationCache.FileBlocks(status, new BlockLocation[] { block });
+  }
+}
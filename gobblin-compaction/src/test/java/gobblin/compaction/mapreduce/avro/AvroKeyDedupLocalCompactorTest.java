@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.compaction.mapreduce.avro;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.mapred.FsInput;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import gobblin.util.recordcount.CompactionRecordCountProvider;
+
+
+/**
+ * Unit tests for {@link AvroKeyDedupLocalCompactor}.
+ */
+@Test(groups = { "gobblin.compaction.mapreduce.avro" })
+public class AvroKeyDedupLocalCompactorTest {
+
+  private static final String SCHEMA_STRING = "{\"type\":\"record\",\"name\":\"Event\",\"fields\":["
+      + "{\"name\":\"id\",\"type\":\"long\",\"doc\":\"primarykey\"},{\"name\":\"value\",\"type\":\"string\"}]}";
+  private static final String KEY_SCHEMA_STRING =
+      "{\"type\":\"record\",\"name\":\"Event\",\"fields\":[{\"name\":\"id\",\"type\":\"long\"}]}";
+
+  private final Path testDir = new Path("gobblin-compaction/src/test/resources/avroKeyDedupLocalCompactorTest");
+  private final Schema schema = new Schema.Parser().parse(SCHEMA_STRING);
+  private final Schema keySchema = new Schema.Parser().parse(KEY_SCHEMA_STRING);
+  private FileSystem fs;
+
+  @BeforeClass
+  public void setUp() throws IOException {
+    this.fs = FileSystem.getLocal(new Configuration());
+    this.fs.delete(this.testDir, true);
+    this.fs.mkdirs(this.testDir);
+  }
+
+  @Test
+  public void testDedupWithSpilling() throws IOException {
+    List<Path> inputFiles = Lists.newArrayList();
+    inputFiles.add(writeInputFile("input1.avro", new long[] { 5, 3, 1, 3 }, "first"));
+    inputFiles.add(writeInputFile("input2.avro", new long[] { 2, 5, 4 }, "second"));
+
+    Path outputDir = new Path(this.testDir, "dedup");
+    AvroKeyDedupLocalCompactor compactor =
+        new AvroKeyDedupLocalCompactor(this.fs, this.schema, Optional.of(this.keySchema), 2);
+    Assert.assertEquals(compactor.compact(inputFiles, outputDir), 5);
+
+    Map<Long, String> output = readOutput(outputDir, CompactionRecordCountProvider.MR_OUTPUT_FILE_PREFIX);
+    Assert.assertEquals(output.size(), 5);
+    Assert.assertEquals(output.get(1L), "first");
+    Assert.assertEquals(output.get(3L), "first");
+    Assert.assertEquals(output.get(5L), "second");
+    Assert.assertEquals(output.get(2L), "second");
+  }
+
+  @Test
+  public void testConcatWithoutDedup() throws IOException {
+    List<Path> inputFiles = Lists.newArrayList();
+    inputFiles.add(writeInputFile("input3.avro", new long[] { 1, 1 }, "first"));
+    inputFiles.add(writeInputFile("input4.avro", new long[] { 2 }, "second"));
+
+    Path outputDir = new Path(this.testDir, "concat");
+    AvroKeyDedupLocalCompactor compactor =
+        new AvroKeyDedupLocalCompactor(this.fs, this.schema, Optional.<Schema> absent(), 2);
+    Assert.assertEquals(compactor.compact(inputFiles, outputDir), 3);
+    Assert.assertEquals(readOutput(outputDir, CompactionRecordCountProvider.M_OUTPUT_FILE_PREFIX).size(), 2);
+  }
+
+  @Test
+  public void testCompactAgainstKeyIndex() throws IOException {
+    Path compactedFile = writeInputFile("compacted.avro", new long[] { 1, 2, 3 }, "compacted");
+    Path keyIndexFile = new Path(this.testDir, "_KEY_INDEX");
+    AvroKeyDedupLocalCompactor compactor =
+        new AvroKeyDedupLocalCompactor(this.fs, this.schema, Optional.of(this.keySchema), 2);
+
+    // The key index does not exist yet, so it is built from the compacted file.
+    List<Path> lateFiles = Lists.newArrayList(writeInputFile("late1.avro", new long[] { 2, 4, 4 }, "late"));
+    Path outputDir1 = new Path(this.testDir, "incremental1");
+    Assert.assertEquals(
+        compactor.compactAgainstKeyIndex(lateFiles, Lists.newArrayList(compactedFile), keyIndexFile, outputDir1), 1);
+    Assert.assertTrue(this.fs.exists(new Path(outputDir1, keyIndexFile.getName())));
+    this.fs.rename(new Path(outputDir1, keyIndexFile.getName()), keyIndexFile);
+    Map<Long, String> output = readOutput(outputDir1, CompactionRecordCountProvider.MR_OUTPUT_FILE_PREFIX);
+    Assert.assertEquals(output.size(), 1);
+    Assert.assertEquals(output.get(4L), "late");
+
+    // The updated key index contains keys 1 to 4, and compacted files are no longer read.
+    lateFiles = Lists.newArrayList(writeInputFile("late2.avro", new long[] { 4, 5, 0 }, "late"));
+    Path outputDir2 = new Path(this.testDir, "incremental2");
+    Assert.assertEquals(
+        compactor.compactAgainstKeyIndex(lateFiles, Lists.<Path> newArrayList(), keyIndexFile, outputDir2), 2);
+    output = readOutput(outputDir2, CompactionRecordCountProvider.MR_OUTPUT_FILE_PREFIX);
+    Assert.assertTrue(output.containsKey(0L));
+    Assert.assertTrue(output.containsKey(5L));
+  }
+
+  @AfterClass
+  public void tearDown() throws IOException {
+    this.fs.delete(this.testDir, true);
+  }
+
+  private Path writeInputFile(String name, long[] ids, String value) throws IOException {
+    Path file = new Path(this.testDir, name);
+    DataFileWriter<GenericRecord> writer =
+        new DataFileWriter<GenericRecord>(new GenericDatumWriter<GenericRecord>(this.schema));
+    try {
+      writer.create(this.schema, this.fs.create(file, true));
+      for (long id : ids) {
+        GenericRecord record = new GenericData.Record(this.schema);
+        record.put("id", id);
+        record.put("value", value);
+        writer.append(record);
+      }
+    } finally {
+      writer.close();
+    }
+    return file;
+  }
+
+  private Map<Long, String> readOutput(Path outputDir, String expectedPrefix) throws IOException {
+    FileStatus[] outputFiles = this.fs.listStatus(outputDir, new PathFilter() {
+      @Override
+      public boolean accept(Path path) {
+        return !path.getName().startsWith("_");
+      }
+    });
+    Assert.assertEquals(outputFiles.length, 1);
+    Assert.assertTrue(outputFiles[0].getPath().getName().startsWith(expectedPrefix));
+
+    Map<Long, String> records = Maps.newHashMap();
+    DataFileReader<GenericRecord> reader = new DataFileReader<GenericRecord>(
+        new FsInput(outputFiles[0].getPath(), this.fs.getConf()), new GenericDatumReader<GenericRecord>(this.schema));
+    try {
+      while (reader.hasNext()) {
+        GenericRecord record = reader.next();
+        records.put((Long) record.get("id"), record.get("value").toString());
+      }
+    } finally {
+      reader.close();
+    }
+    return records;
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.compaction.verify;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import gobblin.compaction.Dataset;
+
+
+/**
+ * Unit tests for {@link DataCompletenessVerificationCache}.
+ */
+@Test(groups = { "gobblin.compaction.verify" })
+public class DataCompletenessVerificationCacheTest {
+
+  private final Path testDir = new Path("gobblin-compaction/src/test/resources/dataCompletenessVerificationCacheTest");
+  private FileSystem fs;
+  private DataCompletenessVerificationCache cache;
+
+  @BeforeClass
+  public void setUp() throws IOException {
+    this.fs = FileSystem.getLocal(new Configuration());
+    this.fs.delete(this.testDir, true);
+    this.fs.mkdirs(this.testDir);
+    this.cache = new DataCompletenessVerificationCache(this.fs, new Path(this.testDir, "cache"));
+  }
+
+  @Test
+  public void testFingerprint() throws IOException {
+    Dataset dataset = createDataset("fingerprint");
+    String emptyFingerprint = this.cache.getFingerprint(dataset);
+
+    writeFile(new Path(dataset.inputPath(), "part-0.avro"), "data");
+    String fingerprint = this.cache.getFingerprint(dataset);
+    Assert.assertNotEquals(fingerprint, emptyFingerprint);
+    Assert.assertEquals(this.cache.getFingerprint(dataset), fingerprint);
+
+    // Changing the length of a file changes the fingerprint
+    writeFile(new Path(dataset.inputPath(), "part-0.avro"), "more data");
+    Assert.assertNotEquals(this.cache.getFingerprint(dataset), fingerprint);
+
+    // So does a file in an additional input path
+    fingerprint = this.cache.getFingerprint(dataset);
+    Path additionalInputPath = new Path(this.testDir, "fingerprint_late");
+    dataset.addAdditionalInputPath(additionalInputPath);
+    writeFile(new Path(additionalInputPath, "part-0.avro"), "late data");
+    Assert.assertNotEquals(this.cache.getFingerprint(dataset), fingerprint);
+  }
+
+  @Test
+  public void testVerified() throws IOException {
+    Dataset dataset = createDataset("verified");
+    writeFile(new Path(dataset.inputPath(), "part-0.avro"), "data");
+    String fingerprint = this.cache.getFingerprint(dataset);
+    Assert.assertFalse(this.cache.isVerified(dataset, fingerprint));
+
+    this.cache.putVerified(dataset, fingerprint);
+    Assert.assertTrue(this.cache.isVerified(dataset, fingerprint));
+    Assert.assertFalse(this.cache.isVerified(createDataset("other"), fingerprint));
+
+    // A new input file invalidates the cached verification, until the dataset passes verification again
+    writeFile(new Path(dataset.inputPath(), "part-1.avro"), "data");
+    String newFingerprint = this.cache.getFingerprint(dataset);
+    Assert.assertFalse(this.cache.isVerified(dataset, newFingerprint));
+    this.cache.putVerified(dataset, newFingerprint);
+    Assert.assertTrue(this.cache.isVerified(dataset, newFingerprint));
+    Assert.assertFalse(this.cache.isVerified(dataset, fingerprint));
+  }
+
+  @AfterClass
+  public void tearDown() throws IOException {
+    this.fs.delete(this.testDir, true);
+  }
+
+  private Dataset createDataset(String topic) {
+    return new Dataset.Builder().withTopic(topic).withInputPath(new Path(this.testDir, topic)).build();
+  }
+
+  private void writeFile(Path path, String content) throws IOException {
+    FSDataOutputStream out = this.fs.create(path, true);
+    try {
+      out.writeUTF(content);
+    } finally {
+      out.close();
+    }
+  }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.compaction.verify;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import gobblin.compaction.Dataset;
+import gobblin.compaction.mapreduce.MRCompactor;
+import gobblin.configuration.State;
+
+
+/**
+ * Unit tests for {@link DataCompletenessVerifier}.
+ */
+@Test(groups = { "gobblin.compaction.verify" })
+public class DataCompletenessVerifierTest {
+
+  private final Path testDir = new Path("gobblin-compaction/src/test/resources/dataCompletenessVerifierTest");
+  private FileSystem fs;
+
+  @BeforeClass
+  public void setUp() throws IOException {
+    this.fs = FileSystem.getLocal(new Configuration());
+    this.fs.delete(this.testDir, true);
+    this.fs.mkdirs(this.testDir);
+  }
+
+  @Test
+  public void testVerify() throws Exception {
+    State props = createProps(PassingRunner.class, 2, 2);
+    DataCompletenessVerifier verifier = new DataCompletenessVerifier(props);
+    try {
+      List<Dataset> datasets = Lists.newArrayList(createDataset("a"), createDataset("b"), createDataset("c"));
+      Map<Dataset, DataCompletenessVerifier.Results.Result.Status> statuses =
+          getStatuses(verifier.verify(datasets));
+      Assert.assertEquals(statuses.size(), 3);
+      for (Dataset dataset : datasets) {
+        Assert.assertEquals(statuses.get(dataset), DataCompletenessVerifier.Results.Result.Status.PASSED);
+      }
+
+      // Datasets missing from the results of a runner fail verification
+      Dataset missing = createDataset(PassingRunner.SKIPPED_TOPIC);
+      statuses = getStatuses(verifier.verify(Lists.newArrayList(createDataset("d"), missing)));
+      Assert.assertEquals(statuses.get(missing), DataCompletenessVerifier.Results.Result.Status.FAILED);
+    } finally {
+      verifier.close();
+    }
+  }
+
+  @Test
+  public void testTimedOutRunnerHoldsThread() throws Exception {
+    BlockingRunner.reset();
+    State props = createProps(BlockingRunner.class, 1, 1);
+    props.setProp(DataCompletenessVerifier.COMPACTION_COMPLETENESS_VERIFICATION_RUNNER_TIMEOUT_SECONDS, 1);
+    DataCompletenessVerifier verifier = new DataCompletenessVerifier(props);
+    try {
+      Dataset first = createDataset("first");
+      Dataset second = createDataset("second");
+      ListenableFuture<DataCompletenessVerifier.Results> firstFuture = verifier.verify(Lists.newArrayList(first));
+      ListenableFuture<DataCompletenessVerifier.Results> secondFuture = verifier.verify(Lists.newArrayList(second));
+
+      // The first dataset fails verification once its runner times out
+      Assert.assertEquals(getStatuses(firstFuture).get(first), DataCompletenessVerifier.Results.Result.Status.FAILED);
+
+      // But the runner ignoring the interrupt still holds the only thread
+      Assert.assertTrue(BlockingRunner.interrupted.await(10, TimeUnit.SECONDS));
+      Assert.assertEquals(verifier.getNumRunningRunners(), 1);
+      Assert.assertFalse(secondFuture.isDone());
+      Assert.assertEquals(BlockingRunner.started.get(), 1);
+
+      BlockingRunner.release.countDown();
+      Assert.assertEquals(getStatuses(secondFuture).get(second), DataCompletenessVerifier.Results.Result.Status.PASSED);
+      Assert.assertEquals(BlockingRunner.maxRunning.get(), 1);
+    } finally {
+      verifier.close();
+    }
+  }
+
+  @Test
+  public void testCachedVerification() throws Exception {
+    PassingRunner.numVerified.set(0);
+    State props = createProps(PassingRunner.class, 1, 1);
+    props.setProp(DataCompletenessVerifier.COMPACTION_COMPLETENESS_VERIFICATION_CACHE_DIR,
+        new Path(this.testDir, "cache").toString());
+    Dataset dataset = createDataset("cached");
+    this.fs.create(new Path(dataset.inputPath(), "part-0.avro")).close();
+
+    DataCompletenessVerifier verifier = new DataCompletenessVerifier(props, this.fs);
+    try {
+      Assert.assertEquals(getStatuses(verifier.verify(Lists.newArrayList(dataset))).get(dataset),
+          DataCompletenessVerifier.Results.Result.Status.PASSED);
+      Assert.assertEquals(PassingRunner.numVerified.get(), 1);
+
+      // An unchanged dataset passes without being verified again
+      Assert.assertEquals(getStatuses(verifier.verify(Lists.newArrayList(dataset))).get(dataset),
+          DataCompletenessVerifier.Results.Result.Status.PASSED);
+      Assert.assertEquals(PassingRunner.numVerified.get(), 1);
+
+      // A dataset with new input is verified again
+      this.fs.create(new Path(dataset.inputPath(), "part-1.avro")).close();
+      verifier.verify(Lists.newArrayList(dataset)).get(10, TimeUnit.SECONDS);
+      Assert.assertEquals(PassingRunner.numVerified.get(), 2);
+    } finally {
+      verifier.close();
+    }
+  }
+
+  @AfterClass
+  public void tearDown() throws IOException {
+    this.fs.delete(this.testDir, true);
+  }
+
+  private State createProps(Class<? extends DataCompletenessVerifier.AbstractRunner> runnerClass, int threadPoolSize,
+      int numDatasetsPerRunner) {
+    State props = new State();
+    props.setProp(DataCompletenessVerifier.COMPACTION_COMPLETENESS_VERIFICATION_CLASS, runnerClass.getName());
+    props.setProp(DataCompletenessVerifier.COMPACTION_COMPLETENESS_VERIFICATION_THREAD_POOL_SIZE, threadPoolSize);
+    props.setProp(MRCompactor.COMPACTION_COMPLETENESS_VERIFICATION_NUM_DATASETS_VERIFIED_TOGETHER,
+        numDatasetsPerRunner);
+    return props;
+  }
+
+  private Dataset createDataset(String topic) {
+    return new Dataset.Builder().withTopic(topic).withInputPath(new Path(this.testDir, topic)).build();
+  }
+
+  private static Map<Dataset, DataCompletenessVerifier.Results.Result.Status> getStatuses(
+      ListenableFuture<DataCompletenessVerifier.Results> future) throws Exception {
+    Map<Dataset, DataCompletenessVerifier.Results.Result.Status> statuses = Maps.newHashMap();
+    for (DataCompletenessVerifier.Results.Result result : future.get(10, TimeUnit.SECONDS)) {
+      statuses.put(result.dataset(), result.status());
+    }
+    return statuses;
+  }
+
+  /**
+   * A runner passing all {@link Dataset}s except those of {@link #SKIPPED_TOPIC}, which it leaves out of its results.
+   */
+  public static class PassingRunner extends DataCompletenessVerifier.AbstractRunner {
+
+    static final String SKIPPED_TOPIC = "skipped";
+    static final AtomicInteger numVerified = new AtomicInteger();
+
+    public PassingRunner(Iterable<Dataset> datasets, State props) {
+      super(datasets, props);
+    }
+
+    @Override
+    public DataCompletenessVerifier.Results call() {
+      List<DataCompletenessVerifier.Results.Result> results = Lists.newArrayList();
+      for (Dataset dataset : this.datasets) {
+        numVerified.incrementAndGet();
+        if (!dataset.topic().equals(SKIPPED_TOPIC)) {
+          results.add(new DataCompletenessVerifier.Results.Result(dataset,
+              DataCompletenessVerifier.Results.Result.Status.PASSED));
+        }
+      }
+      return new DataCompletenessVerifier.Results(results);
+    }
+  }
+
+  /**
+   * A runner that ignores interrupts and blocks until {@link #release} is counted down.
+   */
+  public static class BlockingRunner extends DataCompletenessVerifier.AbstractRunner {
+
+    static CountDownLatch release;
+    static CountDownLatch interrupted;
+    static AtomicInteger started;
+    static AtomicInteger running;
+    static AtomicInteger maxRunning;
+
+    public BlockingRunner(Iterable<Dataset> datasets, State props) {
+      super(datasets, props);
+    }
+
+    static void reset() {
+      release = new CountDownLatch(1);
+      interrupted = new CountDownLatch(1);
+      started = new AtomicInteger();
+      running = new AtomicInteger();
+      maxRunning = new AtomicInteger();
+    }
+
+    @Override
+    public DataCompletenessVerifier.Results call() {
+      started.incrementAndGet();
+      int numRunning = running.incrementAndGet();
+      maxRunning.set(Math.max(maxRunning.get(), numRunning));
+      try {
+        while (release.getCount() > 0) {
+          try {
+            release.await();
+          } catch (InterruptedException ie) {
+            interrupted.countDown();
+          }
+        }
+      } finally {
+        running.decrementAndGet();
+      }
+
+      List<DataCompletenessVerifier.Results.Result> results = Lists.newArrayList();
+      for (Dataset dataset : this.datasets) {
+        results.add(new DataCompletenessVerifier.Results.Result(dataset,
+            DataCompletenessVerifier.Results.Result.Status.PASSED));
+      }
+      return new DataCompletenessVerifier.Results(results);
+    }
+  }
+}
@@ -63,7 +63,7 @@ public class KafkaAvroExtractor extends KafkaExtractor<Schema, GenericRecord> {
    */
   public KafkaAvroExtractor(WorkUnitState state) {
     super(state);
-    this.schemaRegistry = new KafkaAvroSchemaRegistry(state.getProperties());
+    this.schemaRegistry = KafkaAvroSchemaRegistry.get(state.getProperties());
     this.schema = Optional.fromNullable(getLatestSchemaByTopic());
     if (this.schema.isPresent()) {
       this.reader = Optional.of(new GenericDatumReader<Record>(this.schema.get()));
@@ -50,7 +50,7 @@ public class KafkaAvroSource extends KafkaSource<Schema, GenericRecord> {
   @Override
   public List<WorkUnit> getWorkunits(SourceState state) {
     if (!this.schemaRegistry.isPresent()) {
-      this.schemaRegistry = Optional.of(new KafkaAvroSchemaRegistry(state.getProperties()));
+      this.schemaRegistry = Optional.of(KafkaAvroSchemaRegistry.get(state.getProperties()));
     }
     return super.getWorkunits(state);
   }
@@ -15,6 +15,7 @@ package gobblin.source.extractor.extract.kafka;
 import gobblin.configuration.ConfigurationKeys;
 import gobblin.configuration.State;
 import gobblin.util.DatasetFilterUtils;
+import gobblin.util.IdleResourcePool;
 
 import java.io.Closeable;
 import java.io.IOException;
@@ -23,7 +24,10 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
 
 import kafka.api.PartitionFetchInfo;
@@ -44,6 +48,9 @@ import org.apache.commons.lang.NotImplementedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Lists;
@@ -55,6 +62,13 @@ import com.google.common.net.HostAndPort;
  * Wrapper class that contains two alternative Kakfa APIs: an old low-level Scala-based API, and a new API.
  * The new API has not been implemented since it's not ready to be open sourced.
  *
+ * <p>
+ *   In a long-lived process, {@link #enableReuse(long, TimeUnit)} makes closed {@link KafkaWrapper}s keep their
+ *   connections to the Kafka brokers open so that {@link #create(State)} can hand them out again for the same
+ *   brokers, e.g., to the tasks of the next run of a job. Each call to {@link #create(State)} returns a new
+ *   {@link KafkaWrapper}, so closing one more than once never gives back connections handed out again since.
+ * </p>
+ *
  * @author ziliu
  */
 public class KafkaWrapper implements Closeable {
@@ -63,11 +77,18 @@ public class KafkaWrapper implements Closeable {
 
   private static final String USE_NEW_KAFKA_API = "use.new.kafka.api";
   private static final boolean DEFAULT_USE_NEW_KAFKA_API = false;
+  private static final int MAX_IDLE_WRAPPERS_PER_BROKER_LIST = 16;
+
+  // Present while closed KafkaWrappers are kept for reuse
+  private static volatile Optional<KafkaWrapperPool> wrapperPool = Optional.absent();
 
   private final List<String> brokers;
   private final KafkaAPI kafkaAPI;
 
-  private final boolean useNewKafkaAPI;
+  // Key of the connections in the pool of reusable connections, and the pool they are borrowed from if any
+  private final String poolKey;
+  private final Optional<KafkaWrapperPool> pool;
+  private final AtomicBoolean closed = new AtomicBoolean(false);
 
   private static class Builder {
     private boolean useNewKafkaAPI = DEFAULT_USE_NEW_KAFKA_API;
@@ -88,15 +109,24 @@ public class KafkaWrapper implements Closeable {
     }
 
     private KafkaWrapper build() {
+      return new KafkaWrapper(this, buildKafkaAPI(), Optional.<KafkaWrapperPool>absent());
+    }
+
+    private KafkaAPI buildKafkaAPI() {
       Preconditions.checkArgument(!brokers.isEmpty(), "Need to specify at least one Kafka broker.");
-      return new KafkaWrapper(this);
+      if (this.useNewKafkaAPI) {
+        return new KafkaNewAPI();
+      } else {
+        return new KafkaOldAPI(this.brokers);
+      }
     }
   }
 
-  private KafkaWrapper(Builder builder) {
-    this.useNewKafkaAPI = builder.useNewKafkaAPI;
+  private KafkaWrapper(Builder builder, KafkaAPI kafkaAPI, Optional<KafkaWrapperPool> pool) {
     this.brokers = builder.brokers;
-    this.kafkaAPI = getKafkaAPI();
+    this.poolKey = getPoolKey(builder);
+    this.kafkaAPI = kafkaAPI;
+    this.pool = pool;
   }
 
   /**
@@ -113,7 +143,67 @@ public class KafkaWrapper implements Closeable {
     if (state.getPropAsBoolean(USE_NEW_KAFKA_API, DEFAULT_USE_NEW_KAFKA_API)) {
       builder = builder.withNewKafkaAPI();
     }
-    return builder.withBrokers(state.getPropAsList(ConfigurationKeys.KAFKA_BROKERS)).build();
+    final KafkaWrapper.Builder wrapperBuilder =
+        builder.withBrokers(state.getPropAsList(ConfigurationKeys.KAFKA_BROKERS));
+
+    Optional<KafkaWrapperPool> pool = wrapperPool;
+    if (!pool.isPresent()) {
+      return wrapperBuilder.build();
+    }
+    try {
+      KafkaAPI kafkaAPI = pool.get().borrow(getPoolKey(wrapperBuilder), new Callable<KafkaAPI>() {
+        @Override
+        public KafkaAPI call() {
+          return wrapperBuilder.buildKafkaAPI();
+        }
+      });
+      return new KafkaWrapper(wrapperBuilder, kafkaAPI, pool);
+    } catch (IOException ioe) {
+      // Only happens if evicting idle wrappers failed, which is logged by the pool
+      LOG.warn("Failed to get a reusable KafkaWrapper, creating a new one", ioe);
+      return wrapperBuilder.build();
+    }
+  }
+
+  /**
+   * Keep the connections of the {@link KafkaWrapper}s closed from now on for reuse by later calls to
+   * {@link #create(State)} in this process, until they are idle for the given time.
+   */
+  public static synchronized void enableReuse(long idleTimeout, TimeUnit timeUnit) throws IOException {
+    disableReuse();
+    LOG.info(String.format("Reusing KafkaWrappers idle for less than %d %s", idleTimeout, timeUnit));
+    wrapperPool = Optional.of(new KafkaWrapperPool(idleTimeout, timeUnit));
+  }
+
+  /**
+   * Stop reusing {@link KafkaWrapper}s and close the idle ones.
+   */
+  public static synchronized void disableReuse() throws IOException {
+    Optional<KafkaWrapperPool> pool = wrapperPool;
+    wrapperPool = Optional.absent();
+    if (pool.isPresent()) {
+      pool.get().close();
+    }
+  }
+
+  /**
+   * Close the reusable {@link KafkaWrapper}s that have been idle for longer than the idle timeout.
+   */
+  public static void evictIdleWrappers() throws IOException {
+    Optional<KafkaWrapperPool> pool = wrapperPool;
+    if (pool.isPresent()) {
+      pool.get().evictIdle();
+    }
+  }
+
+  @VisibleForTesting
+  static int getIdleWrapperCount() {
+    Optional<KafkaWrapperPool> pool = wrapperPool;
+    return pool.isPresent() ? pool.get().getIdleCount() : 0;
+  }
+
+  private static String getPoolKey(Builder builder) {
+    return (builder.useNewKafkaAPI ? "new:" : "old:") + Joiner.on(',').join(builder.brokers);
   }
 
   public List<String> getBrokers() {
@@ -136,20 +226,23 @@ public class KafkaWrapper implements Closeable {
     return this.kafkaAPI.fetchNextMessageBuffer(partition, nextOffset, maxOffset);
   }
 
-  private KafkaAPI getKafkaAPI() {
-    if (this.useNewKafkaAPI) {
-      return new KafkaNewAPI();
-    } else {
-      return new KafkaOldAPI();
-    }
-  }
-
+  /**
+   * Close this {@link KafkaWrapper}. Its connections are given back to the pool they were borrowed from, which
+   * closes them if reuse has been disabled since. Closing it again has no effect.
+   */
   @Override
   public void close() throws IOException {
-    this.kafkaAPI.close();
+    if (!this.closed.compareAndSet(false, true)) {
+      return;
+    }
+    if (this.pool.isPresent()) {
+      this.pool.get().release(this.poolKey, this.kafkaAPI);
+    } else {
+      this.kafkaAPI.close();
+    }
   }
 
-  private abstract class KafkaAPI implements Closeable {
+  private static abstract class KafkaAPI implements Closeable {
     protected abstract List<KafkaTopic> getFilteredTopics(List<Pattern> blacklist, List<Pattern> whitelist);
 
     protected abstract long getEarliestOffset(KafkaPartition partition) throws KafkaOffsetRetrievalFailureException;
@@ -163,7 +256,7 @@ public class KafkaWrapper implements Closeable {
   /**
    * Wrapper for the old low-level Scala-based Kafka API.
    */
-  private class KafkaOldAPI extends KafkaAPI {
+  private static class KafkaOldAPI extends KafkaAPI {
     private static final int DEFAULT_KAFKA_TIMEOUT_VALUE = 30000;
     private static final int DEFAULT_KAFKA_BUFFER_SIZE = 1024 * 1024;
     private static final String DEFAULT_KAFKA_CLIENT_NAME = "kafka-old-api";
@@ -172,8 +265,13 @@ public class KafkaWrapper implements Closeable {
     private static final int NUM_TRIES_FETCH_TOPIC = 3;
     private static final int NUM_TRIES_FETCH_OFFSET = 3;
 
+    private final List<String> brokers;
     private final ConcurrentMap<String, SimpleConsumer> activeConsumers = Maps.newConcurrentMap();
 
+    private KafkaOldAPI(List<String> brokers) {
+      this.brokers = brokers;
+    }
+
     @Override
     public List<KafkaTopic> getFilteredTopics(List<Pattern> blacklist, List<Pattern> whitelist) {
       List<TopicMetadata> topicMetadataList = getFilteredMetadataList(blacklist, whitelist);
@@ -201,7 +299,7 @@ public class KafkaWrapper implements Closeable {
       List<TopicMetadata> filteredTopicMetadataList = Lists.newArrayList();
 
       //Try all brokers one by one, until successfully retrieved topic metadata (topicMetadataList is non-null)
-      for (String broker : KafkaWrapper.this.getBrokers()) {
+      for (String broker : this.brokers) {
         filteredTopicMetadataList = fetchTopicMetadataFromBroker(broker, blacklist, whitelist);
         if (filteredTopicMetadataList != null) {
           return filteredTopicMetadataList;
@@ -233,7 +331,8 @@ public class KafkaWrapper implements Closeable {
       LOG.info(String.format("Fetching topic metadata from broker %s", broker));
       SimpleConsumer consumer = null;
       try {
-        consumer = getSimpleConsumer(broker);
+        // A dedicated consumer, since closing one of the active consumers would break their later use
+        consumer = createSimpleConsumer(broker);
         for (int i = 0; i < NUM_TRIES_FETCH_TOPIC; i++) {
           try {
             return consumer.send(new TopicMetadataRequest(Arrays.asList(selectedTopics))).topicsMetadata();
@@ -381,7 +480,7 @@ public class KafkaWrapper implements Closeable {
     }
 
     private void refreshTopicMetadata(KafkaPartition partition) {
-      for (String broker : KafkaWrapper.this.getBrokers()) {
+      for (String broker : this.brokers) {
         List<TopicMetadata> topicMetadataList = fetchTopicMetadataFromBroker(broker, partition.getTopicName());
         if (topicMetadataList != null && !topicMetadataList.isEmpty()) {
           TopicMetadata topicMetadata = topicMetadataList.get(0);
@@ -427,10 +526,25 @@ public class KafkaWrapper implements Closeable {
     }
   }
 
+  /**
+   * An {@link IdleResourcePool} of the connections of {@link KafkaWrapper}s keyed by their brokers and Kafka API.
+   */
+  private static class KafkaWrapperPool extends IdleResourcePool<String, KafkaAPI> {
+
+    KafkaWrapperPool(long idleTimeout, TimeUnit timeUnit) {
+      super(idleTimeout, timeUnit, MAX_IDLE_WRAPPERS_PER_BROKER_LIST);
+    }
+
+    @Override
+    protected void destroy(KafkaAPI kafkaAPI) throws IOException {
+      kafkaAPI.close();
+    }
+  }
+
   /**
    * Wrapper for the new Kafka API.
    */
-  private class KafkaNewAPI extends KafkaAPI {
+  private static class KafkaNewAPI extends KafkaAPI {
 
     @Override
     public List<KafkaTopic> getFilteredTopics(List<Pattern> blacklist, List<Pattern> whitelist) {
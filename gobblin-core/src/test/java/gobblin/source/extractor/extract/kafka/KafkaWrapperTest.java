@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.source.extractor.extract.kafka;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import gobblin.configuration.ConfigurationKeys;
+import gobblin.configuration.State;
+
+
+/**
+ * Unit tests for the reuse of the connections of {@link KafkaWrapper}s.
+ */
+@Test(groups = { "gobblin.source.extractor.extract.kafka" })
+public class KafkaWrapperTest {
+
+  @Test
+  public void testClosedWrapperReused() throws IOException {
+    KafkaWrapper.enableReuse(1, TimeUnit.HOURS);
+    State state = createState("localhost:12345");
+
+    KafkaWrapper.create(state).close();
+    Assert.assertEquals(KafkaWrapper.getIdleWrapperCount(), 1);
+    KafkaWrapper wrapper = KafkaWrapper.create(state);
+    Assert.assertEquals(KafkaWrapper.getIdleWrapperCount(), 0);
+    KafkaWrapper.create(createState("localhost:12346")).close();
+    Assert.assertEquals(KafkaWrapper.getIdleWrapperCount(), 1);
+    wrapper.close();
+    Assert.assertEquals(KafkaWrapper.getIdleWrapperCount(), 2);
+  }
+
+  @Test
+  public void testCloseIsIdempotent() throws IOException {
+    KafkaWrapper.enableReuse(1, TimeUnit.HOURS);
+    State state = createState("localhost:12345");
+
+    KafkaWrapper wrapper = KafkaWrapper.create(state);
+    wrapper.close();
+    KafkaWrapper otherWrapper = KafkaWrapper.create(state);
+    Assert.assertEquals(KafkaWrapper.getIdleWrapperCount(), 0);
+
+    // Closing the first wrapper again must not give back the connections now used by the other wrapper
+    wrapper.close();
+    Assert.assertEquals(KafkaWrapper.getIdleWrapperCount(), 0);
+    otherWrapper.close();
+    otherWrapper.close();
+    Assert.assertEquals(KafkaWrapper.getIdleWrapperCount(), 1);
+  }
+
+  @Test
+  public void testWrapperClosedAfterReuseDisabled() throws IOException {
+    KafkaWrapper.enableReuse(1, TimeUnit.HOURS);
+    KafkaWrapper wrapper = KafkaWrapper.create(createState("localhost:12345"));
+
+    KafkaWrapper.disableReuse();
+    wrapper.close();
+    Assert.assertEquals(KafkaWrapper.getIdleWrapperCount(), 0);
+  }
+
+  @AfterMethod
+  public void tearDown() throws IOException {
+    KafkaWrapper.disableReuse();
+  }
+
+  private State createState(String brokers) {
+    State state = new State();
+    state.setProp(ConfigurationKeys.KAFKA_BROKERS, brokers);
+    return state;
+  }
+}
@@ -13,10 +13,15 @@
 package gobblin.data.management.retention;
 
 import java.io.Closeable;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
+import java.util.Queue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
@@ -26,6 +31,8 @@ import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
@@ -36,18 +43,27 @@ import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import gobblin.configuration.State;
 import gobblin.data.management.retention.dataset.Dataset;
+import gobblin.data.management.retention.dataset.DatasetBase;
 import gobblin.data.management.retention.dataset.finder.DatasetFinder;
+import gobblin.data.management.retention.profile.ConfigurableGlobDatasetFinder;
+import gobblin.data.management.util.AdaptiveConcurrencyLimit;
+import gobblin.data.management.util.FileSystemListingCache;
+import gobblin.data.management.util.LatencyTrackingFileSystem;
+import gobblin.data.management.util.ListingCachedFileSystem;
 import gobblin.instrumented.Instrumentable;
 import gobblin.instrumented.Instrumented;
 import gobblin.metrics.GobblinMetrics;
 import gobblin.metrics.MetricContext;
 import gobblin.metrics.Tag;
+import gobblin.metrics.event.EventSubmitter;
 import gobblin.util.ExecutorsUtils;
 import gobblin.util.RateControlledFileSystem;
 import gobblin.util.executors.ScalingThreadPoolExecutor;
@@ -55,6 +71,14 @@ import gobblin.util.executors.ScalingThreadPoolExecutor;
 
 /**
  * Finds existing versions of datasets and cleans old or deprecated versions.
+ *
+ * <p>
+ *   Datasets are cleaned concurrently. If {@link #COST_BASED_SCHEDULING_ENABLED_KEY} is true, the cost of each dataset
+ *   is first estimated by counting the paths up to {@link #COST_ESTIMATION_DEPTH_KEY} levels under its root, and the
+ *   most expensive datasets are started first, so that they do not stretch the end of the run. If
+ *   {@link #NAMENODE_TARGET_LATENCY_MILLIS_KEY} is set, the number of datasets cleaned at a time adapts to the observed
+ *   latency of file system calls, see {@link AdaptiveConcurrencyLimit}.
+ * </p>
  */
 public class DatasetCleaner implements Instrumentable, Closeable {
 
@@ -64,36 +88,95 @@ public class DatasetCleaner implements Instrumentable, Closeable {
       + "max.concurrent.datasets.cleaned";
   public static final String DATASET_CLEAN_HDFS_CALLS_PER_SECOND_LIMIT = CONFIGURATION_KEY_PREFIX
       + "hdfs.calls.per.second.limit";
+  public static final String LISTING_CACHE_ENABLED_KEY = CONFIGURATION_KEY_PREFIX + "listing.cache.enabled";
+  public static final String PLAN_OUTPUT_PATH_KEY = CONFIGURATION_KEY_PREFIX + "plan.output.path";
+  public static final String PLAN_INPUT_PATH_KEY = CONFIGURATION_KEY_PREFIX + "plan.input.path";
+  public static final String COST_BASED_SCHEDULING_ENABLED_KEY = CONFIGURATION_KEY_PREFIX
+      + "cost.based.scheduling.enabled";
+  public static final String COST_ESTIMATION_DEPTH_KEY = CONFIGURATION_KEY_PREFIX + "cost.estimation.depth";
+  public static final String NAMENODE_TARGET_LATENCY_MILLIS_KEY = CONFIGURATION_KEY_PREFIX
+      + "namenode.target.latency.millis";
 
   public static final String DEFAULT_MAX_CONCURRENT_DATASETS_CLEANED = "1000";
+  public static final String DEFAULT_LISTING_CACHE_ENABLED = Boolean.toString(true);
+  public static final String DEFAULT_COST_BASED_SCHEDULING_ENABLED = Boolean.toString(true);
+  public static final String DEFAULT_COST_ESTIMATION_DEPTH = "1";
+  public static final int INITIAL_ADAPTIVE_CONCURRENCY = 10;
 
   private static Logger LOG = LoggerFactory.getLogger(DatasetCleaner.class);
 
+  private final FileSystem fs;
+  private final FileSystem datasetFs;
   private final DatasetFinder datasetFinder;
+  private final Optional<FileSystemListingCache> listingCache;
   private final ListeningExecutorService service;
   private final Closer closer;
   private final boolean isMetricEnabled;
   private MetricContext metricContext;
   private Optional<Meter> datasetsCleanSuccessMeter = Optional.absent();
   private Optional<Meter> datasetsCleanFailureMeter = Optional.absent();
-  private Optional<CountDownLatch> finishCleanSignal;
+  private Optional<Timer> datasetCleanTimer = Optional.absent();
+  private Optional<EventSubmitter> eventSubmitter = Optional.absent();
+  private final boolean costBasedSchedulingEnabled;
+  private final int costEstimationDepth;
+  private final Optional<LatencyTrackingFileSystem> latencyTracker;
+  private final Optional<AdaptiveConcurrencyLimit> concurrencyLimit;
+  // Datasets waiting for a slot under the concurrency limit, most expensive first
+  private final Queue<ScheduledClean> pendingCleans = new LinkedList<ScheduledClean>();
+  private int runningCleans = 0;
+  private final Optional<Path> planOutputPath;
+  private final Optional<Path> planInputPath;
+  private Optional<CountDownLatch> finishCleanSignal = Optional.absent();
 
   public DatasetCleaner(FileSystem fs, Properties props) throws IOException {
 
     Preconditions.checkArgument(props.containsKey(DATASET_PROFILE_CLASS_KEY));
+    Preconditions.checkArgument(!(props.containsKey(PLAN_OUTPUT_PATH_KEY) && props.containsKey(PLAN_INPUT_PATH_KEY)),
+        "Only one of " + PLAN_OUTPUT_PATH_KEY + " and " + PLAN_INPUT_PATH_KEY + " can be set");
+    this.fs = fs;
+    this.planOutputPath = props.containsKey(PLAN_OUTPUT_PATH_KEY) ? Optional.of(new Path(props
+        .getProperty(PLAN_OUTPUT_PATH_KEY))) : Optional.<Path> absent();
+    this.planInputPath = props.containsKey(PLAN_INPUT_PATH_KEY) ? Optional.of(new Path(props
+        .getProperty(PLAN_INPUT_PATH_KEY))) : Optional.<Path> absent();
+    this.costBasedSchedulingEnabled = Boolean.valueOf(
+        props.getProperty(COST_BASED_SCHEDULING_ENABLED_KEY, DEFAULT_COST_BASED_SCHEDULING_ENABLED));
+    this.costEstimationDepth =
+        Integer.parseInt(props.getProperty(COST_ESTIMATION_DEPTH_KEY, DEFAULT_COST_ESTIMATION_DEPTH));
+    int maxConcurrentDatasets =
+        Integer.parseInt(props.getProperty(MAX_CONCURRENT_DATASETS_CLEANED, DEFAULT_MAX_CONCURRENT_DATASETS_CLEANED));
     this.closer = Closer.create();
     try {
-      FileSystem optionalRateControlledFs = fs;
-      if (props.contains(DATASET_CLEAN_HDFS_CALLS_PER_SECOND_LIMIT)) {
+      // Latency is tracked below rate control, so that waiting for a permit does not count as latency
+      FileSystem optionalLatencyTrackingFs = fs;
+      if (props.containsKey(NAMENODE_TARGET_LATENCY_MILLIS_KEY)) {
+        this.latencyTracker = Optional.of(new LatencyTrackingFileSystem(fs));
+        this.concurrencyLimit = Optional.of(new AdaptiveConcurrencyLimit(INITIAL_ADAPTIVE_CONCURRENCY, 1,
+            maxConcurrentDatasets, Double.parseDouble(props.getProperty(NAMENODE_TARGET_LATENCY_MILLIS_KEY))));
+        optionalLatencyTrackingFs = this.latencyTracker.get();
+      } else {
+        this.latencyTracker = Optional.absent();
+        this.concurrencyLimit = Optional.absent();
+      }
+      FileSystem optionalRateControlledFs = optionalLatencyTrackingFs;
+      if (props.containsKey(DATASET_CLEAN_HDFS_CALLS_PER_SECOND_LIMIT)) {
         optionalRateControlledFs =
-            this.closer.register(new RateControlledFileSystem(fs, Long.parseLong(props
+            this.closer.register(new RateControlledFileSystem(optionalLatencyTrackingFs, Long.parseLong(props
                 .getProperty(DATASET_CLEAN_HDFS_CALLS_PER_SECOND_LIMIT))));
         ((RateControlledFileSystem) optionalRateControlledFs).startRateControl();
       }
+      // Listings are cached on top of rate control, so that only calls that miss the cache count against the limit
+      FileSystem optionalListingCachedFs = optionalRateControlledFs;
+      if (Boolean.valueOf(props.getProperty(LISTING_CACHE_ENABLED_KEY, DEFAULT_LISTING_CACHE_ENABLED))) {
+        this.listingCache = Optional.of(new FileSystemListingCache());
+        optionalListingCachedFs = new ListingCachedFileSystem(optionalRateControlledFs, this.listingCache.get());
+      } else {
+        this.listingCache = Optional.absent();
+      }
+      this.datasetFs = optionalListingCachedFs;
       Class<?> datasetFinderClass = Class.forName(props.getProperty(DATASET_PROFILE_CLASS_KEY));
       this.datasetFinder =
           (DatasetFinder) datasetFinderClass.getConstructor(FileSystem.class, Properties.class).newInstance(
-              optionalRateControlledFs, props);
+              optionalListingCachedFs, props);
     } catch (ClassNotFoundException exception) {
       throw new IOException(exception);
     } catch (NoSuchMethodException exception) {
@@ -110,49 +193,258 @@ public class DatasetCleaner implements Instrumentable, Closeable {
       throw new IOException(exception);
     }
     ExecutorService executor =
-        ScalingThreadPoolExecutor.newScalingThreadPool(0, Integer
-            .parseInt(props.getProperty(MAX_CONCURRENT_DATASETS_CLEANED, DEFAULT_MAX_CONCURRENT_DATASETS_CLEANED)), 100,
-            ExecutorsUtils.newThreadFactory(Optional.of(LOG),
+        ScalingThreadPoolExecutor.newScalingThreadPool(0, maxConcurrentDatasets, 100, ExecutorsUtils.newThreadFactory(Optional.of(LOG),
             Optional.of("Dataset-cleaner-pool-%d")));
     this.service = MoreExecutors.listeningDecorator(executor);
 
     // TODO -- Remove the dependency on gobblin-core after new Gobblin Metrics does not depend on gobblin-core.
     this.metricContext = this.closer.register(Instrumented.getMetricContext(new State(props), DatasetCleaner.class));
     this.isMetricEnabled = GobblinMetrics.isEnabled(props);
+    regenerateMetrics();
   }
 
   /**
    * Perform the cleanup of old / deprecated dataset versions.
+   *
+   * <p>
+   *   If {@link #PLAN_OUTPUT_PATH_KEY} is set, plans the cleanup of all datasets in parallel instead, and writes the
+   *   {@link RetentionPlan} to that path without deleting anything. If {@link #PLAN_INPUT_PATH_KEY} is set, applies
+   *   the {@link RetentionPlan} at that path instead of finding datasets and versions.
+   * </p>
    * @throws IOException
    */
   public void clean() throws IOException {
+    if (this.planInputPath.isPresent()) {
+      applyPlan(RetentionPlan.read(this.fs, this.planInputPath.get()));
+      return;
+    }
+
     List<Dataset> dataSets = this.datasetFinder.findDatasets();
-    finishCleanSignal = Optional.of(new CountDownLatch(dataSets.size()));
-    for (final Dataset dataset : dataSets) {
-      ListenableFuture<Void> future = this.service.submit(new Callable<Void>() {
+    if (this.planOutputPath.isPresent()) {
+      RetentionPlan plan = plan(dataSets);
+      plan.write(this.fs, this.planOutputPath.get());
+      LOG.info(String.format("Wrote retention plan to %s: %s", this.planOutputPath.get(), plan));
+      return;
+    }
+
+    List<Long> costs = this.costBasedSchedulingEnabled ? estimateCosts(dataSets)
+        : Collections.nCopies(dataSets.size(), 0L);
+
+    List<ScheduledClean> cleans = Lists.newArrayListWithCapacity(dataSets.size());
+    for (int i = 0; i < dataSets.size(); i++) {
+      final Dataset dataset = dataSets.get(i);
+      cleans.add(new ScheduledClean(dataset, costs.get(i), new Callable<Void>() {
         @Override
         public Void call() throws Exception {
           dataset.clean();
           return null;
         }
-      });
-      Futures.addCallback(future, new FutureCallback<Void>() {
+      }));
+    }
+    schedule(cleans);
+  }
+
+  /**
+   * Estimate the cost of cleaning each dataset as the number of paths up to {@link #costEstimationDepth} levels under
+   * its root. Listings go through the listing cache, if any, so that version finders can reuse them.
+   */
+  private List<Long> estimateCosts(List<Dataset> dataSets) throws IOException {
+    List<ListenableFuture<Long>> futures = Lists.newArrayListWithCapacity(dataSets.size());
+    for (final Dataset dataset : dataSets) {
+      futures.add(this.service.submit(new Callable<Long>() {
+        @Override
+        public Long call() throws Exception {
+          return countPaths(dataset.datasetRoot(), DatasetCleaner.this.costEstimationDepth);
+        }
+      }));
+    }
+
+    List<Long> costs = Lists.newArrayListWithCapacity(dataSets.size());
+    for (int i = 0; i < futures.size(); i++) {
+      try {
+        costs.add(futures.get(i).get());
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while estimating the cost of cleaning datasets", ie);
+      } catch (ExecutionException ee) {
+        LOG.warn("Failed to estimate the cost of cleaning " + dataSets.get(i).datasetRoot() + ".", ee.getCause());
+        costs.add(0L);
+      }
+    }
+    return costs;
+  }
+
+  @SuppressWarnings("deprecation")
+  private long countPaths(Path path, int depth) throws IOException {
+    FileStatus[] statuses;
+    try {
+      statuses = this.datasetFs.listStatus(path);
+    } catch (FileNotFoundException fnfe) {
+      return 0;
+    }
+    long paths = statuses.length;
+    if (depth > 1) {
+      for (FileStatus status : statuses) {
+        if (status.isDir()) {
+          paths += countPaths(status.getPath(), depth - 1);
+        }
+      }
+    }
+    return paths;
+  }
+
+  /**
+   * Plan the cleanup of the datasets in parallel. Datasets that fail to be planned are left out of the plan.
+   */
+  private RetentionPlan plan(List<Dataset> dataSets) throws IOException {
+    List<Dataset> plannedDatasets = Lists.newArrayList();
+    List<ListenableFuture<RetentionPlan.DatasetPlan>> futures = Lists.newArrayList();
+    for (final Dataset dataset : dataSets) {
+      if (!(dataset instanceof DatasetBase)) {
+        LOG.warn("Cannot plan the cleanup of dataset " + dataset.datasetRoot() + ". Ignoring.");
+        continue;
+      }
+      plannedDatasets.add(dataset);
+      futures.add(this.service.submit(new Callable<RetentionPlan.DatasetPlan>() {
         @Override
-        public void onFailure(Throwable throwable) {
-          finishCleanSignal.get().countDown();
-          LOG.warn("Exception caught when cleaning " + dataset.datasetRoot() + ".", throwable);
-          Instrumented.markMeter(datasetsCleanFailureMeter);
+        public RetentionPlan.DatasetPlan call() throws Exception {
+          return ((DatasetBase<?>) dataset).plan();
+        }
+      }));
+    }
+
+    List<RetentionPlan.DatasetPlan> datasetPlans = Lists.newArrayList();
+    for (int i = 0; i < futures.size(); i++) {
+      try {
+        RetentionPlan.DatasetPlan datasetPlan = futures.get(i).get();
+        if (!datasetPlan.getDeletions().isEmpty()) {
+          datasetPlans.add(datasetPlan);
         }
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while planning the cleanup of datasets", ie);
+      } catch (ExecutionException ee) {
+        LOG.warn("Exception caught when planning the cleanup of " + plannedDatasets.get(i).datasetRoot() + ".",
+            ee.getCause());
+        Instrumented.markMeter(this.datasetsCleanFailureMeter);
+      }
+    }
+    return new RetentionPlan(datasetPlans);
+  }
+
+  /**
+   * Apply a {@link RetentionPlan} written by an earlier run. Datasets are created directly at the planned dataset
+   * roots, which requires the dataset profile to be a {@link ConfigurableGlobDatasetFinder}.
+   */
+  private void applyPlan(RetentionPlan plan) throws IOException {
+    if (!(this.datasetFinder instanceof ConfigurableGlobDatasetFinder)) {
+      throw new IOException("Cannot apply a retention plan with dataset profile " + this.datasetFinder.getClass());
+    }
+    LOG.info(String.format("Applying retention plan created at %d: %s", plan.getCreationTime(), plan));
 
+    List<ScheduledClean> cleans = Lists.newArrayListWithCapacity(plan.getDatasetPlans().size());
+    for (final RetentionPlan.DatasetPlan datasetPlan : plan.getDatasetPlans()) {
+      final Dataset dataset =
+          ((ConfigurableGlobDatasetFinder) this.datasetFinder).datasetAtPath(datasetPlan.getDatasetRoot());
+      // The plan already knows how many file system calls each dataset needs
+      cleans.add(new ScheduledClean(dataset, datasetPlan.getExpectedRpcs(), new Callable<Void>() {
         @Override
-        public void onSuccess(Void arg0) {
-          finishCleanSignal.get().countDown();
-          LOG.info("Successfully cleaned: " + dataset.datasetRoot());
-          Instrumented.markMeter(datasetsCleanSuccessMeter);
+        public Void call() throws Exception {
+          if (!(dataset instanceof DatasetBase)) {
+            throw new IOException("Cannot apply a retention plan to dataset " + dataset.datasetRoot());
+          }
+          ((DatasetBase<?>) dataset).applyPlan(datasetPlan);
+          return null;
         }
+      }));
+    }
+    schedule(cleans);
+  }
 
+  /**
+   * Queue the cleans, most expensive first, and start as many as the concurrency limit allows.
+   */
+  private void schedule(List<ScheduledClean> cleans) {
+    if (this.costBasedSchedulingEnabled) {
+      // Stable sort, so datasets of equal cost keep their discovery order
+      Collections.sort(cleans, new Comparator<ScheduledClean>() {
+        @Override
+        public int compare(ScheduledClean o1, ScheduledClean o2) {
+          return Long.valueOf(o2.cost).compareTo(o1.cost);
+        }
       });
     }
+    finishCleanSignal = Optional.of(new CountDownLatch(cleans.size()));
+    synchronized (this.pendingCleans) {
+      this.pendingCleans.addAll(cleans);
+    }
+    dispatch();
+  }
+
+  /**
+   * Start pending cleans until the concurrency limit is reached. Without adaptive concurrency, the executor bounds the
+   * number of datasets cleaned at a time.
+   */
+  private void dispatch() {
+    synchronized (this.pendingCleans) {
+      int limit = this.concurrencyLimit.isPresent() ? this.concurrencyLimit.get().getLimit() : Integer.MAX_VALUE;
+      while (this.runningCleans < limit && !this.pendingCleans.isEmpty()) {
+        this.runningCleans++;
+        submit(this.pendingCleans.poll());
+      }
+    }
+  }
+
+  private void submit(final ScheduledClean clean) {
+    final long startTime = System.currentTimeMillis();
+    ListenableFuture<Void> future = this.service.submit(clean.task);
+    Futures.addCallback(future, new FutureCallback<Void>() {
+      @Override
+      public void onFailure(Throwable throwable) {
+        LOG.warn("Exception caught when cleaning " + clean.dataset.datasetRoot() + ".", throwable);
+        Instrumented.markMeter(datasetsCleanFailureMeter);
+        finished(clean, startTime, false);
+      }
+
+      @Override
+      public void onSuccess(Void arg0) {
+        LOG.info("Successfully cleaned: " + clean.dataset.datasetRoot());
+        Instrumented.markMeter(datasetsCleanSuccessMeter);
+        finished(clean, startTime, true);
+      }
+
+    });
+  }
+
+  private void finished(ScheduledClean clean, long startTime, boolean successful) {
+    long duration = System.currentTimeMillis() - startTime;
+    LOG.info(String.format("Cleaning %s with estimated cost %d took %d ms.", clean.dataset.datasetRoot(), clean.cost,
+        duration));
+    Instrumented.updateTimer(this.datasetCleanTimer, duration, TimeUnit.MILLISECONDS);
+    // The time of each dataset is reported in an event rather than a timer, so the metric context does not grow
+    // with the number of datasets
+    if (this.eventSubmitter.isPresent()) {
+      this.eventSubmitter.get().submit(DatasetCleanerMetrics.DATASET_CLEANED_EVENT,
+          DatasetCleanerMetrics.DATASET_ROOT, clean.dataset.datasetRoot().toString(),
+          DatasetCleanerMetrics.DURATION_MILLIS, Long.toString(duration),
+          DatasetCleanerMetrics.ESTIMATED_COST, Long.toString(clean.cost),
+          DatasetCleanerMetrics.SUCCESSFUL, Boolean.toString(successful));
+    }
+
+    synchronized (this.pendingCleans) {
+      this.runningCleans--;
+      if (this.concurrencyLimit.isPresent()) {
+        int previousLimit = this.concurrencyLimit.get().getLimit();
+        double latency = this.latencyTracker.get().getAverageLatencyMillis();
+        int limit = this.concurrencyLimit.get().update(latency);
+        if (limit != previousLimit) {
+          LOG.info(String.format("Average file system latency is %.1f ms. Cleaning up to %d datasets at a time.",
+              latency, limit));
+        }
+      }
+    }
+    dispatch();
+    finishCleanSignal.get().countDown();
   }
 
   @Override
@@ -165,11 +457,33 @@ public class DatasetCleaner implements Instrumentable, Closeable {
       Thread.currentThread().interrupt();
       throw new IOException("Not all datasets finish cleanning", e);
     } finally {
+      if (this.listingCache.isPresent()) {
+        LOG.info("Listing cache statistics: " + this.listingCache.get());
+      }
       ExecutorsUtils.shutdownExecutorService(this.service, Optional.of(LOG));
       this.closer.close();
     }
   }
 
+  @VisibleForTesting
+  int getNumRunningCleans() {
+    synchronized (this.pendingCleans) {
+      return this.runningCleans;
+    }
+  }
+
+  @VisibleForTesting
+  int getNumPendingCleans() {
+    synchronized (this.pendingCleans) {
+      return this.pendingCleans.size();
+    }
+  }
+
+  @VisibleForTesting
+  Optional<AdaptiveConcurrencyLimit> getConcurrencyLimit() {
+    return this.concurrencyLimit;
+  }
+
   @Override
   public MetricContext getMetricContext() {
     return this.metricContext;
@@ -209,11 +523,40 @@ public class DatasetCleaner implements Instrumentable, Closeable {
           Optional.of(this.metricContext.meter(DatasetCleanerMetrics.DATASETS_CLEAN_FAILURE));
       this.datasetsCleanSuccessMeter =
           Optional.of(this.metricContext.meter(DatasetCleanerMetrics.DATASETS_CLEAN_SUCCESS));
+      this.datasetCleanTimer = Optional.of(this.metricContext.timer(DatasetCleanerMetrics.DATASET_CLEAN_TIME));
+      this.eventSubmitter = Optional.of(
+          new EventSubmitter.Builder(this.metricContext, DatasetCleanerMetrics.RETENTION_EVENTS_NAMESPACE).build());
+    }
+  }
+
+  /**
+   * A dataset clean waiting to be started, with its estimated cost.
+   */
+  private static class ScheduledClean {
+    private final Dataset dataset;
+    private final long cost;
+    private final Callable<Void> task;
+
+    private ScheduledClean(Dataset dataset, long cost, Callable<Void> task) {
+      this.dataset = dataset;
+      this.cost = cost;
+      this.task = task;
     }
   }
 
   public static class DatasetCleanerMetrics {
     public static final String DATASETS_CLEAN_SUCCESS = "gobblin.retention.datasets.clean.success";
     public static final String DATASETS_CLEAN_FAILURE = "gobblin.retention.datasets.clean.failure";
+    public static final String DATASET_CLEAN_TIME = "gobblin.retention.dataset.clean.time";
+
+    /**
+     * Event submitted when the clean of a dataset finishes, with the metadata below.
+     */
+    public static final String RETENTION_EVENTS_NAMESPACE = "gobblin.retention";
+    public static final String DATASET_CLEANED_EVENT = "DatasetCleaned";
+    public static final String DATASET_ROOT = "datasetRoot";
+    public static final String DURATION_MILLIS = "durationMillis";
+    public static final String ESTIMATED_COST = "estimatedCost";
+    public static final String SUCCESSFUL = "successful";
   }
 }
@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.data.management.retention;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.WritableUtils;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.Closer;
+
+import gobblin.data.management.util.PathUtils;
+
+
+/**
+ * A plan of the paths a retention run would delete, built by {@link DatasetCleaner} in planning mode and applied by a
+ * later run without finding datasets and versions again.
+ *
+ * <p>
+ *   For each {@link gobblin.data.management.retention.dataset.Dataset}, the plan records each path to delete with
+ *   the number of bytes, files and directories under it, and the number of file system calls expected to apply the
+ *   deletions.
+ * </p>
+ *
+ * <p>
+ *   Plans are written as a gzipped binary file. Paths are stored relative to their dataset root, and numbers as
+ *   variable-length integers.
+ * </p>
+ */
+public class RetentionPlan {
+
+  private static final int MAGIC = 0x52504c4e;
+  private static final int VERSION = 1;
+
+  private final long creationTime;
+  private final List<DatasetPlan> datasetPlans;
+
+  public RetentionPlan(List<DatasetPlan> datasetPlans) {
+    this(System.currentTimeMillis(), datasetPlans);
+  }
+
+  private RetentionPlan(long creationTime, List<DatasetPlan> datasetPlans) {
+    this.creationTime = creationTime;
+    this.datasetPlans = ImmutableList.copyOf(datasetPlans);
+  }
+
+  public long getCreationTime() {
+    return this.creationTime;
+  }
+
+  public List<DatasetPlan> getDatasetPlans() {
+    return this.datasetPlans;
+  }
+
+  public long getPaths() {
+    long paths = 0;
+    for (DatasetPlan datasetPlan : this.datasetPlans) {
+      paths += datasetPlan.getDeletions().size();
+    }
+    return paths;
+  }
+
+  public long getBytes() {
+    long bytes = 0;
+    for (DatasetPlan datasetPlan : this.datasetPlans) {
+      bytes += datasetPlan.getBytes();
+    }
+    return bytes;
+  }
+
+  public long getFiles() {
+    long files = 0;
+    for (DatasetPlan datasetPlan : this.datasetPlans) {
+      files += datasetPlan.getFiles();
+    }
+    return files;
+  }
+
+  public long getExpectedRpcs() {
+    long expectedRpcs = 0;
+    for (DatasetPlan datasetPlan : this.datasetPlans) {
+      expectedRpcs += datasetPlan.getExpectedRpcs();
+    }
+    return expectedRpcs;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d datasets, %d paths, %d bytes, %d files, %d expected file system calls",
+        this.datasetPlans.size(), getPaths(), getBytes(), getFiles(), getExpectedRpcs());
+  }
+
+  /**
+   * Write the plan to the given path, replacing any existing file.
+   */
+  public void write(FileSystem fs, Path path) throws IOException {
+    Path tmpPath = new Path(path.getParent(), "_" + path.getName() + ".tmp");
+    Closer closer = Closer.create();
+    try {
+      DataOutputStream out =
+          closer.register(new DataOutputStream(new GZIPOutputStream(closer.register(fs.create(tmpPath, true)))));
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      WritableUtils.writeVLong(out, this.creationTime);
+      WritableUtils.writeVInt(out, this.datasetPlans.size());
+      for (DatasetPlan datasetPlan : this.datasetPlans) {
+        out.writeUTF(datasetPlan.getDatasetRoot().toString());
+        WritableUtils.writeVLong(out, datasetPlan.getExpectedRpcs());
+        WritableUtils.writeVInt(out, datasetPlan.getDeletions().size());
+        for (PlannedDeletion deletion : datasetPlan.getDeletions()) {
+          // The dataset root itself is written as an empty path
+          out.writeUTF(deletion.getPath().equals(datasetPlan.getDatasetRoot()) ? ""
+              : PathUtils.relativizePath(deletion.getPath(), datasetPlan.getDatasetRoot()).toString());
+          WritableUtils.writeVLong(out, deletion.getBytes());
+          WritableUtils.writeVLong(out, deletion.getFiles());
+          WritableUtils.writeVLong(out, deletion.getDirectories());
+        }
+      }
+    } catch (Throwable t) {
+      throw closer.rethrow(t);
+    } finally {
+      closer.close();
+    }
+
+    fs.delete(path, false);
+    if (!fs.rename(tmpPath, path)) {
+      throw new IOException(String.format("Unable to move %s to %s", tmpPath, path));
+    }
+  }
+
+  /**
+   * Read a plan written by {@link #write}.
+   */
+  public static RetentionPlan read(FileSystem fs, Path path) throws IOException {
+    Closer closer = Closer.create();
+    try {
+      DataInputStream in =
+          closer.register(new DataInputStream(new GZIPInputStream(closer.register(fs.open(path)))));
+      if (in.readInt() != MAGIC) {
+        throw new IOException(path + " is not a retention plan");
+      }
+      int version = in.readInt();
+      if (version != VERSION) {
+        throw new IOException(String.format("Unsupported version %d of retention plan %s", version, path));
+      }
+      long creationTime = WritableUtils.readVLong(in);
+      int datasets = WritableUtils.readVInt(in);
+      List<DatasetPlan> datasetPlans = Lists.newArrayListWithCapacity(datasets);
+      for (int i = 0; i < datasets; i++) {
+        Path datasetRoot = new Path(in.readUTF());
+        long expectedRpcs = WritableUtils.readVLong(in);
+        int deletions = WritableUtils.readVInt(in);
+        List<PlannedDeletion> plannedDeletions = Lists.newArrayListWithCapacity(deletions);
+        for (int j = 0; j < deletions; j++) {
+          String relativePath = in.readUTF();
+          plannedDeletions.add(new PlannedDeletion(relativePath.isEmpty() ? datasetRoot
+              : new Path(datasetRoot, relativePath), WritableUtils.readVLong(in), WritableUtils.readVLong(in),
+              WritableUtils.readVLong(in)));
+        }
+        datasetPlans.add(new DatasetPlan(datasetRoot, plannedDeletions, expectedRpcs));
+      }
+      return new RetentionPlan(creationTime, datasetPlans);
+    } catch (Throwable t) {
+      throw closer.rethrow(t);
+    } finally {
+      closer.close();
+    }
+  }
+
+  /**
+   * The paths to delete in a single {@link gobblin.data.management.retention.dataset.Dataset}.
+   */
+  public static class DatasetPlan {
+
+    private final Path datasetRoot;
+    private final List<PlannedDeletion> deletions;
+    private final long expectedRpcs;
+
+    public DatasetPlan(Path datasetRoot, List<PlannedDeletion> deletions, long expectedRpcs) {
+      this.datasetRoot = datasetRoot;
+      this.deletions = Collections.unmodifiableList(deletions);
+      this.expectedRpcs = expectedRpcs;
+    }
+
+    public Path getDatasetRoot() {
+      return this.datasetRoot;
+    }
+
+    public List<PlannedDeletion> getDeletions() {
+      return this.deletions;
+    }
+
+    public List<Path> getPaths() {
+      List<Path> paths = Lists.newArrayListWithCapacity(this.deletions.size());
+      for (PlannedDeletion deletion : this.deletions) {
+        paths.add(deletion.getPath());
+      }
+      return paths;
+    }
+
+    public long getBytes() {
+      long bytes = 0;
+      for (PlannedDeletion deletion : this.deletions) {
+        bytes += deletion.getBytes();
+      }
+      return bytes;
+    }
+
+    public long getFiles() {
+      long files = 0;
+      for (PlannedDeletion deletion : this.deletions) {
+        files += deletion.getFiles();
+      }
+      return files;
+    }
+
+    /**
+     * Number of file system calls expected to apply the deletions of this dataset.
+     */
+    public long getExpectedRpcs() {
+      return this.expectedRpcs;
+    }
+  }
+
+  /**
+   * A path to delete, with the size of its content at planning time.
+   */
+  public static class PlannedDeletion {
+
+    private final Path path;
+    private final long bytes;
+    private final long files;
+    private final long directories;
+
+    public PlannedDeletion(Path path, long bytes, long files, long directories) {
+      this.path = path;
+      this.bytes = bytes;
+      this.files = files;
+      this.directories = directories;
+    }
+
+    public Path getPath() {
+      return this.path;
+    }
+
+    public long getBytes() {
+      return this.bytes;
+    }
+
+    public long getFiles() {
+      return this.files;
+    }
+
+    public long getDirectories() {
+      return this.directories;
+    }
+  }
+}
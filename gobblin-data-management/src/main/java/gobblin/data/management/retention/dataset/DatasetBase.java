@@ -16,23 +16,37 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 
+import org.apache.hadoop.fs.ContentSummary;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.slf4j.Logger;
 
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Ints;
 
+import gobblin.data.management.retention.RetentionPlan;
 import gobblin.data.management.retention.policy.RetentionPolicy;
 import gobblin.data.management.retention.version.DatasetVersion;
 import gobblin.data.management.retention.version.finder.VersionFinder;
 import gobblin.data.management.trash.ProxiedTrash;
 import gobblin.data.management.trash.TrashFactory;
+import gobblin.data.management.util.FileSystemListingCache;
+import gobblin.data.management.util.ListingCachedFileSystem;
 import gobblin.data.management.util.PathUtils;
+import gobblin.util.ExecutorsUtils;
 
 
 /**
@@ -84,6 +98,23 @@ import gobblin.data.management.util.PathUtils;
  *  and delete directories that are now empty, up to but not including the dataset root.
  * </p>
  *
+ * <p>
+ *  Paths of deletable versions are moved to trash concurrently, at most {@link #MAX_CONCURRENT_DELETES_KEY} at a time.
+ *  Paths are grouped by parent directory, and the first path of each group is moved before the others, so that the
+ *  corresponding directory in trash is only created once.
+ * </p>
+ *
+ * <p>
+ *  If the {@link FileSystem} is a {@link ListingCachedFileSystem}, e.g. when created by
+ *  {@link gobblin.data.management.retention.DatasetCleaner}, versions are found and empty directories are detected
+ *  using the listings cached for the whole retention run.
+ * </p>
+ *
+ * <p>
+ *  Instead of cleaning, {@link #plan} computes the paths {@link #clean} would delete without deleting them, and
+ *  {@link #applyPlan} deletes the paths of such a plan later. See {@link RetentionPlan}.
+ * </p>
+ *
  * @param <T> type of {@link gobblin.data.management.retention.version.DatasetVersion} supported by this
  *           {@link gobblin.data.management.retention.dataset.Dataset}.
  */
@@ -98,6 +129,8 @@ public abstract class DatasetBase<T extends DatasetVersion> implements Dataset {
   public static final String DELETE_EMPTY_DIRECTORIES_DEFAULT = Boolean.toString(true);
   public static final String DELETE_AS_OWNER_KEY = CONFIGURATION_KEY_PREFIX + "delete.as.owner";
   public static final String DELETE_AS_OWNER_DEFAULT = Boolean.toString(true);
+  public static final String MAX_CONCURRENT_DELETES_KEY = CONFIGURATION_KEY_PREFIX + "max.concurrent.deletes";
+  public static final String MAX_CONCURRENT_DELETES_DEFAULT = Integer.toString(10);
 
   protected final FileSystem fs;
   protected final ProxiedTrash trash;
@@ -105,6 +138,8 @@ public abstract class DatasetBase<T extends DatasetVersion> implements Dataset {
   protected final boolean skipTrash;
   protected final boolean deleteEmptyDirectories;
   protected final boolean deleteAsOwner;
+  protected final int maxConcurrentDeletes;
+  protected final Optional<FileSystemListingCache> listingCache;
 
   protected final Logger log;
 
@@ -153,6 +188,9 @@ public abstract class DatasetBase<T extends DatasetVersion> implements Dataset {
     }
     this.trash = TrashFactory.createProxiedTrash(this.fs, thisProperties);
     this.deleteAsOwner = deleteAsOwner;
+    this.maxConcurrentDeletes =
+        Integer.parseInt(properties.getProperty(MAX_CONCURRENT_DELETES_KEY, MAX_CONCURRENT_DELETES_DEFAULT));
+    this.listingCache = ListingCachedFileSystem.getListingCache(this.fs);
   }
 
   /**
@@ -163,6 +201,83 @@ public abstract class DatasetBase<T extends DatasetVersion> implements Dataset {
   @Override
   public void clean() throws IOException {
 
+    this.log.info("Cleaning dataset " + this);
+
+    Collection<T> deletableVersions = findDeletableVersions();
+    if (deletableVersions.isEmpty()) {
+      return;
+    }
+
+    Map<Path, DatasetVersion> versionsByPath = Maps.newLinkedHashMap();
+    for (DatasetVersion versionToDelete : deletableVersions) {
+      this.log.info("Deleting dataset version " + versionToDelete);
+
+      Set<Path> pathsToDelete = versionToDelete.getPathsToDelete();
+      this.log.info("Deleting paths: " + Arrays.toString(pathsToDelete.toArray()));
+
+      for (Path path : pathsToDelete) {
+        versionsByPath.put(path, versionToDelete);
+      }
+    }
+
+    Set<Path> failedPaths = deletePaths(versionsByPath.keySet());
+
+    Set<DatasetVersion> failedVersions = Sets.newLinkedHashSet();
+    for (Path failedPath : failedPaths) {
+      this.log.error("Failed to delete path " + failedPath + " in dataset version " + versionsByPath.get(failedPath));
+      failedVersions.add(versionsByPath.get(failedPath));
+    }
+    for (DatasetVersion failedVersion : failedVersions) {
+      this.log.error("Failed to delete some paths in dataset version " + failedVersion);
+    }
+  }
+
+  /**
+   * Find the deletable versions of this dataset, as {@link #clean} would, and plan their deletion without deleting
+   * anything. The size of each path to delete is taken from {@link FileSystem#getContentSummary}.
+   *
+   * @return a plan that {@link #applyPlan} can apply later without finding versions again.
+   */
+  public RetentionPlan.DatasetPlan plan() throws IOException {
+    this.log.info("Planning retention of dataset " + this);
+
+    List<RetentionPlan.PlannedDeletion> deletions = Lists.newArrayList();
+    for (DatasetVersion versionToDelete : findDeletableVersions()) {
+      for (Path path : versionToDelete.getPathsToDelete()) {
+        ContentSummary contentSummary = this.fs.getContentSummary(path);
+        deletions.add(new RetentionPlan.PlannedDeletion(path, contentSummary.getLength(),
+            contentSummary.getFileCount(), contentSummary.getDirectoryCount()));
+      }
+    }
+
+    List<Path> paths = Lists.newArrayListWithCapacity(deletions.size());
+    for (RetentionPlan.PlannedDeletion deletion : deletions) {
+      paths.add(deletion.getPath());
+    }
+    RetentionPlan.DatasetPlan plan = new RetentionPlan.DatasetPlan(datasetRoot(), deletions, estimateRpcs(paths));
+    this.log.info(String.format("Planned deletion of %d paths with %d bytes in %d files in dataset %s",
+        deletions.size(), plan.getBytes(), plan.getFiles(), this));
+    return plan;
+  }
+
+  /**
+   * Delete the paths of a plan built by {@link #plan}, without finding versions again.
+   */
+  public void applyPlan(RetentionPlan.DatasetPlan plan) throws IOException {
+    Preconditions.checkArgument(plan.getDatasetRoot().equals(datasetRoot()),
+        "Plan of dataset " + plan.getDatasetRoot() + " cannot be applied to dataset " + this);
+
+    this.log.info("Applying retention plan to dataset " + this);
+    for (Path failedPath : deletePaths(plan.getPaths())) {
+      this.log.error("Failed to delete path " + failedPath);
+    }
+  }
+
+  /**
+   * Find dataset versions with the {@link VersionFinder}, and the deletable ones among them with the
+   * {@link RetentionPolicy}.
+   */
+  private Collection<T> findDeletableVersions() throws IOException {
     RetentionPolicy<T> retentionPolicy = getRetentionPolicy();
     VersionFinder<? extends T> versionFinder = getVersionFinder();
 
@@ -170,66 +285,174 @@ public abstract class DatasetBase<T extends DatasetVersion> implements Dataset {
       throw new IOException("Incompatible dataset version classes.");
     }
 
-    this.log.info("Cleaning dataset " + this);
-
-    List<T> versions = Lists.newArrayList(getVersionFinder().findDatasetVersions(this));
+    List<T> versions = Lists.newArrayList(versionFinder.findDatasetVersions(this));
 
     if (versions.isEmpty()) {
       this.log.warn("No dataset version can be found. Ignoring.");
-      return;
+      return Collections.emptyList();
     }
 
     Collections.sort(versions, Collections.reverseOrder());
 
-    Collection<T> deletableVersions = getRetentionPolicy().listDeletableVersions(versions);
+    Collection<T> deletableVersions = retentionPolicy.listDeletableVersions(versions);
 
     if (deletableVersions.isEmpty()) {
       this.log.warn("No deletable dataset version can be found. Ignoring.");
-      return;
     }
+    return deletableVersions;
+  }
 
-    Set<Path> possiblyEmptyDirectories = new HashSet<Path>();
+  /**
+   * Move the paths to trash, and delete newly empty parent directories if {@link #deleteEmptyDirectories}.
+   *
+   * @return the paths that could not be moved to trash.
+   */
+  private Set<Path> deletePaths(Collection<Path> paths) throws IOException {
+    // Group paths to delete by parent directory, which maps to a single target directory in trash
+    Map<Path, List<Path>> pathsToDeleteByParent = groupByParent(paths);
+
+    // Move the first path of each group first, so that each target directory in trash is created once, and
+    // then the remaining paths, which only need a rename.
+    List<Path> firstPaths = Lists.newArrayList();
+    List<Path> remainingPaths = Lists.newArrayList();
+    for (List<Path> siblings : pathsToDeleteByParent.values()) {
+      firstPaths.add(siblings.get(0));
+      remainingPaths.addAll(siblings.subList(1, siblings.size()));
+    }
 
-    for (DatasetVersion versionToDelete : deletableVersions) {
-      this.log.info("Deleting dataset version " + versionToDelete);
+    Set<Path> failedPaths = Sets.newLinkedHashSet();
+    failedPaths.addAll(moveToTrash(firstPaths));
+    failedPaths.addAll(moveToTrash(remainingPaths));
 
-      Set<Path> pathsToDelete = versionToDelete.getPathsToDelete();
-      this.log.info("Deleting paths: " + Arrays.toString(pathsToDelete.toArray()));
+    if (this.deleteEmptyDirectories) {
+      Set<Path> possiblyEmptyDirectories = Sets.newHashSet();
+      for (Path path : paths) {
+        if (!failedPaths.contains(path)) {
+          possiblyEmptyDirectories.add(path.getParent());
+        }
+      }
+      deleteEmptyParentDirectories(datasetRoot(), possiblyEmptyDirectories);
+    }
+    return failedPaths;
+  }
 
-      boolean deletedAllPaths = true;
+  /**
+   * Estimate the number of file system calls {@link #deletePaths} makes to delete the given paths.
+   */
+  private long estimateRpcs(Collection<Path> paths) {
+    if (this.simulate || paths.isEmpty()) {
+      return 0;
+    }
+    int parents = groupByParent(paths).size();
+    // A rename into trash, or a delete when skipping trash, for each path
+    long rpcs = paths.size();
+    if (!this.skipTrash) {
+      // Creation of the target directory in trash for each parent directory
+      rpcs += 2 * parents;
+    }
+    if (this.deleteAsOwner) {
+      // Owner lookup for each path
+      rpcs += paths.size();
+    }
+    if (this.deleteEmptyDirectories) {
+      // Listing, and deletion if empty, of each parent directory
+      rpcs += 2 * parents;
+    }
+    return rpcs;
+  }
 
-      for (Path path : pathsToDelete) {
+  private static Map<Path, List<Path>> groupByParent(Collection<Path> paths) {
+    Map<Path, List<Path>> pathsByParent = Maps.newLinkedHashMap();
+    for (Path path : paths) {
+      List<Path> siblings = pathsByParent.get(path.getParent());
+      if (siblings == null) {
+        siblings = Lists.newArrayList();
+        pathsByParent.put(path.getParent(), siblings);
+      }
+      siblings.add(path);
+    }
+    return pathsByParent;
+  }
 
-        boolean successfullyDeleted =
-            this.deleteAsOwner ? this.trash.moveToTrashAsOwner(path) : this.trash.moveToTrash(path);
+  /**
+   * Move the given paths to trash concurrently, with at most {@link #maxConcurrentDeletes} moves at a time.
+   * The rate of calls to the {@link FileSystem} is limited by the {@link FileSystem} itself, see
+   * {@link gobblin.data.management.retention.DatasetCleaner#DATASET_CLEAN_HDFS_CALLS_PER_SECOND_LIMIT}.
+   *
+   * @return the paths that could not be moved to trash.
+   */
+  private List<Path> moveToTrash(List<Path> paths) throws IOException {
+    if (paths.isEmpty()) {
+      return Collections.emptyList();
+    }
 
-        if (successfullyDeleted) {
-          possiblyEmptyDirectories.add(path.getParent());
-        } else {
-          this.log.error("Failed to delete path " + path + " in dataset version " + versionToDelete);
-          deletedAllPaths = false;
+    List<Boolean> results;
+    try {
+      results = ExecutorsUtils.parallelize(paths, new Function<Path, Boolean>() {
+        @Override
+        public Boolean apply(Path path) {
+          try {
+            return DatasetBase.this.deleteAsOwner ? DatasetBase.this.trash.moveToTrashAsOwner(path)
+                : DatasetBase.this.trash.moveToTrash(path);
+          } catch (IOException ioe) {
+            DatasetBase.this.log.error("Failed to move path " + path + " to trash", ioe);
+            return false;
+          }
         }
+      }, Math.min(this.maxConcurrentDeletes, paths.size()), Integer.MAX_VALUE, Optional.of(this.log));
+    } catch (ExecutionException ee) {
+      throw new IOException("Failed to move paths of dataset " + this + " to trash", ee);
+    }
+
+    // Moves as the owner go through a proxied file system, which does not update the listing cache
+    if (this.listingCache.isPresent()) {
+      for (Path path : paths) {
+        this.listingCache.get().invalidate(path);
       }
+    }
 
-      if (!deletedAllPaths) {
-        this.log.error("Failed to delete some paths in dataset version " + versionToDelete);
+    List<Path> failedPaths = Lists.newArrayList();
+    for (int i = 0; i < paths.size(); i++) {
+      if (!results.get(i)) {
+        failedPaths.add(paths.get(i));
       }
+    }
+    return failedPaths;
+  }
 
+  /**
+   * Delete directories that are empty after the deletion, starting from the given directories, and going up to but
+   * not including the dataset root. Directories are checked deepest first, so that a directory is only listed after
+   * all its candidate subdirectories have been deleted, and each directory is listed at most once.
+   */
+  private void deleteEmptyParentDirectories(Path datasetRoot, Set<Path> directories) throws IOException {
+    PriorityQueue<Path> candidates = new PriorityQueue<Path>(Math.max(1, directories.size()), new Comparator<Path>() {
+      @Override
+      public int compare(Path p1, Path p2) {
+        return Ints.compare(p2.depth(), p1.depth());
+      }
+    });
+    Set<Path> visited = Sets.newHashSet();
+    for (Path directory : directories) {
+      if (isStrictlyUnderDatasetRoot(datasetRoot, directory) && visited.add(directory)) {
+        candidates.add(directory);
+      }
     }
 
-    if (this.deleteEmptyDirectories) {
-      for (Path parentDirectory : possiblyEmptyDirectories) {
-        deleteEmptyParentDirectories(datasetRoot(), parentDirectory);
+    while (!candidates.isEmpty()) {
+      Path directory = candidates.poll();
+      if (this.fs.listStatus(directory).length == 0) {
+        this.fs.delete(directory, false);
+        Path parent = directory.getParent();
+        if (isStrictlyUnderDatasetRoot(datasetRoot, parent) && visited.add(parent)) {
+          candidates.add(parent);
+        }
       }
     }
   }
 
-  private void deleteEmptyParentDirectories(Path datasetRoot, Path parent) throws IOException {
-    if (PathUtils.isAncestor(datasetRoot, parent) && !datasetRoot.equals(parent) &&
-        this.fs.listStatus(parent).length == 0) {
-      this.fs.delete(parent, false);
-      deleteEmptyParentDirectories(datasetRoot, parent.getParent());
-    }
+  private static boolean isStrictlyUnderDatasetRoot(Path datasetRoot, Path path) {
+    return path != null && PathUtils.isAncestor(datasetRoot, path) && !datasetRoot.equals(path);
   }
 
   @Override
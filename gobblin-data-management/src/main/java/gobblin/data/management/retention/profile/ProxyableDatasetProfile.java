@@ -19,6 +19,7 @@ import java.util.concurrent.ExecutionException;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 
 import gobblin.configuration.ConfigurationKeys;
@@ -26,6 +27,8 @@ import gobblin.data.management.retention.DatasetCleaner;
 import gobblin.data.management.retention.dataset.ConfigurableDataset;
 import gobblin.data.management.retention.dataset.Dataset;
 import gobblin.data.management.retention.version.DatasetVersion;
+import gobblin.data.management.util.FileSystemListingCache;
+import gobblin.data.management.util.ListingCachedFileSystem;
 import gobblin.util.ProxiedFileSystemCache;
 import gobblin.util.RateControlledFileSystem;
 
@@ -60,11 +63,16 @@ public class ProxyableDatasetProfile extends ConfigurableGlobDatasetFinder {
       throw new IOException("Cannot get proxied filesystem at Path: " + path, e);
     }
 
-    if (props.contains(DatasetCleaner.DATASET_CLEAN_HDFS_CALLS_PER_SECOND_LIMIT)) {
-      return new RateControlledFileSystem(proxiedFileSystem, Long.parseLong(props
+    if (props.containsKey(DatasetCleaner.DATASET_CLEAN_HDFS_CALLS_PER_SECOND_LIMIT)) {
+      proxiedFileSystem = new RateControlledFileSystem(proxiedFileSystem, Long.parseLong(props
           .getProperty(DatasetCleaner.DATASET_CLEAN_HDFS_CALLS_PER_SECOND_LIMIT)));
-    } else {
-      return proxiedFileSystem;
     }
+
+    // Share the listings of the retention run with the proxied file system
+    Optional<FileSystemListingCache> listingCache = ListingCachedFileSystem.getListingCache(this.fs);
+    if (listingCache.isPresent()) {
+      proxiedFileSystem = new ListingCachedFileSystem(proxiedFileSystem, listingCache.get());
+    }
+    return proxiedFileSystem;
   }
 }
@@ -18,9 +18,17 @@ import gobblin.util.executors.ScalingThreadPoolExecutor;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
+import java.util.SortedSet;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
@@ -28,7 +36,14 @@ import org.apache.hadoop.security.UserGroupInformation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
@@ -46,18 +61,39 @@ import com.google.common.util.concurrent.MoreExecutors;
  *
  * <p>
  *   Trash methods will always return true, regardless of success of the actual trash operation. However, additional
- *   methods are provided to get a future for the operation.
+ *   methods are provided to get a future for the operation, or for a batch of operations with
+ *   {@link #moveToTrashBatch} and {@link #moveToTrashAsOwnerBatch}. {@link #flush} waits until all operations
+ *   scheduled before it was called have finished, e.g. before checking whether the parent directories of deleted
+ *   paths are empty.
+ * </p>
+ *
+ * <p>
+ *   At most {@link #MAX_PENDING_OPERATIONS_KEY} operations are scheduled or running at any time. Scheduling an
+ *   operation blocks when the limit is reached, until a running operation finishes.
  * </p>
  */
 public class AsyncTrash implements GobblinProxiedTrash, Closeable, Decorator {
 
   public static final String MAX_DELETING_THREADS_KEY = "gobblin.trash.async.max.deleting.threads";
   public static final int DEFAULT_MAX_DELETING_THREADS = 100;
+  public static final String MAX_PENDING_OPERATIONS_KEY = "gobblin.trash.async.max.pending.operations";
+  public static final int DEFAULT_MAX_PENDING_OPERATIONS = 10000;
 
   private static final Logger LOGGER = LoggerFactory.getLogger(AsyncTrash.class);
 
   private final ProxiedTrash innerTrash;
   private final ListeningExecutorService executor;
+  private final int maxPendingOperations;
+
+  private final Lock lock = new ReentrantLock();
+  private final Condition operationDone = this.lock.newCondition();
+  // Sequence numbers of the operations scheduled or running, in the order they were scheduled. Guarded by lock.
+  private final SortedSet<Long> pendingOperations = Sets.newTreeSet();
+  // Sequence number of the last scheduled operation. Guarded by lock.
+  private long lastOperation = 0;
+
+  private final AtomicLong succeededOperations = new AtomicLong();
+  private final AtomicLong failedOperations = new AtomicLong();
 
   public AsyncTrash(FileSystem fs, Properties properties) throws IOException {
     this(fs, properties, UserGroupInformation.getCurrentUser().getShortUserName());
@@ -69,6 +105,9 @@ public class AsyncTrash implements GobblinProxiedTrash, Closeable, Decorator {
     if(properties.containsKey(MAX_DELETING_THREADS_KEY)) {
       maxDeletingThreads = Integer.parseInt(properties.getProperty(MAX_DELETING_THREADS_KEY));
     }
+    this.maxPendingOperations = properties.containsKey(MAX_PENDING_OPERATIONS_KEY)
+        ? Integer.parseInt(properties.getProperty(MAX_PENDING_OPERATIONS_KEY)) : DEFAULT_MAX_PENDING_OPERATIONS;
+    Preconditions.checkArgument(this.maxPendingOperations > 0, "Max number of pending operations must be positive");
     this.innerTrash = TrashFactory.createProxiedTrash(fs, properties, user);
     this.executor = MoreExecutors.listeningDecorator(MoreExecutors.getExitingExecutorService(ScalingThreadPoolExecutor
             .newScalingThreadPool(0, maxDeletingThreads, 100,
@@ -88,7 +127,7 @@ public class AsyncTrash implements GobblinProxiedTrash, Closeable, Decorator {
    * @return true if operation succeeded.
    */
   public ListenableFuture<Boolean> moveToTrashAsUserFuture(final Path path, final String user) {
-    return this.executor.submit(new Callable<Boolean>() {
+    return submit(path, new Callable<Boolean>() {
       @Override public Boolean call() throws IOException {
         return innerTrash.moveToTrashAsUser(path, user);
       }
@@ -106,7 +145,7 @@ public class AsyncTrash implements GobblinProxiedTrash, Closeable, Decorator {
    * @return true if operation succeeded.
    */
   public ListenableFuture<Boolean> moveToTrashAsOwnerFuture(final Path path) {
-    return this.executor.submit(new Callable<Boolean>() {
+    return submit(path, new Callable<Boolean>() {
       @Override public Boolean call() throws IOException {
         return innerTrash.moveToTrashAsOwner(path);
       }
@@ -124,13 +163,73 @@ public class AsyncTrash implements GobblinProxiedTrash, Closeable, Decorator {
    * @return true if operation succeeded.
    */
   public ListenableFuture<Boolean> moveToTrashFuture(final Path path) {
-    return this.executor.submit(new Callable<Boolean>() {
+    return submit(path, new Callable<Boolean>() {
       @Override public Boolean call() throws IOException {
         return innerTrash.moveToTrash(path);
       }
     });
   }
 
+  /**
+   * Schedules a {@link ProxiedTrash#moveToTrash} for each path and returns a future for the results of all of them.
+   * @param paths {@link Path}s to delete.
+   * @return {@link BatchResult} once all operations finished.
+   */
+  public ListenableFuture<BatchResult> moveToTrashBatch(Collection<Path> paths) {
+    List<ListenableFuture<Boolean>> futures = Lists.newArrayListWithCapacity(paths.size());
+    for (Path path : paths) {
+      futures.add(moveToTrashFuture(path));
+    }
+    return aggregate(paths, futures);
+  }
+
+  /**
+   * Schedules a {@link ProxiedTrash#moveToTrashAsOwner} for each path and returns a future for the results of all
+   * of them.
+   * @param paths {@link Path}s to delete.
+   * @return {@link BatchResult} once all operations finished.
+   */
+  public ListenableFuture<BatchResult> moveToTrashAsOwnerBatch(Collection<Path> paths) {
+    List<ListenableFuture<Boolean>> futures = Lists.newArrayListWithCapacity(paths.size());
+    for (Path path : paths) {
+      futures.add(moveToTrashAsOwnerFuture(path));
+    }
+    return aggregate(paths, futures);
+  }
+
+  /**
+   * Wait until all operations scheduled before this call have finished. Operations scheduled by other threads
+   * while waiting are not waited for, so that a flush finishes even while operations keep being scheduled.
+   */
+  public void flush() throws IOException {
+    this.lock.lock();
+    try {
+      long lastOperationToFlush = this.lastOperation;
+      while (!this.pendingOperations.isEmpty() && this.pendingOperations.first() <= lastOperationToFlush) {
+        this.operationDone.await();
+      }
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for trash operations to finish", ie);
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Number of operations that moved their path to trash.
+   */
+  public long getSucceededOperations() {
+    return this.succeededOperations.get();
+  }
+
+  /**
+   * Number of operations that failed to move their path to trash, or threw an exception.
+   */
+  public long getFailedOperations() {
+    return this.failedOperations.get();
+  }
+
   @Override public Object getDecoratedObject() {
     return this.innerTrash;
   }
@@ -143,4 +242,113 @@ public class AsyncTrash implements GobblinProxiedTrash, Closeable, Decorator {
       this.executor.shutdownNow();
     }
   }
+
+  /**
+   * Submit an operation, blocking while {@link #maxPendingOperations} operations are scheduled or running.
+   */
+  private ListenableFuture<Boolean> submit(final Path path, Callable<Boolean> operation) {
+    final long sequenceNumber;
+    this.lock.lock();
+    try {
+      while (this.pendingOperations.size() >= this.maxPendingOperations) {
+        this.operationDone.awaitUninterruptibly();
+      }
+      sequenceNumber = ++this.lastOperation;
+      this.pendingOperations.add(sequenceNumber);
+    } finally {
+      this.lock.unlock();
+    }
+
+    ListenableFuture<Boolean> future;
+    try {
+      future = this.executor.submit(operation);
+    } catch (RuntimeException re) {
+      operationFinished(sequenceNumber);
+      throw re;
+    }
+
+    Futures.addCallback(future, new FutureCallback<Boolean>() {
+      @Override
+      public void onSuccess(Boolean moved) {
+        if (moved) {
+          succeededOperations.incrementAndGet();
+        } else {
+          failedOperations.incrementAndGet();
+          LOGGER.error("Failed to move path " + path + " to trash");
+        }
+        operationFinished(sequenceNumber);
+      }
+
+      @Override
+      public void onFailure(Throwable throwable) {
+        failedOperations.incrementAndGet();
+        LOGGER.error("Failed to move path " + path + " to trash", throwable);
+        operationFinished(sequenceNumber);
+      }
+    });
+    return future;
+  }
+
+  private void operationFinished(long sequenceNumber) {
+    this.lock.lock();
+    try {
+      this.pendingOperations.remove(sequenceNumber);
+      this.operationDone.signalAll();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  private static ListenableFuture<BatchResult> aggregate(Collection<Path> paths,
+      List<ListenableFuture<Boolean>> futures) {
+    final List<Path> pathList = ImmutableList.copyOf(paths);
+    return Futures.transform(Futures.successfulAsList(futures), new Function<List<Boolean>, BatchResult>() {
+      @Override
+      public BatchResult apply(List<Boolean> results) {
+        List<Path> movedPaths = Lists.newArrayList();
+        List<Path> failedPaths = Lists.newArrayList();
+        for (int i = 0; i < pathList.size(); i++) {
+          // A null result means the operation threw an exception
+          if (Boolean.TRUE.equals(results.get(i))) {
+            movedPaths.add(pathList.get(i));
+          } else {
+            failedPaths.add(pathList.get(i));
+          }
+        }
+        return new BatchResult(movedPaths, failedPaths);
+      }
+    });
+  }
+
+  /**
+   * Results of a batch of trash operations.
+   */
+  public static class BatchResult {
+
+    private final List<Path> movedPaths;
+    private final List<Path> failedPaths;
+
+    public BatchResult(List<Path> movedPaths, List<Path> failedPaths) {
+      this.movedPaths = Collections.unmodifiableList(movedPaths);
+      this.failedPaths = Collections.unmodifiableList(failedPaths);
+    }
+
+    /**
+     * {@link Path}s moved to trash.
+     */
+    public List<Path> getMovedPaths() {
+      return this.movedPaths;
+    }
+
+    /**
+     * {@link Path}s that could not be moved to trash.
+     */
+    public List<Path> getFailedPaths() {
+      return this.failedPaths;
+    }
+
+    public boolean isSuccessful() {
+      return this.failedPaths.isEmpty();
+    }
+  }
 }
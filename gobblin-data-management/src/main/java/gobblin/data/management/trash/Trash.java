@@ -12,12 +12,21 @@
 
 package gobblin.data.management.trash;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
@@ -33,13 +42,29 @@ import org.joda.time.format.DateTimeFormatter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Closer;
+
 import azkaban.utils.Props;
 
 import gobblin.data.management.util.PathUtils;
+import gobblin.util.ExecutorsUtils;
+import gobblin.util.limiter.Limiter;
+import gobblin.util.limiter.RateBasedLimiter;
 
 
 /**
  * Flexible implementation of Trash similar to Hadoop trash. Allows for injecting cleanup policies for snapshots.
+ *
+ * <p>
+ *   Paths are moved into snapshots, and snapshots are purged, concurrently with up to
+ *   {@link #SNAPSHOT_PARALLELISM_KEY} file system calls at a time, optionally limited to
+ *   {@link #SNAPSHOT_CALLS_PER_SECOND_LIMIT_KEY} calls per second.
+ * </p>
  */
 public class Trash implements GobblinTrash {
 
@@ -55,8 +80,22 @@ public class Trash implements GobblinTrash {
    */
   public static final String TRASH_LOCATION_KEY = "gobblin.trash.location";
   public static final String SNAPSHOT_CLEANUP_POLICY_CLASS_KEY = "gobblin.trash.snapshot.cleanup.policy.class";
+  /**
+   * Maximum number of concurrent renames or deletes when creating or purging snapshots.
+   */
+  public static final String SNAPSHOT_PARALLELISM_KEY = "gobblin.trash.snapshot.parallelism";
+  public static final int DEFAULT_SNAPSHOT_PARALLELISM = 10;
+  /**
+   * Maximum number of renames or deletes per second when creating or purging snapshots. Not limited by default.
+   */
+  public static final String SNAPSHOT_CALLS_PER_SECOND_LIMIT_KEY = "gobblin.trash.snapshot.calls.per.second.limit";
   public static final String TRASH_SNAPSHOT_PREFIX = "_TRASH_SNAPSHOT_";
   public static final String TRASH_IDENTIFIER_FILE = "_THIS_IS_TRASH_DIRECTORY";
+  /**
+   * File in a snapshot directory listing the paths still being moved into the snapshot. Each line has the name of a
+   * path and, separated by a tab, its file ID if the file system exposes one.
+   */
+  public static final String TRASH_SNAPSHOT_MANIFEST_FILE = "_SNAPSHOT_MANIFEST";
   public static final String DEFAULT_TRASH_DIRECTORY = "_GOBBLIN_TRASH";
   public static final DateTimeFormatter TRASH_SNAPSHOT_NAME_FORMATTER =
       DateTimeFormat.forPattern(String.format("'%s'yyyyMMddHHmmss", TRASH_SNAPSHOT_PREFIX)).withZone(DateTimeZone.UTC);
@@ -148,6 +187,11 @@ public class Trash implements GobblinTrash {
   protected final FileSystem fs;
   private final Path trashLocation;
   private final SnapshotCleanupPolicy snapshotCleanupPolicy;
+  private final int snapshotParallelism;
+  private final Optional<Limiter> snapshotLimiter;
+  // Directories in trash known to exist, so that moving many paths to the same directory only creates it once
+  private final Set<Path> existingTrashDirectories =
+      Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
 
   /**
    * @deprecated Use {@link gobblin.data.management.trash.TrashFactory}.
@@ -186,6 +230,18 @@ public class Trash implements GobblinTrash {
           props.getProperty(SNAPSHOT_CLEANUP_POLICY_CLASS_KEY, TimeBasedSnapshotCleanupPolicy.class.getCanonicalName()),
           exception);
     }
+    this.snapshotParallelism = Integer.parseInt(
+        props.getProperty(SNAPSHOT_PARALLELISM_KEY, Integer.toString(DEFAULT_SNAPSHOT_PARALLELISM)));
+    if(this.snapshotParallelism <= 0) {
+      throw new IllegalArgumentException(SNAPSHOT_PARALLELISM_KEY + " must be positive.");
+    }
+    if(props.containsKey(SNAPSHOT_CALLS_PER_SECOND_LIMIT_KEY)) {
+      Limiter limiter = new RateBasedLimiter(Double.parseDouble(props.getProperty(SNAPSHOT_CALLS_PER_SECOND_LIMIT_KEY)));
+      limiter.start();
+      this.snapshotLimiter = Optional.of(limiter);
+    } else {
+      this.snapshotLimiter = Optional.absent();
+    }
   }
 
   /**
@@ -197,22 +253,44 @@ public class Trash implements GobblinTrash {
   public boolean moveToTrash(Path path) throws IOException {
     Path fullyResolvedPath = path.isAbsolute() ? path : new Path(fs.getWorkingDirectory(), path);
     Path targetPathInTrash = PathUtils.mergePaths(this.trashLocation, fullyResolvedPath);
+    Path targetDirectory = targetPathInTrash.getParent();
 
-    if(!this.fs.exists(targetPathInTrash.getParent())) {
-      this.fs.mkdirs(targetPathInTrash.getParent());
+    if(this.existingTrashDirectories.contains(targetDirectory)) {
+      if(this.fs.rename(fullyResolvedPath, targetPathInTrash)) {
+        return true;
+      }
+      // The directory may have been moved away since, e.g. into a trash snapshot. Retry after creating it again.
+      this.existingTrashDirectories.remove(targetDirectory);
     }
 
+    if(!this.fs.exists(targetDirectory)) {
+      this.fs.mkdirs(targetDirectory);
+    }
+    this.existingTrashDirectories.add(targetDirectory);
+
     return this.fs.rename(fullyResolvedPath, targetPathInTrash);
   }
 
   /**
    * Moves all current contents of trash directory into a snapshot directory with current timestamp.
+   *
+   * <p>
+   *   Before moving any path, the names of the paths to move are written to a {@link #TRASH_SNAPSHOT_MANIFEST_FILE}
+   *   in the snapshot directory, which is deleted once all moves are done. If a previous call did not finish, e.g.
+   *   because the process crashed, the paths it listed that are still in trash are first moved into its snapshot.
+   * </p>
    * @throws IOException
    */
   public void createTrashSnapshot() throws IOException {
     FileStatus[] pathsInTrash = this.fs.listStatus(this.trashLocation, TRASH_NOT_SNAPSHOT_PATH_FILTER);
+    Map<String, FileStatus> remainingPaths = Maps.newHashMap();
+    for(FileStatus fileStatus : pathsInTrash) {
+      remainingPaths.put(fileStatus.getPath().getName(), fileStatus);
+    }
 
-    if(pathsInTrash.length <= 0) {
+    resumeTrashSnapshots(remainingPaths);
+
+    if(remainingPaths.isEmpty()) {
       LOG.info("Nothing in trash. Will not create snapshot.");
       return;
     }
@@ -227,30 +305,210 @@ public class Trash implements GobblinTrash {
     }
 
     LOG.info(String.format("Moving %d paths in Trash directory to newly created snapshot at %s.",
-        pathsInTrash.length, snapshotDir.toString()));
+        remainingPaths.size(), snapshotDir.toString()));
 
-    int pathsFailedToMove = 0;
-    for(FileStatus fileStatus : pathsInTrash) {
-      Path pathRelativeToTrash = PathUtils.relativizePath(fileStatus.getPath(), this.trashLocation);
-      Path targetPath = new Path(snapshotDir, pathRelativeToTrash);
-      boolean movedThisPath = true;
-      try {
-        movedThisPath = fs.rename(fileStatus.getPath(), targetPath);
-      } catch(IOException exception) {
-        LOG.error("Failed to move path " + fileStatus.getPath().toString() + " to snapshot.", exception);
-        pathsFailedToMove += 1;
-        continue;
+    writeSnapshotManifest(snapshotDir, remainingPaths.values());
+    List<Path> pathsToMove = Lists.newArrayList();
+    for(FileStatus fileStatus : remainingPaths.values()) {
+      pathsToMove.add(fileStatus.getPath());
+    }
+    moveToSnapshot(snapshotDir, pathsToMove);
+  }
+
+  /**
+   * Finish snapshots that still have a {@link #TRASH_SNAPSHOT_MANIFEST_FILE}, oldest first. Paths moved into a
+   * snapshot are removed from remainingPaths.
+   *
+   * <p>
+   *   A name listed in the manifest may have been moved into trash again after the interrupted snapshot. Such a path
+   *   is left in remainingPaths, for the new snapshot, if a path of the same name already is in the interrupted
+   *   snapshot or if its file ID differs from the one in the manifest. If the file system does not expose file IDs,
+   *   a path modified after the manifest was written is left instead, which misses files moved into trash again,
+   *   since a rename keeps the modification time.
+   * </p>
+   */
+  private void resumeTrashSnapshots(Map<String, FileStatus> remainingPaths) throws IOException {
+    FileStatus[] manifests = this.fs.globStatus(new Path(this.trashLocation,
+        TRASH_SNAPSHOT_PREFIX + "*" + Path.SEPARATOR + TRASH_SNAPSHOT_MANIFEST_FILE));
+    if(manifests == null || manifests.length == 0) {
+      return;
+    }
+
+    List<FileStatus> sortedManifests = Lists.newArrayList(manifests);
+    Collections.sort(sortedManifests, new Comparator<FileStatus>() {
+      @Override
+      public int compare(FileStatus o1, FileStatus o2) {
+        return TRASH_SNAPSHOT_NAME_FORMATTER.parseDateTime(o1.getPath().getParent().getName()).
+            compareTo(TRASH_SNAPSHOT_NAME_FORMATTER.parseDateTime(o2.getPath().getParent().getName()));
       }
-      if(!movedThisPath) {
-        LOG.error("Failed to move path " + fileStatus.getPath().toString() + " to snapshot.");
-        pathsFailedToMove += 1;
+    });
+
+    for(FileStatus manifest : sortedManifests) {
+      Path snapshotDir = manifest.getPath().getParent();
+      List<Path> pathsToMove = Lists.newArrayList();
+      for(Map.Entry<String, Optional<Long>> entry : readSnapshotManifest(snapshotDir).entrySet()) {
+        String name = entry.getKey();
+        FileStatus fileStatus = remainingPaths.get(name);
+        if(fileStatus == null) {
+          continue;
+        }
+        boolean movedAgain = entry.getValue().isPresent()
+            ? !entry.getValue().equals(getFileId(fileStatus.getPath()))
+            : fileStatus.getModificationTime() > manifest.getModificationTime();
+        if(movedAgain || this.fs.exists(new Path(snapshotDir, name))) {
+          LOG.info(String.format("Path %s was moved to trash after snapshot %s was interrupted, will not resume it.",
+              fileStatus.getPath(), snapshotDir));
+          continue;
+        }
+        remainingPaths.remove(name);
+        pathsToMove.add(fileStatus.getPath());
       }
+      LOG.info(String.format("Resuming snapshot at %s with %d paths left to move.", snapshotDir, pathsToMove.size()));
+      moveToSnapshot(snapshotDir, pathsToMove);
     }
+  }
+
+  /**
+   * Move the paths into the snapshot directory concurrently, then delete the snapshot manifest. Paths that fail to
+   * move are left in trash, and will be moved into the next snapshot.
+   */
+  private void moveToSnapshot(final Path snapshotDir, List<Path> paths) throws IOException {
+    List<Boolean> results = runConcurrently(paths, new Function<Path, Boolean>() {
+      @Override
+      public Boolean apply(Path path) {
+        Path targetPath = new Path(snapshotDir, PathUtils.relativizePath(path, Trash.this.trashLocation));
+        try {
+          if(acquireSnapshotPermit() && Trash.this.fs.rename(path, targetPath)) {
+            return true;
+          }
+          LOG.error("Failed to move path " + path.toString() + " to snapshot.");
+        } catch(IOException exception) {
+          LOG.error("Failed to move path " + path.toString() + " to snapshot.", exception);
+        }
+        return false;
+      }
+    });
 
+    int pathsFailedToMove = Collections.frequency(results, false);
     if(pathsFailedToMove > 0) {
       LOG.error(String.format("Failed to move %d paths to the snapshot at %s.", pathsFailedToMove, snapshotDir.toString()));
     }
 
+    if(!this.fs.delete(new Path(snapshotDir, TRASH_SNAPSHOT_MANIFEST_FILE), false)) {
+      LOG.warn("Failed to delete manifest of snapshot " + snapshotDir);
+    }
+  }
+
+  /**
+   * Write the names and file IDs of the paths to move into a snapshot. A manifest cut short by a crash is harmless,
+   * since no path is moved before the manifest is complete.
+   */
+  private void writeSnapshotManifest(Path snapshotDir, Collection<FileStatus> fileStatuses) throws IOException {
+    Closer closer = Closer.create();
+    try {
+      Writer writer = closer.register(new OutputStreamWriter(
+          closer.register(this.fs.create(new Path(snapshotDir, TRASH_SNAPSHOT_MANIFEST_FILE), true)), Charsets.UTF_8));
+      for(FileStatus fileStatus : fileStatuses) {
+        writer.write(fileStatus.getPath().getName());
+        Optional<Long> fileId = getFileId(fileStatus.getPath());
+        if(fileId.isPresent()) {
+          writer.write('\t');
+          writer.write(Long.toString(fileId.get()));
+        }
+        writer.write('\n');
+      }
+    } catch(Throwable t) {
+      throw closer.rethrow(t);
+    } finally {
+      closer.close();
+    }
+  }
+
+  /**
+   * Read the names of the paths listed in the manifest of a snapshot, with their file IDs if recorded.
+   */
+  private Map<String, Optional<Long>> readSnapshotManifest(Path snapshotDir) throws IOException {
+    Map<String, Optional<Long>> fileIds = Maps.newLinkedHashMap();
+    Closer closer = Closer.create();
+    try {
+      BufferedReader reader = closer.register(new BufferedReader(new InputStreamReader(
+          closer.register(this.fs.open(new Path(snapshotDir, TRASH_SNAPSHOT_MANIFEST_FILE))), Charsets.UTF_8)));
+      String line;
+      while((line = reader.readLine()) != null) {
+        if(line.isEmpty()) {
+          continue;
+        }
+        int separator = line.lastIndexOf('\t');
+        if(separator < 0) {
+          fileIds.put(line, Optional.<Long>absent());
+        } else {
+          fileIds.put(line.substring(0, separator), Optional.of(Long.parseLong(line.substring(separator + 1))));
+        }
+      }
+    } catch(Throwable t) {
+      throw closer.rethrow(t);
+    } finally {
+      closer.close();
+    }
+    return fileIds;
+  }
+
+  /**
+   * Get the ID of the file or directory at the given path, which unlike its modification time identifies it across
+   * renames, or {@link Optional#absent()} if the file system does not expose file IDs.
+   *
+   * <p>
+   *   Only HDFS exposes file IDs, through DFSClient#getFileInfo in Hadoop 2. It is called by reflection, since
+   *   Hadoop 1 does not have file IDs.
+   * </p>
+   */
+  protected Optional<Long> getFileId(Path path) {
+    try {
+      Object client = this.fs.getClass().getMethod("getClient").invoke(this.fs);
+      Object hdfsFileStatus =
+          client.getClass().getMethod("getFileInfo", String.class).invoke(client, path.toUri().getPath());
+      if(hdfsFileStatus == null) {
+        return Optional.absent();
+      }
+      return Optional.of((Long) hdfsFileStatus.getClass().getMethod("getFileId").invoke(hdfsFileStatus));
+    } catch(NoSuchMethodException nsme) {
+      return Optional.absent();
+    } catch(Exception exception) {
+      LOG.warn("Failed to get the file ID of " + path, exception);
+      return Optional.absent();
+    }
+  }
+
+  /**
+   * Apply the function to all paths with at most {@link #snapshotParallelism} concurrent calls.
+   */
+  private List<Boolean> runConcurrently(List<Path> paths, Function<Path, Boolean> function) throws IOException {
+    if(paths.isEmpty()) {
+      return Collections.emptyList();
+    }
+    try {
+      return ExecutorsUtils.parallelize(paths, function, Math.min(this.snapshotParallelism, paths.size()),
+          Integer.MAX_VALUE, Optional.of(LOG));
+    } catch(ExecutionException ee) {
+      throw new IOException("Failed to process paths in trash " + this.trashLocation, ee);
+    }
+  }
+
+  /**
+   * Wait for a permit of the {@link #SNAPSHOT_CALLS_PER_SECOND_LIMIT_KEY} limit, if any.
+   * @return false if interrupted while waiting.
+   */
+  private boolean acquireSnapshotPermit() {
+    if(!this.snapshotLimiter.isPresent()) {
+      return true;
+    }
+    try {
+      this.snapshotLimiter.get().acquirePermits(1);
+      return true;
+    } catch(InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
   }
 
   /**
@@ -277,22 +535,30 @@ public class Trash implements GobblinTrash {
     });
 
     int totalSnapshots = snapshotsInTrash.size();
-    int snapshotsDeleted = 0;
 
+    // The policy sees snapshots from oldest to newest, the chosen snapshots are then deleted concurrently
+    List<Path> snapshotsToDelete = Lists.newArrayList();
     for(FileStatus snapshot : snapshotsInTrash) {
       if(this.snapshotCleanupPolicy.shouldDeleteSnapshot(snapshot, this)) {
+        snapshotsToDelete.add(snapshot.getPath());
+      }
+    }
+
+    List<Boolean> results = runConcurrently(snapshotsToDelete, new Function<Path, Boolean>() {
+      @Override
+      public Boolean apply(Path snapshot) {
         try {
-          boolean successfullyDeleted = this.fs.delete(snapshot.getPath(), true);
-          if(successfullyDeleted) {
-            snapshotsDeleted++;
-          } else {
-            LOG.error("Failed to delete snapshot " + snapshot.getPath());
+          if(acquireSnapshotPermit() && Trash.this.fs.delete(snapshot, true)) {
+            return true;
           }
-        } catch(IOException exception){
-          LOG.error("Failed to delete snapshot " + snapshot.getPath(), exception);
+          LOG.error("Failed to delete snapshot " + snapshot);
+        } catch(IOException exception) {
+          LOG.error("Failed to delete snapshot " + snapshot, exception);
         }
+        return false;
       }
-    }
+    });
+    int snapshotsDeleted = Collections.frequency(results, true);
 
     LOG.info(String.format("Deleted %d out of %d existing snapshots.", snapshotsDeleted, totalSnapshots));
   }
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.data.management.util;
+
+import com.google.common.base.Preconditions;
+
+
+/**
+ * A concurrency limit that adapts to the observed latency of a shared service, e.g. the NameNode.
+ *
+ * <p>
+ *   The limit is adjusted with additive increase and multiplicative decrease: each {@link #update} with a latency
+ *   below the target raises the limit by one, and a latency above the target halves it. After a decrease, the limit is
+ *   not decreased again until as many updates as the new limit have been observed, so that the tasks started before
+ *   the decrease do not cause further decreases.
+ * </p>
+ */
+public class AdaptiveConcurrencyLimit {
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final double targetLatencyMillis;
+  private int limit;
+  private int updatesSinceDecrease;
+
+  public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double targetLatencyMillis) {
+    Preconditions.checkArgument(minLimit > 0 && minLimit <= maxLimit, "Invalid limits: [%s, %s]", minLimit, maxLimit);
+    Preconditions.checkArgument(targetLatencyMillis > 0, "Target latency must be positive");
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.targetLatencyMillis = targetLatencyMillis;
+    this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    this.updatesSinceDecrease = this.limit;
+  }
+
+  public synchronized int getLimit() {
+    return this.limit;
+  }
+
+  /**
+   * Adjust the limit given the latest observed latency.
+   * @return the new limit.
+   */
+  public synchronized int update(double observedLatencyMillis) {
+    this.updatesSinceDecrease++;
+    if (observedLatencyMillis > this.targetLatencyMillis) {
+      if (this.updatesSinceDecrease >= this.limit) {
+        this.limit = Math.max(this.minLimit, this.limit / 2);
+        this.updatesSinceDecrease = 0;
+      }
+    } else {
+      this.limit = Math.min(this.maxLimit, this.limit + 1);
+    }
+    return this.limit;
+  }
+}
@@ -0,0 +1,398 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.data.management.util;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+
+/**
+ * A snapshot of the listings of a {@link FileSystem}, built up as directories are listed, and meant to live for a
+ * single run of a job, e.g. a retention run of {@link gobblin.data.management.retention.DatasetCleaner}.
+ *
+ * <p>
+ *   Each directory is listed at most once, even if it is requested concurrently. The statuses of all listed paths
+ *   are kept in an index sorted by path, so that:
+ *   <ul>
+ *     <li>{@link #getFileStatus} and {@link #exists} are answered without a call to the {@link FileSystem} for any
+ *     path whose parent directory has been listed, including paths that do not exist.</li>
+ *     <li>{@link #globStatus} matches a glob pattern component by component against the cached listings, and only
+ *     lists the directories the pattern can descend into.</li>
+ *     <li>{@link #invalidate} drops a path together with everything under it with a single range removal.</li>
+ *   </ul>
+ * </p>
+ *
+ * <p>
+ *   The cache does not see changes made to the {@link FileSystem} by others. Changes made through this process
+ *   should be reported with {@link #invalidate}, which {@link ListingCachedFileSystem} does automatically.
+ * </p>
+ */
+public class FileSystemListingCache {
+
+  private static final Splitter PATH_SPLITTER = Splitter.on('/').omitEmptyStrings();
+  private static final String ROOT_KEY = "/";
+
+  // Children of listed directories, and statuses of all known paths, keyed by path without scheme and authority.
+  private final NavigableMap<String, FileStatus[]> listings = new ConcurrentSkipListMap<String, FileStatus[]>();
+  private final NavigableMap<String, FileStatus> statuses = new ConcurrentSkipListMap<String, FileStatus>();
+  private final ConcurrentMap<String, SettableFuture<FileStatus[]>> pendingListings = Maps.newConcurrentMap();
+
+  private final AtomicLong listCalls = new AtomicLong();
+  private final AtomicLong statusCalls = new AtomicLong();
+  private final AtomicLong hits = new AtomicLong();
+
+  /**
+   * List the directory, using the cached listing if the directory has been listed before.
+   */
+  public FileStatus[] listStatus(FileSystem fs, Path path) throws IOException {
+    String key = getKey(fs, path);
+    FileStatus[] listing = this.listings.get(key);
+    if (listing != null) {
+      this.hits.incrementAndGet();
+      return listing;
+    }
+
+    SettableFuture<FileStatus[]> future = SettableFuture.create();
+    SettableFuture<FileStatus[]> pendingListing = this.pendingListings.putIfAbsent(key, future);
+    if (pendingListing != null) {
+      // Another thread is listing the same directory
+      this.hits.incrementAndGet();
+      return getUninterruptibly(pendingListing);
+    }
+
+    try {
+      listing = this.listings.get(key);
+      if (listing == null) {
+        listing = fs.listStatus(path);
+        this.listCalls.incrementAndGet();
+        if (listing == null) {
+          throw new FileNotFoundException(path + " does not exist");
+        }
+        for (FileStatus status : listing) {
+          this.statuses.put(getKey(fs, status.getPath()), status);
+        }
+        this.listings.put(key, listing);
+      }
+      future.set(listing);
+      return listing;
+    } catch (IOException ioe) {
+      future.setException(ioe);
+      throw ioe;
+    } catch (RuntimeException re) {
+      future.setException(re);
+      throw re;
+    } finally {
+      this.pendingListings.remove(key, future);
+    }
+  }
+
+  /**
+   * Get the status of the path. If the parent directory of the path has been listed, the status is taken from the
+   * listing, and a {@link FileNotFoundException} is thrown if the path is not in it.
+   */
+  public FileStatus getFileStatus(FileSystem fs, Path path) throws IOException {
+    String key = getKey(fs, path);
+    FileStatus status = this.statuses.get(key);
+    if (status != null) {
+      this.hits.incrementAndGet();
+      return status;
+    }
+
+    Path parent = path.getParent();
+    if (parent != null && this.listings.containsKey(getKey(fs, parent))) {
+      // Statuses are put before the listing, so the path does not exist if it is not in the index by now
+      this.hits.incrementAndGet();
+      throw new FileNotFoundException(path + " does not exist");
+    }
+
+    status = fs.getFileStatus(path);
+    this.statusCalls.incrementAndGet();
+    if (status == null) {
+      throw new FileNotFoundException(path + " does not exist");
+    }
+    this.statuses.put(key, status);
+    return status;
+  }
+
+  public boolean exists(FileSystem fs, Path path) throws IOException {
+    try {
+      getFileStatus(fs, path);
+      return true;
+    } catch (FileNotFoundException fnfe) {
+      return false;
+    }
+  }
+
+  /**
+   * Find the paths matching the glob pattern. Each component of the pattern containing glob characters is matched
+   * against the cached listing of the directories matched so far; literal components are resolved without listing.
+   * Like {@link FileSystem#globStatus(Path)}, returns {@code null} if the pattern has no glob characters and the
+   * path does not exist.
+   *
+   * <p>
+   *   Relative patterns, and patterns with alternations spanning several components, are delegated to
+   *   {@link FileSystem#globStatus(Path)} and not cached.
+   * </p>
+   */
+  public FileStatus[] globStatus(FileSystem fs, Path pathPattern) throws IOException {
+    List<String> components = PATH_SPLITTER.splitToList(pathPattern.toUri().getPath());
+    List<Pattern> patterns = Lists.newArrayListWithCapacity(components.size());
+    boolean hasGlob = false;
+    try {
+      for (String component : components) {
+        if (isGlob(component)) {
+          patterns.add(compileGlob(component));
+          hasGlob = true;
+        } else {
+          patterns.add(null);
+        }
+      }
+    } catch (IllegalArgumentException iae) {
+      this.listCalls.incrementAndGet();
+      return fs.globStatus(pathPattern);
+    }
+    if (!pathPattern.isAbsolute()) {
+      this.listCalls.incrementAndGet();
+      return fs.globStatus(pathPattern);
+    }
+
+    // Paths matched so far, with their statuses, or null for paths reached through a literal component, which may
+    // not exist
+    List<Path> paths = Lists.newArrayList(
+        new Path(pathPattern.toUri().getScheme(), pathPattern.toUri().getAuthority(), ROOT_KEY));
+    List<FileStatus> matchedStatuses = Lists.newArrayList((FileStatus) null);
+
+    for (int i = 0; i < components.size() && !paths.isEmpty(); i++) {
+      boolean last = i == components.size() - 1;
+      List<Path> nextPaths = Lists.newArrayList();
+      List<FileStatus> nextStatuses = Lists.newArrayList();
+
+      for (int j = 0; j < paths.size(); j++) {
+        if (patterns.get(i) == null) {
+          nextPaths.add(new Path(paths.get(j), components.get(i)));
+          nextStatuses.add(null);
+          continue;
+        }
+        if (matchedStatuses.get(j) != null && !isDirectory(matchedStatuses.get(j))) {
+          continue;
+        }
+        FileStatus[] children;
+        try {
+          children = listStatus(fs, paths.get(j));
+        } catch (FileNotFoundException fnfe) {
+          continue;
+        }
+        if (children.length == 1 && !isDirectory(children[0])
+            && getKey(fs, children[0].getPath()).equals(getKey(fs, paths.get(j)))) {
+          // Listing a file returns the file itself
+          continue;
+        }
+        for (FileStatus child : children) {
+          if (patterns.get(i).matcher(child.getPath().getName()).matches() && (last || isDirectory(child))) {
+            nextPaths.add(child.getPath());
+            nextStatuses.add(child);
+          }
+        }
+      }
+
+      paths = nextPaths;
+      matchedStatuses = nextStatuses;
+    }
+
+    List<FileStatus> results = Lists.newArrayListWithCapacity(paths.size());
+    for (int j = 0; j < paths.size(); j++) {
+      if (matchedStatuses.get(j) != null) {
+        results.add(matchedStatuses.get(j));
+      } else {
+        try {
+          results.add(getFileStatus(fs, paths.get(j)));
+        } catch (FileNotFoundException fnfe) {
+          // Literal path that does not exist
+        }
+      }
+    }
+
+    if (!hasGlob && results.isEmpty()) {
+      return null;
+    }
+    return results.toArray(new FileStatus[results.size()]);
+  }
+
+  /**
+   * Drop the cached status and listing of the path and of everything under it, as well as the listing of its parent
+   * directory. Call this after creating, deleting, renaming or otherwise modifying the path. Cached statuses of
+   * ancestor directories are kept, so their modification times may be stale.
+   */
+  public void invalidate(Path path) {
+    String key = getKey(path);
+    if (ROOT_KEY.equals(key)) {
+      this.listings.clear();
+      this.statuses.clear();
+      return;
+    }
+
+    this.listings.remove(key);
+    this.statuses.remove(key);
+    // All keys under the path are between "<path>/" and "<path>0", since '0' is the character after '/'
+    this.listings.subMap(key + "/", key + "0").clear();
+    this.statuses.subMap(key + "/", key + "0").clear();
+
+    // Ancestors unknown to the cache may have been created along with the path, so the listings of their parents
+    // are dropped as well, up to the first ancestor known to exist
+    for (Path ancestor = path.getParent(); ancestor != null; ancestor = ancestor.getParent()) {
+      this.listings.remove(getKey(ancestor));
+      if (this.statuses.containsKey(getKey(ancestor))) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * Number of calls made to the {@link FileSystem} to list directories or to glob uncacheable patterns.
+   */
+  public long getListCalls() {
+    return this.listCalls.get();
+  }
+
+  /**
+   * Number of calls made to the {@link FileSystem} to get the status of a single path.
+   */
+  public long getStatusCalls() {
+    return this.statusCalls.get();
+  }
+
+  /**
+   * Number of requests answered from the cache.
+   */
+  public long getHits() {
+    return this.hits.get();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s{listCalls=%d, statusCalls=%d, hits=%d, cachedListings=%d}",
+        FileSystemListingCache.class.getSimpleName(), getListCalls(), getStatusCalls(), getHits(),
+        this.listings.size());
+  }
+
+  private static String getKey(FileSystem fs, Path path) {
+    return getKey(path.isAbsolute() ? path : fs.makeQualified(path));
+  }
+
+  private static String getKey(Path path) {
+    return path.toUri().getPath();
+  }
+
+  @SuppressWarnings("deprecation")
+  private static boolean isDirectory(FileStatus status) {
+    return status.isDir();
+  }
+
+  private static FileStatus[] getUninterruptibly(SettableFuture<FileStatus[]> future) throws IOException {
+    try {
+      return Uninterruptibles.getUninterruptibly(future);
+    } catch (ExecutionException ee) {
+      Throwables.propagateIfInstanceOf(ee.getCause(), IOException.class);
+      throw Throwables.propagate(ee.getCause());
+    }
+  }
+
+  private static boolean isGlob(String component) {
+    for (char c : component.toCharArray()) {
+      if (c == '*' || c == '?' || c == '[' || c == '{' || c == '\\') {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Translate a glob pattern for a single path component into a regular expression, supporting the same syntax as
+   * {@link FileSystem#globStatus(Path)}: {@code *}, {@code ?}, character classes, {@code {a,b}} alternations and
+   * backslash escapes.
+   *
+   * @throws IllegalArgumentException if the pattern is malformed, e.g. if an alternation spans several components.
+   */
+  static Pattern compileGlob(String glob) {
+    StringBuilder regex = new StringBuilder();
+    int openBraces = 0;
+    for (int i = 0; i < glob.length(); i++) {
+      char c = glob.charAt(i);
+      switch (c) {
+        case '\\':
+          if (++i >= glob.length()) {
+            throw new IllegalArgumentException("Dangling escape in glob pattern " + glob);
+          }
+          regex.append(Pattern.quote(String.valueOf(glob.charAt(i))));
+          break;
+        case '*':
+          regex.append(".*");
+          break;
+        case '?':
+          regex.append('.');
+          break;
+        case '[':
+          int end = glob.indexOf(']', i + 1);
+          if (end < 0) {
+            throw new IllegalArgumentException("Unclosed character class in glob pattern " + glob);
+          }
+          String characterClass = glob.substring(i + 1, end);
+          if (characterClass.startsWith("!")) {
+            characterClass = "^" + characterClass.substring(1);
+          }
+          regex.append('[').append(characterClass.replace("\\", "\\\\").replace("[", "\\[").replace("&", "\\&"))
+              .append(']');
+          i = end;
+          break;
+        case '{':
+          openBraces++;
+          regex.append("(?:");
+          break;
+        case ',':
+          regex.append(openBraces > 0 ? "|" : ",");
+          break;
+        case '}':
+          if (openBraces == 0) {
+            throw new IllegalArgumentException("Unopened alternation in glob pattern " + glob);
+          }
+          openBraces--;
+          regex.append(')');
+          break;
+        default:
+          regex.append(Character.isLetterOrDigit(c) ? String.valueOf(c) : Pattern.quote(String.valueOf(c)));
+      }
+    }
+    if (openBraces > 0) {
+      throw new IllegalArgumentException("Unclosed alternation in glob pattern " + glob);
+    }
+    return Pattern.compile(regex.toString());
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.data.management.util;
+
+import java.io.IOException;
+
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FilterFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.fs.permission.FsPermission;
+
+import com.google.common.base.Optional;
+
+import gobblin.util.Decorator;
+import gobblin.util.DecoratorUtils;
+
+
+/**
+ * A {@link FileSystem} decorator that keeps an exponentially weighted moving average of the latency of metadata
+ * calls, e.g. to adapt the load put on the NameNode.
+ */
+public class LatencyTrackingFileSystem extends FilterFileSystem implements Decorator {
+
+  // Weight of the latest call in the moving average
+  private static final double ALPHA = 0.1;
+
+  private double averageLatencyMillis = 0;
+  private long calls = 0;
+
+  /**
+   * Get the {@link LatencyTrackingFileSystem} the {@link FileSystem} is, or decorates, if any.
+   */
+  public static Optional<LatencyTrackingFileSystem> getLatencyTracker(FileSystem fs) {
+    for (Object obj : DecoratorUtils.getDecoratorLineage(fs)) {
+      if (obj instanceof LatencyTrackingFileSystem) {
+        return Optional.of((LatencyTrackingFileSystem) obj);
+      }
+    }
+    return Optional.absent();
+  }
+
+  public LatencyTrackingFileSystem(FileSystem fs) {
+    super(fs);
+  }
+
+  /**
+   * Moving average of the latency of metadata calls, or 0 if no call was made yet.
+   */
+  public synchronized double getAverageLatencyMillis() {
+    return this.averageLatencyMillis;
+  }
+
+  public synchronized long getCalls() {
+    return this.calls;
+  }
+
+  @Override
+  public FileStatus[] listStatus(Path path) throws IOException {
+    long startTime = System.nanoTime();
+    try {
+      return super.listStatus(path);
+    } finally {
+      record(startTime);
+    }
+  }
+
+  @Override
+  public FileStatus[] listStatus(Path path, PathFilter filter) throws IOException {
+    long startTime = System.nanoTime();
+    try {
+      return super.listStatus(path, filter);
+    } finally {
+      record(startTime);
+    }
+  }
+
+  @Override
+  public FileStatus getFileStatus(Path path) throws IOException {
+    long startTime = System.nanoTime();
+    try {
+      return super.getFileStatus(path);
+    } finally {
+      record(startTime);
+    }
+  }
+
+  @Override
+  public ContentSummary getContentSummary(Path path) throws IOException {
+    long startTime = System.nanoTime();
+    try {
+      return super.getContentSummary(path);
+    } finally {
+      record(startTime);
+    }
+  }
+
+  @Override
+  public boolean rename(Path src, Path dst) throws IOException {
+    long startTime = System.nanoTime();
+    try {
+      return super.rename(src, dst);
+    } finally {
+      record(startTime);
+    }
+  }
+
+  @Override
+  public boolean delete(Path path, boolean recursive) throws IOException {
+    long startTime = System.nanoTime();
+    try {
+      return super.delete(path, recursive);
+    } finally {
+      record(startTime);
+    }
+  }
+
+  @Override
+  public boolean mkdirs(Path path, FsPermission permission) throws IOException {
+    long startTime = System.nanoTime();
+    try {
+      return super.mkdirs(path, permission);
+    } finally {
+      record(startTime);
+    }
+  }
+
+  @Override
+  public Object getDecoratedObject() {
+    return this.fs;
+  }
+
+  private synchronized void record(long startTime) {
+    double latencyMillis = (System.nanoTime() - startTime) / 1000000.0;
+    this.averageLatencyMillis =
+        this.calls == 0 ? latencyMillis : ALPHA * latencyMillis + (1 - ALPHA) * this.averageLatencyMillis;
+    this.calls++;
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.data.management.util;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FilterFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.util.Progressable;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+
+import gobblin.util.Decorator;
+import gobblin.util.DecoratorUtils;
+
+
+/**
+ * A {@link FileSystem} decorator that serves listings and statuses from a {@link FileSystemListingCache}, and
+ * invalidates the cache on every modification made through it.
+ *
+ * <p>
+ *   Several instances, e.g. wrapping {@link FileSystem}s proxied as different users, can share the same
+ *   {@link FileSystemListingCache}. Use {@link #getListingCache(FileSystem)} to find the cache of a possibly
+ *   decorated {@link FileSystem}, e.g. to invalidate paths modified through another {@link FileSystem}.
+ * </p>
+ */
+public class ListingCachedFileSystem extends FilterFileSystem implements Decorator {
+
+  private final FileSystemListingCache listingCache;
+
+  /**
+   * Get the {@link FileSystemListingCache} of the {@link FileSystem} if it is, or decorates, a
+   * {@link ListingCachedFileSystem}.
+   */
+  public static Optional<FileSystemListingCache> getListingCache(FileSystem fs) {
+    for (Object obj : DecoratorUtils.getDecoratorLineage(fs)) {
+      if (obj instanceof ListingCachedFileSystem) {
+        return Optional.of(((ListingCachedFileSystem) obj).listingCache);
+      }
+    }
+    return Optional.absent();
+  }
+
+  public ListingCachedFileSystem(FileSystem fs, FileSystemListingCache listingCache) {
+    super(fs);
+    this.listingCache = listingCache;
+  }
+
+  public FileSystemListingCache getListingCache() {
+    return this.listingCache;
+  }
+
+  @Override
+  public FileStatus[] listStatus(Path path) throws IOException {
+    return this.listingCache.listStatus(this.fs, path);
+  }
+
+  @Override
+  public FileStatus getFileStatus(Path path) throws IOException {
+    return this.listingCache.getFileStatus(this.fs, path);
+  }
+
+  @Override
+  public boolean exists(Path path) throws IOException {
+    return this.listingCache.exists(this.fs, path);
+  }
+
+  @Override
+  public FileStatus[] globStatus(Path pathPattern) throws IOException {
+    return this.listingCache.globStatus(this.fs, pathPattern);
+  }
+
+  @Override
+  public FileStatus[] globStatus(Path pathPattern, PathFilter filter) throws IOException {
+    FileStatus[] statuses = globStatus(pathPattern);
+    if (statuses == null) {
+      return null;
+    }
+    List<FileStatus> filtered = Lists.newArrayList();
+    for (FileStatus status : statuses) {
+      if (filter.accept(status.getPath())) {
+        filtered.add(status);
+      }
+    }
+    return filtered.toArray(new FileStatus[filtered.size()]);
+  }
+
+  @Override
+  public FSDataOutputStream create(Path path, FsPermission permission, boolean overwrite, int bufferSize,
+      short replication, long blockSize, Progressable progress) throws IOException {
+    try {
+      return super.create(path, permission, overwrite, bufferSize, replication, blockSize, progress);
+    } finally {
+      this.listingCache.invalidate(path);
+    }
+  }
+
+  @Override
+  public FSDataOutputStream append(Path path, int bufferSize, Progressable progress) throws IOException {
+    try {
+      return super.append(path, bufferSize, progress);
+    } finally {
+      this.listingCache.invalidate(path);
+    }
+  }
+
+  @Override
+  public boolean rename(Path src, Path dst) throws IOException {
+    try {
+      return super.rename(src, dst);
+    } finally {
+      this.listingCache.invalidate(src);
+      this.listingCache.invalidate(dst);
+    }
+  }
+
+  @Override
+  public boolean delete(Path path, boolean recursive) throws IOException {
+    try {
+      return super.delete(path, recursive);
+    } finally {
+      this.listingCache.invalidate(path);
+    }
+  }
+
+  @Override
+  public boolean mkdirs(Path path, FsPermission permission) throws IOException {
+    try {
+      return super.mkdirs(path, permission);
+    } finally {
+      this.listingCache.invalidate(path);
+    }
+  }
+
+  @Override
+  public void setPermission(Path path, FsPermission permission) throws IOException {
+    try {
+      super.setPermission(path, permission);
+    } finally {
+      this.listingCache.invalidate(path);
+    }
+  }
+
+  @Override
+  public void setOwner(Path path, String username, String groupname) throws IOException {
+    try {
+      super.setOwner(path, username, groupname);
+    } finally {
+      this.listingCache.invalidate(path);
+    }
+  }
+
+  @Override
+  public void setTimes(Path path, long mtime, long atime) throws IOException {
+    try {
+      super.setTimes(path, mtime, atime);
+    } finally {
+      this.listingCache.invalidate(path);
+    }
+  }
+
+  @Override
+  public Object getDecoratedObject() {
+    return this.fs;
+  }
+}
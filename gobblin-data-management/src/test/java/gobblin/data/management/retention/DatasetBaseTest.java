@@ -155,6 +155,50 @@ public class DatasetBaseTest {
 
   }
 
+  @Test
+  public void testDeleteEmptyDirectoriesBottomUp() throws IOException {
+    FileSystem fs = mock(FileSystem.class);
+
+    Path datasetRoot = new Path("/test/dataset");
+
+    DatasetVersion dataset1Version1 = new StringDatasetVersion("version1", new Path(datasetRoot, "a/b/version1"));
+    DatasetVersion dataset1Version2 = new StringDatasetVersion("version2", new Path(datasetRoot, "a/b/version2"));
+    DatasetVersion dataset1Version3 = new StringDatasetVersion("version3", new Path(datasetRoot, "a/c/version3"));
+
+    when(fs.delete(any(Path.class), anyBoolean())).thenReturn(true);
+
+    DatasetImpl dataset = new DatasetImpl(fs, false, false, true, false, datasetRoot);
+    dataset.retentionPolicy = new DeleteAllRetentionPolicy();
+
+    when(dataset.versionFinder.findDatasetVersions(dataset)).
+        thenReturn(Lists.newArrayList(dataset1Version1, dataset1Version2, dataset1Version3));
+
+    when(fs.listStatus(any(Path.class))).thenReturn(new FileStatus[]{});
+
+    dataset.clean();
+
+    Assert.assertEquals(dataset.getTrash().getDeleteOperations().size(), 3);
+    // Each parent directory is listed once, and the common ancestor only after both of its subdirectories
+    verify(fs, times(1)).listStatus(new Path(datasetRoot, "a/b"));
+    verify(fs, times(1)).listStatus(new Path(datasetRoot, "a/c"));
+    verify(fs, times(1)).listStatus(new Path(datasetRoot, "a"));
+    verify(fs, times(3)).listStatus(any(Path.class));
+    verify(fs).delete(new Path(datasetRoot, "a"), false);
+    verify(fs, never()).delete(datasetRoot, false);
+  }
+
+  private class DeleteAllRetentionPolicy implements RetentionPolicy<StringDatasetVersion> {
+    @Override
+    public Class<? extends DatasetVersion> versionClass() {
+      return StringDatasetVersion.class;
+    }
+
+    @Override
+    public Collection<StringDatasetVersion> listDeletableVersions(List<StringDatasetVersion> allVersions) {
+      return allVersions;
+    }
+  }
+
   private class DeleteFirstRetentionPolicy implements RetentionPolicy<StringDatasetVersion> {
     @Override
     public Class<? extends DatasetVersion> versionClass() {
@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.data.management.retention;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+import gobblin.data.management.retention.dataset.Dataset;
+import gobblin.data.management.retention.dataset.finder.DatasetFinder;
+import gobblin.metrics.GobblinTrackingEvent;
+import gobblin.metrics.notification.EventNotification;
+import gobblin.metrics.notification.Notification;
+
+
+public class DatasetCleanerTest {
+
+  private FileSystem fs;
+  private Path tmpDir;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    this.fs = FileSystem.getLocal(new Configuration());
+    this.tmpDir = new Path(Files.createTempDir().getAbsolutePath());
+    TestDatasetFinder.datasets.clear();
+    TestDataset.cleaned.clear();
+  }
+
+  @AfterMethod
+  public void tearDown() throws Exception {
+    this.fs.delete(this.tmpDir, true);
+  }
+
+  @Test
+  public void testMostExpensiveDatasetsCleanedFirst() throws Exception {
+    CountDownLatch release = new CountDownLatch(0);
+    TestDatasetFinder.datasets.add(createDataset("small", 1, release));
+    TestDatasetFinder.datasets.add(createDataset("large", 5, release));
+    TestDatasetFinder.datasets.add(createDataset("empty", 0, release));
+    TestDatasetFinder.datasets.add(createDataset("medium", 3, release));
+
+    // A single thread cleans the datasets in the order they are scheduled
+    Properties props = createProps(1);
+    DatasetCleaner cleaner = new DatasetCleaner(this.fs, props);
+    cleaner.clean();
+    cleaner.close();
+    Assert.assertEquals(TestDataset.cleaned, Lists.newArrayList("large", "medium", "small", "empty"));
+
+    // Without cost based scheduling, datasets are cleaned in the order they are found
+    TestDataset.cleaned.clear();
+    props.setProperty(DatasetCleaner.COST_BASED_SCHEDULING_ENABLED_KEY, Boolean.toString(false));
+    cleaner = new DatasetCleaner(this.fs, props);
+    cleaner.clean();
+    cleaner.close();
+    Assert.assertEquals(TestDataset.cleaned, Lists.newArrayList("small", "large", "empty", "medium"));
+  }
+
+  @Test
+  public void testRunningCleansBoundedByConcurrencyLimit() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    for (int i = 0; i < 5; i++) {
+      TestDatasetFinder.datasets.add(createDataset("dataset" + i, i, release));
+    }
+
+    // The adaptive limit starts at the maximum number of datasets cleaned at a time, here lower than the initial limit
+    Properties props = createProps(2);
+    props.setProperty(DatasetCleaner.NAMENODE_TARGET_LATENCY_MILLIS_KEY, "1000000");
+    DatasetCleaner cleaner = new DatasetCleaner(this.fs, props);
+    Assert.assertEquals(cleaner.getConcurrencyLimit().get().getLimit(), 2);
+    try {
+      cleaner.clean();
+      Assert.assertEquals(cleaner.getNumRunningCleans(), 2);
+      Assert.assertEquals(cleaner.getNumPendingCleans(), 3);
+      Assert.assertTrue(TestDataset.cleaned.isEmpty());
+    } finally {
+      release.countDown();
+      cleaner.close();
+    }
+
+    Assert.assertEquals(cleaner.getNumRunningCleans(), 0);
+    Assert.assertEquals(cleaner.getNumPendingCleans(), 0);
+    Assert.assertEquals(TestDataset.cleaned.size(), 5);
+  }
+
+  @Test
+  public void testConcurrencyLimitIncreasesBelowTargetLatency() throws Exception {
+    CountDownLatch release = new CountDownLatch(0);
+    for (int i = 0; i < 5; i++) {
+      TestDatasetFinder.datasets.add(createDataset("dataset" + i, 1, release));
+    }
+
+    Properties props = createProps(20);
+    props.setProperty(DatasetCleaner.NAMENODE_TARGET_LATENCY_MILLIS_KEY, "1000000");
+    DatasetCleaner cleaner = new DatasetCleaner(this.fs, props);
+    Assert.assertEquals(cleaner.getConcurrencyLimit().get().getLimit(), DatasetCleaner.INITIAL_ADAPTIVE_CONCURRENCY);
+    cleaner.clean();
+    cleaner.close();
+
+    // Each finished clean raises the limit by one
+    Assert.assertEquals(cleaner.getConcurrencyLimit().get().getLimit(),
+        DatasetCleaner.INITIAL_ADAPTIVE_CONCURRENCY + 5);
+    Assert.assertEquals(TestDataset.cleaned.size(), 5);
+  }
+
+  @Test
+  public void testConcurrencyLimitDecreasesAboveTargetLatency() throws Exception {
+    CountDownLatch release = new CountDownLatch(0);
+    for (int i = 0; i < 5; i++) {
+      TestDatasetFinder.datasets.add(createDataset("dataset" + i, 1, release));
+    }
+
+    // Any listing made to estimate costs is slower than the target latency
+    Properties props = createProps(20);
+    props.setProperty(DatasetCleaner.NAMENODE_TARGET_LATENCY_MILLIS_KEY, "0.0000001");
+    DatasetCleaner cleaner = new DatasetCleaner(this.fs, props);
+    cleaner.clean();
+    cleaner.close();
+
+    // The first finished clean halves the limit, which is not decreased again by the following four
+    Assert.assertEquals(cleaner.getConcurrencyLimit().get().getLimit(),
+        DatasetCleaner.INITIAL_ADAPTIVE_CONCURRENCY / 2);
+    Assert.assertEquals(TestDataset.cleaned.size(), 5);
+  }
+
+  @Test
+  public void testCleanedEventPerDataset() throws Exception {
+    CountDownLatch release = new CountDownLatch(0);
+    TestDatasetFinder.datasets.add(createDataset("small", 1, release));
+    TestDatasetFinder.datasets.add(createDataset("large", 3, release));
+
+    DatasetCleaner cleaner = new DatasetCleaner(this.fs, createProps(1));
+    final List<GobblinTrackingEvent> events = Collections.synchronizedList(Lists.<GobblinTrackingEvent> newArrayList());
+    cleaner.getMetricContext().addNotificationTarget(new Function<Notification, Void>() {
+      @Override
+      public Void apply(Notification notification) {
+        if (notification instanceof EventNotification) {
+          events.add(((EventNotification) notification).getEvent());
+        }
+        return null;
+      }
+    });
+    cleaner.clean();
+    cleaner.close();
+
+    Assert.assertEquals(events.size(), 2);
+    for (GobblinTrackingEvent event : events) {
+      Assert.assertEquals(event.getName(), DatasetCleaner.DatasetCleanerMetrics.DATASET_CLEANED_EVENT);
+      Map<String, String> metadata = event.getMetadata();
+      String name = new Path(metadata.get(DatasetCleaner.DatasetCleanerMetrics.DATASET_ROOT)).getName();
+      Assert.assertEquals(metadata.get(DatasetCleaner.DatasetCleanerMetrics.ESTIMATED_COST),
+          name.equals("large") ? "3" : "1");
+      Assert.assertTrue(Long.parseLong(metadata.get(DatasetCleaner.DatasetCleanerMetrics.DURATION_MILLIS)) >= 0);
+      Assert.assertEquals(metadata.get(DatasetCleaner.DatasetCleanerMetrics.SUCCESSFUL), Boolean.toString(true));
+    }
+    // No metric is registered per dataset
+    for (String metric : cleaner.getMetricContext().getMetrics().keySet()) {
+      Assert.assertFalse(metric.contains(this.tmpDir.getName()), metric);
+    }
+  }
+
+  private Properties createProps(int maxConcurrentDatasets) {
+    Properties props = new Properties();
+    props.setProperty(DatasetCleaner.DATASET_PROFILE_CLASS_KEY, TestDatasetFinder.class.getName());
+    props.setProperty(DatasetCleaner.MAX_CONCURRENT_DATASETS_CLEANED, Integer.toString(maxConcurrentDatasets));
+    return props;
+  }
+
+  /**
+   * Create a dataset with the given number of paths under its root, whose clean waits for the latch.
+   */
+  private TestDataset createDataset(String name, int numPaths, CountDownLatch release) throws IOException {
+    Path root = new Path(this.tmpDir, name);
+    this.fs.mkdirs(root);
+    for (int i = 0; i < numPaths; i++) {
+      this.fs.mkdirs(new Path(root, "path" + i));
+    }
+    return new TestDataset(name, root, release);
+  }
+
+  public static class TestDatasetFinder implements DatasetFinder {
+
+    static final List<Dataset> datasets = Collections.synchronizedList(Lists.<Dataset> newArrayList());
+
+    public TestDatasetFinder(FileSystem fs, Properties props) {
+    }
+
+    @Override
+    public List<Dataset> findDatasets() throws IOException {
+      return Lists.newArrayList(datasets);
+    }
+  }
+
+  private static class TestDataset implements Dataset {
+
+    static final List<String> cleaned = Collections.synchronizedList(Lists.<String> newArrayList());
+
+    private final String name;
+    private final Path root;
+    private final CountDownLatch release;
+
+    private TestDataset(String name, Path root, CountDownLatch release) {
+      this.name = name;
+      this.root = root;
+      this.release = release;
+    }
+
+    @Override
+    public void clean() throws IOException {
+      try {
+        this.release.await();
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        throw new IOException(ie);
+      }
+      cleaned.add(this.name);
+    }
+
+    @Override
+    public Path datasetRoot() {
+      return this.root;
+    }
+  }
+}
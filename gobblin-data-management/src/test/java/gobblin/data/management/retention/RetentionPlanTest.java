@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.data.management.retention;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+
+public class RetentionPlanTest {
+
+  @Test
+  public void testWriteAndRead() throws Exception {
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+    Path tmpDir = new Path(Files.createTempDir().getAbsolutePath());
+    try {
+      Path planPath = new Path(tmpDir, "retention.plan");
+
+      Path datasetRoot1 = new Path("/data/tracking/PageViewEvent");
+      Path datasetRoot2 = new Path("/data/databases/Member");
+      RetentionPlan plan = new RetentionPlan(Lists.newArrayList(
+          new RetentionPlan.DatasetPlan(datasetRoot1, Lists.newArrayList(
+              new RetentionPlan.PlannedDeletion(new Path(datasetRoot1, "2015/06/01"), 1024, 4, 1),
+              new RetentionPlan.PlannedDeletion(new Path(datasetRoot1, "2015/06/02"), 2048, 8, 1)), 6),
+          new RetentionPlan.DatasetPlan(datasetRoot2, Lists.newArrayList(
+              new RetentionPlan.PlannedDeletion(datasetRoot2, 100, 1, 1)), 2)));
+      plan.write(fs, planPath);
+
+      RetentionPlan readPlan = RetentionPlan.read(fs, planPath);
+      Assert.assertEquals(readPlan.getCreationTime(), plan.getCreationTime());
+      Assert.assertEquals(readPlan.getDatasetPlans().size(), 2);
+      Assert.assertEquals(readPlan.getPaths(), 3);
+      Assert.assertEquals(readPlan.getBytes(), 3172);
+      Assert.assertEquals(readPlan.getFiles(), 13);
+      Assert.assertEquals(readPlan.getExpectedRpcs(), 8);
+
+      RetentionPlan.DatasetPlan datasetPlan = readPlan.getDatasetPlans().get(0);
+      Assert.assertEquals(datasetPlan.getDatasetRoot(), datasetRoot1);
+      Assert.assertEquals(datasetPlan.getPaths(),
+          Lists.newArrayList(new Path(datasetRoot1, "2015/06/01"), new Path(datasetRoot1, "2015/06/02")));
+      Assert.assertEquals(datasetPlan.getDeletions().get(1).getBytes(), 2048);
+      Assert.assertEquals(datasetPlan.getDeletions().get(1).getFiles(), 8);
+      Assert.assertEquals(datasetPlan.getDeletions().get(1).getDirectories(), 1);
+
+      // A deletion of the dataset root itself
+      Assert.assertEquals(readPlan.getDatasetPlans().get(1).getPaths(), Lists.newArrayList(datasetRoot2));
+    } finally {
+      fs.delete(tmpDir, true);
+    }
+  }
+}
@@ -14,12 +14,16 @@ package gobblin.data.management.trash;
 
 import junit.framework.Assert;
 
+import java.io.IOException;
 import java.util.Properties;
 
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.testng.annotations.Test;
 
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+
 import static org.mockito.Mockito.*;
 
 public class AsyncTrashTest {
@@ -70,4 +74,91 @@ public class AsyncTrashTest {
     Assert.assertEquals(((TestTrash) trash.getDecoratedObject()).getDeleteOperations().size(), 10);
 
   }
+
+  @Test public void testBackpressureAndFlush() throws Exception {
+
+    Properties properties = TestTrash.propertiesForTestTrash();
+    TestTrash.simulateDelay(properties, 1);
+    properties.setProperty(AsyncTrash.MAX_PENDING_OPERATIONS_KEY, "2");
+
+    final AsyncTrash trash = new AsyncTrash(mock(FileSystem.class), properties);
+    TestTrash testTrash = (TestTrash) trash.getDecoratedObject();
+
+    ListenableFuture<AsyncTrash.BatchResult> batch =
+        trash.moveToTrashBatch(Lists.newArrayList(new Path("file0"), new Path("file1")));
+
+    Thread thread = new Thread(new Runnable() {
+      @Override public void run() {
+        trash.moveToTrashFuture(new Path("file2"));
+      }
+    });
+    thread.start();
+
+    // The third operation cannot be scheduled while the first two are pending
+    Thread.sleep(100);
+    Assert.assertTrue(thread.isAlive());
+
+    for(int i = 0; i < 50 && testTrash.getDeleteOperations().size() < 3; i++) {
+      testTrash.tick();
+      Thread.sleep(20);
+    }
+    thread.join();
+    trash.flush();
+
+    AsyncTrash.BatchResult result = batch.get();
+    Assert.assertTrue(result.isSuccessful());
+    Assert.assertEquals(result.getMovedPaths().size(), 2);
+    Assert.assertEquals(testTrash.getDeleteOperations().size(), 3);
+    Assert.assertEquals(trash.getSucceededOperations(), 3);
+    Assert.assertEquals(trash.getFailedOperations(), 0);
+
+    trash.close();
+  }
+
+  @Test public void testFlushOnlyWaitsForEarlierOperations() throws Exception {
+
+    Properties properties = TestTrash.propertiesForTestTrash();
+    TestTrash.simulateDelay(properties, 2);
+
+    final AsyncTrash trash = new AsyncTrash(mock(FileSystem.class), properties);
+    TestTrash testTrash = (TestTrash) trash.getDecoratedObject();
+
+    trash.moveToTrashFuture(new Path("file0"));
+    waitForOperationsWaiting(testTrash, 1);
+
+    Thread thread = new Thread(new Runnable() {
+      @Override public void run() {
+        try {
+          trash.flush();
+        } catch (IOException ioe) {
+          throw new RuntimeException(ioe);
+        }
+      }
+    });
+    thread.start();
+    Thread.sleep(100);
+    testTrash.tick();
+
+    // An operation scheduled while flushing is not waited for
+    ListenableFuture<Boolean> future = trash.moveToTrashFuture(new Path("file1"));
+    waitForOperationsWaiting(testTrash, 2);
+    testTrash.tick();
+    thread.join(5000);
+    Assert.assertFalse(thread.isAlive());
+    Assert.assertFalse(future.isDone());
+    Assert.assertEquals(testTrash.getDeleteOperations().size(), 1);
+
+    testTrash.tick();
+    trash.flush();
+    Assert.assertTrue(future.get());
+    Assert.assertEquals(testTrash.getDeleteOperations().size(), 2);
+
+    trash.close();
+  }
+
+  private static void waitForOperationsWaiting(TestTrash testTrash, long operations) throws InterruptedException {
+    for(int i = 0; i < 50 && testTrash.getOperationsWaiting() < operations; i++) {
+      Thread.sleep(20);
+    }
+  }
 }
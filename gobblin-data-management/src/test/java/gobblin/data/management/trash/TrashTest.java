@@ -13,11 +13,19 @@
 package gobblin.data.management.trash;
 
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.PathFilter;
 import org.apache.hadoop.fs.permission.FsAction;
@@ -32,7 +40,11 @@ import org.testng.Assert;
 import org.testng.annotations.Test;
 import org.testng.internal.collections.Pair;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
 
 import static org.mockito.Mockito.*;
 
@@ -127,6 +139,9 @@ public class TrashTest {
     when(trash.fs.listStatus(eq(trash.trash.getTrashLocation()), any(PathFilter.class))).
         thenReturn(Lists.newArrayList(new FileStatus(0, true, 0, 0, 0, pathInTrash)).toArray(new FileStatus[]{}));
     when(trash.fs.exists(any(Path.class))).thenReturn(false);
+    when(trash.fs.create(any(Path.class), anyBoolean())).thenReturn(
+        new FSDataOutputStream(new ByteArrayOutputStream(), null));
+    when(trash.fs.delete(any(Path.class), anyBoolean())).thenReturn(true);
     when(trash.fs.mkdirs(any(Path.class), any(FsPermission.class))).thenAnswer(new Answer<Boolean>() {
       @Override
       public Boolean answer(InvocationOnMock invocation)
@@ -155,11 +170,144 @@ public class TrashTest {
     Assert.assertTrue(movedPaths.get(0).first().equals(pathInTrash));
     Assert.assertTrue(movedPaths.get(0).second().getName().equals(pathInTrash.getName()));
     Assert.assertTrue(movedPaths.get(0).second().getParent().equals(createdDir));
+    verify(trash.fs).create(new Path(createdDir, Trash.TRASH_SNAPSHOT_MANIFEST_FILE), true);
+    verify(trash.fs).delete(new Path(createdDir, Trash.TRASH_SNAPSHOT_MANIFEST_FILE), false);
 
     DateTimeUtils.setCurrentMillisSystem();
 
   }
 
+  @Test
+  public void testResumeSnapshot() throws IOException {
+
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+    Path tmpDir = new Path(Files.createTempDir().getAbsolutePath());
+
+    try {
+      Properties properties = new Properties();
+      properties.setProperty(Trash.TRASH_LOCATION_KEY, new Path(tmpDir, "trash").toString());
+      properties.setProperty(Trash.SNAPSHOT_PARALLELISM_KEY, "2");
+      Trash trash = new Trash(fs, properties);
+      Path trashLocation = trash.getTrashLocation();
+
+      // A snapshot interrupted after moving "moved", before moving "notMoved"
+      Path interruptedSnapshot = createInterruptedSnapshot(fs, trashLocation, "moved", "notMoved");
+      fs.mkdirs(new Path(interruptedSnapshot, "moved"));
+      createPathInTrash(fs, new Path(trashLocation, "notMoved"), 2);
+      // Moved to trash after the interrupted snapshot
+      fs.mkdirs(new Path(trashLocation, "newPath"));
+
+      trash.createTrashSnapshot();
+
+      Assert.assertFalse(fs.exists(new Path(interruptedSnapshot, Trash.TRASH_SNAPSHOT_MANIFEST_FILE)));
+      Assert.assertTrue(fs.exists(new Path(interruptedSnapshot, "moved")));
+      Assert.assertTrue(fs.exists(new Path(interruptedSnapshot, "notMoved")));
+      Assert.assertFalse(fs.exists(new Path(interruptedSnapshot, "newPath")));
+
+      FileStatus[] snapshots = fs.listStatus(trashLocation, Trash.TRASH_SNAPSHOT_PATH_FILTER);
+      Assert.assertEquals(snapshots.length, 2);
+      Path newSnapshot = snapshots[0].getPath().getName().equals(interruptedSnapshot.getName()) ?
+          snapshots[1].getPath() : snapshots[0].getPath();
+      Assert.assertTrue(fs.exists(new Path(newSnapshot, "newPath")));
+      Assert.assertFalse(fs.exists(new Path(newSnapshot, Trash.TRASH_SNAPSHOT_MANIFEST_FILE)));
+      Assert.assertEquals(fs.listStatus(trashLocation, Trash.TRASH_NOT_SNAPSHOT_PATH_FILTER).length, 0);
+    } finally {
+      fs.delete(tmpDir, true);
+    }
+
+  }
+
+  @Test
+  public void testResumeSnapshotWithRecreatedPaths() throws IOException {
+
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+    Path tmpDir = new Path(Files.createTempDir().getAbsolutePath());
+
+    try {
+      Properties properties = new Properties();
+      properties.setProperty(Trash.TRASH_LOCATION_KEY, new Path(tmpDir, "trash").toString());
+      Trash trash = new Trash(fs, properties);
+      Path trashLocation = trash.getTrashLocation();
+
+      // A snapshot interrupted after moving "moved", before moving "notMoved" and "recreated"
+      Path interruptedSnapshot = createInterruptedSnapshot(fs, trashLocation, "moved", "notMoved", "recreated");
+      fs.mkdirs(new Path(interruptedSnapshot, "moved", "old"));
+      createPathInTrash(fs, new Path(trashLocation, "notMoved"), 2);
+      // Paths of the same names moved to trash again after the interrupted snapshot. Only the one already in the
+      // interrupted snapshot can be told apart by name, the other one by its modification time.
+      fs.mkdirs(new Path(trashLocation, "moved/new"));
+      createPathInTrash(fs, new Path(trashLocation, "moved"), 2);
+      fs.mkdirs(new Path(trashLocation, "recreated"));
+
+      trash.createTrashSnapshot();
+
+      Assert.assertFalse(fs.exists(new Path(interruptedSnapshot, Trash.TRASH_SNAPSHOT_MANIFEST_FILE)));
+      Assert.assertTrue(fs.exists(new Path(interruptedSnapshot, "moved/old")));
+      Assert.assertFalse(fs.exists(new Path(interruptedSnapshot, "moved/moved")));
+      Assert.assertFalse(fs.exists(new Path(interruptedSnapshot, "moved/new")));
+      Assert.assertTrue(fs.exists(new Path(interruptedSnapshot, "notMoved")));
+      Assert.assertFalse(fs.exists(new Path(interruptedSnapshot, "recreated")));
+
+      FileStatus[] snapshots = fs.listStatus(trashLocation, Trash.TRASH_SNAPSHOT_PATH_FILTER);
+      Assert.assertEquals(snapshots.length, 2);
+      Path newSnapshot = snapshots[0].getPath().getName().equals(interruptedSnapshot.getName()) ?
+          snapshots[1].getPath() : snapshots[0].getPath();
+      Assert.assertTrue(fs.exists(new Path(newSnapshot, "moved/new")));
+      Assert.assertTrue(fs.exists(new Path(newSnapshot, "recreated")));
+      Assert.assertFalse(fs.exists(new Path(newSnapshot, "notMoved")));
+      Assert.assertEquals(fs.listStatus(trashLocation, Trash.TRASH_NOT_SNAPSHOT_PATH_FILTER).length, 0);
+    } finally {
+      fs.delete(tmpDir, true);
+    }
+
+  }
+
+  @Test
+  public void testResumeSnapshotWithFileIds() throws IOException {
+
+    FileSystem fs = FileSystem.getLocal(new Configuration());
+    Path tmpDir = new Path(Files.createTempDir().getAbsolutePath());
+
+    try {
+      Properties properties = new Properties();
+      properties.setProperty(Trash.TRASH_LOCATION_KEY, new Path(tmpDir, "trash").toString());
+      // File IDs by name, since the local file system does not expose them
+      final Map<String, Long> fileIds = Maps.newHashMap();
+      Trash trash = new Trash(fs, properties, "user") {
+        @Override
+        protected Optional<Long> getFileId(Path path) {
+          return Optional.fromNullable(fileIds.get(path.getName()));
+        }
+      };
+      Path trashLocation = trash.getTrashLocation();
+
+      // A snapshot interrupted before moving "notMoved" and "recreated"
+      Path interruptedSnapshot = createInterruptedSnapshot(fs, trashLocation, "notMoved\t1", "recreated\t2");
+      createPathInTrash(fs, new Path(trashLocation, "notMoved"), 2);
+      fileIds.put("notMoved", 1L);
+      // A path of the same name moved to trash again after the interrupted snapshot. A rename keeps its modification
+      // time, so only its file ID tells it apart.
+      createPathInTrash(fs, new Path(trashLocation, "recreated"), 2);
+      fileIds.put("recreated", 3L);
+
+      trash.createTrashSnapshot();
+
+      Assert.assertFalse(fs.exists(new Path(interruptedSnapshot, Trash.TRASH_SNAPSHOT_MANIFEST_FILE)));
+      Assert.assertTrue(fs.exists(new Path(interruptedSnapshot, "notMoved")));
+      Assert.assertFalse(fs.exists(new Path(interruptedSnapshot, "recreated")));
+
+      FileStatus[] snapshots = fs.listStatus(trashLocation, Trash.TRASH_SNAPSHOT_PATH_FILTER);
+      Assert.assertEquals(snapshots.length, 2);
+      Path newSnapshot = snapshots[0].getPath().getName().equals(interruptedSnapshot.getName()) ?
+          snapshots[1].getPath() : snapshots[0].getPath();
+      Assert.assertTrue(fs.exists(new Path(newSnapshot, "recreated")));
+      Assert.assertEquals(fs.listStatus(trashLocation, Trash.TRASH_NOT_SNAPSHOT_PATH_FILTER).length, 0);
+    } finally {
+      fs.delete(tmpDir, true);
+    }
+
+  }
+
   @Test
   public void testPurgeSnapshots() throws IOException {
 
@@ -200,4 +348,29 @@ public class TrashTest {
 
   }
 
+  /**
+   * Create a snapshot of a day ago whose manifest, written an hour ago, has the given lines, i.e., names optionally
+   * followed by a tab and a file ID.
+   */
+  private Path createInterruptedSnapshot(FileSystem fs, Path trashLocation, String... lines) throws IOException {
+    Path snapshot = new Path(trashLocation, Trash.TRASH_SNAPSHOT_NAME_FORMATTER.print(new DateTime().minusDays(1)));
+    Path manifest = new Path(snapshot, Trash.TRASH_SNAPSHOT_MANIFEST_FILE);
+    Writer writer = new OutputStreamWriter(fs.create(manifest), Charsets.UTF_8);
+    for (String line : lines) {
+      writer.write(line + "\n");
+    }
+    writer.close();
+    Assert.assertTrue(new File(manifest.toUri().getPath()).setLastModified(
+        new DateTime().minusHours(1).getMillis()));
+    return snapshot;
+  }
+
+  /**
+   * Create a directory in trash, last modified the given number of hours ago.
+   */
+  private void createPathInTrash(FileSystem fs, Path path, int hoursAgo) throws IOException {
+    fs.mkdirs(path);
+    Assert.assertTrue(new File(path.toUri().getPath()).setLastModified(
+        new DateTime().minusHours(hoursAgo).getMillis()));
+  }
 }
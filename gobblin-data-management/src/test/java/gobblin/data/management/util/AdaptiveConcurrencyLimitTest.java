@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.data.management.util;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+public class AdaptiveConcurrencyLimitTest {
+
+  @Test
+  public void testAdditiveIncreaseMultiplicativeDecrease() throws Exception {
+    AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(4, 1, 6, 100);
+    Assert.assertEquals(limit.getLimit(), 4);
+
+    Assert.assertEquals(limit.update(50), 5);
+    Assert.assertEquals(limit.update(50), 6);
+    // Never above the maximum
+    Assert.assertEquals(limit.update(50), 6);
+
+    Assert.assertEquals(limit.update(200), 3);
+    // Not decreased again until as many updates as the limit were observed
+    Assert.assertEquals(limit.update(200), 3);
+    Assert.assertEquals(limit.update(200), 3);
+    Assert.assertEquals(limit.update(200), 1);
+    // Never below the minimum
+    Assert.assertEquals(limit.update(200), 1);
+
+    Assert.assertEquals(limit.update(100), 2);
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testInvalidLimits() throws Exception {
+    new AdaptiveConcurrencyLimit(1, 2, 1, 100);
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.data.management.util;
+
+import java.io.FileNotFoundException;
+import java.util.List;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Lists;
+
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+public class FileSystemListingCacheTest {
+
+  private FileSystem fs;
+  private FileSystemListingCache cache;
+
+  @BeforeMethod
+  public void setUp() throws Exception {
+    this.fs = mock(FileSystem.class);
+    this.cache = new FileSystemListingCache();
+
+    when(this.fs.listStatus(new Path("/data"))).thenReturn(new FileStatus[] { directory("/data/ds1"),
+        directory("/data/ds2"), file("/data/README") });
+    when(this.fs.listStatus(new Path("/data/ds1"))).thenReturn(new FileStatus[] { directory("/data/ds1/2015") });
+    when(this.fs.listStatus(new Path("/data/ds2"))).thenReturn(new FileStatus[] { directory("/data/ds2/2015") });
+    when(this.fs.listStatus(new Path("/data/ds1/2015"))).thenReturn(new FileStatus[] {
+        directory("/data/ds1/2015/01"), directory("/data/ds1/2015/02") });
+    when(this.fs.listStatus(new Path("/data/ds2/2015"))).thenReturn(new FileStatus[] {
+        directory("/data/ds2/2015/01") });
+  }
+
+  @Test
+  public void testGlobListsEachDirectoryOnce() throws Exception {
+    Assert.assertEquals(getPaths(this.cache.globStatus(this.fs, new Path("/data/*"))),
+        Lists.newArrayList("/data/ds1", "/data/ds2", "/data/README"));
+    Assert.assertEquals(getPaths(this.cache.globStatus(this.fs, new Path("/data/ds{1,2}/2015/*"))),
+        Lists.newArrayList("/data/ds1/2015/01", "/data/ds1/2015/02", "/data/ds2/2015/01"));
+    Assert.assertEquals(getPaths(this.cache.globStatus(this.fs, new Path("/data/ds1/2015/0[!1]"))),
+        Lists.newArrayList("/data/ds1/2015/02"));
+
+    verify(this.fs, times(1)).listStatus(new Path("/data"));
+    verify(this.fs, times(1)).listStatus(new Path("/data/ds1/2015"));
+    verify(this.fs, times(1)).listStatus(new Path("/data/ds2/2015"));
+    // Literal components are not listed
+    verify(this.fs, never()).listStatus(new Path("/data/ds1"));
+    verify(this.fs, never()).getFileStatus(any(Path.class));
+    verify(this.fs, never()).globStatus(any(Path.class));
+    Assert.assertEquals(this.cache.getListCalls(), 3);
+  }
+
+  @Test
+  public void testGetFileStatusFromListing() throws Exception {
+    this.cache.listStatus(this.fs, new Path("/data/ds1/2015"));
+
+    Assert.assertEquals(this.cache.getFileStatus(this.fs, new Path("/data/ds1/2015/01")).getPath(),
+        new Path("/data/ds1/2015/01"));
+    Assert.assertFalse(this.cache.exists(this.fs, new Path("/data/ds1/2015/03")));
+    verify(this.fs, never()).getFileStatus(any(Path.class));
+
+    // A literal pattern for a missing path matches nothing
+    Assert.assertNull(this.cache.globStatus(this.fs, new Path("/data/ds1/2015/03")));
+  }
+
+  @Test
+  public void testInvalidate() throws Exception {
+    this.cache.globStatus(this.fs, new Path("/data/*/2015/*"));
+    when(this.fs.listStatus(new Path("/data/ds1/2015"))).thenReturn(new FileStatus[] {
+        directory("/data/ds1/2015/02") });
+
+    this.cache.invalidate(new Path("/data/ds1/2015/01"));
+    Assert.assertFalse(this.cache.exists(this.fs, new Path("/data/ds1/2015/01")));
+    Assert.assertEquals(this.cache.listStatus(this.fs, new Path("/data/ds1/2015")).length, 1);
+    verify(this.fs, times(2)).listStatus(new Path("/data/ds1/2015"));
+
+    // Listings outside of the invalidated path are kept
+    Assert.assertTrue(this.cache.exists(this.fs, new Path("/data/ds2/2015/01")));
+    verify(this.fs, times(1)).listStatus(new Path("/data/ds2/2015"));
+
+    // Invalidating a directory drops the listings under it
+    this.cache.invalidate(new Path("/data/ds2"));
+    this.cache.listStatus(this.fs, new Path("/data/ds2/2015"));
+    verify(this.fs, times(2)).listStatus(new Path("/data/ds2/2015"));
+  }
+
+  @Test(expectedExceptions = FileNotFoundException.class)
+  public void testListMissingDirectory() throws Exception {
+    this.cache.listStatus(this.fs, new Path("/data/ds3"));
+  }
+
+  @Test
+  public void testCompileGlob() throws Exception {
+    Assert.assertTrue(FileSystemListingCache.compileGlob("*.avro").matcher("part-0.avro").matches());
+    Assert.assertFalse(FileSystemListingCache.compileGlob("*.avro").matcher("part-0.avroX").matches());
+    Assert.assertTrue(FileSystemListingCache.compileGlob("201?").matcher("2015").matches());
+    Assert.assertTrue(FileSystemListingCache.compileGlob("{hourly,daily}").matcher("daily").matches());
+    Assert.assertTrue(FileSystemListingCache.compileGlob("[0-9][0-9]").matcher("07").matches());
+    Assert.assertFalse(FileSystemListingCache.compileGlob("[!0]1").matcher("01").matches());
+    Assert.assertTrue(FileSystemListingCache.compileGlob("a\\*b").matcher("a*b").matches());
+    Assert.assertFalse(FileSystemListingCache.compileGlob("a\\*b").matcher("axb").matches());
+  }
+
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testCompileGlobWithUnclosedAlternation() throws Exception {
+    FileSystemListingCache.compileGlob("{a,b");
+  }
+
+  private static List<String> getPaths(FileStatus[] statuses) {
+    List<String> paths = Lists.newArrayList();
+    for (FileStatus status : statuses) {
+      paths.add(status.getPath().toString());
+    }
+    return paths;
+  }
+
+  private static FileStatus directory(String path) {
+    return new FileStatus(0, true, 0, 0, 0, new Path(path));
+  }
+
+  private static FileStatus file(String path) {
+    return new FileStatus(10, false, 1, 10, 0, new Path(path));
+  }
+}
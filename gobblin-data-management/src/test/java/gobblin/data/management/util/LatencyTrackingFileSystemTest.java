@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.data.management.util;
+
+import java.io.FileNotFoundException;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+public class LatencyTrackingFileSystemTest {
+
+  @Test
+  public void testMovingAverageLatency() throws Exception {
+    FileSystem fs = mock(FileSystem.class);
+    when(fs.listStatus(new Path("/slow"))).thenAnswer(new Answer<FileStatus[]>() {
+      @Override
+      public FileStatus[] answer(InvocationOnMock invocation) throws Throwable {
+        Thread.sleep(100);
+        return new FileStatus[0];
+      }
+    });
+    when(fs.listStatus(new Path("/fast"))).thenReturn(new FileStatus[0]);
+
+    LatencyTrackingFileSystem latencyTracker = new LatencyTrackingFileSystem(fs);
+    Assert.assertEquals(latencyTracker.getCalls(), 0);
+    Assert.assertEquals(latencyTracker.getAverageLatencyMillis(), 0.0);
+
+    // The first call sets the average
+    latencyTracker.listStatus(new Path("/slow"));
+    verify(fs).listStatus(new Path("/slow"));
+    Assert.assertEquals(latencyTracker.getCalls(), 1);
+    double slowLatency = latencyTracker.getAverageLatencyMillis();
+    Assert.assertTrue(slowLatency >= 100, "Average latency " + slowLatency);
+
+    // Following calls only move it by a fraction of their difference
+    latencyTracker.listStatus(new Path("/fast"));
+    Assert.assertEquals(latencyTracker.getCalls(), 2);
+    double averageLatency = latencyTracker.getAverageLatencyMillis();
+    Assert.assertTrue(averageLatency < slowLatency, "Average latency " + averageLatency);
+    Assert.assertTrue(averageLatency >= 0.9 * slowLatency, "Average latency " + averageLatency);
+  }
+
+  @Test
+  public void testFailedCallsTracked() throws Exception {
+    FileSystem fs = mock(FileSystem.class);
+    when(fs.getFileStatus(new Path("/missing"))).thenThrow(new FileNotFoundException());
+
+    LatencyTrackingFileSystem latencyTracker = new LatencyTrackingFileSystem(fs);
+    try {
+      latencyTracker.getFileStatus(new Path("/missing"));
+      Assert.fail("Expected FileNotFoundException");
+    } catch (FileNotFoundException fnfe) {
+      // Expected
+    }
+    Assert.assertEquals(latencyTracker.getCalls(), 1);
+  }
+
+  @Test
+  public void testGetLatencyTracker() throws Exception {
+    FileSystem fs = mock(FileSystem.class);
+    Assert.assertFalse(LatencyTrackingFileSystem.getLatencyTracker(fs).isPresent());
+
+    LatencyTrackingFileSystem latencyTracker = new LatencyTrackingFileSystem(fs);
+    Assert.assertSame(LatencyTrackingFileSystem.getLatencyTracker(latencyTracker).get(), latencyTracker);
+
+    // Found below other decorators
+    FileSystem listingCachedFs = new ListingCachedFileSystem(latencyTracker, new FileSystemListingCache());
+    Assert.assertSame(LatencyTrackingFileSystem.getLatencyTracker(listingCachedFs).get(), latencyTracker);
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.metastore;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import gobblin.rest.JobExecutionInfo;
+import gobblin.rest.JobExecutionQuery;
+
+
+/**
+ * A {@link JobHistoryStore} decorator that writes {@link JobExecutionInfo} records to the underlying
+ * {@link JobHistoryStore} asynchronously.
+ *
+ * <p>
+ *   {@link #put(JobExecutionInfo)} enqueues the record and returns immediately. A record for a job ID that is
+ *   still waiting to be written replaces the earlier one, since each record is a complete snapshot of the job
+ *   execution. A background thread writes all waiting records whenever there are any. At most
+ *   {@code maxPendingRecords} records are waiting at any time; {@link #put(JobExecutionInfo)} blocks when the
+ *   limit is reached until the background thread catches up.
+ * </p>
+ *
+ * <p>
+ *   {@link #get(JobExecutionQuery)} is served by the underlying {@link JobHistoryStore} and does not see records
+ *   that are still waiting to be written; call {@link #flush()} first if that is needed. {@link #close()} writes
+ *   all waiting records before closing the underlying {@link JobHistoryStore}.
+ * </p>
+ */
+public class AsyncJobHistoryStore implements JobHistoryStore {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AsyncJobHistoryStore.class);
+
+  private final JobHistoryStore jobHistoryStore;
+  private final int maxPendingRecords;
+
+  private final Lock lock = new ReentrantLock();
+  private final Condition recordsPending = this.lock.newCondition();
+  private final Condition recordsWritten = this.lock.newCondition();
+
+  // Records waiting to be written, keyed by job ID. Guarded by lock.
+  private final Map<String, JobExecutionInfo> pendingRecords = Maps.newLinkedHashMap();
+  // Sequence number of the last record put, and of the last record written (or failed to be written).
+  private long putSequence = 0;
+  private long writtenSequence = 0;
+  private boolean closed = false;
+
+  private final Thread writerThread;
+
+  public AsyncJobHistoryStore(JobHistoryStore jobHistoryStore, int maxPendingRecords) {
+    Preconditions.checkArgument(maxPendingRecords > 0, "Max number of pending records must be positive");
+    this.jobHistoryStore = jobHistoryStore;
+    this.maxPendingRecords = maxPendingRecords;
+    this.writerThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        writeRecords();
+      }
+    }, AsyncJobHistoryStore.class.getSimpleName());
+    this.writerThread.setDaemon(true);
+    this.writerThread.start();
+  }
+
+  @Override
+  public void put(JobExecutionInfo jobExecutionInfo)
+      throws IOException {
+    Preconditions.checkArgument(jobExecutionInfo.hasJobId());
+
+    this.lock.lock();
+    try {
+      while (!this.closed && this.pendingRecords.size() >= this.maxPendingRecords
+          && !this.pendingRecords.containsKey(jobExecutionInfo.getJobId())) {
+        this.recordsWritten.await();
+      }
+      if (this.closed) {
+        throw new IOException("The job history store has been closed");
+      }
+      this.pendingRecords.put(jobExecutionInfo.getJobId(), jobExecutionInfo);
+      this.putSequence++;
+      this.recordsPending.signal();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting to put a job execution information record", ie);
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public List<JobExecutionInfo> get(JobExecutionQuery query)
+      throws IOException {
+    return this.jobHistoryStore.get(query);
+  }
+
+  /**
+   * Wait until all records put before this call have been written to the underlying {@link JobHistoryStore}.
+   */
+  public void flush()
+      throws IOException {
+    this.lock.lock();
+    try {
+      long sequence = this.putSequence;
+      while (this.writtenSequence < sequence) {
+        this.recordsWritten.await();
+      }
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while flushing job execution information records", ie);
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public void close()
+      throws IOException {
+    this.lock.lock();
+    try {
+      this.closed = true;
+      this.recordsPending.signal();
+      this.recordsWritten.signalAll();
+    } finally {
+      this.lock.unlock();
+    }
+
+    try {
+      this.writerThread.join();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for job execution information records to be written", ie);
+    } finally {
+      this.jobHistoryStore.close();
+    }
+  }
+
+  private void writeRecords() {
+    while (true) {
+      List<JobExecutionInfo> records;
+      long sequence;
+
+      this.lock.lock();
+      try {
+        while (this.pendingRecords.isEmpty() && !this.closed) {
+          this.recordsPending.awaitUninterruptibly();
+        }
+        if (this.pendingRecords.isEmpty()) {
+          return;
+        }
+        records = Lists.newArrayList(this.pendingRecords.values());
+        this.pendingRecords.clear();
+        sequence = this.putSequence;
+      } finally {
+        this.lock.unlock();
+      }
+
+      for (JobExecutionInfo record : records) {
+        try {
+          this.jobHistoryStore.put(record);
+        } catch (Throwable t) {
+          LOGGER.error("Failed to write job execution information of job " + record.getJobId(), t);
+        }
+      }
+
+      this.lock.lock();
+      try {
+        this.writtenSequence = sequence;
+        this.recordsWritten.signalAll();
+      } finally {
+        this.lock.unlock();
+      }
+    }
+  }
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.metastore;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import gobblin.rest.JobExecutionInfo;
+import gobblin.rest.JobExecutionQuery;
+import gobblin.rest.JobStateEnum;
+import gobblin.rest.QueryIdTypeEnum;
+
+
+/**
+ * A {@link JobHistoryStore} decorator that caches the results of queries for finished job executions.
+ *
+ * <p>
+ *   Two kinds of queries are cached, each in a size-bounded cache with least-recently-used eviction:
+ *   <ul>
+ *     <li>Queries by job ID. Once a job execution has finished, its record does not change any more, so entries
+ *     do not expire.</li>
+ *     <li>Queries by job name for the latest job executions, i.e., without a time range or a cursor. A new
+ *     job execution changes the result, so entries of a job name are invalidated when a record of the job name is
+ *     put through this {@link JobHistoryStore}. Since job executions are usually recorded by other processes, e.g.,
+ *     when serving the REST API, a cached result is only used if the latest job execution of the job name, which
+ *     is queried without any details, is still its first job execution. Entries also expire after a configurable
+ *     time.</li>
+ *   </ul>
+ *   Only results where all job executions have finished are cached. Cached records are made read-only. Other
+ *   queries are always served by the underlying {@link JobHistoryStore}.
+ * </p>
+ *
+ * <p>
+ *   The cache statistics, including the hit ratio of each cache, are available through {@link #getMetrics()}.
+ * </p>
+ */
+public class CachingJobHistoryStore implements JobHistoryStore, MetricSet {
+
+  private static final Set<JobStateEnum> FINISHED_STATES =
+      EnumSet.of(JobStateEnum.COMMITTED, JobStateEnum.FAILED, JobStateEnum.CANCELLED);
+
+  private final JobHistoryStore jobHistoryStore;
+  private final QueryCache jobIdCache;
+  private final QueryCache latestCache;
+
+  /**
+   * @param maxCacheSize maximum number of query results in each of the job ID and the latest job executions caches
+   * @param latestTtlSeconds time after which cached latest job executions of a job name expire
+   */
+  public CachingJobHistoryStore(JobHistoryStore jobHistoryStore, long maxCacheSize, long latestTtlSeconds) {
+    this.jobHistoryStore = jobHistoryStore;
+    this.jobIdCache = new QueryCache(CacheBuilder.newBuilder().maximumSize(maxCacheSize).recordStats());
+    this.latestCache = new QueryCache(CacheBuilder.newBuilder().maximumSize(maxCacheSize)
+        .expireAfterWrite(latestTtlSeconds, TimeUnit.SECONDS).recordStats());
+  }
+
+  @Override
+  public void put(JobExecutionInfo jobExecutionInfo)
+      throws IOException {
+    this.jobHistoryStore.put(jobExecutionInfo);
+
+    if (jobExecutionInfo.hasJobId()) {
+      this.jobIdCache.invalidate(jobExecutionInfo.getJobId());
+    }
+    if (jobExecutionInfo.hasJobName()) {
+      this.latestCache.invalidate(jobExecutionInfo.getJobName());
+    }
+  }
+
+  @Override
+  public List<JobExecutionInfo> get(JobExecutionQuery query)
+      throws IOException {
+    QueryCache cache = getCache(query);
+    if (cache == null) {
+      return this.jobHistoryStore.get(query);
+    }
+
+    QueryKey key = new QueryKey(query);
+    List<JobExecutionInfo> jobExecutionInfos = cache.get(key);
+    if (jobExecutionInfos != null) {
+      if (cache != this.latestCache || isLatest(query, jobExecutionInfos)) {
+        return jobExecutionInfos;
+      }
+      // A job execution of the job name has been recorded elsewhere, so all its cached results are stale
+      cache.invalidate(key.id);
+    }
+
+    jobExecutionInfos = this.jobHistoryStore.get(query);
+    if (!jobExecutionInfos.isEmpty() && allFinished(jobExecutionInfos)) {
+      for (JobExecutionInfo jobExecutionInfo : jobExecutionInfos) {
+        jobExecutionInfo.data().makeReadOnly();
+      }
+      jobExecutionInfos = ImmutableList.copyOf(jobExecutionInfos);
+      cache.put(key, jobExecutionInfos);
+    }
+    return jobExecutionInfos;
+  }
+
+  @Override
+  public void close()
+      throws IOException {
+    this.jobIdCache.cache.invalidateAll();
+    this.latestCache.cache.invalidateAll();
+    this.jobHistoryStore.close();
+  }
+
+  @Override
+  public Map<String, Metric> getMetrics() {
+    Map<String, Metric> metrics = Maps.newHashMap();
+    addCacheMetrics(metrics, "jobId", this.jobIdCache.cache);
+    addCacheMetrics(metrics, "latest", this.latestCache.cache);
+    metrics.put("hitRatio", new Gauge<Double>() {
+      @Override
+      public Double getValue() {
+        CacheStats stats = jobIdCache.cache.stats().plus(latestCache.cache.stats());
+        return stats.hitRate();
+      }
+    });
+    return Collections.unmodifiableMap(metrics);
+  }
+
+  /**
+   * Get the number of job IDs and job names with cached query results.
+   */
+  @VisibleForTesting
+  int getNumIndexedIds() {
+    return this.jobIdCache.getNumIndexedIds() + this.latestCache.getNumIndexedIds();
+  }
+
+  private static void addCacheMetrics(Map<String, Metric> metrics, String prefix,
+      final Cache<QueryKey, List<JobExecutionInfo>> cache) {
+    metrics.put(MetricRegistry.name(prefix, "hitRatio"), new Gauge<Double>() {
+      @Override
+      public Double getValue() {
+        return cache.stats().hitRate();
+      }
+    });
+    metrics.put(MetricRegistry.name(prefix, "hits"), new Gauge<Long>() {
+      @Override
+      public Long getValue() {
+        return cache.stats().hitCount();
+      }
+    });
+    metrics.put(MetricRegistry.name(prefix, "misses"), new Gauge<Long>() {
+      @Override
+      public Long getValue() {
+        return cache.stats().missCount();
+      }
+    });
+    metrics.put(MetricRegistry.name(prefix, "evictions"), new Gauge<Long>() {
+      @Override
+      public Long getValue() {
+        return cache.stats().evictionCount();
+      }
+    });
+    metrics.put(MetricRegistry.name(prefix, "size"), new Gauge<Long>() {
+      @Override
+      public Long getValue() {
+        return cache.size();
+      }
+    });
+  }
+
+  /**
+   * Get the cache for the given query, or {@code null} if the query is not cached.
+   */
+  private QueryCache getCache(JobExecutionQuery query) {
+    switch (query.getIdType()) {
+      case JOB_ID:
+        return this.jobIdCache;
+      case JOB_NAME:
+        return query.hasTimeRange() || query.hasCursor() ? null : this.latestCache;
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Check if the first of the cached latest job executions of a job name is still the latest job execution of the
+   * job name, which is not the case once a new job execution has been recorded.
+   */
+  private boolean isLatest(JobExecutionQuery query, List<JobExecutionInfo> jobExecutionInfos)
+      throws IOException {
+    JobExecutionQuery latestQuery = new JobExecutionQuery();
+    latestQuery.setIdType(QueryIdTypeEnum.JOB_NAME);
+    latestQuery.setId(JobExecutionQuery.Id.create(query.getId().getString()));
+    latestQuery.setLimit(1);
+    latestQuery.setIncludeJobMetrics(false);
+    latestQuery.setIncludeJobProperties(false);
+    latestQuery.setIncludeTaskExecutions(false);
+
+    List<JobExecutionInfo> latest = this.jobHistoryStore.get(latestQuery);
+    return !latest.isEmpty() && latest.get(0).getJobId().equals(jobExecutionInfos.get(0).getJobId());
+  }
+
+  private static boolean allFinished(List<JobExecutionInfo> jobExecutionInfos) {
+    for (JobExecutionInfo jobExecutionInfo : jobExecutionInfos) {
+      if (!jobExecutionInfo.hasState() || !FINISHED_STATES.contains(jobExecutionInfo.getState())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * A cache of query results that also indexes the cached {@link QueryKey}s by query ID, so the results of all
+   * queries of a job ID or job name can be invalidated without scanning the cache.
+   */
+  private static class QueryCache {
+
+    private final Cache<QueryKey, List<JobExecutionInfo>> cache;
+    // Cached keys by query ID, guarded by itself. Cache operations are never called while holding its lock.
+    private final Map<String, Set<QueryKey>> keysById = Maps.newHashMap();
+
+    private QueryCache(CacheBuilder<Object, Object> cacheBuilder) {
+      this.cache = cacheBuilder.removalListener(new RemovalListener<QueryKey, List<JobExecutionInfo>>() {
+        @Override
+        public void onRemoval(RemovalNotification<QueryKey, List<JobExecutionInfo>> notification) {
+          // A replaced key is still cached
+          if (notification.getCause() != RemovalCause.REPLACED) {
+            removeKey(notification.getKey());
+          }
+        }
+      }).build();
+    }
+
+    private List<JobExecutionInfo> get(QueryKey key) {
+      return this.cache.getIfPresent(key);
+    }
+
+    private void put(QueryKey key, List<JobExecutionInfo> jobExecutionInfos) {
+      // The key is indexed before it is cached, so an invalidation never misses a cached key
+      synchronized (this.keysById) {
+        Set<QueryKey> keys = this.keysById.get(key.id);
+        if (keys == null) {
+          keys = Sets.newHashSet();
+          this.keysById.put(key.id, keys);
+        }
+        keys.add(key);
+      }
+      this.cache.put(key, jobExecutionInfos);
+
+      // The results may be stale if the ID was invalidated in the meantime
+      boolean indexed;
+      synchronized (this.keysById) {
+        Set<QueryKey> keys = this.keysById.get(key.id);
+        indexed = keys != null && keys.contains(key);
+      }
+      if (!indexed) {
+        this.cache.invalidate(key);
+      }
+    }
+
+    private void invalidate(String id) {
+      Set<QueryKey> keys;
+      synchronized (this.keysById) {
+        keys = this.keysById.remove(id);
+      }
+      if (keys != null) {
+        this.cache.invalidateAll(keys);
+      }
+    }
+
+    private void removeKey(QueryKey key) {
+      synchronized (this.keysById) {
+        Set<QueryKey> keys = this.keysById.get(key.id);
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+          this.keysById.remove(key.id);
+        }
+      }
+    }
+
+    private int getNumIndexedIds() {
+      synchronized (this.keysById) {
+        return this.keysById.size();
+      }
+    }
+  }
+
+  /**
+   * A cache key made of the fields of a {@link JobExecutionQuery} that determine its result.
+   */
+  private static class QueryKey {
+
+    private final String id;
+    private final int limit;
+    private final String projection;
+
+    private QueryKey(JobExecutionQuery query) {
+      this.id = query.getId().getString();
+      this.limit = query.getLimit();
+      this.projection = Joiner.on('|').useForNull("*").join(query.isIncludeJobMetrics(),
+          query.isIncludeJobProperties(), query.isIncludeTaskExecutions(), query.isIncludeTaskMetrics(),
+          query.isIncludeTaskProperties(), query.getJobProperties(), query.getTaskProperties());
+    }
+
+    @Override
+    public boolean equals(Object object) {
+      if (!(object instanceof QueryKey)) {
+        return false;
+      }
+      QueryKey other = (QueryKey) object;
+      return this.id.equals(other.id) && this.limit == other.limit && this.projection.equals(other.projection);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(this.id, this.limit, this.projection);
+    }
+  }
+}
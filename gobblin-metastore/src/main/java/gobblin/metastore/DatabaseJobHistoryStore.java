@@ -14,29 +14,41 @@ package gobblin.metastore;
 
 import java.io.IOException;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.AbstractMap;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.locks.Lock;
 
 import javax.sql.DataSource;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Striped;
 import com.google.inject.Inject;
 
 import com.linkedin.data.template.StringMap;
@@ -63,6 +75,23 @@ import gobblin.rest.TimeRange;
  *     The DDLs for the MySQL job history store can be found under metastore/src/main/resources.
  * </p>
  *
+ * <p>
+ *     Rows of each table are written in JDBC batches. On MySQL, each batch is an
+ *     {@code INSERT ... ON DUPLICATE KEY UPDATE}, which relies on the unique keys defined in the DDLs. On other
+ *     databases, or for MySQL tables created before the unique keys were added to the DDLs, each batch is an
+ *     {@code UPDATE}, followed by a batched {@code INSERT} of the rows that were not updated. The unique keys can be
+ *     added to existing MySQL tables with gobblin_job_history_store_unique_keys_migration.sql. Writes of the same
+ *     job are serialized, so that two writes cannot both find a row missing and both insert it, while different
+ *     jobs can record their history in parallel.
+ * </p>
+ *
+ * <p>
+ *     A query first selects a page of job executions, and then queries the metrics, properties and task executions
+ *     of all job executions on the page at once, with task metrics and properties joined with task executions.
+ *     Queries by job name are paged with a cursor, and the details to include can be selected in the query.
+ *     Queries are not serialized either.
+ * </p>
+ *
  * @author ynli
  */
 public class DatabaseJobHistoryStore implements JobHistoryStore {
@@ -114,12 +143,44 @@ public class DatabaseJobHistoryStore implements JobHistoryStore {
   private static final String TASK_PROPERTY_UPDATE_STATEMENT_TEMPLATE =
       "UPDATE gobblin_task_properties SET property_value=? WHERE task_id=? AND property_key=?";
 
-  private static final String JOB_NAME_QUERY_BY_TABLE_STATEMENT_TEMPLATE =
-      "SELECT j.job_name FROM gobblin_job_executions j, gobblin_task_executions t "
-          + "WHERE j.job_id=t.job_id AND %s GROUP BY j.job_name";
+  private static final String JOB_EXECUTION_UPSERT_STATEMENT_TEMPLATE = JOB_EXECUTION_INSERT_STATEMENT_TEMPLATE
+      + " ON DUPLICATE KEY UPDATE start_time=VALUES(start_time),end_time=VALUES(end_time),"
+      + "duration=VALUES(duration),state=VALUES(state),launched_tasks=VALUES(launched_tasks),"
+      + "completed_tasks=VALUES(completed_tasks),launcher_type=VALUES(launcher_type),tracking_url=VALUES(tracking_url)";
+
+  private static final String TASK_EXECUTION_UPSERT_STATEMENT_TEMPLATE = TASK_EXECUTION_INSERT_STATEMENT_TEMPLATE
+      + " ON DUPLICATE KEY UPDATE start_time=VALUES(start_time),end_time=VALUES(end_time),"
+      + "duration=VALUES(duration),state=VALUES(state),failure_exception=VALUES(failure_exception),"
+      + "low_watermark=VALUES(low_watermark),high_watermark=VALUES(high_watermark),"
+      + "table_namespace=VALUES(table_namespace),table_name=VALUES(table_name),table_type=VALUES(table_type)";
+
+  private static final String JOB_METRIC_UPSERT_STATEMENT_TEMPLATE =
+      JOB_METRIC_INSERT_STATEMENT_TEMPLATE + " ON DUPLICATE KEY UPDATE metric_value=VALUES(metric_value)";
+
+  private static final String TASK_METRIC_UPSERT_STATEMENT_TEMPLATE =
+      TASK_METRIC_INSERT_STATEMENT_TEMPLATE + " ON DUPLICATE KEY UPDATE metric_value=VALUES(metric_value)";
+
+  private static final String JOB_PROPERTY_UPSERT_STATEMENT_TEMPLATE =
+      JOB_PROPERTY_INSERT_STATEMENT_TEMPLATE + " ON DUPLICATE KEY UPDATE property_value=VALUES(property_value)";
+
+  private static final String TASK_PROPERTY_UPSERT_STATEMENT_TEMPLATE =
+      TASK_PROPERTY_INSERT_STATEMENT_TEMPLATE + " ON DUPLICATE KEY UPDATE property_value=VALUES(property_value)";
+
+  private static final String JOB_EXECUTION_QUERY_BY_TABLE_STATEMENT_TEMPLATE =
+      "SELECT * FROM gobblin_job_executions WHERE job_name IN (SELECT j.job_name FROM gobblin_job_executions j, "
+          + "gobblin_task_executions t WHERE j.job_id=t.job_id AND %s)";
+
+  private static final String JOB_EXECUTION_BY_TABLE_ORDER_BY = " ORDER BY job_name, created_ts DESC, job_id DESC";
+
+  private static final String JOB_EXECUTION_QUERY_BY_JOB_NAME_STATEMENT_TEMPLATE =
+      "SELECT * FROM gobblin_job_executions WHERE job_name=?";
 
-  private static final String JOB_ID_QUERY_BY_JOB_NAME_STATEMENT_TEMPLATE =
-      "SELECT job_id FROM gobblin_job_executions WHERE job_name=?";
+  // Filter of job executions that come after the one with a given job ID in the order of JOB_EXECUTION_ORDER_BY
+  private static final String JOB_EXECUTION_CURSOR_FILTER =
+      "(created_ts<(SELECT created_ts FROM gobblin_job_executions WHERE job_id=?) OR "
+          + "(created_ts=(SELECT created_ts FROM gobblin_job_executions WHERE job_id=?) AND job_id<?))";
+
+  private static final String JOB_EXECUTION_ORDER_BY = " ORDER BY created_ts DESC, job_id DESC";
 
   private static final String JOB_EXECUTION_QUERY_BY_JOB_ID_STATEMENT_TEMPLATE =
       "SELECT * FROM gobblin_job_executions WHERE job_id=?";
@@ -128,7 +189,7 @@ public class DatabaseJobHistoryStore implements JobHistoryStore {
       "SELECT * FROM gobblin_task_executions WHERE task_id=?";
 
   private static final String TASK_EXECUTION_QUERY_STATEMENT_TEMPLATE =
-      "SELECT * FROM gobblin_task_executions WHERE job_id=?";
+      "SELECT * FROM gobblin_task_executions WHERE job_id IN (%s)";
 
   private static final String JOB_METRIC_EXIST_QUERY_STATEMENT_TEMPLATE =
       "SELECT * FROM gobblin_job_metrics " + "WHERE job_id=? AND metric_group=? AND metric_name=? AND metric_type=?";
@@ -137,10 +198,11 @@ public class DatabaseJobHistoryStore implements JobHistoryStore {
       "SELECT * FROM gobblin_task_metrics " + "WHERE task_id=? AND metric_group=? AND metric_name=? AND metric_type=?";
 
   private static final String JOB_METRIC_QUERY_STATEMENT_TEMPLATE =
-      "SELECT metric_group,metric_name,metric_type,metric_value FROM gobblin_job_metrics WHERE job_id=?";
+      "SELECT job_id,metric_group,metric_name,metric_type,metric_value FROM gobblin_job_metrics WHERE job_id IN (%s)";
 
   private static final String TASK_METRIC_QUERY_STATEMENT_TEMPLATE =
-      "SELECT metric_group,metric_name,metric_type,metric_value FROM gobblin_task_metrics WHERE task_id=?";
+      "SELECT m.task_id,m.metric_group,m.metric_name,m.metric_type,m.metric_value FROM gobblin_task_metrics m "
+          + "JOIN gobblin_task_executions t ON m.task_id=t.task_id WHERE t.job_id IN (%s)";
 
   private static final String JOB_PROPERTY_EXIST_QUERY_STATEMENT_TEMPLATE =
       "SELECT * FROM gobblin_job_properties WHERE job_id=? AND property_key=?";
@@ -149,90 +211,91 @@ public class DatabaseJobHistoryStore implements JobHistoryStore {
       "SELECT * FROM gobblin_task_properties WHERE task_id=? AND property_key=?";
 
   private static final String JOB_PROPERTY_QUERY_STATEMENT_TEMPLATE =
-      "SELECT property_key, property_value FROM gobblin_job_properties WHERE job_id=?";
+      "SELECT job_id,property_key,property_value FROM gobblin_job_properties WHERE job_id IN (%s)";
 
   private static final String TASK_PROPERTY_QUERY_STATEMENT_TEMPLATE =
-      "SELECT property_key, property_value FROM gobblin_task_properties WHERE task_id=?";
+      "SELECT p.task_id,p.property_key,p.property_value FROM gobblin_task_properties p "
+          + "JOIN gobblin_task_executions t ON p.task_id=t.task_id WHERE t.job_id IN (%s)";
 
   private static final Timestamp DEFAULT_TIMESTAMP = new Timestamp(1000L);
 
+  // Maximum number of rows in a single JDBC batch
+  private static final int MAX_BATCH_SIZE = 1000;
+
+  // Maximum number of job IDs in the IN clause of a single query
+  private static final int MAX_JOB_IDS_PER_QUERY = 100;
+
+  private static final String MYSQL_DATABASE_PRODUCT_NAME = "MySQL";
+
+  // Number of locks serializing writes of the same job
+  private static final int NUM_WRITE_LOCK_STRIPES = 64;
+
+  private static final UpsertStatements JOB_EXECUTION_UPSERT_STATEMENTS = new UpsertStatements(
+      "gobblin_job_executions", ImmutableSet.of("job_id"),
+      JOB_EXECUTION_INSERT_STATEMENT_TEMPLATE, JOB_EXECUTION_UPDATE_STATEMENT_TEMPLATE,
+      JOB_EXECUTION_UPSERT_STATEMENT_TEMPLATE, JOB_EXECUTION_QUERY_BY_JOB_ID_STATEMENT_TEMPLATE);
+  private static final UpsertStatements TASK_EXECUTION_UPSERT_STATEMENTS = new UpsertStatements(
+      "gobblin_task_executions", ImmutableSet.of("task_id"),
+      TASK_EXECUTION_INSERT_STATEMENT_TEMPLATE, TASK_EXECUTION_UPDATE_STATEMENT_TEMPLATE,
+      TASK_EXECUTION_UPSERT_STATEMENT_TEMPLATE, TASK_EXECUTION_EXIST_QUERY_STATEMENT_TEMPLATE);
+  private static final UpsertStatements JOB_METRIC_UPSERT_STATEMENTS = new UpsertStatements(
+      "gobblin_job_metrics", ImmutableSet.of("job_id", "metric_group", "metric_name", "metric_type"),
+      JOB_METRIC_INSERT_STATEMENT_TEMPLATE, JOB_METRIC_UPDATE_STATEMENT_TEMPLATE,
+      JOB_METRIC_UPSERT_STATEMENT_TEMPLATE, JOB_METRIC_EXIST_QUERY_STATEMENT_TEMPLATE);
+  private static final UpsertStatements TASK_METRIC_UPSERT_STATEMENTS = new UpsertStatements(
+      "gobblin_task_metrics", ImmutableSet.of("task_id", "metric_group", "metric_name", "metric_type"),
+      TASK_METRIC_INSERT_STATEMENT_TEMPLATE, TASK_METRIC_UPDATE_STATEMENT_TEMPLATE,
+      TASK_METRIC_UPSERT_STATEMENT_TEMPLATE, TASK_METRIC_EXIST_QUERY_STATEMENT_TEMPLATE);
+  private static final UpsertStatements JOB_PROPERTY_UPSERT_STATEMENTS = new UpsertStatements(
+      "gobblin_job_properties", ImmutableSet.of("job_id", "property_key"),
+      JOB_PROPERTY_INSERT_STATEMENT_TEMPLATE, JOB_PROPERTY_UPDATE_STATEMENT_TEMPLATE,
+      JOB_PROPERTY_UPSERT_STATEMENT_TEMPLATE, JOB_PROPERTY_EXIST_QUERY_STATEMENT_TEMPLATE);
+  private static final UpsertStatements TASK_PROPERTY_UPSERT_STATEMENTS = new UpsertStatements(
+      "gobblin_task_properties", ImmutableSet.of("task_id", "property_key"),
+      TASK_PROPERTY_INSERT_STATEMENT_TEMPLATE, TASK_PROPERTY_UPDATE_STATEMENT_TEMPLATE,
+      TASK_PROPERTY_UPSERT_STATEMENT_TEMPLATE, TASK_PROPERTY_EXIST_QUERY_STATEMENT_TEMPLATE);
+  private static final List<UpsertStatements> ALL_UPSERT_STATEMENTS = ImmutableList.of(
+      JOB_EXECUTION_UPSERT_STATEMENTS, TASK_EXECUTION_UPSERT_STATEMENTS, JOB_METRIC_UPSERT_STATEMENTS,
+      TASK_METRIC_UPSERT_STATEMENTS, JOB_PROPERTY_UPSERT_STATEMENTS, TASK_PROPERTY_UPSERT_STATEMENTS);
+
   private final DataSource dataSource;
+  private final boolean batchedWrites;
+  // Locks held while writing a job execution by job ID
+  private final Striped<Lock> writeLocks = Striped.lock(NUM_WRITE_LOCK_STRIPES);
+  private volatile Boolean isMySql;
+  // Tables whose rows can be written with INSERT ... ON DUPLICATE KEY UPDATE, i.e., MySQL tables with a unique key
+  private volatile Set<String> upsertableTables;
 
   @Inject
   public DatabaseJobHistoryStore(DataSource dataSource) {
+    this(dataSource, true);
+  }
+
+  /**
+   * @param batchedWrites whether to write rows in JDBC batches, or to check the existence of and insert or update
+   *                      each row individually. The latter is kept for comparison in benchmarks.
+   */
+  DatabaseJobHistoryStore(DataSource dataSource, boolean batchedWrites) {
     this.dataSource = dataSource;
+    this.batchedWrites = batchedWrites;
   }
 
   @Override
-  public synchronized void put(JobExecutionInfo jobExecutionInfo)
+  public void put(JobExecutionInfo jobExecutionInfo)
       throws IOException {
+    // The lock is held until the transaction is committed, so the next write of the job sees its rows
+    Lock writeLock = this.writeLocks.get(jobExecutionInfo.getJobId());
+    writeLock.lock();
     Optional<Connection> connectionOptional = Optional.absent();
     try {
       connectionOptional = Optional.of(getConnection());
       Connection connection = connectionOptional.get();
       connection.setAutoCommit(false);
 
-      // Insert or update job execution information
-      if (existsJobExecutionInfo(connection, jobExecutionInfo)) {
-        updateJobExecutionInfo(connection, jobExecutionInfo);
+      if (this.batchedWrites) {
+        putInBatches(connection, jobExecutionInfo);
       } else {
-        insertJobExecutionInfo(connection, jobExecutionInfo);
-      }
-
-      // Insert or update job metrics
-      if (jobExecutionInfo.hasMetrics()) {
-        for (Metric metric : jobExecutionInfo.getMetrics()) {
-          boolean insert =
-              !existsMetric(connection, JOB_METRIC_EXIST_QUERY_STATEMENT_TEMPLATE, jobExecutionInfo.getJobId(), metric);
-          updateMetric(connection, insert ? JOB_METRIC_INSERT_STATEMENT_TEMPLATE : JOB_METRIC_UPDATE_STATEMENT_TEMPLATE,
-              jobExecutionInfo.getJobId(), metric, insert);
-        }
-      }
-
-      // Insert or update job properties
-      if (jobExecutionInfo.hasJobProperties()) {
-        for (Map.Entry<String, String> entry : jobExecutionInfo.getJobProperties().entrySet()) {
-          boolean insert =
-              !existsProperty(connection, JOB_PROPERTY_EXIST_QUERY_STATEMENT_TEMPLATE, jobExecutionInfo.getJobId(),
-                  entry.getKey());
-          updateProperty(connection,
-              insert ? JOB_PROPERTY_INSERT_STATEMENT_TEMPLATE : JOB_PROPERTY_UPDATE_STATEMENT_TEMPLATE,
-              jobExecutionInfo.getJobId(), entry.getKey(), entry.getValue(), insert);
-        }
-      }
-
-      // Insert or update task execution information
-      if (jobExecutionInfo.hasTaskExecutions()) {
-        for (TaskExecutionInfo info : jobExecutionInfo.getTaskExecutions()) {
-          // Insert or update task execution information
-          if (existsTaskExecutionInfo(connection, info)) {
-            updateTaskExecutionInfo(connection, info);
-          } else {
-            insertTaskExecutionInfo(connection, info);
-          }
-          // Insert or update task metrics
-          if (info.hasMetrics()) {
-            for (Metric metric : info.getMetrics()) {
-              boolean insert =
-                  !existsMetric(connection, TASK_METRIC_EXIST_QUERY_STATEMENT_TEMPLATE, info.getTaskId(), metric);
-              updateMetric(connection,
-                  insert ? TASK_METRIC_INSERT_STATEMENT_TEMPLATE : TASK_METRIC_UPDATE_STATEMENT_TEMPLATE,
-                  info.getTaskId(), metric, insert);
-            }
-          }
-
-          // Insert or update task properties
-          if (info.hasTaskProperties()) {
-            for (Map.Entry<String, String> entry : info.getTaskProperties().entrySet()) {
-              boolean insert =
-                  !existsProperty(connection, TASK_PROPERTY_EXIST_QUERY_STATEMENT_TEMPLATE, info.getTaskId(),
-                      entry.getKey());
-              updateProperty(connection,
-                  insert ? TASK_PROPERTY_INSERT_STATEMENT_TEMPLATE : TASK_PROPERTY_UPDATE_STATEMENT_TEMPLATE,
-                  info.getTaskId(), entry.getKey(), entry.getValue(), insert);
-            }
-          }
-        }
+        putRowByRow(connection, jobExecutionInfo);
       }
 
       connection.commit();
@@ -254,11 +317,115 @@ public class DatabaseJobHistoryStore implements JobHistoryStore {
           LOGGER.error("Failed to close connection", se);
         }
       }
+      writeLock.unlock();
+    }
+  }
+
+  private void putInBatches(Connection connection, JobExecutionInfo jobExecutionInfo)
+      throws SQLException {
+    Set<String> upsertableTables = getUpsertableTables(connection);
+
+    // Rows of parent tables are written before rows referencing them
+    upsert(connection, upsertableTables, JOB_EXECUTION_UPSERT_STATEMENTS,
+        Collections.singletonList(toUpsertRow(jobExecutionInfo)));
+
+    if (jobExecutionInfo.hasMetrics()) {
+      upsert(connection, upsertableTables, JOB_METRIC_UPSERT_STATEMENTS,
+          toUpsertRows(jobExecutionInfo.getJobId(), jobExecutionInfo.getMetrics()));
+    }
+
+    if (jobExecutionInfo.hasJobProperties()) {
+      upsert(connection, upsertableTables, JOB_PROPERTY_UPSERT_STATEMENTS,
+          toUpsertRows(jobExecutionInfo.getJobId(), jobExecutionInfo.getJobProperties()));
+    }
+
+    if (jobExecutionInfo.hasTaskExecutions()) {
+      List<UpsertRow> taskExecutionRows = Lists.newArrayList();
+      List<UpsertRow> taskMetricRows = Lists.newArrayList();
+      List<UpsertRow> taskPropertyRows = Lists.newArrayList();
+      for (TaskExecutionInfo info : jobExecutionInfo.getTaskExecutions()) {
+        taskExecutionRows.add(toUpsertRow(info));
+        if (info.hasMetrics()) {
+          taskMetricRows.addAll(toUpsertRows(info.getTaskId(), info.getMetrics()));
+        }
+        if (info.hasTaskProperties()) {
+          taskPropertyRows.addAll(toUpsertRows(info.getTaskId(), info.getTaskProperties()));
+        }
+      }
+      upsert(connection, upsertableTables, TASK_EXECUTION_UPSERT_STATEMENTS, taskExecutionRows);
+      upsert(connection, upsertableTables, TASK_METRIC_UPSERT_STATEMENTS, taskMetricRows);
+      upsert(connection, upsertableTables, TASK_PROPERTY_UPSERT_STATEMENTS, taskPropertyRows);
+    }
+  }
+
+  private synchronized void putRowByRow(Connection connection, JobExecutionInfo jobExecutionInfo)
+      throws SQLException {
+    // Insert or update job execution information
+    if (existsJobExecutionInfo(connection, jobExecutionInfo)) {
+      updateJobExecutionInfo(connection, jobExecutionInfo);
+    } else {
+      insertJobExecutionInfo(connection, jobExecutionInfo);
+    }
+
+    // Insert or update job metrics
+    if (jobExecutionInfo.hasMetrics()) {
+      for (Metric metric : jobExecutionInfo.getMetrics()) {
+        boolean insert =
+            !existsMetric(connection, JOB_METRIC_EXIST_QUERY_STATEMENT_TEMPLATE, jobExecutionInfo.getJobId(), metric);
+        updateMetric(connection, insert ? JOB_METRIC_INSERT_STATEMENT_TEMPLATE : JOB_METRIC_UPDATE_STATEMENT_TEMPLATE,
+            jobExecutionInfo.getJobId(), metric, insert);
+      }
+    }
+
+    // Insert or update job properties
+    if (jobExecutionInfo.hasJobProperties()) {
+      for (Map.Entry<String, String> entry : jobExecutionInfo.getJobProperties().entrySet()) {
+        boolean insert =
+            !existsProperty(connection, JOB_PROPERTY_EXIST_QUERY_STATEMENT_TEMPLATE, jobExecutionInfo.getJobId(),
+                entry.getKey());
+        updateProperty(connection,
+            insert ? JOB_PROPERTY_INSERT_STATEMENT_TEMPLATE : JOB_PROPERTY_UPDATE_STATEMENT_TEMPLATE,
+            jobExecutionInfo.getJobId(), entry.getKey(), entry.getValue(), insert);
+      }
+    }
+
+    // Insert or update task execution information
+    if (jobExecutionInfo.hasTaskExecutions()) {
+      for (TaskExecutionInfo info : jobExecutionInfo.getTaskExecutions()) {
+        // Insert or update task execution information
+        if (existsTaskExecutionInfo(connection, info)) {
+          updateTaskExecutionInfo(connection, info);
+        } else {
+          insertTaskExecutionInfo(connection, info);
+        }
+        // Insert or update task metrics
+        if (info.hasMetrics()) {
+          for (Metric metric : info.getMetrics()) {
+            boolean insert =
+                !existsMetric(connection, TASK_METRIC_EXIST_QUERY_STATEMENT_TEMPLATE, info.getTaskId(), metric);
+            updateMetric(connection,
+                insert ? TASK_METRIC_INSERT_STATEMENT_TEMPLATE : TASK_METRIC_UPDATE_STATEMENT_TEMPLATE,
+                info.getTaskId(), metric, insert);
+          }
+        }
+
+        // Insert or update task properties
+        if (info.hasTaskProperties()) {
+          for (Map.Entry<String, String> entry : info.getTaskProperties().entrySet()) {
+            boolean insert =
+                !existsProperty(connection, TASK_PROPERTY_EXIST_QUERY_STATEMENT_TEMPLATE, info.getTaskId(),
+                    entry.getKey());
+            updateProperty(connection,
+                insert ? TASK_PROPERTY_INSERT_STATEMENT_TEMPLATE : TASK_PROPERTY_UPDATE_STATEMENT_TEMPLATE,
+                info.getTaskId(), entry.getKey(), entry.getValue(), insert);
+          }
+        }
+      }
     }
   }
 
   @Override
-  public synchronized List<JobExecutionInfo> get(JobExecutionQuery query)
+  public List<JobExecutionInfo> get(JobExecutionQuery query)
       throws IOException {
     Preconditions.checkArgument(query.hasId() && query.hasIdType());
 
@@ -267,22 +434,28 @@ public class DatabaseJobHistoryStore implements JobHistoryStore {
       connectionOptional = Optional.of(getConnection());
       Connection connection = connectionOptional.get();
 
+      List<JobExecutionInfo> jobExecutionInfos;
+      Optional<String> tableFilter = Optional.absent();
       switch (query.getIdType()) {
         case JOB_ID:
-          List<JobExecutionInfo> jobExecutionInfos = Lists.newArrayList();
-          JobExecutionInfo jobExecutionInfo =
-              processQueryById(connection, query.getId().getString(), Optional.<String>absent());
-          if (jobExecutionInfo != null) {
-            jobExecutionInfos.add(jobExecutionInfo);
-          }
-          return jobExecutionInfos;
+          jobExecutionInfos = queryJobExecutionsById(connection, query.getId().getString());
+          break;
         case JOB_NAME:
-          return processQueryByJobName(connection, query.getId().getString(), query, Optional.<String>absent());
+          jobExecutionInfos = queryJobExecutionsByName(connection, query.getId().getString(), query,
+              query.hasCursor() ? Optional.of(query.getCursor()) : Optional.<String>absent());
+          break;
         case TABLE:
-          return processQueryByTable(connection, query);
+          tableFilter = Optional.of(constructTableFilter(query.getId().getTable()));
+          jobExecutionInfos = queryJobExecutionsByTable(connection, query, tableFilter.get());
+          break;
         default:
           throw new IOException("Unsupported query ID type: " + query.getIdType().name());
       }
+
+      for (List<JobExecutionInfo> partition : Lists.partition(jobExecutionInfos, MAX_JOB_IDS_PER_QUERY)) {
+        queryJobExecutionDetails(connection, partition, query, tableFilter);
+      }
+      return jobExecutionInfos;
     } catch (SQLException se) {
       LOGGER.error("Failed to execute query: " + query, se);
       throw new IOException(se);
@@ -308,6 +481,221 @@ public class DatabaseJobHistoryStore implements JobHistoryStore {
     return this.dataSource.getConnection();
   }
 
+  private boolean isMySql(Connection connection)
+      throws SQLException {
+    if (this.isMySql == null) {
+      this.isMySql = MYSQL_DATABASE_PRODUCT_NAME.equals(connection.getMetaData().getDatabaseProductName());
+    }
+    return this.isMySql;
+  }
+
+  /**
+   * Get the tables whose rows can be written with {@code INSERT ... ON DUPLICATE KEY UPDATE}, which are the MySQL
+   * tables with a unique key on the key columns of their rows. Tables created before the unique keys were added to
+   * the DDLs do not have them, and an upsert into them would insert a duplicate row instead of updating it.
+   */
+  private Set<String> getUpsertableTables(Connection connection)
+      throws SQLException {
+    if (this.upsertableTables == null) {
+      Set<String> upsertableTables = Sets.newHashSet();
+      if (isMySql(connection)) {
+        for (UpsertStatements statements : ALL_UPSERT_STATEMENTS) {
+          if (hasUniqueKey(connection.getMetaData(), connection.getCatalog(), statements)) {
+            upsertableTables.add(statements.table);
+          } else {
+            LOGGER.warn(String.format("Table %s has no unique key on %s, so its rows are updated and inserted in "
+                + "separate statements. Run gobblin_job_history_store_unique_keys_migration.sql to add the key.",
+                statements.table, statements.keyColumns));
+          }
+        }
+      }
+      this.upsertableTables = upsertableTables;
+    }
+    return this.upsertableTables;
+  }
+
+  private static boolean hasUniqueKey(DatabaseMetaData metaData, String catalog, UpsertStatements statements)
+      throws SQLException {
+    Map<String, Set<String>> columnsByUniqueIndex = Maps.newHashMap();
+    ResultSet resultSet = metaData.getIndexInfo(catalog, null, statements.table, true, false);
+    try {
+      while (resultSet.next()) {
+        String indexName = resultSet.getString("INDEX_NAME");
+        String columnName = resultSet.getString("COLUMN_NAME");
+        if (indexName == null || columnName == null) {
+          continue;
+        }
+        if (!columnsByUniqueIndex.containsKey(indexName)) {
+          columnsByUniqueIndex.put(indexName, Sets.<String>newHashSet());
+        }
+        columnsByUniqueIndex.get(indexName).add(columnName.toLowerCase(Locale.ROOT));
+      }
+    } finally {
+      resultSet.close();
+    }
+    return columnsByUniqueIndex.containsValue(statements.keyColumns);
+  }
+
+  /**
+   * Insert or update the given rows of a table in batches.
+   */
+  private void upsert(Connection connection, Set<String> upsertableTables, UpsertStatements statements,
+      List<UpsertRow> rows)
+      throws SQLException {
+    if (rows.isEmpty()) {
+      return;
+    }
+
+    List<List<Object>> insertParameters = Lists.newArrayListWithCapacity(rows.size());
+    if (upsertableTables.contains(statements.table)) {
+      for (UpsertRow row : rows) {
+        insertParameters.add(row.insertParameters);
+      }
+      executeBatches(connection, statements.upsert, insertParameters);
+      return;
+    }
+
+    List<List<Object>> updateParameters = Lists.newArrayListWithCapacity(rows.size());
+    for (UpsertRow row : rows) {
+      updateParameters.add(row.updateParameters);
+    }
+    int[] updateCounts = executeBatches(connection, statements.update, updateParameters);
+    for (int i = 0; i < rows.size(); i++) {
+      if (updateCounts[i] == 0 || (updateCounts[i] == Statement.SUCCESS_NO_INFO
+          && !exists(connection, statements.exists, rows.get(i).keyParameters))) {
+        insertParameters.add(rows.get(i).insertParameters);
+      }
+    }
+    if (!insertParameters.isEmpty()) {
+      executeBatches(connection, statements.insert, insertParameters);
+    }
+  }
+
+  private static int[] executeBatches(Connection connection, String template, List<List<Object>> parameters)
+      throws SQLException {
+    int[] updateCounts = new int[parameters.size()];
+    PreparedStatement statement = connection.prepareStatement(template);
+    try {
+      int executed = 0;
+      for (int i = 0; i < parameters.size(); i++) {
+        setParameters(statement, parameters.get(i));
+        statement.addBatch();
+        if (i + 1 - executed == MAX_BATCH_SIZE || i == parameters.size() - 1) {
+          int[] batchUpdateCounts = statement.executeBatch();
+          System.arraycopy(batchUpdateCounts, 0, updateCounts, executed, batchUpdateCounts.length);
+          executed = i + 1;
+        }
+      }
+    } finally {
+      statement.close();
+    }
+    return updateCounts;
+  }
+
+  private static boolean exists(Connection connection, String template, List<Object> keyParameters)
+      throws SQLException {
+    PreparedStatement statement = connection.prepareStatement(template);
+    try {
+      setParameters(statement, keyParameters);
+      return statement.executeQuery().next();
+    } finally {
+      statement.close();
+    }
+  }
+
+  private static void setParameters(PreparedStatement statement, List<Object> parameters)
+      throws SQLException {
+    int index = 0;
+    for (Object parameter : parameters) {
+      if (parameter instanceof Timestamp) {
+        statement.setTimestamp(++index, (Timestamp) parameter, getCalendarUTCInstance());
+      } else if (parameter instanceof Long) {
+        statement.setLong(++index, (Long) parameter);
+      } else if (parameter instanceof Integer) {
+        statement.setInt(++index, (Integer) parameter);
+      } else {
+        statement.setString(++index, (String) parameter);
+      }
+    }
+  }
+
+  private static UpsertRow toUpsertRow(JobExecutionInfo info) {
+    Preconditions.checkArgument(info.hasJobName());
+    Preconditions.checkArgument(info.hasJobId());
+
+    List<Object> values = Lists.<Object>newArrayList(
+        info.hasStartTime() ? new Timestamp(info.getStartTime()) : DEFAULT_TIMESTAMP,
+        info.hasEndTime() ? new Timestamp(info.getEndTime()) : DEFAULT_TIMESTAMP,
+        info.hasDuration() ? info.getDuration() : -1L,
+        info.hasState() ? info.getState().name() : null,
+        info.hasLaunchedTasks() ? info.getLaunchedTasks() : -1,
+        info.hasCompletedTasks() ? info.getCompletedTasks() : -1,
+        info.hasLauncherType() ? info.getLauncherType().name() : null,
+        info.hasTrackingUrl() ? info.getTrackingUrl() : null);
+    List<Object> key = Lists.<Object>newArrayList(info.getJobId());
+    return new UpsertRow(concat(Lists.<Object>newArrayList(info.getJobName(), info.getJobId()), values),
+        concat(values, key), key);
+  }
+
+  private static UpsertRow toUpsertRow(TaskExecutionInfo info) {
+    Preconditions.checkArgument(info.hasTaskId());
+    Preconditions.checkArgument(info.hasJobId());
+
+    List<Object> values = Lists.<Object>newArrayList(
+        info.hasStartTime() ? new Timestamp(info.getStartTime()) : DEFAULT_TIMESTAMP,
+        info.hasEndTime() ? new Timestamp(info.getEndTime()) : DEFAULT_TIMESTAMP,
+        info.hasDuration() ? info.getDuration() : -1L,
+        info.hasState() ? info.getState().name() : null,
+        info.hasFailureException() ? info.getFailureException() : null,
+        info.hasLowWatermark() ? info.getLowWatermark() : -1L,
+        info.hasHighWatermark() ? info.getHighWatermark() : -1L,
+        info.hasTable() && info.getTable().hasNamespace() ? info.getTable().getNamespace() : null,
+        info.hasTable() && info.getTable().hasName() ? info.getTable().getName() : null,
+        info.hasTable() && info.getTable().hasType() ? info.getTable().getType().name() : null);
+    List<Object> key = Lists.<Object>newArrayList(info.getTaskId());
+    return new UpsertRow(concat(Lists.<Object>newArrayList(info.getTaskId(), info.getJobId()), values),
+        concat(values, key), key);
+  }
+
+  private static List<UpsertRow> toUpsertRows(String id, MetricArray metrics) {
+    Preconditions.checkArgument(!Strings.isNullOrEmpty(id));
+
+    List<UpsertRow> rows = Lists.newArrayListWithCapacity(metrics.size());
+    for (Metric metric : metrics) {
+      Preconditions.checkArgument(metric.hasGroup());
+      Preconditions.checkArgument(metric.hasName());
+      Preconditions.checkArgument(metric.hasType());
+      Preconditions.checkArgument(metric.hasValue());
+
+      List<Object> key =
+          Lists.<Object>newArrayList(id, metric.getGroup(), metric.getName(), metric.getType().name());
+      rows.add(new UpsertRow(concat(key, Lists.<Object>newArrayList(metric.getValue())),
+          concat(Lists.<Object>newArrayList(metric.getValue()), key), key));
+    }
+    return rows;
+  }
+
+  private static List<UpsertRow> toUpsertRows(String id, StringMap properties) {
+    Preconditions.checkArgument(!Strings.isNullOrEmpty(id));
+
+    List<UpsertRow> rows = Lists.newArrayListWithCapacity(properties.size());
+    for (Map.Entry<String, String> entry : properties.entrySet()) {
+      Preconditions.checkArgument(!Strings.isNullOrEmpty(entry.getKey()));
+      Preconditions.checkArgument(!Strings.isNullOrEmpty(entry.getValue()));
+
+      List<Object> key = Lists.<Object>newArrayList(id, entry.getKey());
+      rows.add(new UpsertRow(concat(key, Lists.<Object>newArrayList(entry.getValue())),
+          concat(Lists.<Object>newArrayList(entry.getValue()), key), key));
+    }
+    return rows;
+  }
+
+  private static List<Object> concat(List<Object> first, List<Object> second) {
+    List<Object> result = Lists.newArrayList(first);
+    result.addAll(second);
+    return result;
+  }
+
   private boolean existsJobExecutionInfo(Connection connection, JobExecutionInfo info)
       throws SQLException {
     Preconditions.checkArgument(info.hasJobId());
@@ -493,146 +881,272 @@ public class DatabaseJobHistoryStore implements JobHistoryStore {
     updateStatement.executeUpdate();
   }
 
-  private JobExecutionInfo processQueryById(Connection connection, String jobId, Optional<String> tableFilter)
+  private List<JobExecutionInfo> queryJobExecutionsById(Connection connection, String jobId)
       throws SQLException {
     Preconditions.checkArgument(!Strings.isNullOrEmpty(jobId));
 
-    // Query job execution information
-    PreparedStatement jobExecutionQueryStatement =
-        connection.prepareStatement(JOB_EXECUTION_QUERY_BY_JOB_ID_STATEMENT_TEMPLATE);
-    jobExecutionQueryStatement.setString(1, jobId);
-    ResultSet jobRs = jobExecutionQueryStatement.executeQuery();
-    if (!jobRs.next()) {
-      return null;
-    }
-
-    JobExecutionInfo jobExecutionInfo = resultSetToJobExecutionInfo(jobRs);
-
-    // Query job metrics
-    PreparedStatement jobMetricQueryStatement = connection.prepareStatement(JOB_METRIC_QUERY_STATEMENT_TEMPLATE);
-    jobMetricQueryStatement.setString(1, jobRs.getString(2));
-    ResultSet jobMetricRs = jobMetricQueryStatement.executeQuery();
-    MetricArray jobMetrics = new MetricArray();
-    while (jobMetricRs.next()) {
-      jobMetrics.add(resultSetToMetric(jobMetricRs));
-    }
-    // Add job metrics
-    jobExecutionInfo.setMetrics(jobMetrics);
-
-    // Query job properties
-    PreparedStatement jobPropertiesQueryStatement = connection.prepareStatement(JOB_PROPERTY_QUERY_STATEMENT_TEMPLATE);
-    jobPropertiesQueryStatement.setString(1, jobExecutionInfo.getJobId());
-    ResultSet jobPropertiesRs = jobPropertiesQueryStatement.executeQuery();
-    Map<String, String> jobProperties = Maps.newHashMap();
-    while (jobPropertiesRs.next()) {
-      Map.Entry<String, String> property = resultSetToProperty(jobPropertiesRs);
-      jobProperties.put(property.getKey(), property.getValue());
-    }
-    // Add job properties
-    jobExecutionInfo.setJobProperties(new StringMap(jobProperties));
-
-    // Query task execution information
-    TaskExecutionInfoArray taskExecutionInfos = new TaskExecutionInfoArray();
-    String taskExecutionQuery = TASK_EXECUTION_QUERY_STATEMENT_TEMPLATE;
-    // Add table filter if applicable
-    if (tableFilter.isPresent() && !Strings.isNullOrEmpty(tableFilter.get())) {
-      taskExecutionQuery += " AND " + tableFilter.get();
-    }
-    PreparedStatement taskExecutionQueryStatement = connection.prepareStatement(taskExecutionQuery);
-    taskExecutionQueryStatement.setString(1, jobId);
-    ResultSet taskRs = taskExecutionQueryStatement.executeQuery();
-    while (taskRs.next()) {
-      TaskExecutionInfo taskExecutionInfo = resultSetToTaskExecutionInfo(taskRs);
-      // Query task metrics for each task execution record
-      PreparedStatement taskMetricQueryStatement = connection.prepareStatement(TASK_METRIC_QUERY_STATEMENT_TEMPLATE);
-      taskMetricQueryStatement.setString(1, taskExecutionInfo.getTaskId());
-      ResultSet taskMetricRs = taskMetricQueryStatement.executeQuery();
-      MetricArray taskMetrics = new MetricArray();
-      while (taskMetricRs.next()) {
-        taskMetrics.add(resultSetToMetric(taskMetricRs));
-      }
-      // Add task metrics
-      taskExecutionInfo.setMetrics(taskMetrics);
-      taskExecutionInfos.add(taskExecutionInfo);
-
-      // Query task properties
-      PreparedStatement taskPropertiesQueryStatement =
-          connection.prepareStatement(TASK_PROPERTY_QUERY_STATEMENT_TEMPLATE);
-      taskPropertiesQueryStatement.setString(1, taskExecutionInfo.getTaskId());
-      ResultSet taskPropertiesRs = taskPropertiesQueryStatement.executeQuery();
-      Map<String, String> taskProperties = Maps.newHashMap();
-      while (taskPropertiesRs.next()) {
-        Map.Entry<String, String> property = resultSetToProperty(taskPropertiesRs);
-        taskProperties.put(property.getKey(), property.getValue());
-      }
-      // Add job properties
-      taskExecutionInfo.setTaskProperties(new StringMap(taskProperties));
-      // Add task properties
+    return queryJobExecutions(connection, JOB_EXECUTION_QUERY_BY_JOB_ID_STATEMENT_TEMPLATE,
+        Collections.<Object>singletonList(jobId), 0);
+  }
+
+  /**
+   * Query the job executions of a given job name, latest first, starting after the given cursor if any.
+   */
+  private List<JobExecutionInfo> queryJobExecutionsByName(Connection connection, String jobName,
+      JobExecutionQuery query, Optional<String> cursor)
+      throws SQLException {
+    Preconditions.checkArgument(!Strings.isNullOrEmpty(jobName));
+
+    StringBuilder jobExecutionQuery = new StringBuilder(JOB_EXECUTION_QUERY_BY_JOB_NAME_STATEMENT_TEMPLATE);
+    List<Object> parameters = Lists.<Object>newArrayList(jobName);
+    appendTimeRangeFilter(jobExecutionQuery, query);
+    if (cursor.isPresent()) {
+      jobExecutionQuery.append(" AND ").append(JOB_EXECUTION_CURSOR_FILTER);
+      parameters.add(cursor.get());
+      parameters.add(cursor.get());
+      parameters.add(cursor.get());
     }
-    // Add task execution information
-    jobExecutionInfo.setTaskExecutions(taskExecutionInfos);
+    jobExecutionQuery.append(JOB_EXECUTION_ORDER_BY);
 
-    return jobExecutionInfo;
+    return queryJobExecutions(connection, jobExecutionQuery.toString(), parameters, query.getLimit());
   }
 
-  private List<JobExecutionInfo> processQueryByJobName(Connection connection, String jobName, JobExecutionQuery query,
-      Optional<String> tableFilter)
+  /**
+   * Query the job executions of each job name that has task executions on a given table, latest first. The query
+   * limit applies to each job name.
+   *
+   * <p>
+   *   The job executions of all the job names are queried at once, ordered by job name, and the limit is applied
+   *   while reading them, since limiting the rows of each group is not supported by all the databases.
+   * </p>
+   */
+  private List<JobExecutionInfo> queryJobExecutionsByTable(Connection connection, JobExecutionQuery query,
+      String tableFilter)
       throws SQLException {
-    Preconditions.checkArgument(!Strings.isNullOrEmpty(jobName));
+    Preconditions.checkArgument(query.getId().isTable());
+
+    StringBuilder jobExecutionQuery =
+        new StringBuilder(String.format(JOB_EXECUTION_QUERY_BY_TABLE_STATEMENT_TEMPLATE, tableFilter));
+    appendTimeRangeFilter(jobExecutionQuery, query);
+    jobExecutionQuery.append(JOB_EXECUTION_BY_TABLE_ORDER_BY);
 
-    // Construct the query for job IDs by a given job name
-    String jobIdByNameQuery = JOB_ID_QUERY_BY_JOB_NAME_STATEMENT_TEMPLATE;
+    List<JobExecutionInfo> jobExecutionInfos = Lists.newArrayList();
+    PreparedStatement queryStatement = connection.prepareStatement(jobExecutionQuery.toString());
+    try {
+      ResultSet rs = queryStatement.executeQuery();
+      String jobName = null;
+      int count = 0;
+      while (rs.next()) {
+        if (!rs.getString("job_name").equals(jobName)) {
+          jobName = rs.getString("job_name");
+          count = 0;
+        }
+        if (query.getLimit() <= 0 || count < query.getLimit()) {
+          jobExecutionInfos.add(resultSetToJobExecutionInfo(rs));
+        }
+        count++;
+      }
+    } finally {
+      queryStatement.close();
+    }
+    return jobExecutionInfos;
+  }
+
+  /**
+   * Append the time range filter of the given query, if any, to a job execution query that has a WHERE clause.
+   */
+  private void appendTimeRangeFilter(StringBuilder jobExecutionQuery, JobExecutionQuery query)
+      throws SQLException {
     if (query.hasTimeRange()) {
-      // Add time range filter if applicable
       try {
         String timeRangeFilter = constructTimeRangeFilter(query.getTimeRange());
         if (!Strings.isNullOrEmpty(timeRangeFilter)) {
-          jobIdByNameQuery += " AND " + timeRangeFilter;
+          jobExecutionQuery.append(" AND ").append(timeRangeFilter);
         }
       } catch (ParseException pe) {
         LOGGER.error("Failed to parse the query time range", pe);
         throw new SQLException(pe);
       }
     }
+  }
 
-    // Add ORDER BY
-    jobIdByNameQuery += " ORDER BY created_ts DESC";
-
+  private List<JobExecutionInfo> queryJobExecutions(Connection connection, String query, List<Object> parameters,
+      int limit)
+      throws SQLException {
     List<JobExecutionInfo> jobExecutionInfos = Lists.newArrayList();
-    // Query job IDs by the given job name
-    PreparedStatement queryStatement = connection.prepareStatement(jobIdByNameQuery);
-    int limit = query.getLimit();
-    // Add LIMIT if applicable
-    if (limit > 0) {
-      queryStatement.setMaxRows(limit);
-    }
-    queryStatement.setString(1, jobName);
-    ResultSet rs = queryStatement.executeQuery();
-    while (rs.next()) {
-      jobExecutionInfos.add(processQueryById(connection, rs.getString(1), tableFilter));
+    PreparedStatement queryStatement = connection.prepareStatement(query);
+    try {
+      // Add LIMIT if applicable
+      if (limit > 0) {
+        queryStatement.setMaxRows(limit);
+      }
+      setParameters(queryStatement, parameters);
+      ResultSet rs = queryStatement.executeQuery();
+      while (rs.next()) {
+        jobExecutionInfos.add(resultSetToJobExecutionInfo(rs));
+      }
+    } finally {
+      queryStatement.close();
     }
-
     return jobExecutionInfos;
   }
 
-  private List<JobExecutionInfo> processQueryByTable(Connection connection, JobExecutionQuery query)
+  /**
+   * Query the metrics, properties and task executions of the given job executions as requested by the query.
+   *
+   * <p>
+   *   Each kind of detail is queried for all the given job executions at once, so the number of queries does not
+   *   depend on the number of job or task executions. Task metrics and properties are joined with task executions
+   *   on the job IDs, so the table filter, if any, applies to them as well.
+   * </p>
+   */
+  private void queryJobExecutionDetails(Connection connection, List<JobExecutionInfo> jobExecutionInfos,
+      JobExecutionQuery query, Optional<String> tableFilter)
       throws SQLException {
-    Preconditions.checkArgument(query.getId().isTable());
+    Map<String, JobExecutionInfo> jobExecutionInfosById = Maps.newLinkedHashMap();
+    for (JobExecutionInfo jobExecutionInfo : jobExecutionInfos) {
+      jobExecutionInfosById.put(jobExecutionInfo.getJobId(), jobExecutionInfo);
+    }
+    if (jobExecutionInfosById.isEmpty()) {
+      return;
+    }
+    List<Object> jobIds = Lists.<Object>newArrayList(jobExecutionInfosById.keySet());
+    String jobIdPlaceholders = Joiner.on(',').join(Collections.nCopies(jobIds.size(), "?"));
+    String taskFilter = tableFilter.isPresent() && !Strings.isNullOrEmpty(tableFilter.get())
+        ? " AND " + tableFilter.get() : "";
+
+    Map<String, MetricArray> jobMetrics = Maps.newHashMap();
+    if (query.isIncludeJobMetrics()) {
+      jobMetrics = queryMetrics(connection, String.format(JOB_METRIC_QUERY_STATEMENT_TEMPLATE, jobIdPlaceholders),
+          jobIds);
+    }
+    for (Map.Entry<String, JobExecutionInfo> entry : jobExecutionInfosById.entrySet()) {
+      MetricArray metrics = jobMetrics.get(entry.getKey());
+      entry.getValue().setMetrics(metrics != null ? metrics : new MetricArray());
+    }
 
-    String tableFilter = constructTableFilter(query.getId().getTable());
+    if (query.isIncludeJobProperties()) {
+      Map<String, Map<String, String>> jobProperties = queryProperties(connection,
+          String.format(JOB_PROPERTY_QUERY_STATEMENT_TEMPLATE, jobIdPlaceholders), jobIds, "property_key",
+          query.hasJobProperties() ? query.getJobProperties() : null);
+      for (Map.Entry<String, JobExecutionInfo> entry : jobExecutionInfosById.entrySet()) {
+        Map<String, String> properties = jobProperties.get(entry.getKey());
+        entry.getValue().setJobProperties(
+            new StringMap(properties != null ? properties : Collections.<String, String>emptyMap()));
+      }
+    }
 
-    // Construct the query for job names by table definition
-    String jobNameByTableQuery = String.format(JOB_NAME_QUERY_BY_TABLE_STATEMENT_TEMPLATE, tableFilter);
+    Map<String, TaskExecutionInfoArray> taskExecutionInfosByJobId = Maps.newHashMap();
+    if (query.isIncludeTaskExecutions()) {
+      Map<String, TaskExecutionInfo> taskExecutionInfosById = Maps.newLinkedHashMap();
+      PreparedStatement taskQueryStatement = connection.prepareStatement(
+          String.format(TASK_EXECUTION_QUERY_STATEMENT_TEMPLATE, jobIdPlaceholders) + taskFilter);
+      try {
+        setParameters(taskQueryStatement, jobIds);
+        ResultSet taskRs = taskQueryStatement.executeQuery();
+        while (taskRs.next()) {
+          TaskExecutionInfo taskExecutionInfo = resultSetToTaskExecutionInfo(taskRs);
+          taskExecutionInfosById.put(taskExecutionInfo.getTaskId(), taskExecutionInfo);
+        }
+      } finally {
+        taskQueryStatement.close();
+      }
 
-    List<JobExecutionInfo> jobExecutionInfos = Lists.newArrayList();
-    // Query job names by table definition
-    PreparedStatement queryStatement = connection.prepareStatement(jobNameByTableQuery);
-    ResultSet rs = queryStatement.executeQuery();
-    while (rs.next()) {
-      jobExecutionInfos.addAll(processQueryByJobName(connection, rs.getString(1), query, Optional.of(tableFilter)));
+      Map<String, MetricArray> taskMetrics = Maps.newHashMap();
+      if (query.isIncludeTaskMetrics() && !taskExecutionInfosById.isEmpty()) {
+        taskMetrics = queryMetrics(connection,
+            String.format(TASK_METRIC_QUERY_STATEMENT_TEMPLATE, jobIdPlaceholders) + taskFilter, jobIds);
+      }
+      Map<String, Map<String, String>> taskProperties = Maps.newHashMap();
+      if (query.isIncludeTaskProperties() && !taskExecutionInfosById.isEmpty()) {
+        taskProperties = queryProperties(connection,
+            String.format(TASK_PROPERTY_QUERY_STATEMENT_TEMPLATE, jobIdPlaceholders) + taskFilter, jobIds,
+            "p.property_key", query.hasTaskProperties() ? query.getTaskProperties() : null);
+      }
+
+      for (TaskExecutionInfo taskExecutionInfo : taskExecutionInfosById.values()) {
+        MetricArray metrics = taskMetrics.get(taskExecutionInfo.getTaskId());
+        taskExecutionInfo.setMetrics(metrics != null ? metrics : new MetricArray());
+        if (query.isIncludeTaskProperties()) {
+          Map<String, String> properties = taskProperties.get(taskExecutionInfo.getTaskId());
+          taskExecutionInfo.setTaskProperties(
+              new StringMap(properties != null ? properties : Collections.<String, String>emptyMap()));
+        }
+        TaskExecutionInfoArray taskExecutionInfoArray = taskExecutionInfosByJobId.get(taskExecutionInfo.getJobId());
+        if (taskExecutionInfoArray == null) {
+          taskExecutionInfoArray = new TaskExecutionInfoArray();
+          taskExecutionInfosByJobId.put(taskExecutionInfo.getJobId(), taskExecutionInfoArray);
+        }
+        taskExecutionInfoArray.add(taskExecutionInfo);
+      }
+    }
+    for (Map.Entry<String, JobExecutionInfo> entry : jobExecutionInfosById.entrySet()) {
+      TaskExecutionInfoArray taskExecutionInfoArray = taskExecutionInfosByJobId.get(entry.getKey());
+      entry.getValue().setTaskExecutions(
+          taskExecutionInfoArray != null ? taskExecutionInfoArray : new TaskExecutionInfoArray());
     }
+  }
 
-    return jobExecutionInfos;
+  /**
+   * Query metrics and group them by the job or task ID in the first column of the query result.
+   */
+  private Map<String, MetricArray> queryMetrics(Connection connection, String query, List<Object> parameters)
+      throws SQLException {
+    Map<String, MetricArray> metrics = Maps.newHashMap();
+    PreparedStatement queryStatement = connection.prepareStatement(query);
+    try {
+      setParameters(queryStatement, parameters);
+      ResultSet rs = queryStatement.executeQuery();
+      while (rs.next()) {
+        MetricArray metricArray = metrics.get(rs.getString(1));
+        if (metricArray == null) {
+          metricArray = new MetricArray();
+          metrics.put(rs.getString(1), metricArray);
+        }
+        metricArray.add(resultSetToMetric(rs));
+      }
+    } finally {
+      queryStatement.close();
+    }
+    return metrics;
+  }
+
+  /**
+   * Query properties and group them by the job or task ID in the first column of the query result.
+   *
+   * @param propertyKeys comma-separated list of property keys to include, or {@code null} to include all
+   */
+  private Map<String, Map<String, String>> queryProperties(Connection connection, String query,
+      List<Object> parameters, String propertyKeyColumn, String propertyKeys)
+      throws SQLException {
+    List<Object> allParameters = Lists.newArrayList(parameters);
+    if (!Strings.isNullOrEmpty(propertyKeys)) {
+      List<String> keys = Splitter.on(',').omitEmptyStrings().trimResults().splitToList(propertyKeys);
+      if (!keys.isEmpty()) {
+        query += String.format(" AND %s IN (%s)", propertyKeyColumn,
+            Joiner.on(',').join(Collections.nCopies(keys.size(), "?")));
+        allParameters.addAll(keys);
+      }
+    }
+
+    Map<String, Map<String, String>> properties = Maps.newHashMap();
+    PreparedStatement queryStatement = connection.prepareStatement(query);
+    try {
+      setParameters(queryStatement, allParameters);
+      ResultSet rs = queryStatement.executeQuery();
+      while (rs.next()) {
+        Map<String, String> propertyMap = properties.get(rs.getString(1));
+        if (propertyMap == null) {
+          propertyMap = Maps.newHashMap();
+          properties.put(rs.getString(1), propertyMap);
+        }
+        Map.Entry<String, String> property = resultSetToProperty(rs);
+        propertyMap.put(property.getKey(), property.getValue());
+      }
+    } finally {
+      queryStatement.close();
+    }
+    return properties;
   }
 
   private JobExecutionInfo resultSetToJobExecutionInfo(ResultSet rs)
@@ -728,7 +1242,7 @@ public class DatabaseJobHistoryStore implements JobHistoryStore {
 
   private AbstractMap.SimpleEntry<String, String> resultSetToProperty(ResultSet rs)
       throws SQLException {
-    return new AbstractMap.SimpleEntry<String, String>(rs.getString(1), rs.getString(2));
+    return new AbstractMap.SimpleEntry<String, String>(rs.getString("property_key"), rs.getString("property_value"));
   }
 
   private String constructTimeRangeFilter(TimeRange timeRange)
@@ -788,4 +1302,41 @@ public class DatabaseJobHistoryStore implements JobHistoryStore {
   private static Calendar getCalendarUTCInstance() {
     return Calendar.getInstance(TimeZone.getTimeZone("UTC"));
   }
+
+  /**
+   * Statements used to insert or update rows of a table.
+   */
+  private static class UpsertStatements {
+    private final String table;
+    private final Set<String> keyColumns;
+    private final String insert;
+    private final String update;
+    private final String upsert;
+    private final String exists;
+
+    private UpsertStatements(String table, Set<String> keyColumns, String insert, String update, String upsert,
+        String exists) {
+      this.table = table;
+      this.keyColumns = keyColumns;
+      this.insert = insert;
+      this.update = update;
+      this.upsert = upsert;
+      this.exists = exists;
+    }
+  }
+
+  /**
+   * Parameters of a row for the insert (also used by the upsert), update and exists statements of its table.
+   */
+  private static class UpsertRow {
+    private final List<Object> insertParameters;
+    private final List<Object> updateParameters;
+    private final List<Object> keyParameters;
+
+    private UpsertRow(List<Object> insertParameters, List<Object> updateParameters, List<Object> keyParameters) {
+      this.insertParameters = insertParameters;
+      this.updateParameters = updateParameters;
+      this.keyParameters = keyParameters;
+    }
+  }
 }
@@ -25,7 +25,7 @@ CREATE TABLE IF NOT EXISTS gobblin_job_executions (
 	created_ts TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
 	last_modified_ts TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
 	PRIMARY KEY (job_id),
-	INDEX (job_name),
+	INDEX (job_name, created_ts),
 	INDEX (state)
 );
 
@@ -64,6 +64,7 @@ CREATE TABLE IF NOT EXISTS gobblin_job_metrics (
 	created_ts TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
 	last_modified_ts TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
 	PRIMARY KEY (metric_id),
+	UNIQUE KEY (job_id, metric_group, metric_name, metric_type),
 	FOREIGN KEY (job_id)
 	REFERENCES gobblin_job_executions(job_id)
 	ON DELETE CASCADE,
@@ -82,6 +83,7 @@ CREATE TABLE IF NOT EXISTS gobblin_task_metrics (
 	created_ts TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
 	last_modified_ts TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
 	PRIMARY KEY (metric_id),
+	UNIQUE KEY (task_id, metric_group, metric_name, metric_type),
 	FOREIGN KEY (task_id)
 	REFERENCES gobblin_task_executions(task_id)
 	ON DELETE CASCADE,
@@ -98,6 +100,7 @@ CREATE TABLE IF NOT EXISTS gobblin_job_properties (
 	created_ts TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
 	last_modified_ts TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
 	PRIMARY KEY (property_id),
+	UNIQUE KEY (job_id, property_key),
 	FOREIGN KEY (job_id)
   REFERENCES gobblin_job_executions(job_id)
   ON DELETE CASCADE,
@@ -112,6 +115,7 @@ CREATE TABLE IF NOT EXISTS gobblin_task_properties (
 	created_ts TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
 	last_modified_ts TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
 	PRIMARY KEY (property_id),
+	UNIQUE KEY (task_id, property_key),
 	FOREIGN KEY (task_id)
   REFERENCES gobblin_task_executions(task_id)
   ON DELETE CASCADE,
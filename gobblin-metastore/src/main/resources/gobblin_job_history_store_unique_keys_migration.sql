@@ -0,0 +1,33 @@
+-- Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+--
+-- Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+-- this file except in compliance with the License. You may obtain a copy of the
+-- License at  http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software distributed
+-- under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+-- CONDITIONS OF ANY KIND, either express or implied.
+
+
+-- MySQL migration adding the unique keys of the metric and property tables to a job history store created
+-- before they were added to gobblin_job_history_store.sql. Duplicate rows are deleted first, keeping the most
+-- recently inserted row of each key. Until this migration is run, the job history store writes the rows of
+-- these tables with separate UPDATE and INSERT statements.
+
+DELETE m1 FROM gobblin_job_metrics m1 JOIN gobblin_job_metrics m2
+	ON m1.job_id = m2.job_id AND m1.metric_group = m2.metric_group AND m1.metric_name = m2.metric_name
+	AND m1.metric_type = m2.metric_type AND m1.metric_id < m2.metric_id;
+ALTER TABLE gobblin_job_metrics ADD UNIQUE KEY (job_id, metric_group, metric_name, metric_type);
+
+DELETE m1 FROM gobblin_task_metrics m1 JOIN gobblin_task_metrics m2
+	ON m1.task_id = m2.task_id AND m1.metric_group = m2.metric_group AND m1.metric_name = m2.metric_name
+	AND m1.metric_type = m2.metric_type AND m1.metric_id < m2.metric_id;
+ALTER TABLE gobblin_task_metrics ADD UNIQUE KEY (task_id, metric_group, metric_name, metric_type);
+
+DELETE p1 FROM gobblin_job_properties p1 JOIN gobblin_job_properties p2
+	ON p1.job_id = p2.job_id AND p1.property_key = p2.property_key AND p1.property_id < p2.property_id;
+ALTER TABLE gobblin_job_properties ADD UNIQUE KEY (job_id, property_key);
+
+DELETE p1 FROM gobblin_task_properties p1 JOIN gobblin_task_properties p2
+	ON p1.task_id = p2.task_id AND p1.property_key = p2.property_key AND p1.property_id < p2.property_id;
+ALTER TABLE gobblin_task_properties ADD UNIQUE KEY (task_id, property_key);
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.metastore;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Lists;
+
+import gobblin.rest.JobExecutionInfo;
+import gobblin.rest.JobExecutionQuery;
+import gobblin.rest.JobStateEnum;
+
+
+/**
+ * Unit tests for {@link AsyncJobHistoryStore}.
+ */
+@Test(groups = { "gobblin.metastore" })
+public class AsyncJobHistoryStoreTest {
+
+  @Test
+  public void testCoalescing() throws Exception {
+    RecordingJobHistoryStore underlying = new RecordingJobHistoryStore();
+    AsyncJobHistoryStore store = new AsyncJobHistoryStore(underlying, 10);
+
+    // Block the writer thread on the first record so that the following records are coalesced
+    store.put(create("job_0", JobStateEnum.PENDING));
+    underlying.putStarted.await();
+    store.put(create("job_1", JobStateEnum.PENDING));
+    store.put(create("job_1", JobStateEnum.RUNNING));
+    store.put(create("job_1", JobStateEnum.COMMITTED));
+    underlying.putAllowed.countDown();
+    store.flush();
+
+    Assert.assertEquals(underlying.getRecords().size(), 2);
+    Assert.assertEquals(underlying.getRecords().get(1).getJobId(), "job_1");
+    Assert.assertEquals(underlying.getRecords().get(1).getState(), JobStateEnum.COMMITTED);
+    store.close();
+  }
+
+  @Test
+  public void testCloseWritesPendingRecords() throws Exception {
+    RecordingJobHistoryStore underlying = new RecordingJobHistoryStore();
+    underlying.putAllowed.countDown();
+    AsyncJobHistoryStore store = new AsyncJobHistoryStore(underlying, 1);
+    for (int i = 0; i < 5; i++) {
+      store.put(create("job_" + i, JobStateEnum.COMMITTED));
+    }
+    store.close();
+
+    Assert.assertEquals(underlying.getRecords().size(), 5);
+    Assert.assertTrue(underlying.closed);
+  }
+
+  @Test(expectedExceptions = IOException.class)
+  public void testPutAfterClose() throws Exception {
+    RecordingJobHistoryStore underlying = new RecordingJobHistoryStore();
+    AsyncJobHistoryStore store = new AsyncJobHistoryStore(underlying, 1);
+    store.close();
+    store.put(create("job_0", JobStateEnum.COMMITTED));
+  }
+
+  private static JobExecutionInfo create(String jobId, JobStateEnum state) {
+    JobExecutionInfo jobExecutionInfo = new JobExecutionInfo();
+    jobExecutionInfo.setJobName("TestJob");
+    jobExecutionInfo.setJobId(jobId);
+    jobExecutionInfo.setState(state);
+    return jobExecutionInfo;
+  }
+
+  /**
+   * A {@link JobHistoryStore} that keeps records in memory and whose writes can be held back.
+   */
+  private static class RecordingJobHistoryStore implements JobHistoryStore {
+
+    private final List<JobExecutionInfo> records = Collections.synchronizedList(Lists.<JobExecutionInfo>newArrayList());
+    private final CountDownLatch putStarted = new CountDownLatch(1);
+    private final CountDownLatch putAllowed = new CountDownLatch(1);
+    private volatile boolean closed = false;
+
+    @Override
+    public void put(JobExecutionInfo jobExecutionInfo) throws IOException {
+      this.putStarted.countDown();
+      try {
+        this.putAllowed.await();
+      } catch (InterruptedException ie) {
+        throw new IOException(ie);
+      }
+      this.records.add(jobExecutionInfo);
+    }
+
+    @Override
+    public List<JobExecutionInfo> get(JobExecutionQuery query) throws IOException {
+      return Lists.newArrayList(this.records);
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.closed = true;
+    }
+
+    private List<JobExecutionInfo> getRecords() {
+      return Lists.newArrayList(this.records);
+    }
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.metastore;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.codahale.metrics.Gauge;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import gobblin.rest.JobExecutionInfo;
+import gobblin.rest.JobExecutionQuery;
+import gobblin.rest.JobStateEnum;
+import gobblin.rest.QueryIdTypeEnum;
+
+
+/**
+ * Unit tests for {@link CachingJobHistoryStore}.
+ */
+@Test(groups = { "gobblin.metastore" })
+public class CachingJobHistoryStoreTest {
+
+  @Test
+  public void testQueryByJobId() throws Exception {
+    CountingJobHistoryStore underlying = new CountingJobHistoryStore();
+    CachingJobHistoryStore store = new CachingJobHistoryStore(underlying, 10, 60);
+    store.put(create("TestJob", "job_0", JobStateEnum.RUNNING));
+
+    // Results of running job executions are not cached
+    store.get(query(QueryIdTypeEnum.JOB_ID, "job_0"));
+    store.get(query(QueryIdTypeEnum.JOB_ID, "job_0"));
+    Assert.assertEquals(underlying.queries, 2);
+
+    store.put(create("TestJob", "job_0", JobStateEnum.COMMITTED));
+    store.get(query(QueryIdTypeEnum.JOB_ID, "job_0"));
+    List<JobExecutionInfo> result = store.get(query(QueryIdTypeEnum.JOB_ID, "job_0"));
+    Assert.assertEquals(underlying.queries, 3);
+    Assert.assertEquals(result.get(0).getState(), JobStateEnum.COMMITTED);
+    Assert.assertEquals(((Gauge<?>) store.getMetrics().get("jobId.hits")).getValue(), 1L);
+  }
+
+  @Test
+  public void testLatestInvalidatedOnPut() throws Exception {
+    CountingJobHistoryStore underlying = new CountingJobHistoryStore();
+    CachingJobHistoryStore store = new CachingJobHistoryStore(underlying, 10, 60);
+    store.put(create("TestJob", "job_0", JobStateEnum.COMMITTED));
+
+    store.get(query(QueryIdTypeEnum.JOB_NAME, "TestJob"));
+    Assert.assertEquals(store.get(query(QueryIdTypeEnum.JOB_NAME, "TestJob")).get(0).getJobId(), "job_0");
+    // The cached result is checked against the latest job execution
+    Assert.assertEquals(underlying.queries, 2);
+    Assert.assertEquals(((Gauge<?>) store.getMetrics().get("latest.hits")).getValue(), 1L);
+
+    store.put(create("TestJob", "job_1", JobStateEnum.COMMITTED));
+    Assert.assertEquals(store.get(query(QueryIdTypeEnum.JOB_NAME, "TestJob")).get(0).getJobId(), "job_1");
+    Assert.assertEquals(underlying.queries, 3);
+  }
+
+  @Test
+  public void testLatestRefreshedWhenRecordedElsewhere() throws Exception {
+    CountingJobHistoryStore underlying = new CountingJobHistoryStore();
+    CachingJobHistoryStore store = new CachingJobHistoryStore(underlying, 10, 60);
+    underlying.put(create("TestJob", "job_0", JobStateEnum.COMMITTED));
+    Assert.assertEquals(store.get(query(QueryIdTypeEnum.JOB_NAME, "TestJob")).get(0).getJobId(), "job_0");
+
+    // A job execution recorded by another process, like a job launcher when this store serves the REST API
+    underlying.put(create("TestJob", "job_1", JobStateEnum.RUNNING));
+    Assert.assertEquals(store.get(query(QueryIdTypeEnum.JOB_NAME, "TestJob")).get(0).getJobId(), "job_1");
+    Assert.assertEquals(store.getNumIndexedIds(), 0);
+  }
+
+  @Test
+  public void testInvalidationOnlyAffectsJob() throws Exception {
+    CountingJobHistoryStore underlying = new CountingJobHistoryStore();
+    CachingJobHistoryStore store = new CachingJobHistoryStore(underlying, 10, 60);
+    store.put(create("TestJob", "job_0", JobStateEnum.COMMITTED));
+    store.put(create("OtherJob", "job_1", JobStateEnum.COMMITTED));
+
+    JobExecutionQuery projectedQuery = query(QueryIdTypeEnum.JOB_ID, "job_0");
+    projectedQuery.setIncludeJobMetrics(false);
+    store.get(query(QueryIdTypeEnum.JOB_ID, "job_0"));
+    store.get(projectedQuery);
+    store.get(query(QueryIdTypeEnum.JOB_ID, "job_1"));
+    store.get(query(QueryIdTypeEnum.JOB_NAME, "OtherJob"));
+    Assert.assertEquals(underlying.queries, 4);
+    Assert.assertEquals(store.getNumIndexedIds(), 3);
+
+    // All queries of job_0 are invalidated, while those of the other job stay cached
+    store.put(create("TestJob", "job_0", JobStateEnum.FAILED));
+    Assert.assertEquals(store.getNumIndexedIds(), 2);
+    store.get(query(QueryIdTypeEnum.JOB_ID, "job_1"));
+    store.get(query(QueryIdTypeEnum.JOB_NAME, "OtherJob"));
+    // Only the check of the latest job execution of OtherJob
+    Assert.assertEquals(underlying.queries, 5);
+    Assert.assertEquals(store.get(projectedQuery).get(0).getState(), JobStateEnum.FAILED);
+    Assert.assertEquals(store.get(query(QueryIdTypeEnum.JOB_ID, "job_0")).get(0).getState(), JobStateEnum.FAILED);
+    Assert.assertEquals(underlying.queries, 7);
+  }
+
+  @Test
+  public void testIndexCleanedUpOnEviction() throws Exception {
+    CountingJobHistoryStore underlying = new CountingJobHistoryStore();
+    CachingJobHistoryStore store = new CachingJobHistoryStore(underlying, 1, 60);
+    store.put(create("TestJob", "job_0", JobStateEnum.COMMITTED));
+    store.put(create("TestJob", "job_1", JobStateEnum.COMMITTED));
+
+    store.get(query(QueryIdTypeEnum.JOB_ID, "job_0"));
+    store.get(query(QueryIdTypeEnum.JOB_ID, "job_1"));
+    Assert.assertEquals(((Gauge<?>) store.getMetrics().get("jobId.evictions")).getValue(), 1L);
+    Assert.assertEquals(store.getNumIndexedIds(), 1);
+
+    store.get(query(QueryIdTypeEnum.JOB_ID, "job_1"));
+    Assert.assertEquals(underlying.queries, 2);
+  }
+
+  private static JobExecutionQuery query(QueryIdTypeEnum idType, String id) {
+    JobExecutionQuery query = new JobExecutionQuery();
+    query.setIdType(idType);
+    query.setId(JobExecutionQuery.Id.create(id));
+    return query;
+  }
+
+  private static JobExecutionInfo create(String jobName, String jobId, JobStateEnum state) {
+    JobExecutionInfo jobExecutionInfo = new JobExecutionInfo();
+    jobExecutionInfo.setJobName(jobName);
+    jobExecutionInfo.setJobId(jobId);
+    jobExecutionInfo.setState(state);
+    return jobExecutionInfo;
+  }
+
+  /**
+   * A {@link JobHistoryStore} that keeps the latest record of each job in memory and counts queries.
+   */
+  private static class CountingJobHistoryStore implements JobHistoryStore {
+
+    private final Map<String, JobExecutionInfo> records = Maps.newLinkedHashMap();
+    private int queries = 0;
+
+    @Override
+    public void put(JobExecutionInfo jobExecutionInfo) throws IOException {
+      this.records.remove(jobExecutionInfo.getJobId());
+      this.records.put(jobExecutionInfo.getJobId(), jobExecutionInfo);
+    }
+
+    @Override
+    public List<JobExecutionInfo> get(JobExecutionQuery query) throws IOException {
+      this.queries++;
+      List<JobExecutionInfo> result = Lists.newArrayList();
+      for (JobExecutionInfo jobExecutionInfo : this.records.values()) {
+        if (query.getIdType() == QueryIdTypeEnum.JOB_ID
+            ? jobExecutionInfo.getJobId().equals(query.getId().getString())
+            : jobExecutionInfo.getJobName().equals(query.getId().getString())) {
+          // Latest first
+          result.add(0, jobExecutionInfo);
+        }
+      }
+      return result.subList(0, Math.min(result.size(), query.getLimit()));
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+  }
+}
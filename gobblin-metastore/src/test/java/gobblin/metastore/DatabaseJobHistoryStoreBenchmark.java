@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.metastore;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import com.google.inject.Guice;
+
+import com.linkedin.data.template.StringMap;
+
+import gobblin.configuration.ConfigurationKeys;
+import gobblin.rest.JobExecutionInfo;
+import gobblin.rest.JobExecutionQuery;
+import gobblin.rest.JobStateEnum;
+import gobblin.rest.Metric;
+import gobblin.rest.MetricArray;
+import gobblin.rest.MetricTypeEnum;
+import gobblin.rest.QueryIdTypeEnum;
+import gobblin.rest.TaskExecutionInfo;
+import gobblin.rest.TaskExecutionInfoArray;
+import gobblin.rest.TaskStateEnum;
+
+
+/**
+ * A benchmark comparing batched writes of {@link DatabaseJobHistoryStore} with row-by-row writes, against an
+ * embedded Derby database. It is excluded from regular test runs; run it by including the "ignore" group.
+ */
+@Test(groups = { "gobblin.metastore", "ignore" })
+public class DatabaseJobHistoryStoreBenchmark {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DatabaseJobHistoryStoreBenchmark.class);
+
+  private static final String DATABASE_URL = "jdbc:derby:memory:gobblinbenchmark";
+  private static final int NUM_TASKS = 1000;
+  private static final int NUM_PROPERTIES_PER_TASK = 50;
+
+  private DataSource dataSource;
+
+  @BeforeClass
+  public void setUp()
+      throws Exception {
+    Properties properties = new Properties();
+    properties.setProperty(ConfigurationKeys.JOB_HISTORY_STORE_JDBC_DRIVER_KEY, "org.apache.derby.jdbc.EmbeddedDriver");
+    properties.setProperty(ConfigurationKeys.JOB_HISTORY_STORE_URL_KEY, DATABASE_URL + ";create=true");
+    this.dataSource = Guice.createInjector(new MetaStoreModule(properties)).getInstance(DataSource.class);
+
+    List<String> statementLines = Lists.newArrayList();
+    for (String line : Files.readLines(new File("gobblin-metastore/src/test/resources/gobblin_job_history_store.sql"),
+        ConfigurationKeys.DEFAULT_CHARSET_ENCODING)) {
+      if (!line.startsWith("--")) {
+        statementLines.add(line);
+      }
+    }
+    Connection connection = this.dataSource.getConnection();
+    try {
+      for (String statement : Splitter.on(";").omitEmptyStrings().trimResults()
+          .split(Joiner.on("\n").join(statementLines))) {
+        PreparedStatement preparedStatement = connection.prepareStatement(statement);
+        preparedStatement.execute();
+      }
+    } finally {
+      connection.close();
+    }
+  }
+
+  @Test
+  public void benchmarkRowByRowWrites()
+      throws Exception {
+    benchmark("row-by-row", new DatabaseJobHistoryStore(this.dataSource, false));
+  }
+
+  @Test
+  public void benchmarkBatchedWrites()
+      throws Exception {
+    benchmark("batched", new DatabaseJobHistoryStore(this.dataSource, true));
+  }
+
+  @AfterClass
+  public void tearDown() {
+    try {
+      DriverManager.getConnection(DATABASE_URL + ";shutdown=true");
+    } catch (SQLException se) {
+      // An exception is expected when shutting down the database
+    }
+  }
+
+  /**
+   * Time an insert and an update of a job with {@link #NUM_TASKS} tasks, as done before and after a job run.
+   */
+  private void benchmark(String name, JobHistoryStore jobHistoryStore)
+      throws Exception {
+    JobExecutionInfo jobExecutionInfo = create(name);
+
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    jobHistoryStore.put(jobExecutionInfo);
+    long insertMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+
+    jobExecutionInfo.setState(JobStateEnum.COMMITTED);
+    for (TaskExecutionInfo taskExecutionInfo : jobExecutionInfo.getTaskExecutions()) {
+      taskExecutionInfo.setState(TaskStateEnum.COMMITTED);
+    }
+    stopwatch.reset().start();
+    jobHistoryStore.put(jobExecutionInfo);
+    long updateMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+
+    LOG.info(String.format("%s writes of %d tasks with %d properties each: insert %d ms, update %d ms", name,
+        NUM_TASKS, NUM_PROPERTIES_PER_TASK, insertMillis, updateMillis));
+
+    JobExecutionQuery query = new JobExecutionQuery();
+    query.setIdType(QueryIdTypeEnum.JOB_ID);
+    query.setId(JobExecutionQuery.Id.create(jobExecutionInfo.getJobId()));
+    List<JobExecutionInfo> result = jobHistoryStore.get(query);
+    Assert.assertEquals(result.size(), 1);
+    Assert.assertEquals(result.get(0).getState(), JobStateEnum.COMMITTED);
+    Assert.assertEquals(result.get(0).getTaskExecutions().size(), NUM_TASKS);
+    Assert.assertEquals(result.get(0).getTaskExecutions().get(0).getTaskProperties().size(), NUM_PROPERTIES_PER_TASK);
+  }
+
+  private static JobExecutionInfo create(String name) {
+    JobExecutionInfo jobExecutionInfo = new JobExecutionInfo();
+    jobExecutionInfo.setJobName("BenchmarkJob_" + name);
+    jobExecutionInfo.setJobId(jobExecutionInfo.getJobName() + "_" + System.currentTimeMillis());
+    jobExecutionInfo.setStartTime(System.currentTimeMillis());
+    jobExecutionInfo.setState(JobStateEnum.RUNNING);
+    jobExecutionInfo.setLaunchedTasks(NUM_TASKS);
+
+    TaskExecutionInfoArray taskExecutionInfos = new TaskExecutionInfoArray();
+    for (int i = 0; i < NUM_TASKS; i++) {
+      TaskExecutionInfo taskExecutionInfo = new TaskExecutionInfo();
+      taskExecutionInfo.setJobId(jobExecutionInfo.getJobId());
+      taskExecutionInfo.setTaskId(jobExecutionInfo.getJobId() + "_" + i);
+      taskExecutionInfo.setStartTime(System.currentTimeMillis());
+      taskExecutionInfo.setState(TaskStateEnum.RUNNING);
+
+      MetricArray taskMetrics = new MetricArray();
+      Metric taskMetric = new Metric();
+      taskMetric.setGroup("TASK");
+      taskMetric.setName("records");
+      taskMetric.setType(MetricTypeEnum.COUNTER);
+      taskMetric.setValue(String.valueOf(i));
+      taskMetrics.add(taskMetric);
+      taskExecutionInfo.setMetrics(taskMetrics);
+
+      Map<String, String> taskProperties = Maps.newHashMap();
+      for (int j = 0; j < NUM_PROPERTIES_PER_TASK; j++) {
+        taskProperties.put("key" + j, "value" + j);
+      }
+      taskExecutionInfo.setTaskProperties(new StringMap(taskProperties));
+      taskExecutionInfos.add(taskExecutionInfo);
+    }
+    jobExecutionInfo.setTaskExecutions(taskExecutionInfos);
+
+    return jobExecutionInfo;
+  }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.metastore;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.sql.DataSource;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import com.linkedin.data.template.StringMap;
+
+import gobblin.rest.JobExecutionInfo;
+import gobblin.rest.JobStateEnum;
+import gobblin.rest.LauncherTypeEnum;
+import gobblin.rest.Metric;
+import gobblin.rest.MetricArray;
+import gobblin.rest.MetricTypeEnum;
+import gobblin.rest.TaskExecutionInfo;
+import gobblin.rest.TaskExecutionInfoArray;
+import gobblin.rest.TaskStateEnum;
+
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+/**
+ * Unit tests for the MySQL write path of {@link DatabaseJobHistoryStore}, which the Derby based
+ * {@link DatabaseJobHistoryStoreTest} does not run. The JDBC objects are mocked and the statements prepared by the
+ * {@link DatabaseJobHistoryStore} are recorded.
+ */
+@Test(groups = {"gobblin.metastore"})
+public class DatabaseJobHistoryStoreMySqlTest {
+
+  // Unique keys of the tables as created by gobblin_job_history_store.sql, by table and then by index name
+  private static final Map<String, Map<String, List<String>>> UNIQUE_KEYS =
+      ImmutableMap.<String, Map<String, List<String>>>builder()
+          .put("gobblin_job_executions", ImmutableMap.of("PRIMARY", Lists.newArrayList("job_id")))
+          .put("gobblin_task_executions", ImmutableMap.of("PRIMARY", Lists.newArrayList("task_id")))
+          .put("gobblin_job_metrics", ImmutableMap.of("PRIMARY", Lists.newArrayList("metric_id"),
+              "job_id_2", Lists.newArrayList("job_id", "metric_group", "metric_name", "metric_type")))
+          .put("gobblin_task_metrics", ImmutableMap.of("PRIMARY", Lists.newArrayList("metric_id"),
+              "task_id_2", Lists.newArrayList("task_id", "metric_group", "metric_name", "metric_type")))
+          .put("gobblin_job_properties", ImmutableMap.of("PRIMARY", Lists.newArrayList("property_id"),
+              "job_id_2", Lists.newArrayList("job_id", "property_key")))
+          .put("gobblin_task_properties", ImmutableMap.of("PRIMARY", Lists.newArrayList("property_id"),
+              "task_id_2", Lists.newArrayList("task_id", "property_key")))
+          .build();
+
+  @Test
+  public void testUpsertWithUniqueKeys() throws Exception {
+    List<String> preparedStatements = Lists.newArrayList();
+    DatabaseMetaData metaData = mockMetaData(Collections.<String>emptyList());
+    JobHistoryStore store = new DatabaseJobHistoryStore(mockDataSource(metaData, preparedStatements));
+
+    store.put(create());
+    Assert.assertEquals(preparedStatements.size(), 6);
+    for (String statement : preparedStatements) {
+      Assert.assertTrue(statement.startsWith("INSERT INTO "), statement);
+      Assert.assertTrue(statement.contains(" ON DUPLICATE KEY UPDATE "), statement);
+    }
+
+    // The unique keys are only looked up once
+    store.put(create());
+    verify(metaData, times(UNIQUE_KEYS.size())).getIndexInfo(anyString(), anyString(), anyString(), eq(true),
+        anyBoolean());
+  }
+
+  @Test
+  public void testUpdateAndInsertWithoutUniqueKeys() throws Exception {
+    List<String> preparedStatements = Lists.newArrayList();
+    DatabaseMetaData metaData = mockMetaData(Lists.newArrayList("gobblin_job_metrics", "gobblin_task_properties"));
+    JobHistoryStore store = new DatabaseJobHistoryStore(mockDataSource(metaData, preparedStatements));
+
+    // Rows of tables created without the unique keys are updated, and inserted if missing, instead of upserted
+    store.put(create());
+    Assert.assertEquals(preparedStatements.size(), 8);
+    for (String statement : preparedStatements) {
+      boolean upserted = statement.contains(" ON DUPLICATE KEY UPDATE ");
+      if (statement.contains("gobblin_job_metrics") || statement.contains("gobblin_task_properties")) {
+        Assert.assertFalse(upserted, statement);
+      } else {
+        Assert.assertTrue(upserted, statement);
+      }
+    }
+    Assert.assertTrue(preparedStatements.contains(
+        "UPDATE gobblin_job_metrics SET metric_value=? WHERE job_id=? AND "
+            + "metric_group=? AND metric_name=? AND metric_type=?"));
+    Assert.assertTrue(preparedStatements.contains("INSERT INTO gobblin_job_metrics (job_id,metric_group,metric_name,"
+        + "metric_type,metric_value) VALUES(?,?,?,?,?)"));
+    Assert.assertTrue(preparedStatements.contains(
+        "UPDATE gobblin_task_properties SET property_value=? WHERE task_id=? AND property_key=?"));
+    Assert.assertTrue(preparedStatements.contains(
+        "INSERT INTO gobblin_task_properties (task_id,property_key,property_value) VALUES(?,?,?)"));
+  }
+
+  /**
+   * Mock the {@link DatabaseMetaData} of a MySQL database whose tables have the unique keys of
+   * {@link #UNIQUE_KEYS}, except for the given tables, which only have their primary key.
+   */
+  private static DatabaseMetaData mockMetaData(final List<String> tablesWithoutUniqueKeys) throws Exception {
+    DatabaseMetaData metaData = mock(DatabaseMetaData.class);
+    when(metaData.getDatabaseProductName()).thenReturn("MySQL");
+    when(metaData.getIndexInfo(anyString(), anyString(), anyString(), eq(true), anyBoolean()))
+        .thenAnswer(new Answer<ResultSet>() {
+          @Override
+          public ResultSet answer(InvocationOnMock invocation) throws Throwable {
+            String table = (String) invocation.getArguments()[2];
+            List<String[]> rows = Lists.newArrayList();
+            for (Map.Entry<String, List<String>> index : UNIQUE_KEYS.get(table).entrySet()) {
+              if (index.getKey().equals("PRIMARY") || !tablesWithoutUniqueKeys.contains(table)) {
+                for (String column : index.getValue()) {
+                  rows.add(new String[] { index.getKey(), column });
+                }
+              }
+            }
+            return mockIndexInfo(rows);
+          }
+        });
+    return metaData;
+  }
+
+  private static ResultSet mockIndexInfo(List<String[]> rows) throws Exception {
+    final Iterator<String[]> iterator = rows.iterator();
+    final AtomicReference<String[]> currentRow = new AtomicReference<String[]>();
+    ResultSet resultSet = mock(ResultSet.class);
+    when(resultSet.next()).thenAnswer(new Answer<Boolean>() {
+      @Override
+      public Boolean answer(InvocationOnMock invocation) throws Throwable {
+        if (!iterator.hasNext()) {
+          return false;
+        }
+        currentRow.set(iterator.next());
+        return true;
+      }
+    });
+    when(resultSet.getString("INDEX_NAME")).thenAnswer(new Answer<String>() {
+      @Override
+      public String answer(InvocationOnMock invocation) throws Throwable {
+        return currentRow.get()[0];
+      }
+    });
+    when(resultSet.getString("COLUMN_NAME")).thenAnswer(new Answer<String>() {
+      @Override
+      public String answer(InvocationOnMock invocation) throws Throwable {
+        return currentRow.get()[1];
+      }
+    });
+    return resultSet;
+  }
+
+  /**
+   * Mock a {@link DataSource} recording the statements prepared on its connections. Every statement updates no row.
+   */
+  private static DataSource mockDataSource(DatabaseMetaData metaData, final List<String> preparedStatements)
+      throws Exception {
+    Connection connection = mock(Connection.class);
+    when(connection.getMetaData()).thenReturn(metaData);
+    when(connection.getCatalog()).thenReturn("gobblin");
+    when(connection.prepareStatement(anyString())).thenAnswer(new Answer<PreparedStatement>() {
+      @Override
+      public PreparedStatement answer(InvocationOnMock invocation) throws Throwable {
+        preparedStatements.add((String) invocation.getArguments()[0]);
+        return mockPreparedStatement();
+      }
+    });
+
+    DataSource dataSource = mock(DataSource.class);
+    when(dataSource.getConnection()).thenReturn(connection);
+    return dataSource;
+  }
+
+  private static PreparedStatement mockPreparedStatement() throws Exception {
+    final AtomicInteger batchSize = new AtomicInteger();
+    PreparedStatement statement = mock(PreparedStatement.class);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        batchSize.incrementAndGet();
+        return null;
+      }
+    }).when(statement).addBatch();
+    when(statement.executeBatch()).thenAnswer(new Answer<int[]>() {
+      @Override
+      public int[] answer(InvocationOnMock invocation) throws Throwable {
+        return new int[batchSize.getAndSet(0)];
+      }
+    });
+    return statement;
+  }
+
+  private static JobExecutionInfo create() {
+    JobExecutionInfo jobExecutionInfo = new JobExecutionInfo();
+    jobExecutionInfo.setJobName("TestJob");
+    jobExecutionInfo.setJobId("TestJob_1");
+    jobExecutionInfo.setStartTime(System.currentTimeMillis());
+    jobExecutionInfo.setState(JobStateEnum.RUNNING);
+    jobExecutionInfo.setLaunchedTasks(1);
+    jobExecutionInfo.setCompletedTasks(0);
+    jobExecutionInfo.setLauncherType(LauncherTypeEnum.LOCAL);
+    jobExecutionInfo.setMetrics(new MetricArray(Lists.newArrayList(createMetric("JOB", "jm1"))));
+    jobExecutionInfo.setJobProperties(new StringMap(ImmutableMap.of("k", "v")));
+
+    TaskExecutionInfo taskExecutionInfo = new TaskExecutionInfo();
+    taskExecutionInfo.setJobId(jobExecutionInfo.getJobId());
+    taskExecutionInfo.setTaskId(jobExecutionInfo.getJobId() + "_0");
+    taskExecutionInfo.setStartTime(System.currentTimeMillis());
+    taskExecutionInfo.setState(TaskStateEnum.RUNNING);
+    taskExecutionInfo.setMetrics(new MetricArray(Lists.newArrayList(createMetric("TASK", "tm1"))));
+    taskExecutionInfo.setTaskProperties(new StringMap(ImmutableMap.of("k1", "v1")));
+    jobExecutionInfo.setTaskExecutions(new TaskExecutionInfoArray(Lists.newArrayList(taskExecutionInfo)));
+    return jobExecutionInfo;
+  }
+
+  private static Metric createMetric(String group, String name) {
+    Metric metric = new Metric();
+    metric.setGroup(group);
+    metric.setName(name);
+    metric.setType(MetricTypeEnum.COUNTER);
+    metric.setValue("100");
+    return metric;
+  }
+}
@@ -21,6 +21,11 @@ import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.sql.DataSource;
 
 import org.testng.Assert;
@@ -31,6 +36,7 @@ import org.testng.annotations.Test;
 import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.io.Files;
@@ -171,6 +177,119 @@ public class DatabaseJobHistoryStoreTest {
         this.expectedJobExecutionInfos.get(1).getTaskExecutions().get(1).getTable());
   }
 
+  @Test(dependsOnMethods = {"testUpdate"})
+  public void testQueryByTableWithLimit()
+      throws IOException {
+    JobExecutionQuery queryByTable = new JobExecutionQuery();
+    queryByTable.setIdType(QueryIdTypeEnum.TABLE);
+    queryByTable.setId(
+        JobExecutionQuery.Id.create(this.expectedJobExecutionInfos.get(0).getTaskExecutions().get(0).getTable()));
+    queryByTable.setLimit(1);
+
+    // The limit applies to each job name
+    List<JobExecutionInfo> result = this.jobHistoryStore.get(queryByTable);
+    Assert.assertEquals(result.size(), 2);
+    Assert.assertEquals(result.get(0).getJobId(), this.expectedJobExecutionInfos.get(0).getJobId());
+    Assert.assertEquals(result.get(1).getJobId(), this.expectedJobExecutionInfos.get(1).getJobId());
+  }
+
+  @Test(dependsOnMethods = {"testUpdate"})
+  public void testQueryByJobNameWithCursor()
+      throws IOException {
+    JobExecutionQuery queryByJobName = new JobExecutionQuery();
+    queryByJobName.setIdType(QueryIdTypeEnum.JOB_NAME);
+    queryByJobName.setId(JobExecutionQuery.Id.create(this.expectedJobExecutionInfos.get(0).getJobName()));
+    queryByJobName.setLimit(10);
+
+    List<JobExecutionInfo> result = this.jobHistoryStore.get(queryByJobName);
+    Assert.assertEquals(result.size(), 1);
+
+    // There is no job execution after the only one of the job
+    queryByJobName.setCursor(result.get(0).getJobId());
+    Assert.assertTrue(this.jobHistoryStore.get(queryByJobName).isEmpty());
+  }
+
+  @Test(dependsOnMethods = {"testUpdate"})
+  public void testQueryWithProjection()
+      throws IOException {
+    JobExecutionInfo expected = this.expectedJobExecutionInfos.get(0);
+    JobExecutionQuery queryByJobId = new JobExecutionQuery();
+    queryByJobId.setIdType(QueryIdTypeEnum.JOB_ID);
+    queryByJobId.setId(JobExecutionQuery.Id.create(expected.getJobId()));
+    queryByJobId.setIncludeJobMetrics(false);
+    queryByJobId.setJobProperties("k0,k1");
+    queryByJobId.setIncludeTaskProperties(false);
+
+    List<JobExecutionInfo> result = this.jobHistoryStore.get(queryByJobId);
+    Assert.assertEquals(result.size(), 1);
+    JobExecutionInfo actual = result.get(0);
+    Assert.assertTrue(actual.getMetrics().isEmpty());
+    Assert.assertEquals(actual.getJobProperties(), expected.getJobProperties());
+    Assert.assertEquals(actual.getTaskExecutions().size(), expected.getTaskExecutions().size());
+    for (TaskExecutionInfo taskExecutionInfo : actual.getTaskExecutions()) {
+      Assert.assertFalse(taskExecutionInfo.hasTaskProperties());
+      Assert.assertEquals(taskExecutionInfo.getMetrics().size(), 1);
+    }
+
+    queryByJobId.setIncludeTaskExecutions(false);
+    Assert.assertTrue(this.jobHistoryStore.get(queryByJobId).get(0).getTaskExecutions().isEmpty());
+  }
+
+  @Test
+  public void testConcurrentPutsOfSameJob()
+      throws Exception {
+    final JobExecutionInfo jobExecutionInfo = new JobExecutionInfo();
+    jobExecutionInfo.setJobName("ConcurrentTestJob");
+    jobExecutionInfo.setJobId(jobExecutionInfo.getJobName() + "_" + System.currentTimeMillis());
+    jobExecutionInfo.setStartTime(System.currentTimeMillis());
+    jobExecutionInfo.setState(JobStateEnum.RUNNING);
+    jobExecutionInfo.setJobProperties(new StringMap(ImmutableMap.of("k", "v")));
+    TaskExecutionInfo taskExecutionInfo = new TaskExecutionInfo();
+    taskExecutionInfo.setJobId(jobExecutionInfo.getJobId());
+    taskExecutionInfo.setTaskId(jobExecutionInfo.getJobId() + "_0");
+    taskExecutionInfo.setStartTime(System.currentTimeMillis());
+    taskExecutionInfo.setState(TaskStateEnum.RUNNING);
+    taskExecutionInfo.setTaskProperties(new StringMap(ImmutableMap.of("tk", "tv")));
+    TaskExecutionInfoArray taskExecutionInfos = new TaskExecutionInfoArray();
+    taskExecutionInfos.add(taskExecutionInfo);
+    jobExecutionInfo.setTaskExecutions(taskExecutionInfos);
+
+    // Writes of the same job racing to insert its rows do not fail on duplicate keys
+    int numWriters = 8;
+    final CountDownLatch startLatch = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(numWriters);
+    try {
+      List<Future<Void>> futures = Lists.newArrayList();
+      for (int i = 0; i < numWriters; i++) {
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call()
+              throws Exception {
+            startLatch.await();
+            DatabaseJobHistoryStoreTest.this.jobHistoryStore.put(jobExecutionInfo);
+            return null;
+          }
+        }));
+      }
+      startLatch.countDown();
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    JobExecutionQuery queryByJobId = new JobExecutionQuery();
+    queryByJobId.setIdType(QueryIdTypeEnum.JOB_ID);
+    queryByJobId.setId(JobExecutionQuery.Id.create(jobExecutionInfo.getJobId()));
+    List<JobExecutionInfo> result = this.jobHistoryStore.get(queryByJobId);
+    Assert.assertEquals(result.size(), 1);
+    Assert.assertEquals(result.get(0).getJobProperties(), jobExecutionInfo.getJobProperties());
+    Assert.assertEquals(result.get(0).getTaskExecutions().size(), 1);
+    Assert.assertEquals(result.get(0).getTaskExecutions().get(0).getTaskProperties(),
+        taskExecutionInfo.getTaskProperties());
+  }
+
   @AfterClass
   public void tearDown()
       throws Exception {
@@ -58,6 +58,7 @@ CREATE TABLE gobblin_job_metrics (
 	created_ts TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
 	last_modified_ts TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
 	PRIMARY KEY (metric_id),
+	UNIQUE (job_id, metric_group, metric_name, metric_type),
 	FOREIGN KEY (job_id)
 	REFERENCES gobblin_job_executions(job_id)
 	ON DELETE CASCADE
@@ -73,6 +74,7 @@ CREATE TABLE gobblin_task_metrics (
 	created_ts TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
 	last_modified_ts TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
 	PRIMARY KEY (metric_id),
+	UNIQUE (task_id, metric_group, metric_name, metric_type),
 	FOREIGN KEY (task_id)
 	REFERENCES gobblin_task_executions(task_id)
 	ON DELETE CASCADE
@@ -86,6 +88,7 @@ CREATE TABLE gobblin_job_properties (
 	created_ts TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
 	last_modified_ts TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
 	PRIMARY KEY (property_id),
+	UNIQUE (job_id, property_key),
 	FOREIGN KEY (job_id)
   REFERENCES gobblin_job_executions(job_id)
   ON DELETE CASCADE
@@ -99,6 +102,7 @@ CREATE TABLE gobblin_task_properties (
 	created_ts TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
 	last_modified_ts TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
 	PRIMARY KEY (property_id),
+	UNIQUE (task_id, property_key),
 	FOREIGN KEY (task_id)
   REFERENCES gobblin_task_executions(task_id)
   ON DELETE CASCADE
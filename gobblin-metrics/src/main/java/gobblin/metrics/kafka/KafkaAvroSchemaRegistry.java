@@ -12,9 +12,11 @@
 
 package gobblin.metrics.kafka;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
@@ -31,19 +33,33 @@ import org.apache.commons.httpclient.methods.PostMethod;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 
 /**
  * A schema registry class that provides two services: get the latest schema of a topic, and register a schema.
  *
+ * <p>
+ *   In a long-lived process, {@link #enableSharing(long, TimeUnit)} makes {@link #get(Properties)} return the same
+ *   {@link KafkaAvroSchemaRegistry} for all users of the same schema registry, so that the schemas cached by ID and
+ *   the HTTP connections are kept across tasks and jobs. A shared {@link KafkaAvroSchemaRegistry} is closed once it
+ *   has been neither asked for nor used during the idle timeout, or when sharing is disabled.
+ * </p>
+ *
  * @author ziliu
  */
-public class KafkaAvroSchemaRegistry {
+public class KafkaAvroSchemaRegistry implements Closeable {
 
   private static final Logger LOG = LoggerFactory.getLogger(KafkaAvroSchemaRegistry.class);
 
@@ -58,19 +74,30 @@ public class KafkaAvroSchemaRegistry {
   private static final String KAFKA_SCHEMA_REGISTRY_CACHE_EXPIRE_AFTER_WRITE_MIN =
       "kafka.schema.registry.cache.expire.after.write.min";
   private static final String DEFAULT_KAFKA_SCHEMA_REGISTRY_CACHE_EXPIRE_AFTER_WRITE_MIN = "10";
+  private static final String KAFKA_SCHEMA_REGISTRY_MAX_CONNECTIONS = "kafka.schema.registry.max.connections";
+  private static final String DEFAULT_KAFKA_SCHEMA_REGISTRY_MAX_CONNECTIONS = "20";
 
   public static final String KAFKA_SCHEMA_REGISTRY_URL = "kafka.schema.registry.url";
   public static final int SCHEMA_ID_LENGTH_BYTE = 16;
   public static final byte MAGIC_BYTE = 0x0;
 
+  private static final String SHARED_REGISTRY_KEY_SEPARATOR = ";";
+
+  // Present while KafkaAvroSchemaRegistrys are shared, by URL and cache settings
+  private static volatile Optional<Cache<String, KafkaAvroSchemaRegistry>> sharedRegistries = Optional.absent();
+
   private final LoadingCache<String, Schema> cachedSchemasById;
+  private final MultiThreadedHttpConnectionManager connectionManager;
   private final HttpClient httpClient;
   private final String url;
+  private final String sharedRegistryKey;
+  private volatile boolean closed = false;
 
   /**
    * @param properties properties should contain property "kafka.schema.registry.url", and optionally
-   * "kafka.schema.registry.max.cache.size" (default = 1000) and
-   * "kafka.schema.registry.cache.expire.after.write.min" (default = 10).
+   * "kafka.schema.registry.max.cache.size" (default = 1000),
+   * "kafka.schema.registry.cache.expire.after.write.min" (default = 10) and
+   * "kafka.schema.registry.max.connections" (default = 20), the number of requests sent at the same time.
    */
   public KafkaAvroSchemaRegistry(Properties properties) {
     Preconditions.checkArgument(properties.containsKey(KAFKA_SCHEMA_REGISTRY_URL),
@@ -84,7 +111,83 @@ public class KafkaAvroSchemaRegistry {
             DEFAULT_KAFKA_SCHEMA_REGISTRY_CACHE_EXPIRE_AFTER_WRITE_MIN));
     this.cachedSchemasById = CacheBuilder.newBuilder().maximumSize(maxCacheSize)
         .expireAfterWrite(expireAfterWriteMin, TimeUnit.MINUTES).build(new KafkaSchemaCacheLoader());
-    this.httpClient = new HttpClient(new MultiThreadedHttpConnectionManager());
+    // Requests are not serialized, so a registry shared by many tasks may use as many connections as it allows
+    int maxConnections = Integer.parseInt(
+        properties.getProperty(KAFKA_SCHEMA_REGISTRY_MAX_CONNECTIONS, DEFAULT_KAFKA_SCHEMA_REGISTRY_MAX_CONNECTIONS));
+    this.connectionManager = new MultiThreadedHttpConnectionManager();
+    this.connectionManager.getParams().setDefaultMaxConnectionsPerHost(maxConnections);
+    this.connectionManager.getParams().setMaxTotalConnections(maxConnections);
+    this.httpClient = new HttpClient(this.connectionManager);
+    this.sharedRegistryKey = getSharedRegistryKey(properties);
+  }
+
+  /**
+   * Get a {@link KafkaAvroSchemaRegistry} for the given properties, which is shared with other users of the same
+   * schema registry if {@link #enableSharing(long, TimeUnit)} has been called.
+   *
+   * @param properties see {@link #KafkaAvroSchemaRegistry(Properties)}
+   */
+  public static KafkaAvroSchemaRegistry get(final Properties properties) {
+    Optional<Cache<String, KafkaAvroSchemaRegistry>> registries = sharedRegistries;
+    if (!registries.isPresent()) {
+      return new KafkaAvroSchemaRegistry(properties);
+    }
+
+    try {
+      return registries.get().get(getSharedRegistryKey(properties), new Callable<KafkaAvroSchemaRegistry>() {
+        @Override
+        public KafkaAvroSchemaRegistry call() {
+          return new KafkaAvroSchemaRegistry(properties);
+        }
+      });
+    } catch (ExecutionException ee) {
+      throw Throwables.propagate(ee.getCause());
+    } catch (UncheckedExecutionException uee) {
+      throw Throwables.propagate(uee.getCause());
+    }
+  }
+
+  /**
+   * Share {@link KafkaAvroSchemaRegistry}s returned by {@link #get(Properties)} from now on, until they are not
+   * asked for or used during the given time.
+   */
+  public static synchronized void enableSharing(long idleTimeout, TimeUnit timeUnit) {
+    LOG.info(String.format("Sharing schema registries asked for within %d %s", idleTimeout, timeUnit));
+    disableSharing();
+    sharedRegistries = Optional.of(CacheBuilder.newBuilder().expireAfterAccess(idleTimeout, timeUnit)
+        .removalListener(new RemovalListener<String, KafkaAvroSchemaRegistry>() {
+          @Override
+          public void onRemoval(RemovalNotification<String, KafkaAvroSchemaRegistry> notification) {
+            LOG.info(String.format("Closing shared schema registry %s removed with cause %s",
+                notification.getValue().url, notification.getCause()));
+            notification.getValue().close();
+          }
+        }).<String, KafkaAvroSchemaRegistry>build());
+  }
+
+  /**
+   * Stop sharing {@link KafkaAvroSchemaRegistry}s.
+   */
+  public static synchronized void disableSharing() {
+    Optional<Cache<String, KafkaAvroSchemaRegistry>> registries = sharedRegistries;
+    sharedRegistries = Optional.absent();
+    if (registries.isPresent()) {
+      registries.get().invalidateAll();
+    }
+  }
+
+  /**
+   * Close the HTTP connections of this {@link KafkaAvroSchemaRegistry}, which cannot be used afterwards.
+   */
+  @Override
+  public void close() {
+    this.closed = true;
+    this.connectionManager.shutdown();
+  }
+
+  @VisibleForTesting
+  boolean isClosed() {
+    return this.closed;
   }
 
   /**
@@ -95,6 +198,7 @@ public class KafkaAvroSchemaRegistry {
    * @throws SchemaNotFoundException if ID not found
    */
   public Schema getSchemaById(String id) throws SchemaNotFoundException {
+    markUsed();
     try {
       return cachedSchemasById.get(id);
     } catch (ExecutionException e) {
@@ -109,7 +213,8 @@ public class KafkaAvroSchemaRegistry {
    * @return the latest schema
    * @throws SchemaNotFoundException if topic name not found.
    */
-  public synchronized Schema getLatestSchemaByTopic(String topic) throws SchemaNotFoundException {
+  public Schema getLatestSchemaByTopic(String topic) throws SchemaNotFoundException {
+    markUsed();
     String schemaUrl = KafkaAvroSchemaRegistry.this.url + GET_RESOURCE_BY_TYPE + topic;
 
     LOG.debug("Fetching from URL : " + schemaUrl);
@@ -169,7 +274,8 @@ public class KafkaAvroSchemaRegistry {
    * @param schema
    * @return schema ID of the registered schema
    */
-  public synchronized String register(Schema schema) {
+  public String register(Schema schema) {
+    markUsed();
     LOG.info("Registering schema " + schema.toString());
 
     PostMethod post = new PostMethod(url);
@@ -212,13 +318,34 @@ public class KafkaAvroSchemaRegistry {
     }
   }
 
+  /**
+   * Count a use of this {@link KafkaAvroSchemaRegistry} as an access to its shared entry, if any, so a shared
+   * {@link KafkaAvroSchemaRegistry} held and used by a long-running task is not closed as idle.
+   */
+  private void markUsed() {
+    Optional<Cache<String, KafkaAvroSchemaRegistry>> registries = sharedRegistries;
+    if (registries.isPresent()) {
+      registries.get().getIfPresent(this.sharedRegistryKey);
+    }
+  }
+
+  private static String getSharedRegistryKey(Properties properties) {
+    return properties.getProperty(KAFKA_SCHEMA_REGISTRY_URL) + SHARED_REGISTRY_KEY_SEPARATOR
+        + properties.getProperty(KAFKA_SCHEMA_REGISTRY_MAX_CACHE_SIZE, DEFAULT_KAFKA_SCHEMA_REGISTRY_MAX_CACHE_SIZE)
+        + SHARED_REGISTRY_KEY_SEPARATOR + properties.getProperty(KAFKA_SCHEMA_REGISTRY_CACHE_EXPIRE_AFTER_WRITE_MIN,
+            DEFAULT_KAFKA_SCHEMA_REGISTRY_CACHE_EXPIRE_AFTER_WRITE_MIN)
+        + SHARED_REGISTRY_KEY_SEPARATOR
+        + properties.getProperty(KAFKA_SCHEMA_REGISTRY_MAX_CONNECTIONS, DEFAULT_KAFKA_SCHEMA_REGISTRY_MAX_CONNECTIONS);
+  }
+
   private class KafkaSchemaCacheLoader extends CacheLoader<String, Schema> {
 
+    // Schemas of different IDs may be loaded at the same time
     private final Map<String, FailedFetchHistory> failedFetchHistories;
 
     private KafkaSchemaCacheLoader() {
       super();
-      this.failedFetchHistories = Maps.newHashMap();
+      this.failedFetchHistories = Maps.newConcurrentMap();
     }
 
     @Override
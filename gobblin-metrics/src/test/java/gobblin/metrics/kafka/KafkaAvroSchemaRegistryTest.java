@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.metrics.kafka;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+
+/**
+ * Unit tests for the sharing of {@link KafkaAvroSchemaRegistry}s.
+ */
+@Test(groups = {"gobblin.metrics"})
+public class KafkaAvroSchemaRegistryTest {
+
+  @Test
+  public void testUnsharedRegistries() {
+    Properties properties = createProperties("http://localhost:12345/schemaRegistry");
+    Assert.assertNotSame(KafkaAvroSchemaRegistry.get(properties), KafkaAvroSchemaRegistry.get(properties));
+  }
+
+  @Test
+  public void testSharedRegistryClosedWhenIdle() throws Exception {
+    KafkaAvroSchemaRegistry.enableSharing(100, TimeUnit.MILLISECONDS);
+    Properties properties = createProperties("http://localhost:12345/schemaRegistry");
+    KafkaAvroSchemaRegistry registry = KafkaAvroSchemaRegistry.get(properties);
+    Assert.assertSame(KafkaAvroSchemaRegistry.get(properties), registry);
+    Assert.assertNotSame(KafkaAvroSchemaRegistry.get(createProperties("http://localhost:12346/schemaRegistry")),
+        registry);
+
+    // A registry not asked for during the idle timeout is closed and replaced
+    Thread.sleep(200);
+    KafkaAvroSchemaRegistry newRegistry = KafkaAvroSchemaRegistry.get(properties);
+    Assert.assertNotSame(newRegistry, registry);
+    Assert.assertTrue(registry.isClosed());
+    Assert.assertFalse(newRegistry.isClosed());
+  }
+
+  @Test
+  public void testSharedRegistriesClosedWhenSharingDisabled() {
+    KafkaAvroSchemaRegistry.enableSharing(1, TimeUnit.HOURS);
+    KafkaAvroSchemaRegistry registry =
+        KafkaAvroSchemaRegistry.get(createProperties("http://localhost:12345/schemaRegistry"));
+
+    KafkaAvroSchemaRegistry.disableSharing();
+    Assert.assertTrue(registry.isClosed());
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    KafkaAvroSchemaRegistry.disableSharing();
+  }
+
+  private Properties createProperties(String url) {
+    Properties properties = new Properties();
+    properties.setProperty(KafkaAvroSchemaRegistry.KAFKA_SCHEMA_REGISTRY_URL, url);
+    return properties;
+  }
+}
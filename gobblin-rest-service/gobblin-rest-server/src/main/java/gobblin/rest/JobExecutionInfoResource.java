@@ -62,6 +62,11 @@ public class JobExecutionInfoResource extends ComplexKeyResourceTemplate<JobExec
 
     JobExecutionQueryResult result = new JobExecutionQueryResult();
     result.setJobExecutions(jobExecutionInfos);
+    // A full page of a query by job name may be followed by more pages
+    if (query.getIdType() == QueryIdTypeEnum.JOB_NAME && query.getLimit() > 0
+        && jobExecutionInfos.size() >= query.getLimit()) {
+      result.setNextCursor(jobExecutionInfos.get(jobExecutionInfos.size() - 1).getJobId());
+    }
     return result;
   }
 
@@ -73,7 +78,7 @@ public class JobExecutionInfoResource extends ComplexKeyResourceTemplate<JobExec
     for (ComplexResourceKey<JobExecutionQuery, EmptyRecord> key : keys) {
       JobExecutionQueryResult result = get(key);
       if (result != null) {
-        results.put(key, get(key));
+        results.put(key, result);
       }
     }
 
@@ -13,11 +13,14 @@
 package gobblin.rest;
 
 import java.net.URI;
+import java.util.Map;
 import java.util.Properties;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Optional;
 import com.google.common.util.concurrent.AbstractIdleService;
 import com.google.inject.Guice;
@@ -36,6 +39,7 @@ import com.linkedin.restli.server.mock.SimpleBeanProvider;
 import com.linkedin.restli.server.resources.ResourceFactory;
 
 import gobblin.configuration.ConfigurationKeys;
+import gobblin.metastore.CachingJobHistoryStore;
 import gobblin.metastore.JobHistoryStore;
 import gobblin.metastore.MetaStoreModule;
 
@@ -43,17 +47,31 @@ import gobblin.metastore.MetaStoreModule;
 /**
  * A server running the Rest.li resource for job execution queries.
  *
+ * <p>
+ *     If {@link ConfigurationKeys#REST_SERVER_CACHE_ENABLED_KEY} is set to {@code true}, query results of
+ *     finished job executions are cached by a {@link CachingJobHistoryStore}, whose metrics are registered
+ *     with the {@link MetricRegistry} given to the server under the prefix {@link #CACHE_METRICS_PREFIX}.
+ * </p>
+ *
  * @author ynli
  */
 public class JobExecutionInfoServer extends AbstractIdleService {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(JobExecutionInfoServer.class);
 
+  public static final String CACHE_METRICS_PREFIX = "gobblin.rest.jobHistoryCache";
+
   private final Properties properties;
+  private final MetricRegistry metricRegistry;
   private volatile Optional<HttpServer> httpServer;
 
   public JobExecutionInfoServer(Properties properties) {
+    this(properties, new MetricRegistry());
+  }
+
+  public JobExecutionInfoServer(Properties properties, MetricRegistry metricRegistry) {
     this.properties = properties;
+    this.metricRegistry = metricRegistry;
   }
 
   @Override
@@ -74,6 +92,18 @@ public class JobExecutionInfoServer extends AbstractIdleService {
     // Handle dependency injection
     Injector injector = Guice.createInjector(new MetaStoreModule(properties));
     JobHistoryStore jobHistoryStore = injector.getInstance(JobHistoryStore.class);
+    if (Boolean.valueOf(
+        properties.getProperty(ConfigurationKeys.REST_SERVER_CACHE_ENABLED_KEY, Boolean.FALSE.toString()))) {
+      CachingJobHistoryStore cachingJobHistoryStore = new CachingJobHistoryStore(jobHistoryStore,
+          Long.parseLong(properties.getProperty(ConfigurationKeys.REST_SERVER_CACHE_MAX_SIZE_KEY,
+              Long.toString(ConfigurationKeys.DEFAULT_REST_SERVER_CACHE_MAX_SIZE))),
+          Long.parseLong(properties.getProperty(ConfigurationKeys.REST_SERVER_CACHE_LATEST_TTL_SECONDS_KEY,
+              Long.toString(ConfigurationKeys.DEFAULT_REST_SERVER_CACHE_LATEST_TTL_SECONDS))));
+      for (Map.Entry<String, Metric> entry : cachingJobHistoryStore.getMetrics().entrySet()) {
+        this.metricRegistry.register(MetricRegistry.name(CACHE_METRICS_PREFIX, entry.getKey()), entry.getValue());
+      }
+      jobHistoryStore = cachingJobHistoryStore;
+    }
     SimpleBeanProvider beanProvider = new SimpleBeanProvider();
     beanProvider.add("jobHistoryStore", jobHistoryStore);
     // Use InjectMockResourceFactory to keep this Spring free
@@ -19,6 +19,7 @@ import java.util.Properties;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -136,6 +137,18 @@ public abstract class AbstractJobLauncher implements JobLauncher {
    */
   public static List<Task> submitWorkUnits(String jobId, List<WorkUnit> workUnits, TaskStateTracker stateTracker,
       TaskExecutor taskExecutor, CountDownLatch countDownLatch) throws InterruptedException {
+    return submitWorkUnits(jobId, workUnits, stateTracker, taskExecutor, countDownLatch,
+        Optional.<List<Future<?>>>absent());
+  }
+
+  /**
+   * Submit a list of {@link WorkUnit}s of a job to run, like
+   * {@link #submitWorkUnits(String, List, TaskStateTracker, TaskExecutor, CountDownLatch)}, and add the
+   * {@link Future}s of the submitted {@link Task}s to the given list, if any, so they can be cancelled.
+   */
+  public static List<Task> submitWorkUnits(String jobId, List<WorkUnit> workUnits, TaskStateTracker stateTracker,
+      TaskExecutor taskExecutor, CountDownLatch countDownLatch, Optional<List<Future<?>>> taskFutures)
+      throws InterruptedException {
 
     List<Task> tasks = Lists.newArrayList();
     for (WorkUnit workUnit : workUnits) {
@@ -149,7 +162,11 @@ public abstract class AbstractJobLauncher implements JobLauncher {
       Task task = new Task(new TaskContext(workUnitState), stateTracker, taskExecutor, Optional.of(countDownLatch));
       stateTracker.registerNewTask(task);
       tasks.add(task);
-      taskExecutor.execute(task);
+      if (taskFutures.isPresent()) {
+        taskFutures.get().add(taskExecutor.submit(task));
+      } else {
+        taskExecutor.execute(task);
+      }
     }
 
     new EventSubmitter.Builder(JobMetrics.get(jobId).getMetricContext(), "gobblin.runtime").build()
@@ -346,8 +363,12 @@ public abstract class AbstractJobLauncher implements JobLauncher {
     try {
       this.jobContext.getSource().shutdown(this.jobContext.getJobState());
     } finally {
-      if (GobblinMetrics.isEnabled(this.jobProps)) {
-        GobblinMetricsRegistry.getInstance().remove(this.jobContext.getJobId());
+      try {
+        this.jobContext.close();
+      } finally {
+        if (GobblinMetrics.isEnabled(this.jobProps)) {
+          GobblinMetricsRegistry.getInstance().remove(this.jobContext.getJobId());
+        }
       }
     }
   }
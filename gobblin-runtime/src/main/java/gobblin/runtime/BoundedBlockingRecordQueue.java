@@ -98,6 +98,28 @@ public class BoundedBlockingRecordQueue<T> {
     return record;
   }
 
+  /**
+   * Get a record from the head of the queue without waiting for a record to become available.
+   *
+   * @return the record at the head of the queue, or <code>null</code> if the queue is empty
+   */
+  public T poll() {
+    T record = this.blockingDeque.poll();
+    if (this.queueStats.isPresent()) {
+      this.queueStats.get().getsRateMeter.mark();
+    }
+    return record;
+  }
+
+  /**
+   * Check if the queue is empty.
+   *
+   * @return whether the queue is empty
+   */
+  public boolean isEmpty() {
+    return this.blockingDeque.isEmpty();
+  }
+
   /**
    * Get a {@link QueueStats} object representing queue statistics of this {@link BoundedBlockingRecordQueue}.
    *
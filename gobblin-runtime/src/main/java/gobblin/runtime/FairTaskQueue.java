@@ -0,0 +1,381 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.runtime;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Queues;
+
+
+/**
+ * A {@link BlockingQueue} of {@link JobRunnable}s that hands out the queued {@link Runnable}s of different jobs in
+ * a fair order instead of in the order they were queued, for use as the work queue of a fixed-size
+ * {@link java.util.concurrent.ThreadPoolExecutor} running tasks of many jobs.
+ *
+ * <p>
+ *   Jobs are served by priority first: a {@link Runnable} of a job is only handed out if no job of a higher
+ *   priority has one that can run. Jobs of the same priority share the threads in proportion to their weights
+ *   following start-time fair queuing: each job has a virtual time that grows by the inverse of its weight with
+ *   every {@link Runnable} handed out, and the job with the lowest virtual time is served first. A job that has
+ *   nothing queued does not save up a share, as its virtual time is moved forward to the current virtual time when
+ *   it queues a {@link Runnable} again. A job can also be limited to a maximum number of running {@link Runnable}s,
+ *   leaving the other threads to other jobs.
+ * </p>
+ *
+ * <p>
+ *   The thread pool executor must have all of its threads started up front, e.g., by calling
+ *   {@link java.util.concurrent.ThreadPoolExecutor#prestartAllCoreThreads()}, so every {@link Runnable} goes
+ *   through the queue. Elements of other types are not accepted.
+ * </p>
+ */
+class FairTaskQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition runnableAvailable = this.lock.newCondition();
+
+  // Jobs with queued or running Runnables by job ID
+  private final Map<String, JobQueue> jobQueues = Maps.newLinkedHashMap();
+  // Virtual time of the last Runnable handed out
+  private double virtualTime = 0;
+  private int size = 0;
+
+  @Override
+  public boolean offer(Runnable runnable) {
+    Preconditions.checkArgument(runnable instanceof JobRunnable, "Only JobRunnables can be queued");
+    JobRunnable jobRunnable = (JobRunnable) runnable;
+
+    this.lock.lock();
+    try {
+      JobQueue jobQueue = this.jobQueues.get(jobRunnable.jobId);
+      if (jobQueue == null) {
+        jobQueue = new JobQueue(this.virtualTime);
+        this.jobQueues.put(jobRunnable.jobId, jobQueue);
+      } else if (jobQueue.isIdle()) {
+        jobQueue.virtualTime = Math.max(jobQueue.virtualTime, this.virtualTime);
+      }
+      jobQueue.update(jobRunnable);
+
+      jobRunnable.queue = this;
+      jobRunnable.enqueueNanos = System.nanoTime();
+      jobQueue.queued.addLast(jobRunnable);
+      this.size++;
+      this.runnableAvailable.signal();
+      return true;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public void put(Runnable runnable) {
+    offer(runnable);
+  }
+
+  @Override
+  public boolean offer(Runnable runnable, long timeout, TimeUnit unit) {
+    return offer(runnable);
+  }
+
+  @Override
+  public Runnable poll() {
+    JobRunnable jobRunnable;
+    this.lock.lock();
+    try {
+      JobQueue jobQueue = nextJobQueue();
+      jobRunnable = jobQueue == null ? null : dequeue(jobQueue);
+    } finally {
+      this.lock.unlock();
+    }
+    return handOut(jobRunnable);
+  }
+
+  @Override
+  public Runnable take() throws InterruptedException {
+    JobRunnable jobRunnable;
+    this.lock.lockInterruptibly();
+    try {
+      JobQueue jobQueue;
+      while ((jobQueue = nextJobQueue()) == null) {
+        this.runnableAvailable.await();
+      }
+      jobRunnable = dequeue(jobQueue);
+    } finally {
+      this.lock.unlock();
+    }
+    return handOut(jobRunnable);
+  }
+
+  @Override
+  public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+    long nanos = unit.toNanos(timeout);
+    JobRunnable jobRunnable;
+    this.lock.lockInterruptibly();
+    try {
+      JobQueue jobQueue;
+      while ((jobQueue = nextJobQueue()) == null) {
+        if (nanos <= 0) {
+          return null;
+        }
+        nanos = this.runnableAvailable.awaitNanos(nanos);
+      }
+      jobRunnable = dequeue(jobQueue);
+    } finally {
+      this.lock.unlock();
+    }
+    return handOut(jobRunnable);
+  }
+
+  @Override
+  public Runnable peek() {
+    this.lock.lock();
+    try {
+      JobQueue jobQueue = nextJobQueue();
+      return jobQueue == null ? null : jobQueue.queued.peekFirst();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    if (!(o instanceof JobRunnable)) {
+      return false;
+    }
+
+    this.lock.lock();
+    try {
+      JobQueue jobQueue = this.jobQueues.get(((JobRunnable) o).jobId);
+      if (jobQueue == null || !jobQueue.queued.remove(o)) {
+        return false;
+      }
+      this.size--;
+      removeIfIdle(((JobRunnable) o).jobId, jobQueue);
+      return true;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public int size() {
+    this.lock.lock();
+    try {
+      return this.size;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public int remainingCapacity() {
+    return Integer.MAX_VALUE;
+  }
+
+  /**
+   * Get a snapshot of the queued {@link Runnable}s, which does not support removal.
+   */
+  @Override
+  public Iterator<Runnable> iterator() {
+    this.lock.lock();
+    try {
+      List<Runnable> runnables = Lists.newArrayListWithCapacity(this.size);
+      for (JobQueue jobQueue : this.jobQueues.values()) {
+        runnables.addAll(jobQueue.queued);
+      }
+      return runnables.iterator();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public int drainTo(Collection<? super Runnable> collection) {
+    return drainTo(collection, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int drainTo(Collection<? super Runnable> collection, int maxElements) {
+    this.lock.lock();
+    try {
+      int drained = 0;
+      Iterator<Map.Entry<String, JobQueue>> iterator = this.jobQueues.entrySet().iterator();
+      while (iterator.hasNext() && drained < maxElements) {
+        JobQueue jobQueue = iterator.next().getValue();
+        while (!jobQueue.queued.isEmpty() && drained < maxElements) {
+          collection.add(jobQueue.queued.pollFirst());
+          drained++;
+        }
+        if (jobQueue.isIdle()) {
+          iterator.remove();
+        }
+      }
+      this.size -= drained;
+      return drained;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Get the {@link JobQueue} to hand out the next {@link Runnable} from, or {@code null} if no job has a
+   * {@link Runnable} that can run.
+   */
+  private JobQueue nextJobQueue() {
+    JobQueue next = null;
+    for (JobQueue jobQueue : this.jobQueues.values()) {
+      if (jobQueue.queued.isEmpty() ||
+          (jobQueue.maxConcurrency > 0 && jobQueue.running >= jobQueue.maxConcurrency)) {
+        continue;
+      }
+      if (next == null || jobQueue.priority > next.priority ||
+          (jobQueue.priority == next.priority && jobQueue.virtualTime < next.virtualTime)) {
+        next = jobQueue;
+      }
+    }
+    return next;
+  }
+
+  private JobRunnable dequeue(JobQueue jobQueue) {
+    JobRunnable jobRunnable = jobQueue.queued.pollFirst();
+    this.size--;
+    jobQueue.running++;
+    this.virtualTime = jobQueue.virtualTime;
+    jobQueue.virtualTime += 1.0 / jobQueue.weight;
+
+    // Let another waiting thread pick up the next Runnable, if any
+    if (nextJobQueue() != null) {
+      this.runnableAvailable.signal();
+    }
+    return jobRunnable;
+  }
+
+  private Runnable handOut(JobRunnable jobRunnable) {
+    if (jobRunnable != null) {
+      jobRunnable.onDequeue(System.nanoTime() - jobRunnable.enqueueNanos);
+    }
+    return jobRunnable;
+  }
+
+  private void onCompletion(JobRunnable jobRunnable) {
+    this.lock.lock();
+    try {
+      JobQueue jobQueue = this.jobQueues.get(jobRunnable.jobId);
+      if (jobQueue == null) {
+        return;
+      }
+      jobQueue.running--;
+      removeIfIdle(jobRunnable.jobId, jobQueue);
+      // A job held back by its maximum number of running Runnables may be able to run another one
+      this.runnableAvailable.signal();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  private void removeIfIdle(String jobId, JobQueue jobQueue) {
+    if (jobQueue.isIdle()) {
+      this.jobQueues.remove(jobId);
+    }
+  }
+
+  /**
+   * A {@link Runnable} of a job to be queued in a {@link FairTaskQueue}.
+   */
+  static class JobRunnable implements Runnable {
+
+    private final Runnable runnable;
+    private final String jobId;
+    private final int weight;
+    private final int priority;
+    private final int maxConcurrency;
+
+    private FairTaskQueue queue;
+    private long enqueueNanos;
+
+    /**
+     * @param runnable the {@link Runnable} to run
+     * @param jobId ID of the job the {@link Runnable} belongs to
+     * @param weight share of the job among the jobs of the same priority
+     * @param priority priority of the job, the jobs with a higher priority being served first
+     * @param maxConcurrency maximum number of running {@link Runnable}s of the job, or 0 for no limit
+     */
+    JobRunnable(Runnable runnable, String jobId, int weight, int priority, int maxConcurrency) {
+      Preconditions.checkArgument(weight > 0, "Job weight should be positive");
+      this.runnable = runnable;
+      this.jobId = jobId;
+      this.weight = weight;
+      this.priority = priority;
+      this.maxConcurrency = maxConcurrency;
+    }
+
+    @Override
+    public void run() {
+      try {
+        this.runnable.run();
+      } finally {
+        if (this.queue != null) {
+          this.queue.onCompletion(this);
+        }
+      }
+    }
+
+    /**
+     * Called when the {@link Runnable} is handed out by the queue.
+     *
+     * @param waitNanos time the {@link Runnable} spent in the queue in nanoseconds
+     */
+    protected void onDequeue(long waitNanos) {
+      // Nothing to do by default
+    }
+  }
+
+  /**
+   * Queued {@link JobRunnable}s and scheduling state of a job.
+   */
+  private static class JobQueue {
+
+    private final Deque<JobRunnable> queued = Queues.newArrayDeque();
+    private int running = 0;
+    private double virtualTime;
+
+    private int weight;
+    private int priority;
+    private int maxConcurrency;
+
+    JobQueue(double virtualTime) {
+      this.virtualTime = virtualTime;
+    }
+
+    boolean isIdle() {
+      return this.queued.isEmpty() && this.running == 0;
+    }
+
+    void update(JobRunnable jobRunnable) {
+      this.weight = jobRunnable.weight;
+      this.priority = jobRunnable.priority;
+      this.maxConcurrency = jobRunnable.maxConcurrency;
+    }
+  }
+}
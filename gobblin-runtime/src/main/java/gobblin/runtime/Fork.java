@@ -15,7 +15,10 @@ package gobblin.runtime;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
@@ -25,6 +28,7 @@ import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.io.Closer;
+import com.google.common.util.concurrent.SettableFuture;
 
 import gobblin.configuration.ConfigurationKeys;
 import gobblin.configuration.State;
@@ -61,6 +65,12 @@ import gobblin.writer.Destination;
  *     </ul>
  * </p>
  *
+ * <p>
+ *     A {@link Fork} normally holds a thread until it has processed all records, waiting on its record queue
+ *     when the queue is empty. A {@link Fork} run through {@link #runCooperatively(Executor)} instead processes
+ *     its records in slices run on a bounded thread pool, and gives the thread back whenever its queue is empty.
+ * </p>
+ *
  * @author ynli
  */
 @SuppressWarnings("unchecked")
@@ -89,6 +99,7 @@ public class Fork implements Closeable, Runnable, FinalState {
 
   // A bounded blocking queue in between the parent task and this fork
   private final BoundedBlockingRecordQueue<Object> recordQueue;
+  private final int recordQueueCapacity;
 
   private final Closer closer = Closer.create();
 
@@ -105,6 +116,18 @@ public class Fork implements Closeable, Runnable, FinalState {
   // An AtomicReference is still used here for the compareAntSet operation.
   private final AtomicReference<ForkState> forkState;
 
+  // Executor running the slices of this fork if it runs cooperatively
+  private volatile Optional<Executor> sliceExecutor = Optional.absent();
+  // Whether a slice of this fork is scheduled or running, which makes sure at most one slice runs at a time
+  private final AtomicBoolean sliceScheduled = new AtomicBoolean(false);
+  private final SettableFuture<Fork> cooperativeCompletion = SettableFuture.create();
+  private final Runnable sliceRunner = new Runnable() {
+    @Override
+    public void run() {
+      runSlice();
+    }
+  };
+
   private static final String FORK_METRICS_BRANCH_NAME_KEY = "forkBranchName";
 
   public Fork(TaskContext taskContext, Object schema, int branches, int index) throws Exception {
@@ -131,10 +154,11 @@ public class Fork implements Closeable, Runnable, FinalState {
       buildWriterIfNotPresent();
     }
 
+    this.recordQueueCapacity = this.taskState.getPropAsInt(
+        ConfigurationKeys.FORK_RECORD_QUEUE_CAPACITY_KEY,
+        ConfigurationKeys.DEFAULT_FORK_RECORD_QUEUE_CAPACITY);
     this.recordQueue = BoundedBlockingRecordQueue.newBuilder()
-        .hasCapacity(this.taskState.getPropAsInt(
-            ConfigurationKeys.FORK_RECORD_QUEUE_CAPACITY_KEY,
-            ConfigurationKeys.DEFAULT_FORK_RECORD_QUEUE_CAPACITY))
+        .hasCapacity(this.recordQueueCapacity)
         .useTimeout(this.taskState.getPropAsLong(
             ConfigurationKeys.FORK_RECORD_QUEUE_TIMEOUT_KEY,
             ConfigurationKeys.DEFAULT_FORK_RECORD_QUEUE_TIMEOUT))
@@ -184,6 +208,28 @@ public class Fork implements Closeable, Runnable, FinalState {
     }
   }
 
+  /**
+   * Run this {@link Fork} cooperatively on the given {@link Executor}.
+   *
+   * <p>
+   *   Instead of holding a thread while waiting for records, this {@link Fork} processes the records in its queue
+   *   in slices, each run as a separate {@link Runnable} on the {@link Executor}. A slice ends when the queue is
+   *   empty, and a new slice is scheduled when a record is put into the queue or the parent task is done. A slice
+   *   also ends after as many records as the queue can hold to let other {@link Fork}s run. Since a slice never
+   *   waits for records, a {@link Fork} with records in its queue always gets a thread eventually, and the parent
+   *   task cannot be blocked forever on a full queue even if there are fewer threads than {@link Fork}s.
+   * </p>
+   *
+   * @param executor the {@link Executor} to run the slices on
+   * @return a {@link Future} that completes when this {@link Fork} has processed all records or failed
+   */
+  Future<Fork> runCooperatively(Executor executor) {
+    this.sliceExecutor = Optional.of(executor);
+    compareAndSetForkState(ForkState.PENDING, ForkState.RUNNING);
+    scheduleSlice();
+    return this.cooperativeCompletion;
+  }
+
   /**
    * {@inheritDoc}.
    *
@@ -216,7 +262,9 @@ public class Fork implements Closeable, Runnable, FinalState {
       throw new IllegalStateException(
           String.format("Fork %d of task %s has failed and is no longer running", this.index, this.taskId));
     }
-    return this.recordQueue.put(record);
+    boolean succeeded = this.recordQueue.put(record);
+    scheduleSlice();
+    return succeeded;
   }
 
   /**
@@ -229,6 +277,7 @@ public class Fork implements Closeable, Runnable, FinalState {
    */
   public void markParentTaskDone() {
     this.parentTaskDone = true;
+    scheduleSlice();
   }
 
   /**
@@ -386,14 +435,7 @@ public class Fork implements Closeable, Runnable, FinalState {
             return;
           }
         } else {
-          buildWriterIfNotPresent();
-
-          // Convert the record, check its data quality, and finally write it out if quality checking passes.
-          for (Object convertedRecord : this.converter.convertRecord(this.convertedSchema, record, this.taskState)) {
-            if (this.rowLevelPolicyChecker.executePolicies(convertedRecord, this.rowLevelPolicyCheckingResult)) {
-              this.writer.get().write(convertedRecord);
-            }
-          }
+          processRecord(record);
         }
       } catch (InterruptedException ie) {
         this.logger.warn("Interrupted while trying to get a record off the queue", ie);
@@ -402,6 +444,65 @@ public class Fork implements Closeable, Runnable, FinalState {
     }
   }
 
+  /**
+   * Convert a record, check its data quality, and finally write it out if quality checking passes.
+   */
+  private void processRecord(Object record) throws IOException, DataConversionException {
+    buildWriterIfNotPresent();
+
+    for (Object convertedRecord : this.converter.convertRecord(this.convertedSchema, record, this.taskState)) {
+      if (this.rowLevelPolicyChecker.executePolicies(convertedRecord, this.rowLevelPolicyCheckingResult)) {
+        this.writer.get().write(convertedRecord);
+      }
+    }
+  }
+
+  /**
+   * Schedule a slice of this {@link Fork} if it runs cooperatively and no slice is scheduled or running.
+   */
+  private void scheduleSlice() {
+    if (this.sliceExecutor.isPresent() && this.sliceScheduled.compareAndSet(false, true)) {
+      this.sliceExecutor.get().execute(this.sliceRunner);
+    }
+  }
+
+  /**
+   * Process the records in the record queue without waiting for new records.
+   */
+  private void runSlice() {
+    try {
+      for (int i = 0; i < this.recordQueueCapacity; i++) {
+        Object record = this.recordQueue.poll();
+        if (record != null) {
+          processRecord(record);
+        } else if (this.parentTaskDone) {
+          // The parent task is done so all records are in the queue, and no record left means this fork is done
+          if (this.recordQueue.isEmpty()) {
+            compareAndSetForkState(ForkState.RUNNING, ForkState.SUCCEEDED);
+            this.cooperativeCompletion.set(this);
+            return;
+          }
+        } else {
+          // Give the thread back, and check again in case a record was put before the flag was cleared
+          this.sliceScheduled.set(false);
+          if (!this.recordQueue.isEmpty() || this.parentTaskDone) {
+            scheduleSlice();
+          }
+          return;
+        }
+      }
+
+      // Let other forks run before processing more records
+      this.sliceExecutor.get().execute(this.sliceRunner);
+    } catch (Throwable t) {
+      this.forkState.set(ForkState.FAILED);
+      this.logger.error(String.format("Fork %d of task %s failed to process data records", this.index, this.taskId), t);
+      // Clear the queue so the parent task does not wait on it, and keep the slice flag set so no slice runs again
+      this.recordQueue.clear();
+      this.cooperativeCompletion.setException(t);
+    }
+  }
+
   /**
    * Check data quality.
    *
@@ -14,6 +14,7 @@ package gobblin.runtime;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Properties;
 
@@ -35,6 +36,7 @@ import gobblin.configuration.ConfigurationKeys;
 import gobblin.configuration.State;
 import gobblin.configuration.WorkUnitState;
 import gobblin.instrumented.Instrumented;
+import gobblin.metastore.AsyncJobHistoryStore;
 import gobblin.metastore.JobHistoryStore;
 import gobblin.metastore.MetaStoreModule;
 import gobblin.metrics.GobblinMetrics;
@@ -76,6 +78,10 @@ public class JobContext {
   // A map from dataset URNs to DatasetStates (optional and maybe absent if not populated)
   private Optional<Map<String, JobState.DatasetState>> datasetStatesByUrns = Optional.absent();
 
+  // DatasetStates of datasets committed before the job commit, which are skipped by the job commit
+  private final Map<String, JobState.DatasetState> earlyCommittedDatasetStates = Maps.newHashMap();
+  private boolean allEarlyCommitsSucceeded = true;
+
   @SuppressWarnings("unchecked")
   public JobContext(Properties jobProps, Logger logger) throws Exception {
     Preconditions.checkArgument(jobProps.containsKey(ConfigurationKeys.JOB_NAME_KEY),
@@ -101,7 +107,14 @@ public class JobContext {
         .valueOf(jobProps.getProperty(ConfigurationKeys.JOB_HISTORY_STORE_ENABLED_KEY, Boolean.FALSE.toString()));
     if (jobHistoryStoreEnabled) {
       Injector injector = Guice.createInjector(new MetaStoreModule(jobProps));
-      this.jobHistoryStoreOptional = Optional.of(injector.getInstance(JobHistoryStore.class));
+      JobHistoryStore jobHistoryStore = injector.getInstance(JobHistoryStore.class);
+      if (Boolean.valueOf(
+          jobProps.getProperty(ConfigurationKeys.JOB_HISTORY_STORE_ASYNC_ENABLED_KEY, Boolean.FALSE.toString()))) {
+        jobHistoryStore = new AsyncJobHistoryStore(jobHistoryStore,
+            Integer.parseInt(jobProps.getProperty(ConfigurationKeys.JOB_HISTORY_STORE_ASYNC_MAX_PENDING_RECORDS_KEY,
+                Integer.toString(ConfigurationKeys.DEFAULT_JOB_HISTORY_STORE_ASYNC_MAX_PENDING_RECORDS))));
+      }
+      this.jobHistoryStoreOptional = Optional.of(jobHistoryStore);
     } else {
       this.jobHistoryStoreOptional = Optional.absent();
     }
@@ -260,6 +273,15 @@ public class JobContext {
     }
   }
 
+  /**
+   * Close the job history store, which writes any job execution information that is not yet written.
+   */
+  void close() throws IOException {
+    if (this.jobHistoryStoreOptional.isPresent()) {
+      this.jobHistoryStoreOptional.get().close();
+    }
+  }
+
   /**
    * Finalize the {@link JobState} before committing the job.
    */
@@ -274,51 +296,75 @@ public class JobContext {
     }
   }
 
+  /**
+   * Whether datasets can be committed by {@link #commitDatasetEarly(String, Collection)} before the job completes.
+   * This is the case if {@link JobCommitPolicy#COMMIT_ON_PARTIAL_SUCCESS} or
+   * {@link JobCommitPolicy#COMMIT_SUCCESSFUL_TASKS} is used, so that the commit of a dataset does not depend on
+   * the outcome of the rest of the job.
+   */
+  public boolean canCommitDatasetsEarly() {
+    return this.jobCommitPolicy == JobCommitPolicy.COMMIT_ON_PARTIAL_SUCCESS ||
+        this.jobCommitPolicy == JobCommitPolicy.COMMIT_SUCCESSFUL_TASKS;
+  }
+
+  /**
+   * Commit a dataset while tasks of other datasets are still running.
+   *
+   * <p>
+   *   The given {@link TaskState}s must be all the {@link TaskState}s of the dataset. The dataset is committed and
+   *   its state persisted the same way as in {@link #commit()}, which then skips the dataset and only takes into
+   *   account whether this early commit succeeded.
+   * </p>
+   *
+   * @param datasetUrn the dataset URN as being specified by {@link ConfigurationKeys#DATASET_URN_KEY}
+   * @param taskStates the {@link TaskState}s of all tasks of the dataset
+   * @return whether the dataset was committed
+   */
+  public boolean commitDatasetEarly(String datasetUrn, Collection<TaskState> taskStates) {
+    Preconditions.checkState(canCommitDatasetsEarly(),
+        "Datasets cannot be committed early with commit policy " + this.jobCommitPolicy);
+    Preconditions.checkState(!this.earlyCommittedDatasetStates.containsKey(datasetUrn),
+        "Dataset " + datasetUrn + " has already been committed");
+
+    JobState.DatasetState datasetState = this.jobState.newDatasetState(false);
+    datasetState.setProp(ConfigurationKeys.DATASET_URN_KEY, datasetUrn);
+    datasetState.setEndTime(System.currentTimeMillis());
+    datasetState.setDuration(datasetState.getEndTime() - datasetState.getStartTime());
+    for (TaskState taskState : taskStates) {
+      // Set fork.branches explicitly as finalizeJobStateBeforeCommit does for the job
+      datasetState.setProp(ConfigurationKeys.FORK_BRANCHES_KEY,
+          taskState.getPropAsInt(ConfigurationKeys.FORK_BRANCHES_KEY, 1));
+      datasetState.incrementTaskCount();
+      datasetState.addTaskState(taskState);
+    }
+
+    boolean committed = finalizeAndCommitDataset(datasetUrn, datasetState, shouldCommitDataInJob());
+    this.earlyCommittedDatasetStates.put(datasetUrn, datasetState);
+    this.allEarlyCommitsSucceeded &= committed;
+    return committed;
+  }
+
   /**
    * Commit the job on a per-dataset basis.
    */
   void commit() throws IOException {
-    this.datasetStatesByUrns = Optional.of(this.jobState.createDatasetStatesByUrns());
-    boolean allDatasetsCommit = true;
+    Map<String, JobState.DatasetState> datasetStatesByUrns =
+        Maps.newHashMap(this.jobState.createDatasetStatesByUrns());
+    datasetStatesByUrns.putAll(this.earlyCommittedDatasetStates);
+    this.datasetStatesByUrns = Optional.<Map<String, JobState.DatasetState>>of(
+        ImmutableMap.copyOf(datasetStatesByUrns));
+    boolean allDatasetsCommit = this.allEarlyCommitsSucceeded;
     boolean shouldCommitDataInJob = shouldCommitDataInJob();
     if (!shouldCommitDataInJob) {
       this.logger.info("Job will not commit data since data are committed by tasks.");
     }
 
     for (Map.Entry<String, JobState.DatasetState> entry : this.datasetStatesByUrns.get().entrySet()) {
-      String datasetUrn = entry.getKey();
-      JobState.DatasetState datasetState = entry.getValue();
-      finalizeDatasetStateBeforeCommit(datasetState);
-
-      if (!canCommitDataset(datasetState)) {
-        this.logger.warn(String.format("Not committing dataset %s of job %s with commit policy %s and state %s",
-            datasetUrn, this.jobId, this.jobCommitPolicy, datasetState.getState()));
-        allDatasetsCommit = false;
+      if (this.earlyCommittedDatasetStates.containsKey(entry.getKey())) {
         continue;
       }
-
-      try {
-        if (shouldCommitDataInJob) {
-          this.logger.info(String.format("Committing dataset %s of job %s with commit policy %s and state %s",
-              datasetUrn, this.jobId, this.jobCommitPolicy, datasetState.getState()));
-          commitDataset(datasetState);
-        } else {
-          if (datasetState.getState() == JobState.RunningState.SUCCESSFUL) {
-            datasetState.setState(JobState.RunningState.COMMITTED);
-          }
-        }
-      } catch (IOException ioe) {
-        this.logger.error(
-            String.format("Failed to commit dataset state for dataset %s of job %s", datasetUrn, this.jobId), ioe);
+      if (!finalizeAndCommitDataset(entry.getKey(), entry.getValue(), shouldCommitDataInJob)) {
         allDatasetsCommit = false;
-      } finally {
-        try {
-          persistDatasetState(datasetUrn, datasetState);
-        } catch (IOException ioe) {
-          this.logger.error(
-              String.format("Failed to persist dataset state for dataset %s of job %s", datasetUrn, this.jobId), ioe);
-          allDatasetsCommit = false;
-        }
       }
     }
 
@@ -330,6 +376,48 @@ public class JobContext {
     }
   }
 
+  /**
+   * Finalize, commit if allowed and persist the state of a single dataset.
+   *
+   * @return whether the dataset was committed and its state persisted
+   */
+  private boolean finalizeAndCommitDataset(String datasetUrn, JobState.DatasetState datasetState,
+      boolean shouldCommitDataInJob) {
+    finalizeDatasetStateBeforeCommit(datasetState);
+
+    if (!canCommitDataset(datasetState)) {
+      this.logger.warn(String.format("Not committing dataset %s of job %s with commit policy %s and state %s",
+          datasetUrn, this.jobId, this.jobCommitPolicy, datasetState.getState()));
+      return false;
+    }
+
+    boolean committed = true;
+    try {
+      if (shouldCommitDataInJob) {
+        this.logger.info(String.format("Committing dataset %s of job %s with commit policy %s and state %s",
+            datasetUrn, this.jobId, this.jobCommitPolicy, datasetState.getState()));
+        commitDataset(datasetState);
+      } else {
+        if (datasetState.getState() == JobState.RunningState.SUCCESSFUL) {
+          datasetState.setState(JobState.RunningState.COMMITTED);
+        }
+      }
+    } catch (IOException ioe) {
+      this.logger.error(
+          String.format("Failed to commit dataset state for dataset %s of job %s", datasetUrn, this.jobId), ioe);
+      committed = false;
+    } finally {
+      try {
+        persistDatasetState(datasetUrn, datasetState);
+      } catch (IOException ioe) {
+        this.logger.error(
+            String.format("Failed to persist dataset state for dataset %s of job %s", datasetUrn, this.jobId), ioe);
+        committed = false;
+      }
+    }
+    return committed;
+  }
+
   /**
    * Whether data should be committed by the job (as opposed to being commited by the tasks).
    * Data should be committed by the job if either {@link ConfigurationKeys#JOB_COMMIT_POLICY_KEY} is set to "full",
@@ -52,6 +52,24 @@ public class JobLauncherFactory {
    * @return newly created {@link JobLauncher}
    */
   public static @Nonnull JobLauncher newJobLauncher(Properties sysProps, Properties jobProps) throws Exception {
+    return newJobLauncher(sysProps, jobProps, Optional.<TaskExecutor>absent());
+  }
+
+  /**
+   * Create a new {@link JobLauncher}, which runs the tasks of a {@link JobLauncherType#LOCAL} job on the given
+   * {@link TaskExecutor} shared with other jobs, if any.
+   *
+   * <p>
+   *   This method will never return a {@code null}.
+   * </p>
+   *
+   * @param sysProps system configuration properties
+   * @param jobProps job configuration properties
+   * @param sharedTaskExecutor a running {@link TaskExecutor} shared by the jobs of the process
+   * @return newly created {@link JobLauncher}
+   */
+  public static @Nonnull JobLauncher newJobLauncher(Properties sysProps, Properties jobProps,
+      Optional<TaskExecutor> sharedTaskExecutor) throws Exception {
 
     String launcherTypeValue =
         sysProps.getProperty(ConfigurationKeys.JOB_LAUNCHER_TYPE_KEY, JobLauncherType.LOCAL.name());
@@ -60,7 +78,8 @@ public class JobLauncherFactory {
     if (launcherType.isPresent()) {
       switch (launcherType.get()) {
         case LOCAL:
-          return new LocalJobLauncher(JobConfigurationUtils.combineSysAndJobProperties(sysProps, jobProps));
+          return new LocalJobLauncher(JobConfigurationUtils.combineSysAndJobProperties(sysProps, jobProps),
+              sharedTaskExecutor);
         case MAPREDUCE:
           return new MRJobLauncher(JobConfigurationUtils.combineSysAndJobProperties(sysProps, jobProps));
         default:
@@ -14,9 +14,9 @@ package gobblin.runtime;
 
 import java.io.IOException;
 import java.util.List;
-import java.util.concurrent.CompletionService;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang.exception.ExceptionUtils;
@@ -86,8 +86,8 @@ public class Task implements Runnable {
 
   private final List<Optional<Fork>> forks = Lists.newArrayList();
 
-  // A CompletionService used to run the batch of Forks of this Task
-  private final CompletionService forkCompletionService;
+  // The TaskExecutor used to run the Forks of this Task
+  private final TaskExecutor taskExecutor;
 
   // Number of task retries
   private final AtomicInteger retryCount = new AtomicInteger();
@@ -107,7 +107,7 @@ public class Task implements Runnable {
     this.jobId = this.taskState.getJobId();
     this.taskId = this.taskState.getTaskId();
     this.taskStateTracker = taskStateTracker;
-    this.forkCompletionService = new ExecutorCompletionService(taskExecutor.getForkExecutor());
+    this.taskExecutor = taskExecutor;
     this.countDownLatch = countDownLatch;
   }
 
@@ -120,6 +120,7 @@ public class Task implements Runnable {
 
     // Clear the list so it starts with a fresh list of forks for each run/retry
     this.forks.clear();
+    List<Future<?>> forkFutures = Lists.newArrayList();
 
     Closer closer = Closer.create();
     try {
@@ -153,7 +154,7 @@ public class Task implements Runnable {
           Fork fork = closer.register(new Fork(this.taskContext,
               schema instanceof Copyable ? ((Copyable) schema).copy() : schema, branches, i));
           // Run the Fork
-          this.forkCompletionService.submit(fork, fork);
+          forkFutures.add(this.taskExecutor.submit(fork));
           this.forks.add(Optional.of(fork));
         } else {
           this.forks.add(Optional.<Fork> absent());
@@ -187,9 +188,11 @@ public class Task implements Runnable {
         }
       }
 
-      for (Optional<Fork> fork : this.forks) {
-        if (fork.isPresent()) {
-          this.forkCompletionService.take();
+      for (Future<?> forkFuture : forkFutures) {
+        try {
+          forkFuture.get();
+        } catch (ExecutionException ee) {
+          // The failed fork has logged the failure and set its state, which is checked below
         }
       }
 
@@ -12,10 +12,12 @@
 
 package gobblin.runtime;
 
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -31,6 +33,8 @@ import com.google.common.util.concurrent.AbstractIdleService;
 
 import gobblin.configuration.ConfigurationKeys;
 import gobblin.metrics.GobblinMetrics;
+import gobblin.runtime.util.JobMetrics;
+import gobblin.runtime.util.MetricGroup;
 import gobblin.util.ExecutorsUtils;
 
 
@@ -43,50 +47,96 @@ public class TaskExecutor extends AbstractIdleService {
 
   private static final Logger LOG = LoggerFactory.getLogger(TaskExecutor.class);
 
+  // Built-in metric names
+  private static final String TASK_QUEUE_WAIT_TIME = "taskQueueWaitTime";
+
   // Thread pool executor for running tasks
   private final ExecutorService taskExecutor;
 
+  // Whether tasks of different jobs are scheduled through a FairTaskQueue
+  private final boolean fairScheduling;
+
   // Scheduled thread pool executor for scheduling task retries
   private final ScheduledThreadPoolExecutor taskRetryExecutor;
 
   // A separate thread pool executor for running forks of tasks
   private final ExecutorService forkExecutor;
 
+  // Whether forks run cooperatively on a bounded fork executor
+  private final boolean cooperativeForks;
+
   // Task retry interval
   private final long retryIntervalInSeconds;
 
+  // Scheduler of task retries used if adaptive task retries are enabled
+  private final Optional<TaskRetryScheduler> retryScheduler;
+
   /**
    * Constructor used internally.
    */
-  private TaskExecutor(int taskExecutorThreadPoolSize, int coreRetryThreadPoolSize, long retryIntervalInSeconds) {
+  private TaskExecutor(int taskExecutorThreadPoolSize, int coreRetryThreadPoolSize, long retryIntervalInSeconds,
+      Properties properties) {
     Preconditions.checkArgument(taskExecutorThreadPoolSize > 0, "Task executor thread pool size should be positive");
     Preconditions.checkArgument(retryIntervalInSeconds > 0, "Task retry interval should be positive");
 
     // Currently a fixed-size thread pool is used to execute tasks. We probably need to revisit this later.
-    this.taskExecutor = Executors.newFixedThreadPool(
-        taskExecutorThreadPoolSize,
-        ExecutorsUtils.newThreadFactory(Optional.of(LOG), Optional.of("TaskExecutor-%d")));
+    this.fairScheduling = Boolean.valueOf(properties.getProperty(
+        ConfigurationKeys.TASK_EXECUTOR_FAIR_SCHEDULING_ENABLED_KEY,
+        Boolean.toString(ConfigurationKeys.DEFAULT_TASK_EXECUTOR_FAIR_SCHEDULING_ENABLED)));
+    if (this.fairScheduling) {
+      ThreadPoolExecutor fairTaskExecutor = new ThreadPoolExecutor(
+          taskExecutorThreadPoolSize,
+          taskExecutorThreadPoolSize,
+          0L,
+          TimeUnit.MILLISECONDS,
+          new FairTaskQueue(),
+          ExecutorsUtils.newThreadFactory(Optional.of(LOG), Optional.of("TaskExecutor-%d")));
+      // Start all threads so every task goes through the FairTaskQueue
+      fairTaskExecutor.prestartAllCoreThreads();
+      this.taskExecutor = fairTaskExecutor;
+    } else {
+      this.taskExecutor = Executors.newFixedThreadPool(
+          taskExecutorThreadPoolSize,
+          ExecutorsUtils.newThreadFactory(Optional.of(LOG), Optional.of("TaskExecutor-%d")));
+    }
 
     // Using a separate thread pool for task retries to achieve isolation
     // between normal task execution and task retries
     this.taskRetryExecutor = new ScheduledThreadPoolExecutor(coreRetryThreadPoolSize,
         ExecutorsUtils.newThreadFactory(Optional.of(LOG), Optional.of("TaskRetryExecutor-%d")));
     this.retryIntervalInSeconds = retryIntervalInSeconds;
+    this.retryScheduler = Boolean.valueOf(properties.getProperty(ConfigurationKeys.TASK_RETRY_ADAPTIVE_ENABLED_KEY,
+        Boolean.toString(ConfigurationKeys.DEFAULT_TASK_RETRY_ADAPTIVE_ENABLED))) ?
+        Optional.of(new TaskRetryScheduler(this.taskRetryExecutor, properties)) : Optional.<TaskRetryScheduler>absent();
 
-    this.forkExecutor = new ThreadPoolExecutor(
-        // The core thread pool size is equal to that of the task executor as there's at least one fork per task
-        taskExecutorThreadPoolSize,
-        // The fork executor thread pool size is essentially unbounded. This is to make sure all forks of
-        // a task get a thread to run so all forks of the task are making progress. This is necessary since
-        // otherwise the parent task will be blocked if the record queue (bounded) of some fork is full and
-        // that fork has not yet started to run because of no available thread. The task cannot proceed in
-        // this case because it has to make sure every records go to every forks.
-        Integer.MAX_VALUE,
-        0L,
-        TimeUnit.MILLISECONDS,
-        // The work queue is a SynchronousQueue. This essentially forces a new thread to be created for each fork.
-        new SynchronousQueue<Runnable>(),
-        ExecutorsUtils.newThreadFactory(Optional.of(LOG), Optional.of("ForkExecutor-%d")));
+    this.cooperativeForks = Boolean.valueOf(properties.getProperty(
+        ConfigurationKeys.FORK_EXECUTOR_COOPERATIVE_ENABLED_KEY,
+        Boolean.toString(ConfigurationKeys.DEFAULT_FORK_EXECUTOR_COOPERATIVE_ENABLED)));
+    if (this.cooperativeForks) {
+      int forkExecutorThreadPoolSize = Integer.parseInt(properties.getProperty(
+          ConfigurationKeys.FORK_EXECUTOR_THREADPOOL_SIZE_KEY, Integer.toString(taskExecutorThreadPoolSize)));
+      Preconditions.checkArgument(forkExecutorThreadPoolSize > 0, "Fork executor thread pool size should be positive");
+      // Forks running cooperatively never hold a thread while waiting for records (see Fork#runCooperatively),
+      // so a fixed-size thread pool is enough for all forks to make progress.
+      this.forkExecutor = Executors.newFixedThreadPool(
+          forkExecutorThreadPoolSize,
+          ExecutorsUtils.newThreadFactory(Optional.of(LOG), Optional.of("ForkExecutor-%d")));
+    } else {
+      this.forkExecutor = new ThreadPoolExecutor(
+          // The core thread pool size is equal to that of the task executor as there's at least one fork per task
+          taskExecutorThreadPoolSize,
+          // The fork executor thread pool size is essentially unbounded. This is to make sure all forks of
+          // a task get a thread to run so all forks of the task are making progress. This is necessary since
+          // otherwise the parent task will be blocked if the record queue (bounded) of some fork is full and
+          // that fork has not yet started to run because of no available thread. The task cannot proceed in
+          // this case because it has to make sure every records go to every forks.
+          Integer.MAX_VALUE,
+          0L,
+          TimeUnit.MILLISECONDS,
+          // The work queue is a SynchronousQueue. This essentially forces a new thread to be created for each fork.
+          new SynchronousQueue<Runnable>(),
+          ExecutorsUtils.newThreadFactory(Optional.of(LOG), Optional.of("ForkExecutor-%d")));
+    }
   }
 
   /**
@@ -98,7 +148,8 @@ public class TaskExecutor extends AbstractIdleService {
         Integer.parseInt(properties.getProperty(ConfigurationKeys.TASK_RETRY_THREAD_POOL_CORE_SIZE_KEY,
             Integer.toString(ConfigurationKeys.DEFAULT_TASK_RETRY_THREAD_POOL_CORE_SIZE))),
         Long.parseLong(properties.getProperty(ConfigurationKeys.TASK_RETRY_INTERVAL_IN_SEC_KEY,
-            Long.toString(ConfigurationKeys.DEFAULT_TASK_RETRY_INTERVAL_IN_SEC))));
+            Long.toString(ConfigurationKeys.DEFAULT_TASK_RETRY_INTERVAL_IN_SEC))),
+        properties);
   }
 
   /**
@@ -110,7 +161,8 @@ public class TaskExecutor extends AbstractIdleService {
         conf.getInt(ConfigurationKeys.TASK_RETRY_THREAD_POOL_CORE_SIZE_KEY,
             ConfigurationKeys.DEFAULT_TASK_RETRY_THREAD_POOL_CORE_SIZE),
         conf.getLong(ConfigurationKeys.TASK_RETRY_INTERVAL_IN_SEC_KEY,
-            ConfigurationKeys.DEFAULT_TASK_RETRY_INTERVAL_IN_SEC));
+            ConfigurationKeys.DEFAULT_TASK_RETRY_INTERVAL_IN_SEC),
+        toProperties(conf));
   }
 
   @Override
@@ -143,6 +195,15 @@ public class TaskExecutor extends AbstractIdleService {
     }
   }
 
+  /**
+   * Check if {@link Task}s submitted to this {@link TaskExecutor} are scheduled through a {@link FairTaskQueue}.
+   *
+   * @return whether fair scheduling of {@link Task}s is enabled
+   */
+  public boolean isFairSchedulingEnabled() {
+    return this.fairScheduling;
+  }
+
   /**
    * Execute a {@link Task}.
    *
@@ -150,7 +211,7 @@ public class TaskExecutor extends AbstractIdleService {
    */
   public void execute(Task task) {
     LOG.info(String.format("Executing task %s", task.getTaskId()));
-    this.taskExecutor.execute(task);
+    this.taskExecutor.execute(this.fairScheduling ? newJobRunnable(task, task) : task);
   }
 
   /**
@@ -161,6 +222,11 @@ public class TaskExecutor extends AbstractIdleService {
    */
   public Future<?> submit(Task task) {
     LOG.info(String.format("Submitting task %s", task.getTaskId()));
+    if (this.fairScheduling) {
+      FutureTask<?> future = new FutureTask<Void>(task, null);
+      this.taskExecutor.execute(newJobRunnable(task, future));
+      return future;
+    }
     return this.taskExecutor.submit(task);
   }
 
@@ -171,7 +237,11 @@ public class TaskExecutor extends AbstractIdleService {
    */
   public void execute(Fork fork) {
     LOG.info(String.format("Executing fork %d of task %s", fork.getIndex(), fork.getTaskId()));
-    this.forkExecutor.execute(fork);
+    if (this.cooperativeForks) {
+      fork.runCooperatively(this.forkExecutor);
+    } else {
+      this.forkExecutor.execute(fork);
+    }
   }
 
   /**
@@ -182,15 +252,28 @@ public class TaskExecutor extends AbstractIdleService {
    */
   public Future<?> submit(Fork fork) {
     LOG.info(String.format("Submitting fork %d of task %s", fork.getIndex(), fork.getTaskId()));
+    if (this.cooperativeForks) {
+      return fork.runCooperatively(this.forkExecutor);
+    }
     return this.forkExecutor.submit(fork);
   }
 
   /**
    * Retry a failed {@link Task}.
    *
+   * <p>
+   *   If adaptive task retries are enabled, the retry is scheduled by a {@link TaskRetryScheduler}, which may
+   *   refuse to retry the {@link Task} when the task retry budget is used up.
+   * </p>
+   *
    * @param task failed {@link Task} to be retried
+   * @return whether the retry of the {@link Task} is scheduled
    */
-  public void retry(Task task) {
+  public boolean retry(Task task) {
+    if (this.retryScheduler.isPresent() && !this.retryScheduler.get().acquireRetry(task)) {
+      return false;
+    }
+
     if (GobblinMetrics.isEnabled(task.getTaskState().getWorkunit()) &&
         task.getTaskState().contains(ConfigurationKeys.FORK_BRANCHES_KEY)) {
       // Adjust metrics to clean up numbers from the failed task
@@ -198,20 +281,50 @@ public class TaskExecutor extends AbstractIdleService {
           .adjustJobMetricsOnRetry(task.getTaskState().getPropAsInt(ConfigurationKeys.FORK_BRANCHES_KEY));
     }
 
-    // Task retry interval increases linearly with number of retries
-    long interval = task.getRetryCount() * this.retryIntervalInSeconds;
-    // Schedule the retry of the failed task
-    this.taskRetryExecutor.schedule(task, interval, TimeUnit.SECONDS);
-    LOG.info(String.format("Scheduled retry of failed task %s to run in %d seconds", task.getTaskId(), interval));
+    if (this.retryScheduler.isPresent()) {
+      this.retryScheduler.get().schedule(task);
+    } else {
+      // Task retry interval increases linearly with number of retries
+      long interval = task.getRetryCount() * this.retryIntervalInSeconds;
+      // Schedule the retry of the failed task
+      this.taskRetryExecutor.schedule(task, interval, TimeUnit.SECONDS);
+      LOG.info(String.format("Scheduled retry of failed task %s to run in %d seconds", task.getTaskId(), interval));
+    }
     task.incrementRetryCount();
+    return true;
   }
 
   /**
-   * Get the {@link ExecutorService} used to run {@link Fork}s.
-   *
-   * @return the {@link ExecutorService} used to run {@link Fork}s
+   * Create a {@link FairTaskQueue.JobRunnable} running a {@link Task} with the scheduling settings of its job, which
+   * records the time the {@link Task} waits in the queue into the metrics of the job.
    */
-  ExecutorService getForkExecutor() {
-    return this.forkExecutor;
+  private static FairTaskQueue.JobRunnable newJobRunnable(final Task task, Runnable runnable) {
+    final TaskState taskState = task.getTaskState();
+    return new FairTaskQueue.JobRunnable(runnable, task.getJobId(),
+        taskState.getPropAsInt(ConfigurationKeys.JOB_SCHEDULING_WEIGHT_KEY,
+            ConfigurationKeys.DEFAULT_JOB_SCHEDULING_WEIGHT),
+        taskState.getPropAsInt(ConfigurationKeys.JOB_SCHEDULING_PRIORITY_KEY,
+            ConfigurationKeys.DEFAULT_JOB_SCHEDULING_PRIORITY),
+        taskState.getPropAsInt(ConfigurationKeys.JOB_MAX_CONCURRENT_TASKS_KEY,
+            ConfigurationKeys.DEFAULT_JOB_MAX_CONCURRENT_TASKS)) {
+      @Override
+      protected void onDequeue(long waitNanos) {
+        LOG.debug(String.format("Task %s waited %dms in the queue", task.getTaskId(),
+            TimeUnit.NANOSECONDS.toMillis(waitNanos)));
+        if (GobblinMetrics.isEnabled(taskState.getWorkunit())) {
+          JobMetrics.get(taskState.getProp(ConfigurationKeys.JOB_NAME_KEY), task.getJobId())
+              .getTimer(MetricGroup.JOB.name(), task.getJobId(), TASK_QUEUE_WAIT_TIME)
+              .update(waitNanos, TimeUnit.NANOSECONDS);
+        }
+      }
+    };
+  }
+
+  private static Properties toProperties(Configuration conf) {
+    Properties properties = new Properties();
+    for (Map.Entry<String, String> entry : conf) {
+      properties.setProperty(entry.getKey(), entry.getValue());
+    }
+    return properties;
   }
 }
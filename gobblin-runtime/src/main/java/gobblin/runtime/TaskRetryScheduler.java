@@ -0,0 +1,436 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.runtime;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.base.Ticker;
+import com.google.common.collect.Maps;
+
+import gobblin.configuration.ConfigurationKeys;
+import gobblin.configuration.State;
+import gobblin.configuration.WorkUnitState;
+
+
+/**
+ * A class for scheduling retries of failed {@link Task}s that adapts to how the sources of the tasks are failing.
+ *
+ * <p>
+ *   The retry interval grows exponentially with the number of retries of a task, starting from
+ *   {@link ConfigurationKeys#TASK_RETRY_INTERVAL_IN_SEC_KEY} and capped at
+ *   {@link ConfigurationKeys#TASK_RETRY_MAX_INTERVAL_IN_SEC_KEY}, and is jittered so tasks that failed together
+ *   are not retried together.
+ * </p>
+ *
+ * <p>
+ *   Failures are also counted per source, identified by the first of the properties listed in
+ *   {@link ConfigurationKeys#TASK_RETRY_CIRCUIT_BREAKER_KEY_PROPERTIES_KEY} a task has. When a source has too many
+ *   failures within a time window, its circuit breaker opens and retries of its tasks are held back until it is
+ *   open long enough. A single retry is then let through as a probe: the breaker closes if the probe succeeds, or
+ *   opens again for twice as long, up to the maximum retry interval, if it fails.
+ * </p>
+ *
+ * <p>
+ *   Retries of all tasks are further limited by a budget of
+ *   {@link ConfigurationKeys#TASK_RETRY_BUDGET_PER_MINUTE_KEY} retries per minute. A task that fails once the
+ *   budget is used up is not retried.
+ * </p>
+ *
+ * <p>
+ *   The circuit breakers and the retry budget are kept per process rather than per {@link TaskRetryScheduler}:
+ *   all {@link TaskRetryScheduler}s with the same circuit breaker and budget settings share them, so the jobs of a
+ *   process that each run their own {@link TaskExecutor}, e.g., with the
+ *   {@link gobblin.runtime.local.LocalJobLauncher}, draw from the same budget and hold back retries against the
+ *   same failing sources.
+ * </p>
+ */
+class TaskRetryScheduler {
+
+  private static final Logger LOG = LoggerFactory.getLogger(TaskRetryScheduler.class);
+
+  // Circuit breakers and retry budgets shared by the TaskRetrySchedulers of the process, by their settings
+  private static final ConcurrentMap<String, RetryLimits> SHARED_RETRY_LIMITS = Maps.newConcurrentMap();
+
+  private final ScheduledExecutorService retryExecutor;
+  private final Random random;
+
+  private final long baseIntervalMillis;
+  private final long maxIntervalMillis;
+
+  private final List<String> breakerKeyProperties;
+  private final RetryLimits retryLimits;
+
+  TaskRetryScheduler(ScheduledExecutorService retryExecutor, Properties properties) {
+    this(retryExecutor, properties, getSharedRetryLimits(properties), new Random());
+  }
+
+  /**
+   * Create a {@link TaskRetryScheduler} with its own circuit breakers and retry budget.
+   */
+  @VisibleForTesting
+  TaskRetryScheduler(ScheduledExecutorService retryExecutor, Properties properties, Ticker ticker, Random random) {
+    this(retryExecutor, properties, new RetryLimits(properties, ticker), random);
+  }
+
+  private TaskRetryScheduler(ScheduledExecutorService retryExecutor, Properties properties, RetryLimits retryLimits,
+      Random random) {
+    this.retryExecutor = retryExecutor;
+    this.random = random;
+
+    this.baseIntervalMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(properties.getProperty(
+        ConfigurationKeys.TASK_RETRY_INTERVAL_IN_SEC_KEY,
+        Long.toString(ConfigurationKeys.DEFAULT_TASK_RETRY_INTERVAL_IN_SEC))));
+    this.maxIntervalMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(properties.getProperty(
+        ConfigurationKeys.TASK_RETRY_MAX_INTERVAL_IN_SEC_KEY,
+        Long.toString(ConfigurationKeys.DEFAULT_TASK_RETRY_MAX_INTERVAL_IN_SEC))));
+    Preconditions.checkArgument(this.maxIntervalMillis >= this.baseIntervalMillis,
+        "Maximum task retry interval should not be less than the task retry interval");
+
+    this.breakerKeyProperties = Splitter.on(',').omitEmptyStrings().trimResults().splitToList(properties.getProperty(
+        ConfigurationKeys.TASK_RETRY_CIRCUIT_BREAKER_KEY_PROPERTIES_KEY,
+        ConfigurationKeys.DEFAULT_TASK_RETRY_CIRCUIT_BREAKER_KEY_PROPERTIES));
+    this.retryLimits = retryLimits;
+  }
+
+  /**
+   * Get the circuit breakers and retry budget shared by the {@link TaskRetryScheduler}s of the process with the
+   * settings in the given properties.
+   */
+  private static RetryLimits getSharedRetryLimits(Properties properties) {
+    RetryLimits retryLimits = new RetryLimits(properties, Ticker.systemTicker());
+    RetryLimits sharedRetryLimits = SHARED_RETRY_LIMITS.putIfAbsent(retryLimits.getSettings(), retryLimits);
+    return sharedRetryLimits != null ? sharedRetryLimits : retryLimits;
+  }
+
+  /**
+   * Record the failure of a {@link Task} and take a retry from the retry budget for it.
+   *
+   * @param task failed {@link Task}
+   * @return whether the {@link Task} can be retried, i.e., the retry budget is not used up
+   */
+  boolean acquireRetry(Task task) {
+    Optional<CircuitBreaker> circuitBreaker = getCircuitBreaker(task.getTaskState());
+    if (circuitBreaker.isPresent()) {
+      circuitBreaker.get().recordFailure();
+    }
+
+    if (!this.retryLimits.retryBudget.tryAcquire()) {
+      LOG.warn(String.format("Not retrying failed task %s as the task retry budget is used up", task.getTaskId()));
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Schedule the retry of a failed {@link Task} for which {@link #acquireRetry(Task)} returned {@code true}.
+   *
+   * @param task failed {@link Task} to be retried
+   */
+  void schedule(Task task) {
+    long delayMillis = getRetryDelayMillis(task.getRetryCount());
+    this.retryExecutor.schedule(new RetryAttempt(task, getCircuitBreaker(task.getTaskState())), delayMillis,
+        TimeUnit.MILLISECONDS);
+    LOG.info(String.format("Scheduled retry of failed task %s to run in %d seconds", task.getTaskId(),
+        TimeUnit.MILLISECONDS.toSeconds(delayMillis)));
+  }
+
+  /**
+   * Get the delay before running a retry of a task that has been retried the given number of times.
+   */
+  @VisibleForTesting
+  long getRetryDelayMillis(int retryCount) {
+    long intervalMillis = this.baseIntervalMillis;
+    for (int i = 0; i < retryCount && intervalMillis < this.maxIntervalMillis; i++) {
+      intervalMillis *= 2;
+    }
+    return jitter(Math.min(intervalMillis, this.maxIntervalMillis));
+  }
+
+  /**
+   * Get the {@link CircuitBreaker} of the source of a task, if the task has any of the properties identifying
+   * its source.
+   */
+  @VisibleForTesting
+  Optional<CircuitBreaker> getCircuitBreaker(State taskState) {
+    for (String property : this.breakerKeyProperties) {
+      if (taskState.contains(property)) {
+        return Optional.of(this.retryLimits.getCircuitBreaker(property + "=" + taskState.getProp(property)));
+      }
+    }
+    return Optional.absent();
+  }
+
+  /**
+   * Pick a delay between half and all of the given delay so retries scheduled together are spread out but still
+   * back off.
+   */
+  private long jitter(long delayMillis) {
+    return delayMillis / 2 + (long) (this.random.nextDouble() * (delayMillis - delayMillis / 2));
+  }
+
+  /**
+   * A retry of a failed {@link Task} that is held back while the circuit breaker of the task's source is open.
+   */
+  private class RetryAttempt implements Runnable {
+
+    private final Task task;
+    private final Optional<CircuitBreaker> circuitBreaker;
+
+    RetryAttempt(Task task, Optional<CircuitBreaker> circuitBreaker) {
+      this.task = task;
+      this.circuitBreaker = circuitBreaker;
+    }
+
+    @Override
+    public void run() {
+      if (!this.circuitBreaker.isPresent()) {
+        this.task.run();
+        return;
+      }
+
+      long waitMillis = this.circuitBreaker.get().tryAcquire(this);
+      if (waitMillis > 0) {
+        // Spread out the retries held back so they do not all hit the source once the breaker closes
+        long delayMillis = waitMillis + jitter(waitMillis);
+        retryExecutor.schedule(this, delayMillis, TimeUnit.MILLISECONDS);
+        LOG.info(String.format("Holding back retry of failed task %s for %d seconds as the circuit breaker of %s "
+            + "is open", this.task.getTaskId(), TimeUnit.MILLISECONDS.toSeconds(delayMillis),
+            this.circuitBreaker.get().getKey()));
+        return;
+      }
+
+      boolean succeeded = false;
+      try {
+        this.task.run();
+        succeeded = this.task.getTaskState().getWorkingState() == WorkUnitState.WorkingState.SUCCESSFUL;
+      } finally {
+        this.circuitBreaker.get().release(this, succeeded);
+      }
+    }
+  }
+
+  /**
+   * The circuit breakers of the sources of failed tasks and the budget of retries, and their settings.
+   */
+  private static class RetryLimits {
+
+    private final Ticker ticker;
+    private final int failureThreshold;
+    private final long failureWindowMillis;
+    private final long openMillis;
+    private final long maxOpenMillis;
+    private final int budgetPerMinute;
+    private final ConcurrentMap<String, CircuitBreaker> circuitBreakers = Maps.newConcurrentMap();
+    private final RetryBudget retryBudget;
+
+    RetryLimits(Properties properties, Ticker ticker) {
+      this.ticker = ticker;
+      this.failureThreshold = Integer.parseInt(properties.getProperty(
+          ConfigurationKeys.TASK_RETRY_CIRCUIT_BREAKER_FAILURE_THRESHOLD_KEY,
+          Integer.toString(ConfigurationKeys.DEFAULT_TASK_RETRY_CIRCUIT_BREAKER_FAILURE_THRESHOLD)));
+      Preconditions.checkArgument(this.failureThreshold > 0, "Circuit breaker failure threshold should be positive");
+      this.failureWindowMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(properties.getProperty(
+          ConfigurationKeys.TASK_RETRY_CIRCUIT_BREAKER_WINDOW_IN_SEC_KEY,
+          Long.toString(ConfigurationKeys.DEFAULT_TASK_RETRY_CIRCUIT_BREAKER_WINDOW_IN_SEC))));
+      this.openMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(properties.getProperty(
+          ConfigurationKeys.TASK_RETRY_CIRCUIT_BREAKER_OPEN_IN_SEC_KEY,
+          Long.toString(ConfigurationKeys.DEFAULT_TASK_RETRY_CIRCUIT_BREAKER_OPEN_IN_SEC))));
+      Preconditions.checkArgument(this.openMillis > 0, "Circuit breaker open time should be positive");
+      // A breaker failing its probes stays open for up to the maximum retry interval
+      this.maxOpenMillis = Math.max(this.openMillis, TimeUnit.SECONDS.toMillis(Long.parseLong(properties.getProperty(
+          ConfigurationKeys.TASK_RETRY_MAX_INTERVAL_IN_SEC_KEY,
+          Long.toString(ConfigurationKeys.DEFAULT_TASK_RETRY_MAX_INTERVAL_IN_SEC)))));
+
+      this.budgetPerMinute = Integer.parseInt(properties.getProperty(
+          ConfigurationKeys.TASK_RETRY_BUDGET_PER_MINUTE_KEY,
+          Integer.toString(ConfigurationKeys.DEFAULT_TASK_RETRY_BUDGET_PER_MINUTE)));
+      Preconditions.checkArgument(this.budgetPerMinute > 0, "Task retry budget should be positive");
+      this.retryBudget = new RetryBudget(this.budgetPerMinute, ticker);
+    }
+
+    /**
+     * Get the settings, which {@link RetryLimits} must have in common to be shared.
+     */
+    String getSettings() {
+      return Joiner.on(',').join(this.failureThreshold, this.failureWindowMillis, this.openMillis,
+          this.maxOpenMillis, this.budgetPerMinute);
+    }
+
+    CircuitBreaker getCircuitBreaker(String key) {
+      CircuitBreaker circuitBreaker = this.circuitBreakers.get(key);
+      if (circuitBreaker == null) {
+        CircuitBreaker newCircuitBreaker = new CircuitBreaker(key, this);
+        circuitBreaker = this.circuitBreakers.putIfAbsent(key, newCircuitBreaker);
+        if (circuitBreaker == null) {
+          circuitBreaker = newCircuitBreaker;
+        }
+      }
+      return circuitBreaker;
+    }
+
+    long nowMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(this.ticker.read());
+    }
+  }
+
+  /**
+   * A circuit breaker counting the failures of the tasks of a source.
+   */
+  @VisibleForTesting
+  static class CircuitBreaker {
+
+    private final String key;
+    private final RetryLimits limits;
+
+    private int failures = 0;
+    private long windowStartMillis = 0;
+    // Time the breaker stays open for when it next opens
+    private long nextOpenMillis;
+    // Whether the breaker is open or half-open, and the time until which it is open
+    private boolean tripped = false;
+    private long openUntilMillis = 0;
+    // The retry attempt let through while the breaker is half-open
+    private Object probe = null;
+
+    CircuitBreaker(String key, RetryLimits limits) {
+      this.key = key;
+      this.limits = limits;
+      this.nextOpenMillis = limits.openMillis;
+    }
+
+    String getKey() {
+      return this.key;
+    }
+
+    /**
+     * Record a failure of a task of the source, which opens the breaker if the source has too many failures or the
+     * breaker is half-open.
+     */
+    synchronized void recordFailure() {
+      long nowMillis = this.limits.nowMillis();
+      if (this.tripped) {
+        // Failures while the breaker is open are expected, and the outcome of the probe is handled on its release
+        if (nowMillis >= this.openUntilMillis && this.probe == null) {
+          open(nowMillis);
+        }
+        return;
+      }
+
+      if (this.failures == 0 || nowMillis - this.windowStartMillis > this.limits.failureWindowMillis) {
+        this.windowStartMillis = nowMillis;
+        this.failures = 0;
+      }
+      if (++this.failures >= this.limits.failureThreshold) {
+        open(nowMillis);
+      }
+    }
+
+    /**
+     * Try to let a retry attempt through.
+     *
+     * @return 0 if the attempt can run, or how long to hold it back for in milliseconds
+     */
+    synchronized long tryAcquire(Object attempt) {
+      if (!this.tripped) {
+        return 0;
+      }
+      long nowMillis = this.limits.nowMillis();
+      if (nowMillis < this.openUntilMillis) {
+        return this.openUntilMillis - nowMillis;
+      }
+      if (this.probe == null) {
+        this.probe = attempt;
+        return 0;
+      }
+      // Another attempt is probing the source
+      return this.limits.openMillis;
+    }
+
+    /**
+     * Report the outcome of a retry attempt let through by {@link #tryAcquire(Object)}.
+     */
+    synchronized void release(Object attempt, boolean succeeded) {
+      if (attempt != this.probe) {
+        return;
+      }
+      this.probe = null;
+      if (succeeded) {
+        LOG.info("Closing circuit breaker of " + this.key);
+        this.tripped = false;
+        this.nextOpenMillis = this.limits.openMillis;
+        this.failures = 0;
+      } else {
+        open(this.limits.nowMillis());
+      }
+    }
+
+    synchronized boolean isOpen() {
+      return this.tripped && this.openUntilMillis > this.limits.nowMillis();
+    }
+
+    private void open(long nowMillis) {
+      LOG.warn(String.format("Opening circuit breaker of %s for %d seconds", this.key,
+          TimeUnit.MILLISECONDS.toSeconds(this.nextOpenMillis)));
+      this.tripped = true;
+      this.openUntilMillis = nowMillis + this.nextOpenMillis;
+      this.nextOpenMillis = Math.min(this.nextOpenMillis * 2, this.limits.maxOpenMillis);
+      this.failures = 0;
+    }
+  }
+
+  /**
+   * A token bucket of retries refilled at a fixed rate per minute.
+   */
+  @VisibleForTesting
+  static class RetryBudget {
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private final Ticker ticker;
+
+    private double tokens;
+    private long lastRefillNanos;
+
+    RetryBudget(int retriesPerMinute, Ticker ticker) {
+      this.capacity = retriesPerMinute;
+      this.tokensPerNano = retriesPerMinute / (double) TimeUnit.MINUTES.toNanos(1);
+      this.ticker = ticker;
+      this.tokens = this.capacity;
+      this.lastRefillNanos = ticker.read();
+    }
+
+    synchronized boolean tryAcquire() {
+      long nowNanos = this.ticker.read();
+      this.tokens = Math.min(this.capacity, this.tokens + (nowNanos - this.lastRefillNanos) * this.tokensPerNano);
+      this.lastRefillNanos = nowNanos;
+      if (this.tokens < 1) {
+        return false;
+      }
+      this.tokens--;
+      return true;
+    }
+  }
+}
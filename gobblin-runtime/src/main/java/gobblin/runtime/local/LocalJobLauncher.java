@@ -17,6 +17,7 @@ import java.net.URI;
 import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -25,7 +26,9 @@ import org.apache.hadoop.fs.FileSystem;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Service;
 import com.google.common.util.concurrent.ServiceManager;
 
 import gobblin.configuration.ConfigurationKeys;
@@ -47,6 +50,12 @@ import gobblin.util.JobLauncherUtils;
  * An implementation of {@link gobblin.runtime.JobLauncher} for launching and running jobs
  * locally on a single node.
  *
+ * <p>
+ *   The tasks of the job run on a {@link TaskExecutor} of the job, or on a {@link TaskExecutor} shared by the jobs
+ *   of the process if one is given, e.g., by the {@code JobScheduler} so that the tasks of its jobs are scheduled
+ *   fairly against each other.
+ * </p>
+ *
  * @author ynli
  */
 public class LocalJobLauncher extends AbstractJobLauncher {
@@ -54,6 +63,9 @@ public class LocalJobLauncher extends AbstractJobLauncher {
   private static final Logger LOG = LoggerFactory.getLogger(LocalJobLauncher.class);
 
   private final TaskExecutor taskExecutor;
+  // Whether the TaskExecutor is shared with other jobs, in which case its tasks are cancelled individually
+  private final boolean taskExecutorShared;
+  private final List<Future<?>> taskFutures = Lists.newCopyOnWriteArrayList();
   private final TaskStateTracker taskStateTracker;
   // Service manager to manage dependent services
   private final ServiceManager serviceManager;
@@ -61,16 +73,30 @@ public class LocalJobLauncher extends AbstractJobLauncher {
   private volatile CountDownLatch countDownLatch;
 
   public LocalJobLauncher(Properties jobProps) throws Exception {
+    this(jobProps, Optional.<TaskExecutor>absent());
+  }
+
+  /**
+   * @param sharedTaskExecutor a running {@link TaskExecutor} shared with other jobs, which is not stopped with this
+   *                           {@link LocalJobLauncher}, or absent to run the tasks on a {@link TaskExecutor} of
+   *                           this job
+   */
+  public LocalJobLauncher(Properties jobProps, Optional<TaskExecutor> sharedTaskExecutor) throws Exception {
     super(jobProps);
 
     TimingEvent jobLocalSetupTimer = this.eventSubmitter.getTimingEvent(TimingEventNames.RunJobTimings.JOB_LOCAL_SETUP);
 
-    this.taskExecutor = new TaskExecutor(jobProps);
+    this.taskExecutorShared = sharedTaskExecutor.isPresent();
+    this.taskExecutor = this.taskExecutorShared ? sharedTaskExecutor.get() : new TaskExecutor(jobProps);
     this.taskStateTracker = new LocalTaskStateTracker2(jobProps, this.taskExecutor);
 
-    this.serviceManager = new ServiceManager(Lists.newArrayList(
-        // The order matters due to dependencies between services
-        this.taskExecutor, this.taskStateTracker));
+    // The order matters due to dependencies between services
+    List<Service> services = Lists.newArrayList();
+    if (!this.taskExecutorShared) {
+      services.add(this.taskExecutor);
+    }
+    services.add(this.taskStateTracker);
+    this.serviceManager = new ServiceManager(services);
     // Start all dependent services
     this.serviceManager.startAsync().awaitHealthy(5, TimeUnit.SECONDS);
 
@@ -114,7 +140,8 @@ public class LocalJobLauncher extends AbstractJobLauncher {
 
     this.countDownLatch = new CountDownLatch(workUnitsToRun.size());
     List<Task> tasks = AbstractJobLauncher.submitWorkUnits(this.jobContext.getJobId(), workUnitsToRun,
-        this.taskStateTracker, this.taskExecutor, this.countDownLatch);
+        this.taskStateTracker, this.taskExecutor, this.countDownLatch,
+        this.taskExecutorShared ? Optional.of(this.taskFutures) : Optional.<List<Future<?>>>absent());
 
     LOG.info(String.format("Waiting for submitted tasks of job %s to complete...", jobId));
     while (this.countDownLatch.getCount() > 0) {
@@ -158,6 +185,14 @@ public class LocalJobLauncher extends AbstractJobLauncher {
 
   @Override
   protected void executeCancellation() {
+    if (this.taskExecutorShared) {
+      // Stop the TaskStateTracker first so the cancelled tasks are not retried. The tasks of the job are
+      // otherwise stopped with the TaskExecutor of the job.
+      this.taskStateTracker.stopAsync();
+      for (Future<?> taskFuture : this.taskFutures) {
+        taskFuture.cancel(true);
+      }
+    }
     if (this.countDownLatch != null) {
       while (this.countDownLatch.getCount() > 0) {
         this.countDownLatch.countDown();
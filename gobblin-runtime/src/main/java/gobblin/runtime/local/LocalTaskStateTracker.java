@@ -121,8 +121,9 @@ public class LocalTaskStateTracker extends AbstractIdleService implements TaskSt
     if (state == WorkUnitState.WorkingState.FAILED && task.getRetryCount() < this.maxTaskRetries) {
 
       LOG.warn("Retrying failed task " + task.getTaskId());
-      this.taskExecutor.retry(task);
-      return;
+      if (this.taskExecutor.retry(task)) {
+        return;
+      }
     }
 
     // At this point, the task is considered being completed.
@@ -83,11 +83,13 @@ public class LocalTaskStateTracker2 extends AbstractTaskStateTracker {
       }
 
       // Check the task state and handle task retry if task failed and
-      // it has not reached the maximum number of retries
+      // it has not reached the maximum number of retries. Tasks of a job that is done, e.g., cancelled,
+      // are not retried, as a TaskExecutor shared with other jobs keeps running after the job.
       WorkUnitState.WorkingState state = task.getTaskState().getWorkingState();
-      if (state == WorkUnitState.WorkingState.FAILED && task.getRetryCount() < this.maxTaskRetries) {
-        this.taskExecutor.retry(task);
-        return;
+      if (state == WorkUnitState.WorkingState.FAILED && task.getRetryCount() < this.maxTaskRetries && isRunning()) {
+        if (this.taskExecutor.retry(task)) {
+          return;
+        }
       }
     } catch (Throwable t) {
       LOG.error("Failed to process a task completion callback", t);
@@ -128,6 +128,16 @@ public class BoundedBlockingRecordQueueTest {
         .getCount(), 8);
   }
 
+  @Test(dependsOnMethods = "testRegisterAll")
+  public void testPoll() {
+    Assert.assertEquals(this.boundedBlockingRecordQueue.poll(), Integer.valueOf(0));
+    Assert.assertEquals(this.boundedBlockingRecordQueue.poll(), Integer.valueOf(1));
+    Assert.assertTrue(this.boundedBlockingRecordQueue.isEmpty());
+    // Polling an empty queue returns right away
+    Assert.assertNull(this.boundedBlockingRecordQueue.poll());
+    Assert.assertEquals(this.boundedBlockingRecordQueue.stats().get().getAttemptCount(), 10);
+  }
+
   @AfterClass
   public void tearDown() throws InterruptedException {
     this.boundedBlockingRecordQueue.clear();
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.runtime;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Lists;
+
+
+/**
+ * Unit tests for {@link FairTaskQueue}.
+ */
+@Test(groups = { "gobblin.runtime" })
+public class FairTaskQueueTest {
+
+  @Test
+  public void testWeightedFairness() {
+    FairTaskQueue queue = new FairTaskQueue();
+    for (int i = 0; i < 6; i++) {
+      queue.offer(new NamedRunnable("a", 2, 0, 0));
+      queue.offer(new NamedRunnable("b", 1, 0, 0));
+    }
+
+    List<String> jobIds = Lists.newArrayList();
+    for (int i = 0; i < 6; i++) {
+      jobIds.add(((NamedRunnable) queue.poll()).jobId);
+    }
+    Assert.assertEquals(Collections.frequency(jobIds, "a"), 4);
+    Assert.assertEquals(Collections.frequency(jobIds, "b"), 2);
+    Assert.assertEquals(queue.size(), 6);
+  }
+
+  @Test
+  public void testPriority() {
+    FairTaskQueue queue = new FairTaskQueue();
+    queue.offer(new NamedRunnable("low", 1, 0, 0));
+    queue.offer(new NamedRunnable("high", 1, 1, 0));
+    queue.offer(new NamedRunnable("high", 1, 1, 0));
+
+    Assert.assertEquals(((NamedRunnable) queue.poll()).jobId, "high");
+    Assert.assertEquals(((NamedRunnable) queue.poll()).jobId, "high");
+    Assert.assertEquals(((NamedRunnable) queue.poll()).jobId, "low");
+    Assert.assertNull(queue.poll());
+  }
+
+  @Test
+  public void testMaxConcurrency() {
+    FairTaskQueue queue = new FairTaskQueue();
+    queue.offer(new NamedRunnable("capped", 1, 1, 1));
+    queue.offer(new NamedRunnable("capped", 1, 1, 1));
+    queue.offer(new NamedRunnable("other", 1, 0, 0));
+
+    Runnable first = queue.poll();
+    Assert.assertEquals(((NamedRunnable) first).jobId, "capped");
+    // The capped job cannot run another task until its running task completes
+    Assert.assertEquals(((NamedRunnable) queue.poll()).jobId, "other");
+    Assert.assertNull(queue.poll());
+    Assert.assertEquals(queue.size(), 1);
+
+    first.run();
+    Assert.assertEquals(((NamedRunnable) queue.poll()).jobId, "capped");
+    Assert.assertTrue(queue.isEmpty());
+  }
+
+  @Test
+  public void testIdleJobDoesNotSaveUpShare() {
+    FairTaskQueue queue = new FairTaskQueue();
+    for (int i = 0; i < 6; i++) {
+      queue.offer(new NamedRunnable("busy", 1, 0, 0));
+    }
+    for (int i = 0; i < 4; i++) {
+      queue.poll().run();
+    }
+
+    // A job showing up late takes turns with the busy job rather than catching up on its share
+    queue.offer(new NamedRunnable("late", 1, 0, 0));
+    queue.offer(new NamedRunnable("late", 1, 0, 0));
+    List<String> jobIds = Lists.newArrayList();
+    for (int i = 0; i < 4; i++) {
+      jobIds.add(((NamedRunnable) queue.poll()).jobId);
+    }
+    Assert.assertEquals(jobIds, Lists.newArrayList("late", "busy", "late", "busy"));
+  }
+
+  @Test
+  public void testThreadPoolExecutor() throws Exception {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new FairTaskQueue());
+    executor.prestartAllCoreThreads();
+    try {
+      // Keep the only thread busy while the tasks are queued
+      final CountDownLatch blocker = new CountDownLatch(1);
+      executor.execute(new FairTaskQueue.JobRunnable(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            blocker.await();
+          } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      }, "blocker", 1, 0, 0));
+
+      final List<String> executed = Collections.synchronizedList(Lists.<String>newArrayList());
+      final CountDownLatch done = new CountDownLatch(4);
+      for (String jobId : new String[] { "big", "big", "big", "small" }) {
+        final String id = jobId;
+        executor.execute(new FairTaskQueue.JobRunnable(new Runnable() {
+          @Override
+          public void run() {
+            executed.add(id);
+            done.countDown();
+          }
+        }, jobId, 1, 0, 0));
+      }
+
+      blocker.countDown();
+      Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+      // The small job does not wait for all tasks of the big job queued before it
+      Assert.assertEquals(executed, Lists.newArrayList("big", "small", "big", "big"));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static class NamedRunnable extends FairTaskQueue.JobRunnable {
+
+    private final String jobId;
+
+    NamedRunnable(String jobId, int weight, int priority, int maxConcurrency) {
+      super(new Runnable() {
+        @Override
+        public void run() {
+          // Nothing to run
+        }
+      }, jobId, weight, priority, maxConcurrency);
+      this.jobId = jobId;
+    }
+  }
+}
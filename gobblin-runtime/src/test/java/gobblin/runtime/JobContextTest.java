@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.runtime;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
+
+import gobblin.configuration.ConfigurationKeys;
+import gobblin.configuration.State;
+import gobblin.configuration.WorkUnitState;
+import gobblin.publisher.DataPublisher;
+import gobblin.source.workunit.WorkUnit;
+
+
+/**
+ * Unit tests for the commit of datasets by {@link JobContext}, in particular of datasets committed early.
+ */
+@Test(groups = { "gobblin.runtime" })
+public class JobContextTest {
+
+  private final Path stateStoreDir = new Path("gobblin-runtime/src/test/resources/jobContextTest");
+  private FileSystem fs;
+
+  @BeforeClass
+  public void setUp() throws IOException {
+    this.fs = FileSystem.getLocal(new Configuration());
+    this.fs.delete(this.stateStoreDir, true);
+  }
+
+  @BeforeMethod
+  public void resetPublisher() {
+    TestDataPublisher.publishedDatasets.clear();
+    TestDataPublisher.failingDatasets.clear();
+  }
+
+  @Test
+  public void testCanCommitDatasetsEarly() throws Exception {
+    Assert.assertFalse(createJobContext("CanCommitEarlyFull", "full").canCommitDatasetsEarly());
+    Assert.assertTrue(createJobContext("CanCommitEarlyPartial", "partial").canCommitDatasetsEarly());
+    Assert.assertTrue(createJobContext("CanCommitEarlySuccessful", "successful").canCommitDatasetsEarly());
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void testCommitDatasetEarlyWithFullCommitPolicy() throws Exception {
+    JobContext jobContext = createJobContext("CommitEarlyFull", "full");
+    jobContext.commitDatasetEarly("dataset1",
+        Lists.newArrayList(createTaskState(jobContext, 0, "dataset1", WorkUnitState.WorkingState.SUCCESSFUL)));
+  }
+
+  @Test
+  public void testCommitDatasetEarly() throws Exception {
+    JobContext jobContext = createJobContext("CommitEarlyPartial", "partial");
+    List<TaskState> dataset1TaskStates = Lists.newArrayList(
+        createTaskState(jobContext, 0, "dataset1", WorkUnitState.WorkingState.SUCCESSFUL),
+        createTaskState(jobContext, 1, "dataset1", WorkUnitState.WorkingState.SUCCESSFUL));
+    createTaskState(jobContext, 2, "dataset2", WorkUnitState.WorkingState.SUCCESSFUL);
+
+    Assert.assertTrue(jobContext.commitDatasetEarly("dataset1", dataset1TaskStates));
+    Assert.assertEquals(TestDataPublisher.publishedDatasets.count("dataset1"), 1);
+    Assert.assertEquals(TestDataPublisher.publishedDatasets.count("dataset2"), 0);
+
+    // The job commit only commits the datasets not committed early
+    jobContext.commit();
+    Assert.assertEquals(TestDataPublisher.publishedDatasets.count("dataset1"), 1);
+    Assert.assertEquals(TestDataPublisher.publishedDatasets.count("dataset2"), 1);
+    Assert.assertEquals(jobContext.getJobState().getState(), JobState.RunningState.COMMITTED);
+    Assert.assertEquals(jobContext.getDatasetStatesByUrns().get("dataset1").getState(),
+        JobState.RunningState.COMMITTED);
+    Assert.assertEquals(jobContext.getDatasetStatesByUrns().get("dataset1").getTaskCount(), 2);
+    Assert.assertEquals(jobContext.getDatasetStatesByUrns().get("dataset2").getState(),
+        JobState.RunningState.COMMITTED);
+  }
+
+  @Test
+  public void testCommitDatasetEarlyWithFailedTask() throws Exception {
+    JobContext jobContext = createJobContext("CommitEarlySuccessful", "successful");
+    List<TaskState> taskStates = Lists.newArrayList(
+        createTaskState(jobContext, 0, "dataset1", WorkUnitState.WorkingState.SUCCESSFUL),
+        createTaskState(jobContext, 1, "dataset1", WorkUnitState.WorkingState.FAILED));
+
+    // A failed task does not prevent the commit of its dataset with this commit policy
+    Assert.assertTrue(jobContext.commitDatasetEarly("dataset1", taskStates));
+    Assert.assertEquals(TestDataPublisher.publishedDatasets.count("dataset1"), 1);
+    jobContext.commit();
+    Assert.assertEquals(jobContext.getJobState().getState(), JobState.RunningState.COMMITTED);
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void testCommitDatasetEarlyTwice() throws Exception {
+    JobContext jobContext = createJobContext("CommitEarlyTwice", "partial");
+    List<TaskState> taskStates =
+        Lists.newArrayList(createTaskState(jobContext, 0, "dataset1", WorkUnitState.WorkingState.SUCCESSFUL));
+
+    Assert.assertTrue(jobContext.commitDatasetEarly("dataset1", taskStates));
+    try {
+      jobContext.commitDatasetEarly("dataset1", taskStates);
+    } finally {
+      Assert.assertEquals(TestDataPublisher.publishedDatasets.count("dataset1"), 1);
+    }
+  }
+
+  @Test
+  public void testFailedEarlyCommitFailsJob() throws Exception {
+    JobContext jobContext = createJobContext("CommitEarlyFailed", "partial");
+    List<TaskState> taskStates =
+        Lists.newArrayList(createTaskState(jobContext, 0, "dataset1", WorkUnitState.WorkingState.SUCCESSFUL));
+    createTaskState(jobContext, 1, "dataset2", WorkUnitState.WorkingState.SUCCESSFUL);
+    TestDataPublisher.failingDatasets.add("dataset1");
+
+    Assert.assertFalse(jobContext.commitDatasetEarly("dataset1", taskStates));
+
+    // The job commit does not retry the dataset, but still commits the others and fails the job
+    try {
+      jobContext.commit();
+      Assert.fail("Expected the job commit to fail");
+    } catch (IOException ioe) {
+      // Expected
+    }
+    Assert.assertEquals(TestDataPublisher.publishedDatasets.count("dataset1"), 0);
+    Assert.assertEquals(TestDataPublisher.publishedDatasets.count("dataset2"), 1);
+    Assert.assertEquals(jobContext.getJobState().getState(), JobState.RunningState.FAILED);
+  }
+
+  @AfterClass
+  public void tearDown() throws IOException {
+    this.fs.delete(this.stateStoreDir, true);
+  }
+
+  private JobContext createJobContext(String jobName, String commitPolicy) throws Exception {
+    Properties jobProps = new Properties();
+    jobProps.setProperty(ConfigurationKeys.JOB_NAME_KEY, jobName);
+    jobProps.setProperty(ConfigurationKeys.SOURCE_CLASS_KEY, "gobblin.test.TestSource");
+    jobProps.setProperty(ConfigurationKeys.STATE_STORE_ROOT_DIR_KEY, this.stateStoreDir.toString());
+    jobProps.setProperty(ConfigurationKeys.JOB_COMMIT_POLICY_KEY, commitPolicy);
+    jobProps.setProperty(ConfigurationKeys.DATA_PUBLISHER_TYPE, TestDataPublisher.class.getName());
+    return new JobContext(jobProps, LoggerFactory.getLogger(JobContextTest.class));
+  }
+
+  /**
+   * Create the {@link TaskState} of a completed task and add it to the {@link JobState}, as a job launcher does.
+   */
+  private TaskState createTaskState(JobContext jobContext, int index, String datasetUrn,
+      WorkUnitState.WorkingState workingState) {
+    WorkUnit workUnit = WorkUnit.createEmpty();
+    workUnit.setProp(ConfigurationKeys.DATASET_URN_KEY, datasetUrn);
+    WorkUnitState workUnitState = new WorkUnitState(workUnit);
+    workUnitState.setProp(ConfigurationKeys.JOB_ID_KEY, jobContext.getJobId());
+    workUnitState.setProp(ConfigurationKeys.TASK_ID_KEY, jobContext.getJobId() + "_" + index);
+    TaskState taskState = new TaskState(workUnitState);
+    taskState.setWorkingState(workingState);
+    jobContext.getJobState().addTaskState(taskState);
+    return taskState;
+  }
+
+  /**
+   * A {@link DataPublisher} counting the publishes of each dataset, and failing those of {@link #failingDatasets}.
+   */
+  public static class TestDataPublisher extends DataPublisher {
+
+    static final Multiset<String> publishedDatasets = ConcurrentHashMultiset.create();
+    static final Set<String> failingDatasets = Sets.newConcurrentHashSet();
+
+    public TestDataPublisher(State state) {
+      super(state);
+    }
+
+    @Override
+    public void initialize() throws IOException {
+    }
+
+    @Override
+    public void publishData(Collection<? extends WorkUnitState> states) throws IOException {
+      String datasetUrn = getState().getProp(ConfigurationKeys.DATASET_URN_KEY);
+      if (failingDatasets.contains(datasetUrn)) {
+        throw new IOException("Failed to publish dataset " + datasetUrn);
+      }
+      for (WorkUnitState state : states) {
+        if (state.getWorkingState() == WorkUnitState.WorkingState.SUCCESSFUL) {
+          state.setWorkingState(WorkUnitState.WorkingState.COMMITTED);
+        }
+      }
+      publishedDatasets.add(datasetUrn);
+    }
+
+    @Override
+    public void publishMetadata(Collection<? extends WorkUnitState> states) throws IOException {
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+  }
+}
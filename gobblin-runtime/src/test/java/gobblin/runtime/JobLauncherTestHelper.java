@@ -66,15 +66,20 @@ public class JobLauncherTestHelper {
     this.datasetStateStore = datasetStateStore;
   }
 
-  @SuppressWarnings("unchecked")
   public void runTest(Properties jobProps) throws Exception {
+    runTest(jobProps, Optional.<TaskExecutor>absent());
+  }
+
+  @SuppressWarnings("unchecked")
+  public void runTest(Properties jobProps, Optional<TaskExecutor> sharedTaskExecutor) throws Exception {
     String jobName = jobProps.getProperty(ConfigurationKeys.JOB_NAME_KEY);
     String jobId = JobLauncherUtils.newJobId(jobName);
     jobProps.setProperty(ConfigurationKeys.JOB_ID_KEY, jobId);
 
     Closer closer = Closer.create();
     try {
-      JobLauncher jobLauncher = closer.register(JobLauncherFactory.newJobLauncher(this.launcherProps, jobProps));
+      JobLauncher jobLauncher = closer.register(
+          JobLauncherFactory.newJobLauncher(this.launcherProps, jobProps, sharedTaskExecutor));
       jobLauncher.launchJob(null);
     } finally {
       closer.close();
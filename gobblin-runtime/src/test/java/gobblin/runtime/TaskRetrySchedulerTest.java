@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.runtime;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.Lists;
+
+import gobblin.configuration.ConfigurationKeys;
+import gobblin.configuration.State;
+import gobblin.configuration.WorkUnitState;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+/**
+ * Unit tests for {@link TaskRetryScheduler}.
+ */
+@Test(groups = { "gobblin.runtime" })
+public class TaskRetrySchedulerTest {
+
+  private ScheduledExecutorService retryExecutor;
+  private FakeTicker ticker;
+  private TaskRetryScheduler scheduler;
+
+  @BeforeClass
+  public void setUp() {
+    this.retryExecutor = Executors.newSingleThreadScheduledExecutor();
+  }
+
+  @Test
+  public void testRetryDelay() {
+    createScheduler();
+
+    for (int i = 0; i < 10; i++) {
+      long firstDelay = this.scheduler.getRetryDelayMillis(0);
+      Assert.assertTrue(firstDelay >= 5000 && firstDelay <= 10000);
+      long secondDelay = this.scheduler.getRetryDelayMillis(1);
+      Assert.assertTrue(secondDelay >= 10000 && secondDelay <= 20000);
+      // Capped at the maximum retry interval
+      long lastDelay = this.scheduler.getRetryDelayMillis(50);
+      Assert.assertTrue(lastDelay >= 30000 && lastDelay <= 60000);
+    }
+  }
+
+  @Test
+  public void testCircuitBreakerKey() {
+    createScheduler();
+
+    State hostState = new State();
+    hostState.setProp(ConfigurationKeys.SOURCE_CONN_HOST_NAME, "host1");
+    hostState.setProp("topic.name", "topic1");
+    State topicState = new State();
+    topicState.setProp("topic.name", "topic1");
+
+    // The first property a task has identifies its source
+    Assert.assertEquals(this.scheduler.getCircuitBreaker(hostState).get().getKey(),
+        ConfigurationKeys.SOURCE_CONN_HOST_NAME + "=host1");
+    Assert.assertEquals(this.scheduler.getCircuitBreaker(topicState).get().getKey(), "topic.name=topic1");
+    Assert.assertSame(this.scheduler.getCircuitBreaker(hostState).get(),
+        this.scheduler.getCircuitBreaker(hostState).get());
+    Assert.assertFalse(this.scheduler.getCircuitBreaker(new State()).isPresent());
+  }
+
+  @Test
+  public void testCircuitBreaker() {
+    createScheduler();
+
+    State state = new State();
+    state.setProp(ConfigurationKeys.SOURCE_CONN_HOST_NAME, "host1");
+    TaskRetryScheduler.CircuitBreaker circuitBreaker = this.scheduler.getCircuitBreaker(state).get();
+    Object firstAttempt = new Object();
+    Object secondAttempt = new Object();
+
+    // Failures spread over more than the window do not open the breaker
+    circuitBreaker.recordFailure();
+    circuitBreaker.recordFailure();
+    this.ticker.advance(61, TimeUnit.SECONDS);
+    circuitBreaker.recordFailure();
+    Assert.assertFalse(circuitBreaker.isOpen());
+    Assert.assertEquals(circuitBreaker.tryAcquire(firstAttempt), 0);
+    circuitBreaker.release(firstAttempt, false);
+
+    circuitBreaker.recordFailure();
+    circuitBreaker.recordFailure();
+    Assert.assertTrue(circuitBreaker.isOpen());
+    Assert.assertEquals(circuitBreaker.tryAcquire(firstAttempt), TimeUnit.SECONDS.toMillis(10));
+
+    // Only one attempt probes the source once the breaker is half-open
+    this.ticker.advance(10, TimeUnit.SECONDS);
+    Assert.assertEquals(circuitBreaker.tryAcquire(firstAttempt), 0);
+    Assert.assertTrue(circuitBreaker.tryAcquire(secondAttempt) > 0);
+
+    // A failed probe opens the breaker for twice as long
+    circuitBreaker.release(firstAttempt, false);
+    Assert.assertTrue(circuitBreaker.isOpen());
+    this.ticker.advance(10, TimeUnit.SECONDS);
+    Assert.assertTrue(circuitBreaker.isOpen());
+    this.ticker.advance(10, TimeUnit.SECONDS);
+    Assert.assertFalse(circuitBreaker.isOpen());
+
+    // A successful probe closes the breaker
+    Assert.assertEquals(circuitBreaker.tryAcquire(secondAttempt), 0);
+    circuitBreaker.release(secondAttempt, true);
+    Assert.assertEquals(circuitBreaker.tryAcquire(firstAttempt), 0);
+    circuitBreaker.recordFailure();
+    Assert.assertFalse(circuitBreaker.isOpen());
+  }
+
+  @Test
+  public void testRetryBudget() {
+    this.ticker = new FakeTicker();
+    TaskRetryScheduler.RetryBudget retryBudget = new TaskRetryScheduler.RetryBudget(2, this.ticker);
+
+    Assert.assertTrue(retryBudget.tryAcquire());
+    Assert.assertTrue(retryBudget.tryAcquire());
+    Assert.assertFalse(retryBudget.tryAcquire());
+
+    this.ticker.advance(30, TimeUnit.SECONDS);
+    Assert.assertTrue(retryBudget.tryAcquire());
+    Assert.assertFalse(retryBudget.tryAcquire());
+
+    // The budget does not grow beyond the retries per minute
+    this.ticker.advance(10, TimeUnit.MINUTES);
+    Assert.assertTrue(retryBudget.tryAcquire());
+    Assert.assertTrue(retryBudget.tryAcquire());
+    Assert.assertFalse(retryBudget.tryAcquire());
+  }
+
+  @Test
+  public void testRetryHeldBackWhileCircuitBreakerOpen() {
+    List<Runnable> scheduledRetries = Lists.newArrayList();
+    List<Long> scheduledDelays = Lists.newArrayList();
+    createScheduler(mockRetryExecutor(scheduledRetries, scheduledDelays));
+
+    final Task firstTask = mockTask("task1", "host1");
+    final Task secondTask = mockTask("task2", "host1");
+    TaskRetryScheduler.CircuitBreaker circuitBreaker =
+        this.scheduler.getCircuitBreaker(firstTask.getTaskState()).get();
+    for (int i = 0; i < 3; i++) {
+      Assert.assertTrue(this.scheduler.acquireRetry(firstTask));
+    }
+    Assert.assertTrue(circuitBreaker.isOpen());
+
+    this.scheduler.schedule(firstTask);
+    this.scheduler.schedule(secondTask);
+    Assert.assertEquals(scheduledRetries.size(), 2);
+    Runnable firstRetry = scheduledRetries.get(0);
+    final Runnable secondRetry = scheduledRetries.get(1);
+
+    // A retry running while the breaker is open reschedules itself for after the breaker is open, with jitter
+    firstRetry.run();
+    verify(firstTask, never()).run();
+    Assert.assertEquals(scheduledRetries.size(), 3);
+    Assert.assertSame(scheduledRetries.get(2), firstRetry);
+    Assert.assertTrue(scheduledDelays.get(2) >= 15000 && scheduledDelays.get(2) <= 20000);
+
+    // Once the breaker is half-open, the first retry probes the source and the other one is held back meanwhile
+    this.ticker.advance(10, TimeUnit.SECONDS);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        secondRetry.run();
+        firstTask.getTaskState().setWorkingState(WorkUnitState.WorkingState.FAILED);
+        return null;
+      }
+    }).when(firstTask).run();
+    firstRetry.run();
+    verify(firstTask, times(1)).run();
+    verify(secondTask, never()).run();
+    Assert.assertEquals(scheduledRetries.size(), 4);
+    Assert.assertSame(scheduledRetries.get(3), secondRetry);
+
+    // The failed probe released the breaker, which is open for twice as long
+    Assert.assertTrue(circuitBreaker.isOpen());
+    secondRetry.run();
+    verify(secondTask, never()).run();
+    Assert.assertTrue(scheduledDelays.get(4) >= 30000 && scheduledDelays.get(4) <= 40000);
+
+    // A successful probe closes the breaker
+    this.ticker.advance(20, TimeUnit.SECONDS);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        secondTask.getTaskState().setWorkingState(WorkUnitState.WorkingState.SUCCESSFUL);
+        return null;
+      }
+    }).when(secondTask).run();
+    secondRetry.run();
+    verify(secondTask, times(1)).run();
+    Assert.assertFalse(circuitBreaker.isOpen());
+    Assert.assertEquals(circuitBreaker.tryAcquire(new Object()), 0);
+    Assert.assertEquals(scheduledRetries.size(), 5);
+  }
+
+  @Test
+  public void testRetryWithoutCircuitBreakerNotHeldBack() {
+    List<Runnable> scheduledRetries = Lists.newArrayList();
+    createScheduler(mockRetryExecutor(scheduledRetries, Lists.<Long>newArrayList()));
+
+    Task task = mockTask("task1", null);
+    this.scheduler.schedule(task);
+    scheduledRetries.get(0).run();
+    verify(task, times(1)).run();
+  }
+
+  @Test
+  public void testRetryLimitsSharedInProcess() {
+    Properties properties = createProperties();
+    properties.setProperty(ConfigurationKeys.TASK_RETRY_BUDGET_PER_MINUTE_KEY, "2");
+    TaskRetryScheduler firstScheduler = new TaskRetryScheduler(this.retryExecutor, properties);
+    TaskRetryScheduler secondScheduler = new TaskRetryScheduler(this.retryExecutor, properties);
+    properties.setProperty(ConfigurationKeys.TASK_RETRY_BUDGET_PER_MINUTE_KEY, "3");
+    TaskRetryScheduler otherScheduler = new TaskRetryScheduler(this.retryExecutor, properties);
+
+    // Schedulers with the same settings share their circuit breakers and retry budget
+    Task task = mockTask("task1", "sharedHost");
+    Assert.assertSame(firstScheduler.getCircuitBreaker(task.getTaskState()).get(),
+        secondScheduler.getCircuitBreaker(task.getTaskState()).get());
+    Assert.assertNotSame(firstScheduler.getCircuitBreaker(task.getTaskState()).get(),
+        otherScheduler.getCircuitBreaker(task.getTaskState()).get());
+    Assert.assertTrue(firstScheduler.acquireRetry(task));
+    Assert.assertTrue(secondScheduler.acquireRetry(task));
+    Assert.assertFalse(firstScheduler.acquireRetry(task));
+    Assert.assertTrue(otherScheduler.acquireRetry(task));
+  }
+
+  @AfterClass
+  public void tearDown() {
+    this.retryExecutor.shutdownNow();
+  }
+
+  private void createScheduler() {
+    createScheduler(this.retryExecutor);
+  }
+
+  private void createScheduler(ScheduledExecutorService retryExecutor) {
+    this.ticker = new FakeTicker();
+    this.scheduler = new TaskRetryScheduler(retryExecutor, createProperties(), this.ticker, new Random(1));
+  }
+
+  private Properties createProperties() {
+    Properties properties = new Properties();
+    properties.setProperty(ConfigurationKeys.TASK_RETRY_INTERVAL_IN_SEC_KEY, "10");
+    properties.setProperty(ConfigurationKeys.TASK_RETRY_MAX_INTERVAL_IN_SEC_KEY, "60");
+    properties.setProperty(ConfigurationKeys.TASK_RETRY_CIRCUIT_BREAKER_FAILURE_THRESHOLD_KEY, "3");
+    properties.setProperty(ConfigurationKeys.TASK_RETRY_CIRCUIT_BREAKER_WINDOW_IN_SEC_KEY, "60");
+    properties.setProperty(ConfigurationKeys.TASK_RETRY_CIRCUIT_BREAKER_OPEN_IN_SEC_KEY, "10");
+    return properties;
+  }
+
+  /**
+   * Mock a {@link ScheduledExecutorService} recording the retries scheduled on it instead of running them.
+   */
+  private ScheduledExecutorService mockRetryExecutor(final List<Runnable> scheduledRetries,
+      final List<Long> scheduledDelays) {
+    ScheduledExecutorService retryExecutor = mock(ScheduledExecutorService.class);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        scheduledRetries.add((Runnable) invocation.getArguments()[0]);
+        scheduledDelays.add((Long) invocation.getArguments()[1]);
+        return null;
+      }
+    }).when(retryExecutor).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    return retryExecutor;
+  }
+
+  /**
+   * Mock a failed {@link Task} of the given host, if any.
+   */
+  private Task mockTask(String taskId, String host) {
+    TaskState taskState = new TaskState();
+    if (host != null) {
+      taskState.setProp(ConfigurationKeys.SOURCE_CONN_HOST_NAME, host);
+    }
+    taskState.setWorkingState(WorkUnitState.WorkingState.FAILED);
+    Task task = mock(Task.class);
+    when(task.getTaskId()).thenReturn(taskId);
+    when(task.getTaskState()).thenReturn(taskState);
+    return task;
+  }
+
+  private static class FakeTicker extends Ticker {
+
+    private long nanos = 0;
+
+    @Override
+    public long read() {
+      return this.nanos;
+    }
+
+    void advance(long duration, TimeUnit timeUnit) {
+      this.nanos += timeUnit.toNanos(duration);
+    }
+  }
+}
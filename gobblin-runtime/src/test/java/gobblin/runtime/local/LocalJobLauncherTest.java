@@ -18,15 +18,19 @@ import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.Properties;
 
+import org.testng.Assert;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
+import com.google.common.base.Optional;
+
 import gobblin.configuration.ConfigurationKeys;
 import gobblin.metastore.FsStateStore;
 import gobblin.metastore.StateStore;
 import gobblin.runtime.JobLauncherTestHelper;
 import gobblin.runtime.JobState;
+import gobblin.runtime.TaskExecutor;
 import gobblin.util.limiter.BaseLimiterType;
 import gobblin.util.limiter.DefaultLimiterFactory;
 import gobblin.writer.Destination;
@@ -77,6 +81,28 @@ public class LocalJobLauncherTest {
     }
   }
 
+  @Test
+  public void testLaunchJobsWithSharedTaskExecutor() throws Exception {
+    Properties executorProps = new Properties();
+    executorProps.setProperty(ConfigurationKeys.TASK_EXECUTOR_FAIR_SCHEDULING_ENABLED_KEY, Boolean.TRUE.toString());
+    TaskExecutor taskExecutor = new TaskExecutor(executorProps);
+    taskExecutor.startAsync().awaitRunning();
+
+    Properties jobProps = loadJobProps();
+    jobProps.setProperty(ConfigurationKeys.JOB_NAME_KEY,
+        jobProps.getProperty(ConfigurationKeys.JOB_NAME_KEY) + "-testLaunchJobsWithSharedTaskExecutor");
+    try {
+      // The shared TaskExecutor keeps running after each job for the next one
+      for (int i = 0; i < 2; i++) {
+        this.jobLauncherTestHelper.runTest(jobProps, Optional.of(taskExecutor));
+        Assert.assertTrue(taskExecutor.isRunning());
+      }
+    } finally {
+      taskExecutor.stopAsync().awaitTerminated();
+      this.jobLauncherTestHelper.deleteStateStore(jobProps.getProperty(ConfigurationKeys.JOB_NAME_KEY));
+    }
+  }
+
   @Test
   public void testLaunchJobWithPullLimit() throws Exception {
     Properties jobProps = loadJobProps();
@@ -112,39 +138,24 @@ public class LocalJobLauncherTest {
 
   @Test
   public void testLaunchJobWithFork() throws Exception {
-    Properties jobProps = loadJobProps();
+    Properties jobProps = loadJobPropsWithFork();
     jobProps.setProperty(ConfigurationKeys.JOB_NAME_KEY, jobProps.getProperty(ConfigurationKeys.JOB_NAME_KEY) +
         "-testLaunchJobWithFork");
-    jobProps.setProperty(ConfigurationKeys.CONVERTER_CLASSES_KEY, "gobblin.test.TestConverter2");
-    jobProps.setProperty(ConfigurationKeys.FORK_BRANCHES_KEY, "2");
-    jobProps
-        .setProperty(ConfigurationKeys.ROW_LEVEL_POLICY_LIST + ".0", "gobblin.policies.schema.SchemaRowCheckPolicy");
-    jobProps
-        .setProperty(ConfigurationKeys.ROW_LEVEL_POLICY_LIST + ".1", "gobblin.policies.schema.SchemaRowCheckPolicy");
-    jobProps.setProperty(ConfigurationKeys.ROW_LEVEL_POLICY_LIST_TYPE + ".0", "OPTIONAL");
-    jobProps.setProperty(ConfigurationKeys.ROW_LEVEL_POLICY_LIST_TYPE + ".1", "OPTIONAL");
-    jobProps.setProperty(ConfigurationKeys.TASK_LEVEL_POLICY_LIST + ".0",
-        "gobblin.policies.count.RowCountPolicy,gobblin.policies.schema.SchemaCompatibilityPolicy");
-    jobProps.setProperty(ConfigurationKeys.TASK_LEVEL_POLICY_LIST + ".1",
-        "gobblin.policies.count.RowCountPolicy,gobblin.policies.schema.SchemaCompatibilityPolicy");
-    jobProps.setProperty(ConfigurationKeys.TASK_LEVEL_POLICY_LIST_TYPE + ".0", "OPTIONAL,OPTIONAL");
-    jobProps.setProperty(ConfigurationKeys.TASK_LEVEL_POLICY_LIST_TYPE + ".1", "OPTIONAL,OPTIONAL");
-    jobProps.setProperty(ConfigurationKeys.WRITER_OUTPUT_FORMAT_KEY + ".0", WriterOutputFormat.AVRO.name());
-    jobProps.setProperty(ConfigurationKeys.WRITER_OUTPUT_FORMAT_KEY + ".1", WriterOutputFormat.AVRO.name());
-    jobProps.setProperty(ConfigurationKeys.WRITER_DESTINATION_TYPE_KEY + ".0", Destination.DestinationType.HDFS.name());
-    jobProps.setProperty(ConfigurationKeys.WRITER_DESTINATION_TYPE_KEY + ".1", Destination.DestinationType.HDFS.name());
-    jobProps.setProperty(ConfigurationKeys.WRITER_STAGING_DIR + ".0",
-        jobProps.getProperty(ConfigurationKeys.WRITER_STAGING_DIR));
-    jobProps.setProperty(ConfigurationKeys.WRITER_STAGING_DIR + ".1",
-        jobProps.getProperty(ConfigurationKeys.WRITER_STAGING_DIR));
-    jobProps.setProperty(ConfigurationKeys.WRITER_OUTPUT_DIR + ".0",
-        jobProps.getProperty(ConfigurationKeys.WRITER_OUTPUT_DIR));
-    jobProps.setProperty(ConfigurationKeys.WRITER_OUTPUT_DIR + ".1",
-        jobProps.getProperty(ConfigurationKeys.WRITER_OUTPUT_DIR));
-    jobProps.setProperty(ConfigurationKeys.DATA_PUBLISHER_FINAL_DIR + ".0",
-        jobProps.getProperty(ConfigurationKeys.DATA_PUBLISHER_FINAL_DIR));
-    jobProps.setProperty(ConfigurationKeys.DATA_PUBLISHER_FINAL_DIR + ".1",
-        jobProps.getProperty(ConfigurationKeys.DATA_PUBLISHER_FINAL_DIR));
+    try {
+      this.jobLauncherTestHelper.runTestWithFork(jobProps);
+    } finally {
+      this.jobLauncherTestHelper.deleteStateStore(jobProps.getProperty(ConfigurationKeys.JOB_NAME_KEY));
+    }
+  }
+
+  @Test
+  public void testLaunchJobWithCooperativeForks() throws Exception {
+    Properties jobProps = loadJobPropsWithFork();
+    jobProps.setProperty(ConfigurationKeys.JOB_NAME_KEY, jobProps.getProperty(ConfigurationKeys.JOB_NAME_KEY) +
+        "-testLaunchJobWithCooperativeForks");
+    // A single fork thread shared by the forks of all tasks
+    jobProps.setProperty(ConfigurationKeys.FORK_EXECUTOR_COOPERATIVE_ENABLED_KEY, Boolean.TRUE.toString());
+    jobProps.setProperty(ConfigurationKeys.FORK_EXECUTOR_THREADPOOL_SIZE_KEY, "1");
     try {
       this.jobLauncherTestHelper.runTestWithFork(jobProps);
     } finally {
@@ -209,6 +220,41 @@ public class LocalJobLauncherTest {
     }
   }
 
+  private Properties loadJobPropsWithFork() throws IOException {
+    Properties jobProps = loadJobProps();
+    jobProps.setProperty(ConfigurationKeys.CONVERTER_CLASSES_KEY, "gobblin.test.TestConverter2");
+    jobProps.setProperty(ConfigurationKeys.FORK_BRANCHES_KEY, "2");
+    jobProps
+        .setProperty(ConfigurationKeys.ROW_LEVEL_POLICY_LIST + ".0", "gobblin.policies.schema.SchemaRowCheckPolicy");
+    jobProps
+        .setProperty(ConfigurationKeys.ROW_LEVEL_POLICY_LIST + ".1", "gobblin.policies.schema.SchemaRowCheckPolicy");
+    jobProps.setProperty(ConfigurationKeys.ROW_LEVEL_POLICY_LIST_TYPE + ".0", "OPTIONAL");
+    jobProps.setProperty(ConfigurationKeys.ROW_LEVEL_POLICY_LIST_TYPE + ".1", "OPTIONAL");
+    jobProps.setProperty(ConfigurationKeys.TASK_LEVEL_POLICY_LIST + ".0",
+        "gobblin.policies.count.RowCountPolicy,gobblin.policies.schema.SchemaCompatibilityPolicy");
+    jobProps.setProperty(ConfigurationKeys.TASK_LEVEL_POLICY_LIST + ".1",
+        "gobblin.policies.count.RowCountPolicy,gobblin.policies.schema.SchemaCompatibilityPolicy");
+    jobProps.setProperty(ConfigurationKeys.TASK_LEVEL_POLICY_LIST_TYPE + ".0", "OPTIONAL,OPTIONAL");
+    jobProps.setProperty(ConfigurationKeys.TASK_LEVEL_POLICY_LIST_TYPE + ".1", "OPTIONAL,OPTIONAL");
+    jobProps.setProperty(ConfigurationKeys.WRITER_OUTPUT_FORMAT_KEY + ".0", WriterOutputFormat.AVRO.name());
+    jobProps.setProperty(ConfigurationKeys.WRITER_OUTPUT_FORMAT_KEY + ".1", WriterOutputFormat.AVRO.name());
+    jobProps.setProperty(ConfigurationKeys.WRITER_DESTINATION_TYPE_KEY + ".0", Destination.DestinationType.HDFS.name());
+    jobProps.setProperty(ConfigurationKeys.WRITER_DESTINATION_TYPE_KEY + ".1", Destination.DestinationType.HDFS.name());
+    jobProps.setProperty(ConfigurationKeys.WRITER_STAGING_DIR + ".0",
+        jobProps.getProperty(ConfigurationKeys.WRITER_STAGING_DIR));
+    jobProps.setProperty(ConfigurationKeys.WRITER_STAGING_DIR + ".1",
+        jobProps.getProperty(ConfigurationKeys.WRITER_STAGING_DIR));
+    jobProps.setProperty(ConfigurationKeys.WRITER_OUTPUT_DIR + ".0",
+        jobProps.getProperty(ConfigurationKeys.WRITER_OUTPUT_DIR));
+    jobProps.setProperty(ConfigurationKeys.WRITER_OUTPUT_DIR + ".1",
+        jobProps.getProperty(ConfigurationKeys.WRITER_OUTPUT_DIR));
+    jobProps.setProperty(ConfigurationKeys.DATA_PUBLISHER_FINAL_DIR + ".0",
+        jobProps.getProperty(ConfigurationKeys.DATA_PUBLISHER_FINAL_DIR));
+    jobProps.setProperty(ConfigurationKeys.DATA_PUBLISHER_FINAL_DIR + ".1",
+        jobProps.getProperty(ConfigurationKeys.DATA_PUBLISHER_FINAL_DIR));
+    return jobProps;
+  }
+
   private Properties loadJobProps() throws IOException {
     Properties jobProps = new Properties();
     jobProps.load(new FileReader("gobblin-test/resource/job-conf/GobblinTest1.pull"));
@@ -60,6 +60,7 @@ import gobblin.runtime.JobLauncher;
 import gobblin.runtime.JobLauncherFactory;
 import gobblin.runtime.JobListener;
 import gobblin.runtime.RunOnceJobListener;
+import gobblin.runtime.TaskExecutor;
 import gobblin.util.ExecutorsUtils;
 import gobblin.util.JobLauncherUtils;
 import gobblin.util.SchedulerUtils;
@@ -80,6 +81,13 @@ import gobblin.util.SchedulerUtils;
  *     {@link org.quartz.Trigger} for the job.
  * </p>
  *
+ * <p>
+ *     If {@link ConfigurationKeys#TASK_EXECUTOR_FAIR_SCHEDULING_ENABLED_KEY} is set in the system configuration,
+ *     the jobs run with a {@link gobblin.runtime.local.LocalJobLauncher} share a single {@link TaskExecutor}
+ *     configured by the system configuration, so that their tasks are scheduled fairly against each other.
+ *     The {@link TaskExecutor} settings of a job configuration are ignored in this case.
+ * </p>
+ *
  * @author ynli
  */
 public class JobScheduler extends AbstractIdleService {
@@ -111,6 +119,12 @@ public class JobScheduler extends AbstractIdleService {
   // A monitor for changes to job configuration files
   private final FileAlterationMonitor fileAlterationMonitor;
 
+  // Whether local jobs share a TaskExecutor, which is created when the first job runs
+  private final boolean taskExecutorShared;
+  private final Object sharedTaskExecutorLock = new Object();
+  private Optional<TaskExecutor> sharedTaskExecutor = Optional.absent();
+  private boolean stopped = false;
+
   public JobScheduler(Properties properties)
       throws Exception {
     this.properties = properties;
@@ -129,6 +143,12 @@ public class JobScheduler extends AbstractIdleService {
         ConfigurationKeys.JOB_CONFIG_FILE_MONITOR_POLLING_INTERVAL_KEY,
         Long.toString(ConfigurationKeys.DEFAULT_JOB_CONFIG_FILE_MONITOR_POLLING_INTERVAL)));
     this.fileAlterationMonitor = new FileAlterationMonitor(pollingInterval);
+
+    this.taskExecutorShared = Boolean.valueOf(this.properties.getProperty(
+        ConfigurationKeys.TASK_EXECUTOR_FAIR_SCHEDULING_ENABLED_KEY,
+        Boolean.toString(ConfigurationKeys.DEFAULT_TASK_EXECUTOR_FAIR_SCHEDULING_ENABLED))) &&
+        JobLauncherFactory.JobLauncherType.LOCAL.name().equals(this.properties.getProperty(
+            ConfigurationKeys.JOB_LAUNCHER_TYPE_KEY, JobLauncherFactory.JobLauncherType.LOCAL.name()));
   }
 
   @Override
@@ -156,7 +176,16 @@ public class JobScheduler extends AbstractIdleService {
     try {
       ExecutorsUtils.shutdownExecutorService(this.jobExecutor, Optional.of(LOG));
     } finally {
-      this.scheduler.shutdown(true);
+      try {
+        this.scheduler.shutdown(true);
+      } finally {
+        synchronized (this.sharedTaskExecutorLock) {
+          this.stopped = true;
+          if (this.sharedTaskExecutor.isPresent()) {
+            this.sharedTaskExecutor.get().stopAsync().awaitTerminated();
+          }
+        }
+      }
     }
   }
 
@@ -280,7 +309,8 @@ public class JobScheduler extends AbstractIdleService {
   public void runJob(Properties jobProps, JobListener jobListener)
       throws JobException {
     try {
-      runJob(jobProps, jobListener, JobLauncherFactory.newJobLauncher(this.properties, jobProps));
+      runJob(jobProps, jobListener,
+          JobLauncherFactory.newJobLauncher(this.properties, jobProps, getSharedTaskExecutor()));
     } catch (Exception e) {
       throw new JobException("Failed to run job " + jobProps.getProperty(ConfigurationKeys.JOB_NAME_KEY), e);
     }
@@ -339,6 +369,26 @@ public class JobScheduler extends AbstractIdleService {
     }
   }
 
+  /**
+   * Get the {@link TaskExecutor} shared by the local jobs, if they share one, starting it if no job has run yet.
+   */
+  private Optional<TaskExecutor> getSharedTaskExecutor() {
+    if (!this.taskExecutorShared) {
+      return Optional.absent();
+    }
+
+    synchronized (this.sharedTaskExecutorLock) {
+      Preconditions.checkState(!this.stopped, "Job scheduler is stopped");
+      if (!this.sharedTaskExecutor.isPresent()) {
+        LOG.info("Starting the task executor shared by local jobs");
+        TaskExecutor taskExecutor = new TaskExecutor(this.properties);
+        taskExecutor.startAsync().awaitRunning();
+        this.sharedTaskExecutor = Optional.of(taskExecutor);
+      }
+      return this.sharedTaskExecutor;
+    }
+  }
+
   /**
    * Get the names of the scheduled jobs.
    *
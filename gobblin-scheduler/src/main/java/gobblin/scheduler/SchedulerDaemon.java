@@ -73,7 +73,7 @@ public class SchedulerDaemon {
     boolean jobExecInfoServerEnabled = Boolean
         .valueOf(properties.getProperty(ConfigurationKeys.JOB_EXECINFO_SERVER_ENABLED_KEY, Boolean.FALSE.toString()));
     if (jobExecInfoServerEnabled) {
-      services.add(new JobExecutionInfoServer(properties));
+      services.add(new JobExecutionInfoServer(properties, this.metricRegistry));
     }
     this.serviceManager = new ServiceManager(services);
   }
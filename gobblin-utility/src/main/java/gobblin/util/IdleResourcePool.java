@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Queues;
+
+
+/**
+ * A keyed pool of resources that are expensive to create, e.g., client connections, which keeps resources released
+ * by their users for reuse by later users of the same key instead of destroying them.
+ *
+ * <p>
+ *   A resource is used by a single user at a time: {@link #borrow(Object, Callable)} hands out an idle resource of
+ *   the given key, or creates a new one if there is none, and {@link #release(Object, Object)} gives it back. Up to
+ *   a given number of resources are kept idle per key, and a resource that stays idle for longer than the idle
+ *   timeout is destroyed. Idle resources are checked on each {@link #borrow(Object, Callable)} and
+ *   {@link #release(Object, Object)}, or when {@link #evictIdle()} is called.
+ * </p>
+ *
+ * @param <K> type of the keys
+ * @param <V> type of the resources
+ */
+public abstract class IdleResourcePool<K, V> implements Closeable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(IdleResourcePool.class);
+
+  private final long idleTimeoutMillis;
+  private final int maxIdlePerKey;
+
+  // Idle resources by key, least recently released first
+  private final Map<K, Deque<IdleResource<V>>> idleResources = Maps.newHashMap();
+  private boolean closed = false;
+
+  protected IdleResourcePool(long idleTimeout, TimeUnit timeUnit, int maxIdlePerKey) {
+    Preconditions.checkArgument(idleTimeout >= 0, "Idle timeout must not be negative");
+    Preconditions.checkArgument(maxIdlePerKey >= 0, "Maximum number of idle resources must not be negative");
+    this.idleTimeoutMillis = timeUnit.toMillis(idleTimeout);
+    this.maxIdlePerKey = maxIdlePerKey;
+  }
+
+  /**
+   * Destroy a resource evicted from the pool.
+   */
+  protected abstract void destroy(V resource) throws IOException;
+
+  /**
+   * Get an idle resource of the given key, or create a new one using the given {@link Callable} if there is none.
+   */
+  public V borrow(K key, Callable<? extends V> creator) throws IOException {
+    evictIdle();
+
+    synchronized (this) {
+      Preconditions.checkState(!this.closed, "Pool is closed");
+      Deque<IdleResource<V>> resources = this.idleResources.get(key);
+      if (resources != null) {
+        // Reuse the most recently released resource so the others can become idle long enough to be evicted
+        V resource = resources.pollLast().getResource();
+        if (resources.isEmpty()) {
+          this.idleResources.remove(key);
+        }
+        return resource;
+      }
+    }
+
+    try {
+      return creator.call();
+    } catch (Exception e) {
+      Throwables.propagateIfInstanceOf(e, IOException.class);
+      throw Throwables.propagate(e);
+    }
+  }
+
+  /**
+   * Give back a resource borrowed with the given key, which is kept idle for reuse or destroyed if the pool already
+   * has enough idle resources of the key or is closed.
+   */
+  public void release(K key, V resource) throws IOException {
+    boolean keep;
+    synchronized (this) {
+      Deque<IdleResource<V>> resources = this.idleResources.get(key);
+      keep = !this.closed && (resources == null ? 0 : resources.size()) < this.maxIdlePerKey;
+      if (keep) {
+        if (resources == null) {
+          resources = Queues.newArrayDeque();
+          this.idleResources.put(key, resources);
+        }
+        resources.addLast(new IdleResource<V>(resource, System.currentTimeMillis()));
+      }
+    }
+
+    if (!keep) {
+      destroy(resource);
+    }
+    evictIdle();
+  }
+
+  /**
+   * Destroy the resources that have been idle for longer than the idle timeout.
+   */
+  public void evictIdle() throws IOException {
+    List<V> evicted = Lists.newArrayList();
+    synchronized (this) {
+      long idleSince = System.currentTimeMillis() - this.idleTimeoutMillis;
+      Iterator<Deque<IdleResource<V>>> iterator = this.idleResources.values().iterator();
+      while (iterator.hasNext()) {
+        Deque<IdleResource<V>> resources = iterator.next();
+        while (!resources.isEmpty() && resources.peekFirst().getReleaseTime() <= idleSince) {
+          evicted.add(resources.pollFirst().getResource());
+        }
+        if (resources.isEmpty()) {
+          iterator.remove();
+        }
+      }
+    }
+
+    destroyAll(evicted);
+  }
+
+  /**
+   * Get the number of idle resources in the pool.
+   */
+  public synchronized int getIdleCount() {
+    int idleCount = 0;
+    for (Deque<IdleResource<V>> resources : this.idleResources.values()) {
+      idleCount += resources.size();
+    }
+    return idleCount;
+  }
+
+  /**
+   * Destroy all idle resources. Resources released after the pool is closed are destroyed right away.
+   */
+  @Override
+  public void close() throws IOException {
+    List<V> evicted = Lists.newArrayList();
+    synchronized (this) {
+      this.closed = true;
+      for (Deque<IdleResource<V>> resources : this.idleResources.values()) {
+        for (IdleResource<V> resource : resources) {
+          evicted.add(resource.getResource());
+        }
+      }
+      this.idleResources.clear();
+    }
+
+    destroyAll(evicted);
+  }
+
+  private void destroyAll(List<V> resources) throws IOException {
+    IOException firstException = null;
+    for (V resource : resources) {
+      try {
+        destroy(resource);
+      } catch (IOException ioe) {
+        LOGGER.warn("Failed to destroy resource " + resource, ioe);
+        if (firstException == null) {
+          firstException = ioe;
+        }
+      }
+    }
+    if (firstException != null) {
+      throw firstException;
+    }
+  }
+
+  private static class IdleResource<V> {
+
+    private final V resource;
+    private final long releaseTime;
+
+    IdleResource(V resource, long releaseTime) {
+      this.resource = resource;
+      this.releaseTime = releaseTime;
+    }
+
+    V getResource() {
+      return this.resource;
+    }
+
+    long getReleaseTime() {
+      return this.releaseTime;
+    }
+  }
+}
@@ -112,6 +112,32 @@ public class ParallelRunner implements Closeable {
     }));
   }
 
+  /**
+   * Serialize a list of {@link State} objects into a single file.
+   *
+   * <p>
+   *   This method submits a task to serialize the {@link State} objects and returns immediately
+   *   after the task is submitted. The offsets are available after {@link #close()} returns, see
+   *   {@link SerializationUtils#serializeStates(FileSystem, Path, List, long[])}.
+   * </p>
+   *
+   * @param states the {@link State} objects to be serialized
+   * @param outputFilePath the file to write the serialized {@link State} objects to
+   * @param offsets an array of size <code>states.size() + 1</code> to store the offsets into
+   * @param <T> the {@link State} object type
+   */
+  public <T extends State> void serializeToBundle(final List<T> states, final Path outputFilePath,
+      final long[] offsets) {
+    this.futures.add(this.executor.submit(new Callable<Void>() {
+
+      @Override
+      public Void call() throws Exception {
+        SerializationUtils.serializeStates(fs, outputFilePath, states, offsets);
+        return null;
+      }
+    }));
+  }
+
   /**
    * Deserialize a {@link State} object from a file.
    *
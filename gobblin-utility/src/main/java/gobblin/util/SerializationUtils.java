@@ -22,7 +22,10 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.util.List;
 
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 
@@ -161,4 +164,65 @@ public class SerializationUtils {
       closer.close();
     }
   }
+
+  /**
+   * Serialize a list of {@link State} instances one after another into a single file, a bundle. The offset of each
+   * serialized {@link State} instance in the file is stored in offsets, followed by the length of the file, so that
+   * the i-th instance is the <code>offsets[i+1] - offsets[i]</code> bytes at <code>offsets[i]</code>.
+   *
+   * @param fs the {@link FileSystem} instance for creating the file
+   * @param bundleFilePath the path to the file
+   * @param states the {@link State}s to serialize
+   * @param offsets an array of size <code>states.size() + 1</code> to store the offsets into
+   * @param <T> the {@link State} object type
+   * @throws IOException if it fails to serialize the {@link State} instances
+   */
+  public static <T extends State> void serializeStates(FileSystem fs, Path bundleFilePath, List<T> states,
+      long[] offsets) throws IOException {
+    Closer closer = Closer.create();
+
+    try {
+      FSDataOutputStream os = closer.register(fs.create(bundleFilePath));
+      DataOutputStream dataOutputStream = closer.register(new DataOutputStream(os));
+      for (int i = 0; i < states.size(); i++) {
+        offsets[i] = os.getPos();
+        states.get(i).write(dataOutputStream);
+        dataOutputStream.flush();
+      }
+      offsets[states.size()] = os.getPos();
+    } catch (Throwable t) {
+      throw closer.rethrow(t);
+    } finally {
+      closer.close();
+    }
+  }
+
+  /**
+   * Deserialize/read a {@link State} instance from a slice of a file written by
+   * {@link #serializeStates(FileSystem, Path, List, long[])}, using a positional read.
+   *
+   * @param fs the {@link FileSystem} instance for opening the file
+   * @param bundleFilePath the path to the file
+   * @param offset the offset of the serialized {@link State} instance in the file
+   * @param length the length of the serialized {@link State} instance
+   * @param state an empty {@link State} instance to deserialize into
+   * @param <T> the {@link State} object type
+   * @throws IOException if it fails to deserialize the {@link State} instance
+   */
+  public static <T extends State> void deserializeState(FileSystem fs, Path bundleFilePath, long offset, int length,
+      T state) throws IOException {
+    byte[] bytes = new byte[length];
+    Closer closer = Closer.create();
+
+    try {
+      FSDataInputStream is = closer.register(fs.open(bundleFilePath));
+      is.readFully(offset, bytes);
+    } catch (Throwable t) {
+      throw closer.rethrow(t);
+    } finally {
+      closer.close();
+    }
+
+    state.readFields(new DataInputStream(new ByteArrayInputStream(bytes)));
+  }
 }
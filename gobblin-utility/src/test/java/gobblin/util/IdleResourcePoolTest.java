@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.util;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.Lists;
+
+
+/**
+ * Unit tests for {@link IdleResourcePool}.
+ */
+@Test(groups = { "gobblin.util" })
+public class IdleResourcePoolTest {
+
+  @Test
+  public void testReuse() throws IOException {
+    TestPool pool = new TestPool(1, TimeUnit.HOURS, 2);
+
+    StringBuilder first = pool.borrow("a", new Creator());
+    StringBuilder second = pool.borrow("a", new Creator());
+    Assert.assertNotSame(first, second);
+    pool.release("a", first);
+    pool.release("a", second);
+    Assert.assertEquals(pool.getIdleCount(), 2);
+
+    // The most recently released resource is handed out first, and only for its own key
+    Assert.assertSame(pool.borrow("a", new Creator()), second);
+    Assert.assertNotSame(pool.borrow("b", new Creator()), first);
+    Assert.assertEquals(pool.getIdleCount(), 1);
+    Assert.assertTrue(pool.destroyed.isEmpty());
+
+    pool.close();
+    Assert.assertEquals(pool.destroyed, Lists.newArrayList(first));
+  }
+
+  @Test
+  public void testMaxIdlePerKey() throws IOException {
+    TestPool pool = new TestPool(1, TimeUnit.HOURS, 1);
+
+    StringBuilder first = pool.borrow("a", new Creator());
+    StringBuilder second = pool.borrow("a", new Creator());
+    pool.release("a", first);
+    pool.release("a", second);
+    Assert.assertEquals(pool.getIdleCount(), 1);
+    Assert.assertEquals(pool.destroyed, Lists.newArrayList(second));
+  }
+
+  @Test
+  public void testIdleEviction() throws Exception {
+    TestPool pool = new TestPool(50, TimeUnit.MILLISECONDS, 2);
+
+    StringBuilder resource = pool.borrow("a", new Creator());
+    pool.release("a", resource);
+    Thread.sleep(100);
+    pool.evictIdle();
+    Assert.assertEquals(pool.getIdleCount(), 0);
+    Assert.assertEquals(pool.destroyed, Lists.newArrayList(resource));
+    Assert.assertNotSame(pool.borrow("a", new Creator()), resource);
+  }
+
+  @Test
+  public void testReleaseAfterClose() throws IOException {
+    TestPool pool = new TestPool(1, TimeUnit.HOURS, 2);
+
+    StringBuilder resource = pool.borrow("a", new Creator());
+    pool.close();
+    pool.release("a", resource);
+    Assert.assertEquals(pool.getIdleCount(), 0);
+    Assert.assertEquals(pool.destroyed, Lists.newArrayList(resource));
+  }
+
+  private static class TestPool extends IdleResourcePool<String, StringBuilder> {
+
+    private final List<StringBuilder> destroyed = Lists.newArrayList();
+
+    TestPool(long idleTimeout, TimeUnit timeUnit, int maxIdlePerKey) {
+      super(idleTimeout, timeUnit, maxIdlePerKey);
+    }
+
+    @Override
+    protected void destroy(StringBuilder resource) {
+      this.destroyed.add(resource);
+    }
+  }
+
+  private static class Creator implements Callable<StringBuilder> {
+
+    @Override
+    public StringBuilder call() {
+      return new StringBuilder();
+    }
+  }
+}
@@ -13,6 +13,7 @@
 package gobblin.util;
 
 import java.io.IOException;
+import java.util.List;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
@@ -22,6 +23,9 @@ import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+
 import gobblin.source.workunit.WorkUnit;
 
 
@@ -72,6 +76,32 @@ public class SerializationUtilsTest {
     Assert.assertEquals(workUnit2.getPropAsInt("b"), 20);
   }
 
+  @Test
+  public void testSerializeStatesToBundle() throws IOException {
+    List<WorkUnit> workUnits = Lists.newArrayList();
+    for (int i = 0; i < 3; i++) {
+      WorkUnit workUnit = WorkUnit.createEmpty();
+      workUnit.setProp("index", i);
+      workUnit.setProp("padding", Strings.repeat("x", i * 100));
+      workUnits.add(workUnit);
+    }
+    Path bundlePath = new Path(this.outputPath, "bundle");
+    long[] offsets = new long[workUnits.size() + 1];
+    SerializationUtils.serializeStates(this.fs, bundlePath, workUnits, offsets);
+
+    Assert.assertEquals(offsets[0], 0);
+    Assert.assertEquals(offsets[workUnits.size()], this.fs.getFileStatus(bundlePath).getLen());
+
+    // Read the slices out of order
+    for (int i = workUnits.size() - 1; i >= 0; i--) {
+      WorkUnit workUnit = WorkUnit.createEmpty();
+      SerializationUtils.deserializeState(this.fs, bundlePath, offsets[i], (int) (offsets[i + 1] - offsets[i]),
+          workUnit);
+      Assert.assertEquals(workUnit.getPropAsInt("index"), i);
+      Assert.assertEquals(workUnit.getProp("padding"), workUnits.get(i).getProp("padding"));
+    }
+  }
+
   @AfterClass
   public void tearDown() throws IOException {
     if (this.fs != null && this.outputPath != null) {
@@ -79,6 +79,7 @@ import gobblin.metrics.MetricContext;
 import gobblin.metrics.Tag;
 import gobblin.yarn.event.ApplicationMasterShutdownRequest;
 import gobblin.yarn.event.DelegationTokenUpdatedEvent;
+import gobblin.yarn.event.TaskStatePersistedEvent;
 
 
 /**
@@ -134,9 +135,16 @@ public class GobblinApplicationMaster extends GobblinYarnLogSource {
       LOGGER.info("Adding YarnContainerSecurityManager since security is enabled");
       services.add(new YarnContainerSecurityManager(config, fs, this.eventBus));
     }
-    services.add(
+    YarnService yarnService =
         new YarnService(config, applicationName, applicationAttemptId.getApplicationId(), fs, this.eventBus,
-            Strings.nullToEmpty(config.getString(GobblinYarnConfigurationKeys.CONTAINER_JVM_ARGS_KEY))));
+            Strings.nullToEmpty(config.getString(GobblinYarnConfigurationKeys.CONTAINER_JVM_ARGS_KEY)));
+    services.add(yarnService);
+    if (config.hasPath(GobblinYarnConfigurationKeys.AUTOSCALING_ENABLED_KEY) ?
+        config.getBoolean(GobblinYarnConfigurationKeys.AUTOSCALING_ENABLED_KEY) :
+        GobblinYarnConfigurationKeys.DEFAULT_AUTOSCALING_ENABLED) {
+      LOGGER.info("Adding YarnAutoScalingManager since autoscaling is enabled");
+      services.add(new YarnAutoScalingManager(config, this.helixManager, yarnService, this.eventBus));
+    }
     services.add(
         new GobblinHelixJobScheduler(YarnHelixUtils.configToProperties(config), this.helixManager, this.eventBus,
             appWorkDir));
@@ -402,6 +410,7 @@ public class GobblinApplicationMaster extends GobblinYarnLogSource {
      *
      *   <ul>
      *     <li>{@link HelixMessageSubTypes#TOKEN_FILE_UPDATED}</li>
+     *     <li>{@link HelixMessageSubTypes#TASK_STATE_PERSISTED}</li>
      *   </ul>
      * </p>
      */
@@ -424,6 +433,15 @@ public class GobblinApplicationMaster extends GobblinYarnLogSource {
           return helixTaskResult;
         }
 
+        if (messageSubType.equalsIgnoreCase(HelixMessageSubTypes.TASK_STATE_PERSISTED.toString())) {
+          eventBus.post(new TaskStatePersistedEvent(
+              this._message.getRecord().getSimpleField(ConfigurationKeys.JOB_ID_KEY),
+              this._message.getRecord().getSimpleField(ConfigurationKeys.TASK_ID_KEY)));
+          HelixTaskResult helixTaskResult = new HelixTaskResult();
+          helixTaskResult.setSuccess(true);
+          return helixTaskResult;
+        }
+
         throw new IllegalArgumentException(String.format("Unknown %s message subtype: %s",
             Message.MessageType.USER_DEFINE_MSG.toString(), messageSubType));
       }
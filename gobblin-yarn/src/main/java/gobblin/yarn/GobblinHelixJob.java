@@ -21,6 +21,8 @@ import org.quartz.JobDataMap;
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
 
+import com.google.common.eventbus.EventBus;
+
 import gobblin.runtime.JobLauncher;
 import gobblin.runtime.JobListener;
 import gobblin.scheduler.JobScheduler;
@@ -43,9 +45,13 @@ public class GobblinHelixJob implements Job {
     JobListener jobListener = (JobListener) dataMap.get(JobScheduler.JOB_LISTENER_KEY);
     HelixManager helixManager = (HelixManager) dataMap.get(GobblinHelixJobScheduler.HELIX_MANAGER_KEY);
     Path appWorkDir = (Path) dataMap.get(GobblinHelixJobScheduler.APPLICATION_WORK_DIR_KEY);
+    EventBus eventBus = (EventBus) dataMap.get(GobblinHelixJobScheduler.EVENT_BUS_KEY);
+    int containerTaskExecutorThreadPoolSize =
+        dataMap.getInt(GobblinHelixJobScheduler.CONTAINER_TASK_EXECUTOR_THREADPOOL_SIZE_KEY);
 
     try {
-      JobLauncher jobLauncher = new GobblinHelixJobLauncher(jobProps, helixManager, appWorkDir);
+      JobLauncher jobLauncher = new GobblinHelixJobLauncher(jobProps, helixManager, appWorkDir, eventBus,
+          containerTaskExecutorThreadPoolSize);
       jobScheduler.runJob(jobProps, jobListener, jobLauncher);
     } catch (Throwable t) {
       throw new JobExecutionException(t);
@@ -13,10 +13,15 @@
 package gobblin.yarn;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
@@ -24,7 +29,11 @@ import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.PathFilter;
 import org.apache.hadoop.io.Text;
+import org.apache.helix.Criteria;
+import org.apache.helix.HelixDataAccessor;
 import org.apache.helix.HelixManager;
+import org.apache.helix.InstanceType;
+import org.apache.helix.model.Message;
 import org.apache.helix.task.JobConfig;
 import org.apache.helix.task.JobQueue;
 import org.apache.helix.task.TaskConfig;
@@ -37,9 +46,13 @@ import org.slf4j.LoggerFactory;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Queues;
+import com.google.common.collect.Sets;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
 import com.google.common.io.Closer;
 
 import gobblin.configuration.ConfigurationKeys;
+import gobblin.configuration.WorkUnitState;
 import gobblin.runtime.AbstractJobLauncher;
 import gobblin.runtime.FileBasedJobLock;
 import gobblin.runtime.JobLauncher;
@@ -50,6 +63,7 @@ import gobblin.source.workunit.MultiWorkUnit;
 import gobblin.source.workunit.WorkUnit;
 import gobblin.util.ParallelRunner;
 import gobblin.util.SerializationUtils;
+import gobblin.yarn.event.TaskStatePersistedEvent;
 
 
 /**
@@ -70,6 +84,42 @@ import gobblin.util.SerializationUtils;
  * </p>
  *
  * <p>
+ *   Unless {@link GobblinYarnConfigurationKeys#WORK_UNITS_PER_BUNDLE_KEY} is set to 1, {@link WorkUnit}s are
+ *   packed into bundle files instead of one file each, so that the number of files created on the
+ *   {@link FileSystem} does not grow with the number of {@link WorkUnit}s. The Helix task of a bundled
+ *   {@link WorkUnit} is also given the offset and length of the {@link WorkUnit} in the bundle file, which it reads
+ *   with a positional read.
+ * </p>
+ *
+ * <p>
+ *   If {@link GobblinYarnConfigurationKeys#TASK_STATE_STREAMING_ENABLED_KEY} is set, the {@link TaskState}s are
+ *   instead collected while the job is running: each Helix task reports its persisted {@link TaskState} with a
+ *   {@link HelixMessageSubTypes#TASK_STATE_PERSISTED} message, and the output {@link TaskState} directory is
+ *   listed again whenever no report arrives for
+ *   {@link GobblinYarnConfigurationKeys#TASK_STATE_RESCAN_INTERVAL_SECONDS_KEY} seconds, in case a message was lost.
+ *   The job is done as soon as every task has reported a successful {@link TaskState}, or otherwise when Helix
+ *   considers the job completed. With {@link GobblinYarnConfigurationKeys#COMMIT_DATASETS_EARLY_KEY} set and a
+ *   job commit policy that allows it, each dataset is committed as soon as all of its tasks have succeeded.
+ * </p>
+ *
+ * <p>
+ *   If {@link GobblinYarnConfigurationKeys#WORK_STEALING_ENABLED_KEY} is set, the configurations of the tasks are
+ *   instead written to a {@link WorkUnitQueue} and the Helix job runs one {@link GobblinHelixWorkerTask} per
+ *   container, or {@link GobblinYarnConfigurationKeys#WORK_STEALING_WORKERS_KEY} of them, which pull the tasks from
+ *   the queue so that containers finishing early take over the tasks of busier ones.
+ * </p>
+ *
+ * <p>
+ *   If {@link GobblinYarnConfigurationKeys#INLINE_TASK_EXECUTION_ENABLED_KEY} is set, each Helix task runs its
+ *   Gobblin {@link gobblin.runtime.Task} in its own thread, and Helix is allowed to run as many tasks of the job
+ *   per container as the containers have {@link gobblin.runtime.TaskExecutor} threads, that is
+ *   {@link ConfigurationKeys#TASK_EXECUTOR_THREADPOOL_SIZE_KEY} in the application configuration, which a job
+ *   configuration cannot override. Inline task execution is disabled
+ *   if {@link ConfigurationKeys#TASK_EXECUTOR_FAIR_SCHEDULING_ENABLED_KEY} is set, since tasks run inline would not
+ *   be scheduled by the {@link gobblin.runtime.TaskExecutor}.
+ * </p>
+ *
+ * <p>
  *   This class runs in the {@link GobblinApplicationMaster}. The actual task execution happens in the Yarn
  *   containers and is managed by the {@link GobblinWorkUnitRunner}.
  * </p>
@@ -81,6 +131,9 @@ public class GobblinHelixJobLauncher extends AbstractJobLauncher {
   private static final Logger LOGGER = LoggerFactory.getLogger(GobblinHelixJobLauncher.class);
 
   private static final String WORK_UNIT_FILE_EXTENSION = ".wu";
+  private static final String WORK_UNIT_BUNDLE_FILE_EXTENSION = ".wub";
+  private static final String WORK_UNIT_QUEUE_FILE_NAME = "_queue";
+  private static final String WORKER_TASK_ID_PREFIX = "worker_";
 
   private final HelixManager helixManager;
   private final TaskDriver helixTaskDriver;
@@ -92,11 +145,28 @@ public class GobblinHelixJobLauncher extends AbstractJobLauncher {
   private final Path inputWorkUnitDir;
 
   private final int stateSerDeRunnerThreads;
+  private final int workUnitsPerBundle;
+
+  private final EventBus eventBus;
+  private final boolean taskStateStreamingEnabled;
+  private final long taskStateRescanIntervalSeconds;
+  private final boolean commitDatasetsEarly;
+  private final boolean workStealingEnabled;
+  private final boolean inlineTaskExecutionEnabled;
+  private final int taskExecutorThreadPoolSize;
+  // IDs of tasks that reported a persisted TaskState and have not been collected yet
+  private final BlockingQueue<String> reportedTaskIds = Queues.newLinkedBlockingQueue();
 
-  public GobblinHelixJobLauncher(Properties jobProps, HelixManager helixManager, Path appWorkDir) throws Exception {
+  /**
+   * @param containerTaskExecutorThreadPoolSize the number of {@link gobblin.runtime.TaskExecutor} threads of each
+   *                                            container, as configured by the application rather than the job
+   */
+  public GobblinHelixJobLauncher(Properties jobProps, HelixManager helixManager, Path appWorkDir, EventBus eventBus,
+      int containerTaskExecutorThreadPoolSize) throws Exception {
     super(jobProps);
 
     this.helixManager = helixManager;
+    this.eventBus = eventBus;
     this.helixTaskDriver = new TaskDriver(this.helixManager);
 
     this.fs = FileSystem.get(new Configuration());
@@ -108,17 +178,78 @@ public class GobblinHelixJobLauncher extends AbstractJobLauncher {
 
     this.stateSerDeRunnerThreads = Integer.parseInt(jobProps.getProperty(ParallelRunner.PARALLEL_RUNNER_THREADS_KEY,
         Integer.toString(ParallelRunner.DEFAULT_PARALLEL_RUNNER_THREADS)));
+    this.workUnitsPerBundle = Integer.parseInt(jobProps.getProperty(
+        GobblinYarnConfigurationKeys.WORK_UNITS_PER_BUNDLE_KEY,
+        Integer.toString(GobblinYarnConfigurationKeys.DEFAULT_WORK_UNITS_PER_BUNDLE)));
+
+    this.taskStateStreamingEnabled = Boolean.parseBoolean(jobProps.getProperty(
+        GobblinYarnConfigurationKeys.TASK_STATE_STREAMING_ENABLED_KEY,
+        Boolean.toString(GobblinYarnConfigurationKeys.DEFAULT_TASK_STATE_STREAMING_ENABLED)));
+    this.taskStateRescanIntervalSeconds = Long.parseLong(jobProps.getProperty(
+        GobblinYarnConfigurationKeys.TASK_STATE_RESCAN_INTERVAL_SECONDS_KEY,
+        Long.toString(GobblinYarnConfigurationKeys.DEFAULT_TASK_STATE_RESCAN_INTERVAL_SECONDS)));
+    this.commitDatasetsEarly = Boolean.parseBoolean(jobProps.getProperty(
+        GobblinYarnConfigurationKeys.COMMIT_DATASETS_EARLY_KEY,
+        Boolean.toString(GobblinYarnConfigurationKeys.DEFAULT_COMMIT_DATASETS_EARLY)));
+    this.workStealingEnabled = Boolean.parseBoolean(jobProps.getProperty(
+        GobblinYarnConfigurationKeys.WORK_STEALING_ENABLED_KEY,
+        Boolean.toString(GobblinYarnConfigurationKeys.DEFAULT_WORK_STEALING_ENABLED)));
+    boolean inlineTaskExecutionEnabled = Boolean.parseBoolean(jobProps.getProperty(
+        GobblinYarnConfigurationKeys.INLINE_TASK_EXECUTION_ENABLED_KEY,
+        Boolean.toString(GobblinYarnConfigurationKeys.DEFAULT_INLINE_TASK_EXECUTION_ENABLED)));
+    boolean fairSchedulingEnabled = Boolean.parseBoolean(jobProps.getProperty(
+        ConfigurationKeys.TASK_EXECUTOR_FAIR_SCHEDULING_ENABLED_KEY,
+        Boolean.toString(ConfigurationKeys.DEFAULT_TASK_EXECUTOR_FAIR_SCHEDULING_ENABLED)));
+    if (inlineTaskExecutionEnabled && fairSchedulingEnabled) {
+      LOGGER.warn(String.format("Disabling inline task execution of job %s as tasks are scheduled fairly by the "
+          + "TaskExecutor", this.jobContext.getJobId()));
+    }
+    this.inlineTaskExecutionEnabled = inlineTaskExecutionEnabled && !fairSchedulingEnabled;
+    // The containers size their TaskExecutor from the application configuration, which a job cannot change
+    String jobThreadPoolSize = jobProps.getProperty(ConfigurationKeys.TASK_EXECUTOR_THREADPOOL_SIZE_KEY);
+    if (jobThreadPoolSize != null && Integer.parseInt(jobThreadPoolSize) != containerTaskExecutorThreadPoolSize) {
+      LOGGER.warn(String.format("Ignoring %s of job %s as the containers run %d TaskExecutor threads",
+          ConfigurationKeys.TASK_EXECUTOR_THREADPOOL_SIZE_KEY, this.jobContext.getJobId(),
+          containerTaskExecutorThreadPoolSize));
+    }
+    this.taskExecutorThreadPoolSize = containerTaskExecutorThreadPoolSize;
   }
 
   @Override
   protected void runWorkUnits(List<WorkUnit> workUnits) throws Exception {
+    if (this.taskStateStreamingEnabled) {
+      this.eventBus.register(this);
+    }
+
     try {
       submitJobToHelix(createJob(workUnits));
-      waitForJobCompletion();
+      if (this.taskStateStreamingEnabled) {
+        collectTaskStatesUntilJobCompletion(workUnits);
+      } else {
+        waitForJobCompletion();
+        this.jobContext.getJobState().addTaskStates(collectOutputTaskStates());
+      }
       this.jobContext.getJobState().setState(JobState.RunningState.SUCCESSFUL);
-      this.jobContext.getJobState().addTaskStates(collectOutputTaskStates());
     } finally {
+      if (this.taskStateStreamingEnabled) {
+        this.eventBus.unregister(this);
+      }
       deletePersistedWorkUnitsForJob();
+      try {
+        sendJobCompletedMessage();
+      } catch (Exception e) {
+        // The cached job states are still evicted once the caches are full, so the failure must not mask the
+        // outcome of the job
+        LOGGER.warn("Failed to send the job completed message for job " + this.jobContext.getJobId(), e);
+      }
+    }
+  }
+
+  @SuppressWarnings("unused")
+  @Subscribe
+  public void handleTaskStatePersistedEvent(TaskStatePersistedEvent event) {
+    if (this.jobContext.getJobId().equals(event.getJobId())) {
+      this.reportedTaskIds.add(event.getTaskId());
     }
   }
 
@@ -137,14 +268,29 @@ public class GobblinHelixJobLauncher extends AbstractJobLauncher {
    * Create a job from a given batch of {@link WorkUnit}s.
    */
   private JobConfig.Builder createJob(List<WorkUnit> workUnits) throws IOException {
-    Map<String, TaskConfig> taskConfigMap = Maps.newHashMap();
+    Map<String, TaskConfig> taskConfigMap = Maps.newLinkedHashMap();
+    Path workUnitFileDir = new Path(this.inputWorkUnitDir, this.jobContext.getJobId());
+    List<List<WorkUnit>> bundles = this.workUnitsPerBundle > 1 ?
+        Lists.partition(workUnits, this.workUnitsPerBundle) : Lists.<List<WorkUnit>>newArrayList();
+    List<Path> bundleFiles = Lists.newArrayListWithCapacity(bundles.size());
+    List<long[]> bundleOffsets = Lists.newArrayListWithCapacity(bundles.size());
 
     Closer closer = Closer.create();
     try {
       ParallelRunner stateSerDeRunner = closer.register(new ParallelRunner(this.stateSerDeRunnerThreads, this.fs));
 
-      for (WorkUnit workUnit : workUnits) {
-        addWorkUnit(workUnit, stateSerDeRunner, taskConfigMap);
+      if (bundles.isEmpty()) {
+        for (WorkUnit workUnit : workUnits) {
+          addWorkUnit(workUnit, stateSerDeRunner, taskConfigMap);
+        }
+      } else {
+        for (int i = 0; i < bundles.size(); i++) {
+          Path bundleFile = new Path(workUnitFileDir, "bundle_" + i + WORK_UNIT_BUNDLE_FILE_EXTENSION);
+          long[] offsets = new long[bundles.get(i).size() + 1];
+          stateSerDeRunner.serializeToBundle(bundles.get(i), bundleFile, offsets);
+          bundleFiles.add(bundleFile);
+          bundleOffsets.add(offsets);
+        }
       }
 
       Path jobStateFilePath = new Path(this.appWorkDir, this.jobContext.getJobId() + "." + JOB_STATE_FILE_NAME);
@@ -155,12 +301,89 @@ public class GobblinHelixJobLauncher extends AbstractJobLauncher {
       closer.close();
     }
 
+    // The offsets are only known once all bundles have been written
+    for (int i = 0; i < bundles.size(); i++) {
+      List<WorkUnit> bundle = bundles.get(i);
+      long[] offsets = bundleOffsets.get(i);
+      for (int j = 0; j < bundle.size(); j++) {
+        Map<String, String> rawConfigMap = createRawTaskConfigMap(bundle.get(j), bundleFiles.get(i).toString());
+        rawConfigMap.put(GobblinYarnConfigurationKeys.WORK_UNIT_OFFSET, Long.toString(offsets[j]));
+        rawConfigMap.put(GobblinYarnConfigurationKeys.WORK_UNIT_LENGTH, Long.toString(offsets[j + 1] - offsets[j]));
+        rawConfigMap.put(GobblinYarnConfigurationKeys.IS_MULTI_WORK_UNIT,
+            Boolean.toString(bundle.get(j) instanceof MultiWorkUnit));
+        taskConfigMap.put(bundle.get(j).getId(), TaskConfig.from(rawConfigMap));
+      }
+    }
+
+    if (this.workStealingEnabled) {
+      taskConfigMap = createWorkerTasks(taskConfigMap, new Path(workUnitFileDir, WORK_UNIT_QUEUE_FILE_NAME));
+    }
+
     JobConfig.Builder jobConfigBuilder = new JobConfig.Builder();
     jobConfigBuilder.addTaskConfigMap(taskConfigMap).setCommand(GobblinWorkUnitRunner.GOBBLIN_TASK_FACTORY_NAME);
+    if (this.inlineTaskExecutionEnabled && !this.workStealingEnabled) {
+      // Tasks no longer queue up in the TaskExecutor of the container, so let Helix run as many as it has threads
+      jobConfigBuilder.setNumConcurrentTasksPerInstance(this.taskExecutorThreadPoolSize);
+    }
 
     return jobConfigBuilder;
   }
 
+  /**
+   * Write the given tasks to a {@link WorkUnitQueue} and create the {@link GobblinHelixWorkerTask}s pulling them.
+   */
+  private Map<String, TaskConfig> createWorkerTasks(Map<String, TaskConfig> taskConfigMap, Path queueFile)
+      throws IOException {
+    List<Map<String, String>> rawTaskConfigMaps = Lists.newArrayListWithCapacity(taskConfigMap.size());
+    for (TaskConfig taskConfig : taskConfigMap.values()) {
+      rawTaskConfigMaps.add(taskConfig.getConfigMap());
+    }
+    WorkUnitQueue.write(this.fs, queueFile, rawTaskConfigMaps);
+
+    int workers = Math.max(1, Math.min(getWorkStealingWorkers(taskConfigMap.size()), taskConfigMap.size()));
+    String prefetch = this.jobProps.getProperty(GobblinYarnConfigurationKeys.WORK_STEALING_PREFETCH_KEY,
+        Integer.toString(GobblinYarnConfigurationKeys.DEFAULT_WORK_STEALING_PREFETCH));
+    LOGGER.info(String.format("Running %d tasks of job %s with %d workers", taskConfigMap.size(),
+        this.jobContext.getJobId(), workers));
+
+    Map<String, TaskConfig> workerTaskConfigMap = Maps.newLinkedHashMap();
+    for (int i = 0; i < workers; i++) {
+      String workerId = WORKER_TASK_ID_PREFIX + i;
+      Map<String, String> rawConfigMap = Maps.newHashMap();
+      rawConfigMap.put(GobblinYarnConfigurationKeys.WORK_UNIT_QUEUE_PATH, queueFile.toString());
+      rawConfigMap.put(GobblinYarnConfigurationKeys.WORKER_INDEX, Integer.toString(i));
+      rawConfigMap.put(GobblinYarnConfigurationKeys.WORKERS, Integer.toString(workers));
+      rawConfigMap.put(GobblinYarnConfigurationKeys.WORK_STEALING_PREFETCH_KEY, prefetch);
+      rawConfigMap.put(ConfigurationKeys.JOB_NAME_KEY, this.jobContext.getJobName());
+      rawConfigMap.put(ConfigurationKeys.JOB_ID_KEY, this.jobContext.getJobId());
+      rawConfigMap.put(ConfigurationKeys.TASK_ID_KEY, workerId);
+      rawConfigMap.put(GobblinYarnConfigurationKeys.TASK_SUCCESS_OPTIONAL_KEY, "true");
+      workerTaskConfigMap.put(workerId, TaskConfig.from(rawConfigMap));
+    }
+    return workerTaskConfigMap;
+  }
+
+  /**
+   * Get the number of {@link GobblinHelixWorkerTask}s to run for the given number of tasks.
+   *
+   * <p>
+   *   By default, there are enough workers to run all the tasks at once, each worker running as many tasks at a time
+   *   as a container has {@link gobblin.runtime.TaskExecutor} threads, and at least one worker per live Helix
+   *   participant. Workers beyond the live participants wait in Helix, so the {@link YarnAutoScalingManager}, which
+   *   counts the Helix tasks not done yet, grows the container pool for them. A worker started once all tasks have
+   *   been started completes right away, so the pool shrinks again as the queue drains.
+   * </p>
+   */
+  private int getWorkStealingWorkers(int tasks) {
+    if (this.jobProps.containsKey(GobblinYarnConfigurationKeys.WORK_STEALING_WORKERS_KEY)) {
+      return Integer.parseInt(this.jobProps.getProperty(GobblinYarnConfigurationKeys.WORK_STEALING_WORKERS_KEY));
+    }
+    HelixDataAccessor accessor = this.helixManager.getHelixDataAccessor();
+    int liveParticipants = accessor.getChildNames(accessor.keyBuilder().liveInstances()).size();
+    int tasksPerWorker = Math.max(1, this.taskExecutorThreadPoolSize);
+    return Math.max(liveParticipants, (tasks + tasksPerWorker - 1) / tasksPerWorker);
+  }
+
   /**
    * Submit a job to run.
    */
@@ -184,16 +407,24 @@ public class GobblinHelixJobLauncher extends AbstractJobLauncher {
       Map<String, TaskConfig> taskConfigMap) throws IOException {
     String workUnitFilePath = persistWorkUnit(
         new Path(this.inputWorkUnitDir, this.jobContext.getJobId()), workUnit, stateSerDeRunner);
+    taskConfigMap.put(workUnit.getId(), TaskConfig.from(createRawTaskConfigMap(workUnit, workUnitFilePath)));
+  }
 
+  /**
+   * Create the configuration of the Helix task running a single {@link WorkUnit} (flattened).
+   */
+  private Map<String, String> createRawTaskConfigMap(WorkUnit workUnit, String workUnitFilePath) {
     Map<String, String> rawConfigMap = Maps.newHashMap();
     rawConfigMap.put(GobblinYarnConfigurationKeys.WORK_UNIT_FILE_PATH, workUnitFilePath);
     rawConfigMap.put(ConfigurationKeys.JOB_NAME_KEY, this.jobContext.getJobName());
     rawConfigMap.put(ConfigurationKeys.JOB_ID_KEY, this.jobContext.getJobId());
     rawConfigMap.put(ConfigurationKeys.TASK_ID_KEY, workUnit.getId());
     rawConfigMap.put(GobblinYarnConfigurationKeys.TASK_SUCCESS_OPTIONAL_KEY, "true");
+    rawConfigMap.put(GobblinYarnConfigurationKeys.REPORT_TASK_STATE, Boolean.toString(this.taskStateStreamingEnabled));
+    rawConfigMap.put(GobblinYarnConfigurationKeys.RUN_TASK_INLINE, Boolean.toString(this.inlineTaskExecutionEnabled));
 
     LOGGER.info("Adding WorkUnit " + workUnit.getId());
-    taskConfigMap.put(workUnit.getId(), TaskConfig.from(rawConfigMap));
+    return rawConfigMap;
   }
 
   /**
@@ -223,9 +454,102 @@ public class GobblinHelixJobLauncher extends AbstractJobLauncher {
     }
   }
 
-  private List<TaskState> collectOutputTaskStates() throws IOException {
-    Path outputTaskStateDir = new Path(this.appWorkDir, GobblinYarnConfigurationKeys.OUTPUT_TASK_STATE_DIR_NAME +
+  /**
+   * Collect the output {@link TaskState}s as the tasks report them until every task has succeeded or Helix
+   * considers the job completed, committing datasets early if enabled.
+   *
+   * <p>
+   *   A task that failed may be retried by Helix, so a {@link TaskState} that is not successful is replaced by the
+   *   {@link TaskState} of a later attempt if one is reported.
+   * </p>
+   */
+  private void collectTaskStatesUntilJobCompletion(List<WorkUnit> workUnits) throws IOException, InterruptedException {
+    JobState jobState = this.jobContext.getJobState();
+    boolean commitDatasetsEarly = this.commitDatasetsEarly && this.jobContext.canCommitDatasetsEarly();
+
+    // The dataset URN of a task is the one of its work unit, as seen by JobState#createDatasetStatesByUrns
+    Map<String, String> datasetUrnsByTaskId = Maps.newHashMap();
+    Map<String, Integer> taskCountsByDatasetUrn = Maps.newHashMap();
+    for (WorkUnit workUnit : workUnits) {
+      String datasetUrn = workUnit.getProp(ConfigurationKeys.DATASET_URN_KEY, ConfigurationKeys.DEFAULT_DATASET_URN);
+      datasetUrnsByTaskId.put(workUnit.getId(), datasetUrn);
+      Integer taskCount = taskCountsByDatasetUrn.get(datasetUrn);
+      taskCountsByDatasetUrn.put(datasetUrn, taskCount == null ? 1 : taskCount + 1);
+    }
+
+    Map<String, TaskState> collectedTaskStates = Maps.newHashMap();
+    Map<String, List<TaskState>> successfulTaskStatesByDatasetUrn = Maps.newHashMap();
+    Set<String> successfulTaskIds = Sets.newHashSet();
+
+    boolean jobCompleted = false;
+    while (!jobCompleted && successfulTaskIds.size() < workUnits.size()) {
+      Set<String> taskIds = Sets.newHashSet();
+      String reportedTaskId = this.reportedTaskIds.poll(this.taskStateRescanIntervalSeconds, TimeUnit.SECONDS);
+      if (reportedTaskId != null) {
+        taskIds.add(reportedTaskId);
+        this.reportedTaskIds.drainTo(taskIds);
+      } else {
+        // Nothing was reported for a while: check whether Helix is done with the job, and look for task states
+        // whose message was lost. Checking the job before listing makes sure the listing sees all final states.
+        jobCompleted = isHelixJobCompleted();
+        taskIds.addAll(listOutputTaskStateIds());
+        taskIds.removeAll(jobCompleted ? successfulTaskIds : collectedTaskStates.keySet());
+      }
+      taskIds.removeAll(successfulTaskIds);
+      if (taskIds.isEmpty()) {
+        continue;
+      }
+
+      for (TaskState taskState : readOutputTaskStates(taskIds, !jobCompleted)) {
+        String taskId = taskState.getTaskId();
+        collectedTaskStates.put(taskId, taskState);
+        jobState.addTaskState(taskState);
+        if (taskState.getWorkingState() != WorkUnitState.WorkingState.SUCCESSFUL || !successfulTaskIds.add(taskId)) {
+          continue;
+        }
+
+        String datasetUrn = datasetUrnsByTaskId.get(taskId);
+        if (!successfulTaskStatesByDatasetUrn.containsKey(datasetUrn)) {
+          successfulTaskStatesByDatasetUrn.put(datasetUrn, Lists.<TaskState>newArrayList());
+        }
+        List<TaskState> datasetTaskStates = successfulTaskStatesByDatasetUrn.get(datasetUrn);
+        datasetTaskStates.add(taskState);
+        if (commitDatasetsEarly && datasetTaskStates.size() == taskCountsByDatasetUrn.get(datasetUrn)) {
+          LOGGER.info(String.format("All %d tasks of dataset %s succeeded, committing the dataset",
+              datasetTaskStates.size(), datasetUrn));
+          this.jobContext.commitDatasetEarly(datasetUrn, datasetTaskStates);
+        }
+      }
+    }
+
+    LOGGER.info(String.format("Collected task state of %d completed tasks, %d of them successful",
+        collectedTaskStates.size(), successfulTaskIds.size()));
+
+    // All tasks may have succeeded before Helix marks the job completed, in which case it has no finish time yet
+    WorkflowContext workflowContext = TaskUtil.getWorkflowContext(this.helixManager, this.helixQueueName);
+    long finishTime = workflowContext != null ? workflowContext.getFinishTime() : WorkflowContext.UNFINISHED;
+    if (workflowContext != null) {
+      jobState.setStartTime(workflowContext.getStartTime());
+    }
+    jobState.setEndTime(finishTime != WorkflowContext.UNFINISHED ? finishTime : System.currentTimeMillis());
+  }
+
+  private boolean isHelixJobCompleted() {
+    WorkflowContext workflowContext = TaskUtil.getWorkflowContext(this.helixManager, this.helixQueueName);
+    return workflowContext != null &&
+        workflowContext.getJobState(this.jobResourceName) == org.apache.helix.task.TaskState.COMPLETED;
+  }
+
+  private Path getOutputTaskStateDir() {
+    return new Path(this.appWorkDir, GobblinYarnConfigurationKeys.OUTPUT_TASK_STATE_DIR_NAME +
         Path.SEPARATOR + this.jobContext.getJobId());
+  }
+
+  private FileStatus[] listOutputTaskStateFiles() throws IOException {
+    Path outputTaskStateDir = getOutputTaskStateDir();
+    if (!this.fs.exists(outputTaskStateDir)) {
+      return new FileStatus[0];
+    }
 
     FileStatus[] fileStatuses = this.fs.listStatus(outputTaskStateDir, new PathFilter() {
       @Override
@@ -233,28 +557,99 @@ public class GobblinHelixJobLauncher extends AbstractJobLauncher {
         return path.getName().endsWith(TASK_STATE_STORE_TABLE_SUFFIX);
       }
     });
-    if (fileStatuses == null || fileStatuses.length == 0) {
+    return fileStatuses == null ? new FileStatus[0] : fileStatuses;
+  }
+
+  private Set<String> listOutputTaskStateIds() throws IOException {
+    Set<String> taskIds = Sets.newHashSet();
+    for (FileStatus status : listOutputTaskStateFiles()) {
+      String fileName = status.getPath().getName();
+      taskIds.add(fileName.substring(0, fileName.length() - TASK_STATE_STORE_TABLE_SUFFIX.length()));
+    }
+    return taskIds;
+  }
+
+  /**
+   * Read the output {@link TaskState}s of the given tasks.
+   *
+   * @param partialOk whether to return the {@link TaskState}s read so far instead of failing if some cannot be read,
+   *                  e.g., because they are still being written
+   */
+  private List<TaskState> readOutputTaskStates(Collection<String> taskIds, boolean partialOk) throws IOException {
+    List<Path> taskStateFiles = Lists.newArrayListWithCapacity(taskIds.size());
+    for (String taskId : taskIds) {
+      taskStateFiles.add(new Path(getOutputTaskStateDir(), taskId + TASK_STATE_STORE_TABLE_SUFFIX));
+    }
+
+    Queue<TaskState> taskStateQueue = Queues.newConcurrentLinkedQueue();
+    try {
+      readTaskStates(taskStateFiles, taskStateQueue);
+    } catch (IOException ioe) {
+      if (!partialOk) {
+        throw ioe;
+      }
+      LOGGER.warn("Failed to read some task states, they will be read again later", ioe);
+    }
+    return Lists.newArrayList(taskStateQueue);
+  }
+
+  private List<TaskState> collectOutputTaskStates() throws IOException {
+    FileStatus[] fileStatuses = listOutputTaskStateFiles();
+    if (fileStatuses.length == 0) {
       return Lists.newArrayList();
     }
 
+    List<Path> taskStateFiles = Lists.newArrayListWithCapacity(fileStatuses.length);
+    for (FileStatus status : fileStatuses) {
+      LOGGER.info("Found output task state file " + status.getPath());
+      taskStateFiles.add(status.getPath());
+    }
+
     Queue<TaskState> taskStateQueue = Queues.newConcurrentLinkedQueue();
+    readTaskStates(taskStateFiles, taskStateQueue);
+
+    LOGGER.info(String.format("Collected task state of %d completed tasks", taskStateQueue.size()));
+
+    return Lists.newArrayList(taskStateQueue);
+  }
 
+  private void readTaskStates(List<Path> taskStateFiles, Queue<TaskState> taskStateQueue) throws IOException {
     Closer closer = Closer.create();
     try {
       ParallelRunner stateSerDeRunner = closer.register(new ParallelRunner(this.stateSerDeRunnerThreads, this.fs));
-      for (FileStatus status : fileStatuses) {
-        LOGGER.info("Found output task state file " + status.getPath());
-        stateSerDeRunner.deserializeFromSequenceFile(Text.class, TaskState.class, status.getPath(), taskStateQueue);
+      for (Path taskStateFile : taskStateFiles) {
+        stateSerDeRunner.deserializeFromSequenceFile(Text.class, TaskState.class, taskStateFile, taskStateQueue);
       }
     } catch (Throwable t) {
       throw closer.rethrow(t);
     } finally {
       closer.close();
     }
+  }
 
-    LOGGER.info(String.format("Collected task state of %d completed tasks", taskStateQueue.size()));
-
-    return Lists.newArrayList(taskStateQueue);
+  /**
+   * Notify the {@link GobblinWorkUnitRunner}s that the job completed, so they evict its cached
+   * {@link JobState}.
+   */
+  private void sendJobCompletedMessage() {
+    Criteria criteria = new Criteria();
+    criteria.setInstanceName("%");
+    criteria.setResource("%");
+    criteria.setPartition("%");
+    criteria.setPartitionState("%");
+    criteria.setRecipientInstanceType(InstanceType.PARTICIPANT);
+    criteria.setDataSource(Criteria.DataSource.LIVEINSTANCES);
+    criteria.setSessionSpecific(true);
+
+    Message jobCompletedMessage = new Message(Message.MessageType.USER_DEFINE_MSG,
+        HelixMessageSubTypes.JOB_COMPLETED.toString().toLowerCase() + UUID.randomUUID().toString());
+    jobCompletedMessage.setMsgSubType(HelixMessageSubTypes.JOB_COMPLETED.toString());
+    jobCompletedMessage.setMsgState(Message.MessageState.NEW);
+    jobCompletedMessage.getRecord().setSimpleField(ConfigurationKeys.JOB_ID_KEY, this.jobContext.getJobId());
+
+    int messagesSent = this.helixManager.getMessagingService().send(criteria, jobCompletedMessage);
+    LOGGER.info(String.format("Sent %d job completed message(s) for job %s", messagesSent,
+        this.jobContext.getJobId()));
   }
 
   /**
@@ -44,11 +44,15 @@ public class GobblinHelixJobScheduler extends JobScheduler {
 
   static final String HELIX_MANAGER_KEY = "helixManager";
   static final String APPLICATION_WORK_DIR_KEY = "applicationWorkDir";
+  static final String EVENT_BUS_KEY = "eventBus";
+  static final String CONTAINER_TASK_EXECUTOR_THREADPOOL_SIZE_KEY = "containerTaskExecutorThreadPoolSize";
 
   private final Properties properties;
   private final HelixManager helixManager;
   private final EventBus eventBus;
   private final Path appWorkDir;
+  // The containers are configured with the same application configuration as the scheduler
+  private final int containerTaskExecutorThreadPoolSize;
 
   public GobblinHelixJobScheduler(Properties properties, HelixManager helixManager, EventBus eventBus,
       Path appWorkDir) throws Exception {
@@ -57,6 +61,9 @@ public class GobblinHelixJobScheduler extends JobScheduler {
     this.helixManager = helixManager;
     this.eventBus = eventBus;
     this.appWorkDir = appWorkDir;
+    this.containerTaskExecutorThreadPoolSize = Integer.parseInt(properties.getProperty(
+        ConfigurationKeys.TASK_EXECUTOR_THREADPOOL_SIZE_KEY,
+        Integer.toString(ConfigurationKeys.DEFAULT_TASK_EXECUTOR_THREADPOOL_SIZE)));
   }
 
   @Override
@@ -70,6 +77,8 @@ public class GobblinHelixJobScheduler extends JobScheduler {
     Map<String, Object> additionalJobDataMap = Maps.newHashMap();
     additionalJobDataMap.put(HELIX_MANAGER_KEY, this.helixManager);
     additionalJobDataMap.put(APPLICATION_WORK_DIR_KEY, this.appWorkDir);
+    additionalJobDataMap.put(EVENT_BUS_KEY, this.eventBus);
+    additionalJobDataMap.put(CONTAINER_TASK_EXECUTOR_THREADPOOL_SIZE_KEY, this.containerTaskExecutorThreadPoolSize);
 
     try {
       scheduleJob(jobProps, jobListener, additionalJobDataMap, GobblinHelixJob.class);
@@ -81,7 +90,8 @@ public class GobblinHelixJobScheduler extends JobScheduler {
   @Override
   public void runJob(Properties jobProps, JobListener jobListener) throws JobException {
     try {
-      JobLauncher jobLauncher = new GobblinHelixJobLauncher(jobProps, this.helixManager, this.appWorkDir);
+      JobLauncher jobLauncher = new GobblinHelixJobLauncher(jobProps, this.helixManager, this.appWorkDir,
+          this.eventBus, this.containerTaskExecutorThreadPoolSize);
       runJob(jobProps, jobListener, jobLauncher);
     } catch (Exception e) {
       throw new JobException("Failed to run job " + jobProps.getProperty(ConfigurationKeys.JOB_NAME_KEY), e);
@@ -13,27 +13,33 @@
 package gobblin.yarn;
 
 import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import javax.annotation.Nullable;
 
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.helix.Criteria;
+import org.apache.helix.HelixManager;
+import org.apache.helix.InstanceType;
+import org.apache.helix.model.Message;
 import org.apache.helix.task.Task;
 import org.apache.helix.task.TaskCallbackContext;
-import org.apache.helix.task.TaskConfig;
 import org.apache.helix.task.TaskResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
 
 import gobblin.configuration.ConfigurationKeys;
 import gobblin.configuration.WorkUnitState;
-import gobblin.metastore.FsStateStore;
 import gobblin.metastore.StateStore;
 import gobblin.runtime.AbstractJobLauncher;
 import gobblin.runtime.JobState;
@@ -53,11 +59,31 @@ import gobblin.util.SerializationUtils;
  * <p>
  *   Upon startup, a {@link GobblinHelixTask} reads the property
  *   {@link GobblinYarnConfigurationKeys#WORK_UNIT_FILE_PATH} for the path of the file storing a serialized
- *   {@link WorkUnit} on the {@link FileSystem} of choice and de-serializes the {@link WorkUnit}. It then
+ *   {@link WorkUnit} on the {@link FileSystem} of choice and de-serializes the {@link WorkUnit}. If the file is a
+ *   bundle of {@link WorkUnit}s, only the slice given by {@link GobblinYarnConfigurationKeys#WORK_UNIT_OFFSET}
+ *   and {@link GobblinYarnConfigurationKeys#WORK_UNIT_LENGTH} is read. It then
  *   creates a Gobblin {@link gobblin.runtime.Task} to run the {@link WorkUnit} and waits for the Gobblin
  *   {@link gobblin.runtime.Task} to finish. Upon completion of the Gobblin {@link gobblin.runtime.Task},
  *   it persists the {@link TaskState} to a file that will be collected by the {@link GobblinHelixJobLauncher}
- *   later upon completion of the job.
+ *   later upon completion of the job. If {@link GobblinYarnConfigurationKeys#REPORT_TASK_STATE} is set, it also
+ *   sends a {@link HelixMessageSubTypes#TASK_STATE_PERSISTED} message to the {@link GobblinApplicationMaster} so
+ *   the {@link GobblinHelixJobLauncher} can collect the {@link TaskState} while the job is still running.
+ * </p>
+ *
+ * <p>
+ *   If {@link GobblinYarnConfigurationKeys#RUN_TASK_INLINE} is set, the Gobblin {@link gobblin.runtime.Task} is run
+ *   in the thread Helix runs this task in instead of being submitted to the {@link TaskExecutor}, so that a running
+ *   task holds one thread instead of two. The Helix task framework only learns that a task is done when
+ *   {@link #run()} returns, so the thread of the Helix task cannot be released any earlier. A task run inline is not
+ *   scheduled by the {@link TaskExecutor}, so the task is still submitted to the {@link TaskExecutor} if the
+ *   {@link TaskExecutor} schedules tasks fairly (see {@link TaskExecutor#isFairSchedulingEnabled()}). Retries are
+ *   not affected, as failed tasks are retried by Helix and not by the {@link TaskExecutor} in either case.
+ * </p>
+ *
+ * <p>
+ *   The {@link JobState} is taken from a {@link JobStateCache} shared by all tasks in the container, so the job state
+ *   file is only read once per container. Its properties are copied into the {@link WorkUnit}, since the
+ *   {@link gobblin.runtime.Task} and its constructs read job-level properties from the {@link WorkUnit}.
  * </p>
  *
  * @author ynli
@@ -69,10 +95,12 @@ public class GobblinHelixTask implements Task {
   private final TaskExecutor taskExecutor;
   private final TaskStateTracker taskStateTracker;
 
-  private final TaskConfig taskConfig;
-  private final JobState jobState = new JobState();
+  private final HelixManager helixManager;
+  private final Map<String, String> taskConfigMap;
+  private final JobState jobState;
   private final String jobId;
   private final String taskId;
+  private final boolean runInline;
 
   private final FileSystem fs;
   private final StateStore<TaskState> taskStateStore;
@@ -80,20 +108,31 @@ public class GobblinHelixTask implements Task {
   private volatile Optional<Future<?>> futureOptional = Optional.absent();
 
   public GobblinHelixTask(TaskCallbackContext taskCallbackContext, TaskExecutor taskExecutor,
-      TaskStateTracker taskStateTracker, FileSystem fs, Path appWorkDir) throws IOException {
+      TaskStateTracker taskStateTracker, FileSystem fs, StateStore<TaskState> taskStateStore,
+      JobStateCache jobStateCache) throws IOException {
+    this(taskCallbackContext.getManager(), taskCallbackContext.getTaskConfig().getConfigMap(), taskExecutor,
+        taskStateTracker, fs, taskStateStore, jobStateCache);
+  }
+
+  /**
+   * Create a {@link GobblinHelixTask} that runs the {@link WorkUnit} of the given task configuration outside of
+   * Helix's control, e.g., for a {@link GobblinHelixWorkerTask}.
+   */
+  GobblinHelixTask(HelixManager helixManager, Map<String, String> taskConfigMap, TaskExecutor taskExecutor,
+      TaskStateTracker taskStateTracker, FileSystem fs, StateStore<TaskState> taskStateStore,
+      JobStateCache jobStateCache) throws IOException {
     this.taskExecutor = taskExecutor;
     this.taskStateTracker = taskStateTracker;
 
-    this.taskConfig = taskCallbackContext.getTaskConfig();
-    this.jobId = this.taskConfig.getConfigMap().get(ConfigurationKeys.JOB_ID_KEY);
-    this.taskId = this.taskConfig.getConfigMap().get(ConfigurationKeys.TASK_ID_KEY);
+    this.helixManager = helixManager;
+    this.taskConfigMap = taskConfigMap;
+    this.jobId = this.taskConfigMap.get(ConfigurationKeys.JOB_ID_KEY);
+    this.taskId = this.taskConfigMap.get(ConfigurationKeys.TASK_ID_KEY);
+    this.runInline = shouldRunInline(this.taskConfigMap, this.taskExecutor);
 
     this.fs = fs;
-    Path taskStateOutputDir = new Path(appWorkDir, GobblinYarnConfigurationKeys.OUTPUT_TASK_STATE_DIR_NAME);
-    this.taskStateStore = new FsStateStore<TaskState>(this.fs, taskStateOutputDir.toString(), TaskState.class);
-
-    Path jobStateFilePath = new Path(appWorkDir, this.jobId + "." + AbstractJobLauncher.JOB_STATE_FILE_NAME);
-    SerializationUtils.deserializeState(this.fs, jobStateFilePath, this.jobState);
+    this.taskStateStore = taskStateStore;
+    this.jobState = jobStateCache.get(this.jobId);
   }
 
   @Override
@@ -104,12 +143,22 @@ public class GobblinHelixTask implements Task {
       // Create a new task from the work unit and submit the task to run
       gobblin.runtime.Task task = buildTask();
       this.taskStateTracker.registerNewTask(task);
-      LOGGER.info(String.format("Submitting WorkUnit %s to run", this.taskId));
-      this.futureOptional = Optional.<Future<?>>of(this.taskExecutor.submit(task));
+      if (this.runInline) {
+        LOGGER.info(String.format("Running WorkUnit %s in the Helix task thread", this.taskId));
+        FutureTask<?> future = new FutureTask<Void>(task, null);
+        this.futureOptional = Optional.<Future<?>>of(future);
+        future.run();
+      } else {
+        LOGGER.info(String.format("Submitting WorkUnit %s to run", this.taskId));
+        this.futureOptional = Optional.<Future<?>>of(this.taskExecutor.submit(task));
+      }
       this.futureOptional.get().get();
 
       // Persist the task state so it is later collected by the job launcher
       persistTaskState(task.getTaskState());
+      if (Boolean.parseBoolean(this.taskConfigMap.get(GobblinYarnConfigurationKeys.REPORT_TASK_STATE))) {
+        sendTaskStatePersistedMessage();
+      }
 
       WorkUnitState.WorkingState workingState = task.getTaskState().getWorkingState();
       LOGGER.info(String.format("WorkUnit %s completed with state %s", this.taskId, workingState));
@@ -147,26 +196,94 @@ public class GobblinHelixTask implements Task {
     });
   }
 
-  private gobblin.runtime.Task buildTask() throws IOException {
-    Path workUnitFilePath =
-        new Path(this.taskConfig.getConfigMap().get(GobblinYarnConfigurationKeys.WORK_UNIT_FILE_PATH));
+  /**
+   * Check if a task should run in the Helix task thread. A task is only run inline if its configuration asks for it
+   * and the {@link TaskExecutor} does not schedule tasks fairly, which only applies to tasks submitted to it.
+   */
+  @VisibleForTesting
+  static boolean shouldRunInline(Map<String, String> taskConfigMap, TaskExecutor taskExecutor) {
+    if (!Boolean.parseBoolean(taskConfigMap.get(GobblinYarnConfigurationKeys.RUN_TASK_INLINE))) {
+      return false;
+    }
+    if (taskExecutor.isFairSchedulingEnabled()) {
+      LOGGER.warn(String.format("Not running WorkUnit %s inline as the TaskExecutor schedules tasks fairly",
+          taskConfigMap.get(ConfigurationKeys.TASK_ID_KEY)));
+      return false;
+    }
+    return true;
+  }
 
-    WorkUnit workUnit = workUnitFilePath.getName().endsWith(AbstractJobLauncher.MULTI_WORK_UNIT_FILE_EXTENSION) ?
-            MultiWorkUnit.createEmpty() : WorkUnit.createEmpty();
-    SerializationUtils.deserializeState(this.fs, workUnitFilePath, workUnit);
-    workUnit.addAllIfNotExist(this.jobState);
+  private gobblin.runtime.Task buildTask() throws IOException {
+    Map<String, String> configMap = this.taskConfigMap;
+    Path workUnitFilePath = new Path(configMap.get(GobblinYarnConfigurationKeys.WORK_UNIT_FILE_PATH));
 
-    WorkUnitState workUnitState = new WorkUnitState(workUnit);
-    workUnitState.setId(this.taskId);
-    workUnitState.setProp(ConfigurationKeys.JOB_ID_KEY, this.jobId);
-    workUnitState.setProp(ConfigurationKeys.TASK_ID_KEY, this.taskId);
+    WorkUnit workUnit;
+    if (configMap.containsKey(GobblinYarnConfigurationKeys.WORK_UNIT_OFFSET)) {
+      // The work unit is a slice of a bundle file
+      workUnit = Boolean.parseBoolean(configMap.get(GobblinYarnConfigurationKeys.IS_MULTI_WORK_UNIT)) ?
+          MultiWorkUnit.createEmpty() : WorkUnit.createEmpty();
+      SerializationUtils.deserializeState(this.fs, workUnitFilePath,
+          Long.parseLong(configMap.get(GobblinYarnConfigurationKeys.WORK_UNIT_OFFSET)),
+          Integer.parseInt(configMap.get(GobblinYarnConfigurationKeys.WORK_UNIT_LENGTH)), workUnit);
+    } else {
+      workUnit = workUnitFilePath.getName().endsWith(AbstractJobLauncher.MULTI_WORK_UNIT_FILE_EXTENSION) ?
+          MultiWorkUnit.createEmpty() : WorkUnit.createEmpty();
+      SerializationUtils.deserializeState(this.fs, workUnitFilePath, workUnit);
+    }
 
     // Create a new task from the work unit and submit the task to run
-    return new gobblin.runtime.Task(new TaskContext(workUnitState), this.taskStateTracker,
-        this.taskExecutor, Optional.<CountDownLatch>absent());
+    return new gobblin.runtime.Task(
+        new TaskContext(createWorkUnitState(workUnit, this.jobState, this.jobId, this.taskId)),
+        this.taskStateTracker, this.taskExecutor, Optional.<CountDownLatch>absent());
+  }
+
+  /**
+   * Create the {@link WorkUnitState} of a task, copying the job-level properties not overridden by the
+   * {@link WorkUnit} into the {@link WorkUnit}. The shared {@link JobState} itself is left unmodified.
+   */
+  @VisibleForTesting
+  static WorkUnitState createWorkUnitState(WorkUnit workUnit, JobState jobState, String jobId, String taskId) {
+    workUnit.addAllIfNotExist(jobState);
+
+    WorkUnitState workUnitState = new WorkUnitState(workUnit);
+    workUnitState.setId(taskId);
+    workUnitState.setProp(ConfigurationKeys.JOB_ID_KEY, jobId);
+    workUnitState.setProp(ConfigurationKeys.TASK_ID_KEY, taskId);
+    return workUnitState;
   }
 
   private void persistTaskState(TaskState taskState) throws IOException {
     this.taskStateStore.put(this.jobId, this.taskId + AbstractJobLauncher.TASK_STATE_STORE_TABLE_SUFFIX, taskState);
   }
+
+  /**
+   * Tell the {@link GobblinApplicationMaster} that the {@link TaskState} of this task has been persisted. The message
+   * is only a hint: the {@link GobblinHelixJobLauncher} also finds {@link TaskState}s by listing them, so a message
+   * that is not delivered only delays the collection.
+   */
+  private void sendTaskStatePersistedMessage() {
+    Criteria criteria = new Criteria();
+    criteria.setInstanceName("%");
+    criteria.setResource("%");
+    criteria.setPartition("%");
+    criteria.setPartitionState("%");
+    criteria.setRecipientInstanceType(InstanceType.CONTROLLER);
+    criteria.setSessionSpecific(true);
+
+    Message taskStatePersistedMessage = new Message(Message.MessageType.USER_DEFINE_MSG,
+        HelixMessageSubTypes.TASK_STATE_PERSISTED.toString().toLowerCase() + UUID.randomUUID().toString());
+    taskStatePersistedMessage.setMsgSubType(HelixMessageSubTypes.TASK_STATE_PERSISTED.toString());
+    taskStatePersistedMessage.setMsgState(Message.MessageState.NEW);
+    taskStatePersistedMessage.setTgtSessionId("*");
+    taskStatePersistedMessage.getRecord().setSimpleField(ConfigurationKeys.JOB_ID_KEY, this.jobId);
+    taskStatePersistedMessage.getRecord().setSimpleField(ConfigurationKeys.TASK_ID_KEY, this.taskId);
+
+    try {
+      if (this.helixManager.getMessagingService().send(criteria, taskStatePersistedMessage) == 0) {
+        LOGGER.warn("Failed to send the task state persisted message of WorkUnit " + this.taskId);
+      }
+    } catch (RuntimeException re) {
+      LOGGER.warn("Failed to send the task state persisted message of WorkUnit " + this.taskId, re);
+    }
+  }
 }
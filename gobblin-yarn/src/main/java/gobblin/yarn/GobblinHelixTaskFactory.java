@@ -24,13 +24,26 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Throwables;
 
+import gobblin.metastore.FsStateStore;
+import gobblin.metastore.StateStore;
 import gobblin.runtime.TaskExecutor;
+import gobblin.runtime.TaskState;
 import gobblin.runtime.TaskStateTracker;
 
 
 /**
  * An implementation of Helix's {@link TaskFactory} for {@link GobblinHelixTask}s.
  *
+ * <p>
+ *   All {@link GobblinHelixTask}s created by a factory share the same {@link JobStateCache} and
+ *   {@link StateStore} for output {@link TaskState}s.
+ * </p>
+ *
+ * <p>
+ *   A Helix task whose configuration has a {@link GobblinYarnConfigurationKeys#WORK_UNIT_QUEUE_PATH} is a worker
+ *   of a job with work stealing enabled, for which a {@link GobblinHelixWorkerTask} is created instead.
+ * </p>
+ *
  * @author ynli
  */
 public class GobblinHelixTaskFactory implements TaskFactory {
@@ -40,20 +53,31 @@ public class GobblinHelixTaskFactory implements TaskFactory {
   private final TaskExecutor taskExecutor;
   private final TaskStateTracker taskStateTracker;
   private final FileSystem fs;
-  private final Path appWorkDir;
+  private final StateStore<TaskState> taskStateStore;
+  private final JobStateCache jobStateCache;
+  private final int workerConcurrency;
 
   public GobblinHelixTaskFactory(TaskExecutor taskExecutor, TaskStateTracker taskStateTracker,
-      FileSystem fs, Path appWorkDir) {
+      FileSystem fs, Path appWorkDir, JobStateCache jobStateCache, int workerConcurrency) throws IOException {
     this.taskExecutor = taskExecutor;
     this.taskStateTracker = taskStateTracker;
     this.fs = fs;
-    this.appWorkDir = appWorkDir;
+    Path taskStateOutputDir = new Path(appWorkDir, GobblinYarnConfigurationKeys.OUTPUT_TASK_STATE_DIR_NAME);
+    this.taskStateStore = new FsStateStore<TaskState>(this.fs, taskStateOutputDir.toString(), TaskState.class);
+    this.jobStateCache = jobStateCache;
+    this.workerConcurrency = workerConcurrency;
   }
 
   @Override
   public Task createNewTask(TaskCallbackContext context) {
+    if (context.getTaskConfig().getConfigMap().containsKey(GobblinYarnConfigurationKeys.WORK_UNIT_QUEUE_PATH)) {
+      return new GobblinHelixWorkerTask(context, this.taskExecutor, this.taskStateTracker, this.fs,
+          this.taskStateStore, this.jobStateCache, this.workerConcurrency);
+    }
+
     try {
-      return new GobblinHelixTask(context, this.taskExecutor, this.taskStateTracker, this.fs, this.appWorkDir);
+      return new GobblinHelixTask(context, this.taskExecutor, this.taskStateTracker, this.fs, this.taskStateStore,
+          this.jobStateCache);
     } catch (IOException ioe) {
       LOGGER.error("Failed to create a new GobblinHelixTask", ioe);
       throw Throwables.propagate(ioe);
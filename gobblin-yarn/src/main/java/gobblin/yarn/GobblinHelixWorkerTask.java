@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.yarn;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.helix.HelixManager;
+import org.apache.helix.task.Task;
+import org.apache.helix.task.TaskCallbackContext;
+import org.apache.helix.task.TaskResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Queues;
+import com.google.common.collect.Sets;
+
+import gobblin.configuration.ConfigurationKeys;
+import gobblin.metastore.StateStore;
+import gobblin.runtime.AbstractJobLauncher;
+import gobblin.runtime.TaskExecutor;
+import gobblin.runtime.TaskState;
+import gobblin.runtime.TaskStateTracker;
+import gobblin.util.ExecutorsUtils;
+
+
+/**
+ * An implementation of Helix's {@link org.apache.helix.task.Task} that pulls the tasks of a Gobblin job from a
+ * {@link WorkUnitQueue} shared by all workers of the job, instead of running a single task assigned up front.
+ *
+ * <p>
+ *   A worker runs as many tasks at a time as the {@link TaskExecutor} of its container has threads, each through a
+ *   {@link GobblinHelixTask}, and keeps up to {@link GobblinYarnConfigurationKeys#WORK_STEALING_PREFETCH_KEY} more
+ *   tasks claimed in a local buffer. Workers scan the queue from different positions to rarely compete for the
+ *   same task. Once no task is left to claim, a worker steals the tasks other workers claimed but did not start yet,
+ *   and it is done when all tasks have been started. So a container that finishes early keeps taking tasks from
+ *   the others, and the job ends shortly after its longest task rather than after its most loaded container.
+ * </p>
+ *
+ * <p>
+ *   A task that fails to run or does not succeed is put back in the queue for other workers, and the worker then
+ *   completes with an error so Helix retries it. A worker retried by Helix, e.g., after its container died, first
+ *   runs again the tasks it started but did not complete in its previous attempt. Cancelling a worker cancels the
+ *   tasks it is running.
+ * </p>
+ */
+public class GobblinHelixWorkerTask implements Task {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(GobblinHelixWorkerTask.class);
+
+  private final HelixManager helixManager;
+  private final TaskExecutor taskExecutor;
+  private final TaskStateTracker taskStateTracker;
+  private final FileSystem fs;
+  private final StateStore<TaskState> taskStateStore;
+  private final JobStateCache jobStateCache;
+
+  private final String jobId;
+  private final String workerId;
+  private final Path queueFile;
+  private final int workerIndex;
+  private final int workers;
+  private final int concurrency;
+  private final int prefetch;
+
+  // Configurations of the tasks in the queue by task ID, and the position of this worker in the queue
+  private final Map<String, Map<String, String>> taskConfigsById = Maps.newLinkedHashMap();
+  private List<String> taskIds;
+  // The position of this worker in the queue, the local buffers and the number of claims being made are guarded by
+  // prefetchedTaskIds, which is never held while calling the file system
+  private int nextPosition;
+  private int claimsInProgress = 0;
+  // Claimed tasks not started yet
+  private final Queue<String> prefetchedTaskIds = Queues.newArrayDeque();
+  // Tasks to run first, e.g., those started by a previous attempt of this worker
+  private final Queue<String> resumedTaskIds = Queues.newArrayDeque();
+  // Tasks this worker failed to run and put back in the queue
+  private final Set<String> failedTaskIds = Sets.newConcurrentHashSet();
+  private WorkUnitQueue workUnitQueue;
+  // Tasks being run by this worker
+  private final Set<GobblinHelixTask> runningTasks = Sets.newConcurrentHashSet();
+
+  private volatile Optional<ExecutorService> runnersOptional = Optional.absent();
+
+  public GobblinHelixWorkerTask(TaskCallbackContext taskCallbackContext, TaskExecutor taskExecutor,
+      TaskStateTracker taskStateTracker, FileSystem fs, StateStore<TaskState> taskStateStore,
+      JobStateCache jobStateCache, int concurrency) {
+    this.helixManager = taskCallbackContext.getManager();
+    this.taskExecutor = taskExecutor;
+    this.taskStateTracker = taskStateTracker;
+    this.fs = fs;
+    this.taskStateStore = taskStateStore;
+    this.jobStateCache = jobStateCache;
+
+    Map<String, String> configMap = taskCallbackContext.getTaskConfig().getConfigMap();
+    this.jobId = configMap.get(ConfigurationKeys.JOB_ID_KEY);
+    this.workerId = configMap.get(ConfigurationKeys.TASK_ID_KEY);
+    this.queueFile = new Path(configMap.get(GobblinYarnConfigurationKeys.WORK_UNIT_QUEUE_PATH));
+    this.workerIndex = Integer.parseInt(configMap.get(GobblinYarnConfigurationKeys.WORKER_INDEX));
+    this.workers = Integer.parseInt(configMap.get(GobblinYarnConfigurationKeys.WORKERS));
+    this.concurrency = concurrency;
+    this.prefetch = Integer.parseInt(configMap.get(GobblinYarnConfigurationKeys.WORK_STEALING_PREFETCH_KEY));
+  }
+
+  @Override
+  public TaskResult run() {
+    LOGGER.info(String.format("Running worker %s of job %s with %d concurrent tasks", this.workerId, this.jobId,
+        this.concurrency));
+
+    ExecutorService runners = Executors.newFixedThreadPool(this.concurrency,
+        ExecutorsUtils.newThreadFactory(Optional.of(LOGGER), Optional.of("WorkerTaskRunner-" + this.workerId + "-%d")));
+    this.runnersOptional = Optional.of(runners);
+    try {
+      this.workUnitQueue = WorkUnitQueue.read(this.fs, this.queueFile);
+      for (Map<String, String> taskConfig : this.workUnitQueue.getTaskConfigs()) {
+        this.taskConfigsById.put(taskConfig.get(ConfigurationKeys.TASK_ID_KEY), taskConfig);
+      }
+      this.taskIds = Lists.newArrayList(this.taskConfigsById.keySet());
+      this.nextPosition = this.taskIds.size() * this.workerIndex / this.workers;
+      resumeStartedTasks();
+
+      List<Future<Integer>> futures = Lists.newArrayList();
+      for (int i = 0; i < this.concurrency; i++) {
+        futures.add(runners.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() throws Exception {
+            return runTasks();
+          }
+        }));
+      }
+      int tasksRun = 0;
+      for (Future<Integer> future : futures) {
+        tasksRun += future.get();
+      }
+
+      LOGGER.info(String.format("Worker %s of job %s ran %d tasks, %d failed to run", this.workerId, this.jobId,
+          tasksRun, this.failedTaskIds.size()));
+      // Let Helix retry the worker, which can pick up the failed tasks unless another worker did
+      return new TaskResult(this.failedTaskIds.isEmpty() ? TaskResult.Status.COMPLETED : TaskResult.Status.ERROR,
+          "worker id: " + this.workerId);
+    } catch (IOException ioe) {
+      LOGGER.error("Failed to read the work unit queue " + this.queueFile, ioe);
+      throw Throwables.propagate(ioe);
+    } catch (ExecutionException ee) {
+      LOGGER.error("Failed to run the tasks of worker " + this.workerId, ee);
+      throw Throwables.propagate(ee);
+    } catch (InterruptedException ie) {
+      LOGGER.error("Worker " + this.workerId + " was interrupted", ie);
+      throw Throwables.propagate(ie);
+    } finally {
+      ExecutorsUtils.shutdownExecutorService(runners, Optional.of(LOGGER));
+    }
+  }
+
+  @Override
+  public void cancel() {
+    LOGGER.info(String.format("Cancelling worker %s of job %s", this.workerId, this.jobId));
+    if (this.runnersOptional.isPresent()) {
+      this.runnersOptional.get().shutdownNow();
+    }
+    for (GobblinHelixTask task : this.runningTasks) {
+      task.cancel();
+    }
+  }
+
+  /**
+   * Run tasks until none is left to start.
+   *
+   * @return the number of tasks run
+   */
+  private int runTasks() throws IOException {
+    int tasksRun = 0;
+    for (Optional<String> taskId = nextTask(); taskId.isPresent(); taskId = nextTask()) {
+      if (Thread.currentThread().isInterrupted()) {
+        break;
+      }
+      TaskResult result;
+      GobblinHelixTask task = null;
+      try {
+        task = new GobblinHelixTask(this.helixManager, this.taskConfigsById.get(taskId.get()), this.taskExecutor,
+            this.taskStateTracker, this.fs, this.taskStateStore, this.jobStateCache);
+        this.runningTasks.add(task);
+        result = task.run();
+      } catch (RuntimeException re) {
+        LOGGER.error(String.format("Task %s failed to run, putting it back in the queue", taskId.get()), re);
+        releaseFailedTask(taskId.get());
+        continue;
+      } finally {
+        if (task != null) {
+          this.runningTasks.remove(task);
+        }
+      }
+
+      if (result.getStatus() == TaskResult.Status.COMPLETED) {
+        tasksRun++;
+      } else {
+        // The task state of a later attempt replaces the one persisted by this attempt
+        LOGGER.error(String.format("Task %s completed with status %s, putting it back in the queue", taskId.get(),
+            result.getStatus()));
+        releaseFailedTask(taskId.get());
+      }
+    }
+    return tasksRun;
+  }
+
+  private void releaseFailedTask(String taskId) throws IOException {
+    this.failedTaskIds.add(taskId);
+    this.workUnitQueue.release(taskId);
+  }
+
+  /**
+   * Get the next task this worker started, if any is left.
+   */
+  private Optional<String> nextTask() throws IOException {
+    synchronized (this.prefetchedTaskIds) {
+      if (!this.resumedTaskIds.isEmpty()) {
+        return Optional.of(this.resumedTaskIds.poll());
+      }
+    }
+
+    while (true) {
+      prefetchTasks();
+
+      String taskId;
+      synchronized (this.prefetchedTaskIds) {
+        taskId = this.prefetchedTaskIds.poll();
+      }
+      if (taskId == null) {
+        return stealTask();
+      }
+      if (this.workUnitQueue.start(taskId, this.workerId)) {
+        return Optional.of(taskId);
+      }
+      LOGGER.info(String.format("Task %s claimed by worker %s was stolen by another worker", taskId, this.workerId));
+    }
+  }
+
+  /**
+   * Keep the prefetch buffer full as long as there are unclaimed tasks. The position in the queue is taken under the
+   * lock, and the task is claimed outside of it, so the threads of this worker can claim tasks concurrently.
+   */
+  private void prefetchTasks() throws IOException {
+    while (true) {
+      String taskId;
+      synchronized (this.prefetchedTaskIds) {
+        if (this.prefetchedTaskIds.size() + this.claimsInProgress > this.prefetch || this.nextPosition >=
+            this.taskIds.size() + this.taskIds.size() * this.workerIndex / this.workers) {
+          return;
+        }
+        taskId = this.taskIds.get(this.nextPosition++ % this.taskIds.size());
+        this.claimsInProgress++;
+      }
+
+      boolean claimed = false;
+      try {
+        claimed = this.workUnitQueue.claim(taskId, this.workerId);
+      } finally {
+        synchronized (this.prefetchedTaskIds) {
+          this.claimsInProgress--;
+          if (claimed) {
+            this.prefetchedTaskIds.add(taskId);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Start a task no worker started yet, i.e., a task another worker claimed but did not start or a task put back
+   * in the queue. Tasks this worker failed to run are left to other workers or to a later attempt of this worker.
+   */
+  private Optional<String> stealTask() throws IOException {
+    Set<String> stealableTaskIds = Sets.difference(this.taskConfigsById.keySet(),
+        Sets.union(this.workUnitQueue.getStartedTaskIds(), this.failedTaskIds));
+    for (String taskId : stealableTaskIds) {
+      if (this.workUnitQueue.start(taskId, this.workerId)) {
+        LOGGER.info(String.format("Worker %s stole task %s", this.workerId, taskId));
+        return Optional.of(taskId);
+      }
+    }
+    return Optional.absent();
+  }
+
+  /**
+   * Queue for running first the tasks a previous attempt of this worker started but did not complete.
+   */
+  private void resumeStartedTasks() throws IOException {
+    for (String taskId : this.workUnitQueue.getStartedTaskIds()) {
+      if (this.workerId.equals(this.workUnitQueue.getStartingWorker(taskId)) &&
+          !this.taskStateStore.exists(this.jobId, taskId + AbstractJobLauncher.TASK_STATE_STORE_TABLE_SUFFIX)) {
+        LOGGER.info(String.format("Resuming task %s started by a previous attempt of worker %s", taskId,
+            this.workerId));
+        this.resumedTaskIds.add(taskId);
+      }
+    }
+  }
+}
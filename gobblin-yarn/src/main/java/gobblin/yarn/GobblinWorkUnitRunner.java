@@ -12,6 +12,7 @@
 
 package gobblin.yarn;
 
+import java.io.IOException;
 import java.net.URI;
 import java.util.List;
 import java.util.Map;
@@ -74,8 +75,10 @@ import com.typesafe.config.ConfigFactory;
 import gobblin.configuration.ConfigurationKeys;
 import gobblin.metrics.MetricContext;
 import gobblin.metrics.Tag;
+import gobblin.metrics.kafka.KafkaAvroSchemaRegistry;
 import gobblin.runtime.TaskExecutor;
 import gobblin.runtime.TaskStateTracker;
+import gobblin.source.extractor.extract.kafka.KafkaWrapper;
 import gobblin.yarn.event.DelegationTokenUpdatedEvent;
 
 
@@ -89,6 +92,19 @@ import gobblin.yarn.event.DelegationTokenUpdatedEvent;
  *   for creating {@link GobblinHelixTask}s that Helix manages to run Gobblin data ingestion tasks.
  * </p>
  *
+ * <p>
+ *   The {@link GobblinHelixTask}s share a {@link JobStateCache}, from which the {@link gobblin.runtime.JobState}
+ *   of a job is evicted upon a message of sub type {@link HelixMessageSubTypes#JOB_COMPLETED}.
+ * </p>
+ *
+ * <p>
+ *   If {@link GobblinYarnConfigurationKeys#CONTAINER_WARM_WORKER_ENABLED_KEY} is set, the Kafka connections of
+ *   {@link KafkaWrapper}s and the {@link KafkaAvroSchemaRegistry}s used by tasks are kept in the container for the
+ *   tasks of later jobs, until they are unused for
+ *   {@link GobblinYarnConfigurationKeys#CONTAINER_WARM_WORKER_IDLE_TIMEOUT_MINUTES_KEY} minutes. {@link FileSystem}
+ *   instances are already kept for the lifetime of the container by the {@link FileSystem} cache.
+ * </p>
+ *
  * @author ynli
  */
 public class GobblinWorkUnitRunner extends GobblinYarnLogSource {
@@ -107,6 +123,11 @@ public class GobblinWorkUnitRunner extends GobblinYarnLogSource {
 
   private final TaskStateModelFactory taskStateModelFactory;
 
+  private final JobStateCache jobStateCache;
+
+  private final boolean warmWorkerEnabled;
+  private final long warmWorkerIdleTimeoutMinutes;
+
   private final MetricContext metricContext;
 
   private final JmxReporter jmxReporter;
@@ -151,9 +172,22 @@ public class GobblinWorkUnitRunner extends GobblinYarnLogSource {
     Map<String, TaskFactory> taskFactoryMap = Maps.newHashMap();
     Path appWorkDir = YarnHelixUtils.getAppWorkDirPath(
         fs, applicationName, containerId.getApplicationAttemptId().getApplicationId());
+    this.jobStateCache = new JobStateCache(fs, appWorkDir, config.hasPath(
+        GobblinYarnConfigurationKeys.CONTAINER_JOB_STATE_CACHE_SIZE_KEY) ? config.getInt(
+        GobblinYarnConfigurationKeys.CONTAINER_JOB_STATE_CACHE_SIZE_KEY) :
+        GobblinYarnConfigurationKeys.DEFAULT_CONTAINER_JOB_STATE_CACHE_SIZE);
     taskFactoryMap.put(GOBBLIN_TASK_FACTORY_NAME,
-        new GobblinHelixTaskFactory(taskExecutor, taskStateTracker, fs, appWorkDir));
+        new GobblinHelixTaskFactory(taskExecutor, taskStateTracker, fs, appWorkDir, this.jobStateCache,
+            Integer.parseInt(properties.getProperty(ConfigurationKeys.TASK_EXECUTOR_THREADPOOL_SIZE_KEY,
+                Integer.toString(ConfigurationKeys.DEFAULT_TASK_EXECUTOR_THREADPOOL_SIZE)))));
     this.taskStateModelFactory = new TaskStateModelFactory(this.helixManager, taskFactoryMap);
+    this.warmWorkerEnabled = config.hasPath(GobblinYarnConfigurationKeys.CONTAINER_WARM_WORKER_ENABLED_KEY) ?
+        config.getBoolean(GobblinYarnConfigurationKeys.CONTAINER_WARM_WORKER_ENABLED_KEY) :
+        GobblinYarnConfigurationKeys.DEFAULT_CONTAINER_WARM_WORKER_ENABLED;
+    this.warmWorkerIdleTimeoutMinutes =
+        config.hasPath(GobblinYarnConfigurationKeys.CONTAINER_WARM_WORKER_IDLE_TIMEOUT_MINUTES_KEY) ?
+            config.getLong(GobblinYarnConfigurationKeys.CONTAINER_WARM_WORKER_IDLE_TIMEOUT_MINUTES_KEY) :
+            GobblinYarnConfigurationKeys.DEFAULT_CONTAINER_WARM_WORKER_IDLE_TIMEOUT_MINUTES;
     this.helixManager.getStateMachineEngine().registerStateModelFactory(StateModelDefId.from("Task"),
         this.taskStateModelFactory);
 
@@ -195,6 +229,15 @@ public class GobblinWorkUnitRunner extends GobblinYarnLogSource {
       throw Throwables.propagate(e);
     }
 
+    if (this.warmWorkerEnabled) {
+      try {
+        KafkaWrapper.enableReuse(this.warmWorkerIdleTimeoutMinutes, TimeUnit.MINUTES);
+      } catch (IOException ioe) {
+        LOGGER.warn("Failed to close previously reusable KafkaWrappers", ioe);
+      }
+      KafkaAvroSchemaRegistry.enableSharing(this.warmWorkerIdleTimeoutMinutes, TimeUnit.MINUTES);
+    }
+
     // Register JVM metrics to collect and report
     registerJvmMetrics();
     // Start metric reporting
@@ -224,6 +267,15 @@ public class GobblinWorkUnitRunner extends GobblinYarnLogSource {
     } finally {
       this.taskStateModelFactory.shutdown();
 
+      if (this.warmWorkerEnabled) {
+        try {
+          KafkaWrapper.disableReuse();
+        } catch (IOException ioe) {
+          LOGGER.warn("Failed to close idle KafkaWrappers", ioe);
+        }
+        KafkaAvroSchemaRegistry.disableSharing();
+      }
+
       if (this.helixManager.isConnected()) {
         this.helixManager.getStateMachineEngine().removeStateModelFactory(StateModelDefId.from("Task"));
         this.helixManager.disconnect();
@@ -367,6 +419,7 @@ public class GobblinWorkUnitRunner extends GobblinYarnLogSource {
      *
      *   <ul>
      *     <li>{@link HelixMessageSubTypes#TOKEN_FILE_UPDATED}</li>
+     *     <li>{@link HelixMessageSubTypes#JOB_COMPLETED}</li>
      *   </ul>
      * </p>
      */
@@ -389,6 +442,23 @@ public class GobblinWorkUnitRunner extends GobblinYarnLogSource {
           return helixTaskResult;
         }
 
+        if (messageSubType.equalsIgnoreCase(HelixMessageSubTypes.JOB_COMPLETED.toString())) {
+          String jobId = this._message.getRecord().getSimpleField(ConfigurationKeys.JOB_ID_KEY);
+          LOGGER.info(String.format("Handling message %s for job %s", HelixMessageSubTypes.JOB_COMPLETED, jobId));
+
+          jobStateCache.evict(jobId);
+          if (warmWorkerEnabled) {
+            try {
+              KafkaWrapper.evictIdleWrappers();
+            } catch (IOException ioe) {
+              LOGGER.warn("Failed to close idle KafkaWrappers", ioe);
+            }
+          }
+          HelixTaskResult helixTaskResult = new HelixTaskResult();
+          helixTaskResult.setSuccess(true);
+          return helixTaskResult;
+        }
+
         throw new IllegalArgumentException(String.format("Unknown %s message subtype: %s",
             Message.MessageType.USER_DEFINE_MSG.toString(), messageSubType));
       }
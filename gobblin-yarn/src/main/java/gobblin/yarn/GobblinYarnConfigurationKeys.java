@@ -51,6 +51,28 @@ public class GobblinYarnConfigurationKeys {
   public static final String CONTAINER_FILES_REMOTE_KEY = GOBBLIN_YARN_PREFIX + "container.files.remote";
   public static final String CONTAINER_WORK_DIR_NAME = "container";
   public static final String CONTAINER_JVM_ARGS_KEY = GOBBLIN_YARN_PREFIX + "container.jvm.args";
+  public static final String CONTAINER_JOB_STATE_CACHE_SIZE_KEY = GOBBLIN_YARN_PREFIX + "container.job.state.cache.size";
+  public static final int DEFAULT_CONTAINER_JOB_STATE_CACHE_SIZE = 10;
+  public static final String CONTAINER_WARM_WORKER_ENABLED_KEY = GOBBLIN_YARN_PREFIX + "container.warm.worker.enabled";
+  public static final boolean DEFAULT_CONTAINER_WARM_WORKER_ENABLED = false;
+  public static final String CONTAINER_WARM_WORKER_IDLE_TIMEOUT_MINUTES_KEY =
+      GOBBLIN_YARN_PREFIX + "container.warm.worker.idle.timeout.minutes";
+  public static final long DEFAULT_CONTAINER_WARM_WORKER_IDLE_TIMEOUT_MINUTES = 30;
+
+  /**
+   * Container pool autoscaling configuration properties.
+   */
+  public static final String AUTOSCALING_ENABLED_KEY = GOBBLIN_YARN_PREFIX + "autoscaling.enabled";
+  public static final boolean DEFAULT_AUTOSCALING_ENABLED = false;
+  public static final String MIN_CONTAINERS_KEY = GOBBLIN_YARN_PREFIX + "min.containers";
+  public static final int DEFAULT_MIN_CONTAINERS = 1;
+  public static final String MAX_CONTAINERS_KEY = GOBBLIN_YARN_PREFIX + "max.containers";
+  public static final int DEFAULT_MAX_CONTAINERS = 10;
+  public static final String AUTOSCALING_INTERVAL_SECONDS_KEY = GOBBLIN_YARN_PREFIX + "autoscaling.interval.seconds";
+  public static final long DEFAULT_AUTOSCALING_INTERVAL_SECONDS = 60;
+  public static final String SCALE_DOWN_DELAY_SECONDS_KEY =
+      GOBBLIN_YARN_PREFIX + "autoscaling.scale.down.delay.seconds";
+  public static final long DEFAULT_SCALE_DOWN_DELAY_SECONDS = 300;
 
   /**
    * Helix configuration properties.
@@ -58,6 +80,31 @@ public class GobblinYarnConfigurationKeys {
   public static final String HELIX_CLUSTER_NAME_KEY = GOBBLIN_YARN_PREFIX + "helix.cluster.name";
   public static final String ZK_CONNECTION_STRING_KEY = GOBBLIN_YARN_PREFIX + "zk.connection.string";
   public static final String WORK_UNIT_FILE_PATH = GOBBLIN_YARN_PREFIX + "work.unit.file.path";
+  public static final String WORK_UNIT_OFFSET = GOBBLIN_YARN_PREFIX + "work.unit.offset";
+  public static final String WORK_UNIT_LENGTH = GOBBLIN_YARN_PREFIX + "work.unit.length";
+  public static final String IS_MULTI_WORK_UNIT = GOBBLIN_YARN_PREFIX + "is.multi.work.unit";
+  public static final String WORK_UNITS_PER_BUNDLE_KEY = GOBBLIN_YARN_PREFIX + "work.units.per.bundle";
+  public static final int DEFAULT_WORK_UNITS_PER_BUNDLE = 1000;
+  public static final String TASK_STATE_STREAMING_ENABLED_KEY = GOBBLIN_YARN_PREFIX + "task.state.streaming.enabled";
+  public static final boolean DEFAULT_TASK_STATE_STREAMING_ENABLED = false;
+  public static final String TASK_STATE_RESCAN_INTERVAL_SECONDS_KEY =
+      GOBBLIN_YARN_PREFIX + "task.state.rescan.interval.seconds";
+  public static final long DEFAULT_TASK_STATE_RESCAN_INTERVAL_SECONDS = 10;
+  public static final String COMMIT_DATASETS_EARLY_KEY = GOBBLIN_YARN_PREFIX + "commit.datasets.early";
+  public static final boolean DEFAULT_COMMIT_DATASETS_EARLY = false;
+  public static final String REPORT_TASK_STATE = GOBBLIN_YARN_PREFIX + "report.task.state";
+  public static final String INLINE_TASK_EXECUTION_ENABLED_KEY =
+      GOBBLIN_YARN_PREFIX + "inline.task.execution.enabled";
+  public static final boolean DEFAULT_INLINE_TASK_EXECUTION_ENABLED = false;
+  public static final String RUN_TASK_INLINE = GOBBLIN_YARN_PREFIX + "run.task.inline";
+  public static final String WORK_STEALING_ENABLED_KEY = GOBBLIN_YARN_PREFIX + "work.stealing.enabled";
+  public static final boolean DEFAULT_WORK_STEALING_ENABLED = false;
+  public static final String WORK_STEALING_WORKERS_KEY = GOBBLIN_YARN_PREFIX + "work.stealing.workers";
+  public static final String WORK_STEALING_PREFETCH_KEY = GOBBLIN_YARN_PREFIX + "work.stealing.prefetch";
+  public static final int DEFAULT_WORK_STEALING_PREFETCH = 2;
+  public static final String WORK_UNIT_QUEUE_PATH = GOBBLIN_YARN_PREFIX + "work.unit.queue.path";
+  public static final String WORKER_INDEX = GOBBLIN_YARN_PREFIX + "worker.index";
+  public static final String WORKERS = GOBBLIN_YARN_PREFIX + "workers";
 
   /**
    * Security and authentication configuration properties.
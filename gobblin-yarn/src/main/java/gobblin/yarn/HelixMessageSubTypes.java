@@ -32,5 +32,17 @@ public enum HelixMessageSubTypes {
   /**
    * This type is for messages sent when the file storing the delegation token has been updated.
    */
-  TOKEN_FILE_UPDATED
+  TOKEN_FILE_UPDATED,
+
+  /**
+   * This type is for messages sent when a job has completed, so the {@link GobblinWorkUnitRunner}s can release what
+   * they cached for the job.
+   */
+  JOB_COMPLETED,
+
+  /**
+   * This type is for messages sent by a {@link GobblinHelixTask} to the {@link GobblinApplicationMaster} when it has
+   * persisted the state of a completed task, so the {@link GobblinHelixJobLauncher} can collect it right away.
+   */
+  TASK_STATE_PERSISTED
 }
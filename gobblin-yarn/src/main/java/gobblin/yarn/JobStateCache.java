@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.yarn;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import gobblin.runtime.AbstractJobLauncher;
+import gobblin.runtime.JobState;
+import gobblin.util.SerializationUtils;
+
+
+/**
+ * A container-level cache of de-serialized {@link JobState}s, keyed by job ID.
+ *
+ * <p>
+ *   All {@link GobblinHelixTask}s of a job running in the same container share a single {@link JobState}, which
+ *   is read from the {@link FileSystem} only once. The cached {@link JobState}s are shared and must not be modified.
+ *   A {@link JobState} is evicted when the {@link GobblinWorkUnitRunner} is notified that the job completed, or
+ *   when it has not been used for an hour, in case the notification is lost.
+ * </p>
+ */
+public class JobStateCache {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(JobStateCache.class);
+
+  private final FileSystem fs;
+  private final Path appWorkDir;
+  private final Cache<String, JobState> jobStates;
+
+  public JobStateCache(FileSystem fs, Path appWorkDir, int maxSize) {
+    this.fs = fs;
+    this.appWorkDir = appWorkDir;
+    this.jobStates = CacheBuilder.newBuilder().maximumSize(maxSize).expireAfterAccess(1, TimeUnit.HOURS).build();
+  }
+
+  /**
+   * Get the {@link JobState} of the given job, reading it from the {@link FileSystem} if it is not cached.
+   */
+  public JobState get(final String jobId) throws IOException {
+    try {
+      return this.jobStates.get(jobId, new Callable<JobState>() {
+        @Override
+        public JobState call() throws Exception {
+          Path jobStateFilePath = new Path(appWorkDir, jobId + "." + AbstractJobLauncher.JOB_STATE_FILE_NAME);
+          LOGGER.info("Reading job state of job " + jobId + " from " + jobStateFilePath);
+          JobState jobState = new JobState();
+          SerializationUtils.deserializeState(fs, jobStateFilePath, jobState);
+          return jobState;
+        }
+      });
+    } catch (ExecutionException ee) {
+      Throwables.propagateIfInstanceOf(ee.getCause(), IOException.class);
+      throw new IOException("Failed to read job state of job " + jobId, ee.getCause());
+    }
+  }
+
+  /**
+   * Evict the {@link JobState} of the given job.
+   */
+  public void evict(String jobId) {
+    LOGGER.info("Evicting job state of job " + jobId);
+    this.jobStates.invalidate(jobId);
+  }
+}
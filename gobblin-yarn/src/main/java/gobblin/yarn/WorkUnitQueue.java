@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.yarn;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hadoop.fs.FileAlreadyExistsException;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.WritableUtils;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.Closer;
+
+import gobblin.configuration.ConfigurationKeys;
+
+
+/**
+ * A queue of the tasks of a job shared by the {@link GobblinHelixWorkerTask}s of the job.
+ *
+ * <p>
+ *   The queue is a file listing the configuration of each task, i.e., what a {@link GobblinHelixTask} needs to run
+ *   the task's {@link gobblin.source.workunit.WorkUnit}, written once by the {@link GobblinHelixJobLauncher}. The
+ *   state of each task is kept in marker files next to the queue file, which are created with
+ *   {@link FileSystem#create(Path, boolean)} without overwriting so only one worker can create each of them:
+ * </p>
+ *
+ * <ul>
+ *   <li>A claim marker is created when a worker reserves a task to run next.</li>
+ *   <li>A start marker, holding the ID of the worker, is created when a worker actually starts the task. A worker
+ *   only runs a task if it created its start marker, so a task claimed by a busy worker can be stolen by another
+ *   worker that starts it first.</li>
+ * </ul>
+ */
+public class WorkUnitQueue {
+
+  private static final String CLAIMS_DIR_SUFFIX = "_claims";
+  private static final String STARTS_DIR_SUFFIX = "_starts";
+
+  private final FileSystem fs;
+  private final Path claimsDir;
+  private final Path startsDir;
+  private final List<Map<String, String>> taskConfigs;
+
+  private WorkUnitQueue(FileSystem fs, Path queueFile, List<Map<String, String>> taskConfigs) {
+    this.fs = fs;
+    this.claimsDir = new Path(queueFile.getParent(), queueFile.getName() + CLAIMS_DIR_SUFFIX);
+    this.startsDir = new Path(queueFile.getParent(), queueFile.getName() + STARTS_DIR_SUFFIX);
+    this.taskConfigs = ImmutableList.copyOf(taskConfigs);
+  }
+
+  /**
+   * Write a queue of the given task configurations, each of which must have a
+   * {@link ConfigurationKeys#TASK_ID_KEY}.
+   */
+  public static void write(FileSystem fs, Path queueFile, List<Map<String, String>> taskConfigs) throws IOException {
+    Closer closer = Closer.create();
+    try {
+      DataOutputStream out = closer.register(fs.create(queueFile, true));
+      WritableUtils.writeVInt(out, taskConfigs.size());
+      for (Map<String, String> taskConfig : taskConfigs) {
+        WritableUtils.writeVInt(out, taskConfig.size());
+        for (Map.Entry<String, String> entry : taskConfig.entrySet()) {
+          out.writeUTF(entry.getKey());
+          out.writeUTF(entry.getValue());
+        }
+      }
+    } catch (Throwable t) {
+      throw closer.rethrow(t);
+    } finally {
+      closer.close();
+    }
+  }
+
+  /**
+   * Read a queue written by {@link #write}.
+   */
+  public static WorkUnitQueue read(FileSystem fs, Path queueFile) throws IOException {
+    Closer closer = Closer.create();
+    try {
+      DataInputStream in = closer.register(fs.open(queueFile));
+      int tasks = WritableUtils.readVInt(in);
+      List<Map<String, String>> taskConfigs = Lists.newArrayListWithCapacity(tasks);
+      for (int i = 0; i < tasks; i++) {
+        int entries = WritableUtils.readVInt(in);
+        Map<String, String> taskConfig = Maps.newHashMapWithExpectedSize(entries);
+        for (int j = 0; j < entries; j++) {
+          taskConfig.put(in.readUTF(), in.readUTF());
+        }
+        taskConfigs.add(taskConfig);
+      }
+      return new WorkUnitQueue(fs, queueFile, taskConfigs);
+    } catch (Throwable t) {
+      throw closer.rethrow(t);
+    } finally {
+      closer.close();
+    }
+  }
+
+  /**
+   * Get the configurations of the tasks in the queue, in queue order.
+   */
+  public List<Map<String, String>> getTaskConfigs() {
+    return this.taskConfigs;
+  }
+
+  /**
+   * Reserve a task for the given worker.
+   *
+   * @return whether the task was reserved, i.e., it was not claimed by any worker before
+   */
+  public boolean claim(String taskId, String workerId) throws IOException {
+    return createMarker(new Path(this.claimsDir, taskId), workerId);
+  }
+
+  /**
+   * Start a task by the given worker.
+   *
+   * @return whether the worker can run the task, i.e., it was not started by any worker before
+   */
+  public boolean start(String taskId, String workerId) throws IOException {
+    return createMarker(new Path(this.startsDir, taskId), workerId);
+  }
+
+  /**
+   * Put a task back so any worker can claim and start it again, e.g., after it failed to run.
+   */
+  public void release(String taskId) throws IOException {
+    this.fs.delete(new Path(this.startsDir, taskId), false);
+    this.fs.delete(new Path(this.claimsDir, taskId), false);
+  }
+
+  /**
+   * Get the IDs of the tasks claimed by any worker.
+   */
+  public Set<String> getClaimedTaskIds() throws IOException {
+    return listMarkers(this.claimsDir);
+  }
+
+  /**
+   * Get the IDs of the tasks started by any worker.
+   */
+  public Set<String> getStartedTaskIds() throws IOException {
+    return listMarkers(this.startsDir);
+  }
+
+  /**
+   * Get the ID of the worker that started a task.
+   */
+  public String getStartingWorker(String taskId) throws IOException {
+    Closer closer = Closer.create();
+    try {
+      return closer.register(this.fs.open(new Path(this.startsDir, taskId))).readUTF();
+    } catch (Throwable t) {
+      throw closer.rethrow(t);
+    } finally {
+      closer.close();
+    }
+  }
+
+  private boolean createMarker(Path marker, String workerId) throws IOException {
+    if (this.fs.exists(marker)) {
+      return false;
+    }
+
+    Closer closer = Closer.create();
+    try {
+      closer.register(this.fs.create(marker, false)).writeUTF(workerId);
+      return true;
+    } catch (FileAlreadyExistsException faee) {
+      // Another worker created the marker first
+      return false;
+    } catch (Throwable t) {
+      throw closer.rethrow(t);
+    } finally {
+      closer.close();
+    }
+  }
+
+  private Set<String> listMarkers(Path markerDir) throws IOException {
+    Set<String> taskIds = Sets.newHashSet();
+    if (!this.fs.exists(markerDir)) {
+      return taskIds;
+    }
+    for (FileStatus status : this.fs.listStatus(markerDir)) {
+      taskIds.add(status.getPath().getName());
+    }
+    return taskIds;
+  }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.yarn;
+
+import java.util.AbstractMap;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.yarn.api.records.Container;
+import org.apache.hadoop.yarn.api.records.ContainerId;
+import org.apache.helix.HelixManager;
+import org.apache.helix.api.id.ParticipantId;
+import org.apache.helix.task.JobConfig;
+import org.apache.helix.task.JobContext;
+import org.apache.helix.task.TaskPartitionState;
+import org.apache.helix.task.TaskState;
+import org.apache.helix.task.TaskUtil;
+import org.apache.helix.task.WorkflowConfig;
+import org.apache.helix.task.WorkflowContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Queues;
+import com.google.common.collect.Sets;
+import com.google.common.eventbus.EventBus;
+import com.google.common.util.concurrent.AbstractIdleService;
+
+import com.typesafe.config.Config;
+
+import gobblin.util.ExecutorsUtils;
+import gobblin.yarn.event.ContainerShutdownRequest;
+import gobblin.yarn.event.NewContainerRequest;
+
+
+/**
+ * A class that grows and shrinks the pool of Yarn containers of the application with the backlog of Helix tasks.
+ *
+ * <p>
+ *   On a configurable interval, this class goes through the jobs of every Helix workflow that are not done yet,
+ *   and counts their tasks that are running on each Helix participant and their tasks still waiting to run. The
+ *   number of containers needed is the number of these tasks divided by the number of tasks a participant runs
+ *   concurrently, bounded by {@link GobblinYarnConfigurationKeys#MIN_CONTAINERS_KEY} and
+ *   {@link GobblinYarnConfigurationKeys#MAX_CONTAINERS_KEY}. The Helix tasks of a job with work stealing are its
+ *   {@link GobblinHelixWorkerTask}s, of which there are enough to run all its work units at once.
+ * </p>
+ *
+ * <p>
+ *   The pool grows as soon as more containers are needed, by posting a {@link NewContainerRequest} to the
+ *   {@link YarnService}. It only shrinks to the largest number of containers needed over the last
+ *   {@link GobblinYarnConfigurationKeys#SCALE_DOWN_DELAY_SECONDS_KEY} seconds, so a short lull between jobs does
+ *   not release containers that are needed again right after. Only containers that have run no task in two
+ *   consecutive samples are released with a {@link ContainerShutdownRequest}, so containers with running tasks
+ *   are left to drain first.
+ * </p>
+ */
+public class YarnAutoScalingManager extends AbstractIdleService {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(YarnAutoScalingManager.class);
+
+  private final HelixManager helixManager;
+  private final YarnService yarnService;
+  private final EventBus eventBus;
+
+  private final int minContainers;
+  private final int maxContainers;
+  private final long autoScalingIntervalSeconds;
+  private final long scaleDownDelayMillis;
+
+  private final ScheduledExecutorService autoScalingExecutor;
+
+  // Numbers of containers needed at each sample within the scale down delay
+  private final Deque<Map.Entry<Long, Integer>> recentContainersNeeded = Queues.newArrayDeque();
+  // Containers that ran no task in the last sample
+  private Set<ContainerId> idleContainers = Sets.newHashSet();
+  // Containers asked to shut down that are still allocated
+  private final Set<ContainerId> releasingContainers = Sets.newHashSet();
+
+  private long startTimeMillis;
+
+  public YarnAutoScalingManager(Config config, HelixManager helixManager, YarnService yarnService,
+      EventBus eventBus) {
+    this.helixManager = helixManager;
+    this.yarnService = yarnService;
+    this.eventBus = eventBus;
+
+    this.minContainers = config.hasPath(GobblinYarnConfigurationKeys.MIN_CONTAINERS_KEY) ?
+        config.getInt(GobblinYarnConfigurationKeys.MIN_CONTAINERS_KEY) :
+        GobblinYarnConfigurationKeys.DEFAULT_MIN_CONTAINERS;
+    this.maxContainers = config.hasPath(GobblinYarnConfigurationKeys.MAX_CONTAINERS_KEY) ?
+        config.getInt(GobblinYarnConfigurationKeys.MAX_CONTAINERS_KEY) :
+        GobblinYarnConfigurationKeys.DEFAULT_MAX_CONTAINERS;
+    this.autoScalingIntervalSeconds = config.hasPath(GobblinYarnConfigurationKeys.AUTOSCALING_INTERVAL_SECONDS_KEY) ?
+        config.getLong(GobblinYarnConfigurationKeys.AUTOSCALING_INTERVAL_SECONDS_KEY) :
+        GobblinYarnConfigurationKeys.DEFAULT_AUTOSCALING_INTERVAL_SECONDS;
+    this.scaleDownDelayMillis = TimeUnit.SECONDS.toMillis(
+        config.hasPath(GobblinYarnConfigurationKeys.SCALE_DOWN_DELAY_SECONDS_KEY) ?
+            config.getLong(GobblinYarnConfigurationKeys.SCALE_DOWN_DELAY_SECONDS_KEY) :
+            GobblinYarnConfigurationKeys.DEFAULT_SCALE_DOWN_DELAY_SECONDS);
+
+    if (this.minContainers < 0 || this.maxContainers < this.minContainers) {
+      throw new IllegalArgumentException(String.format("Invalid container pool bounds: min = %d, max = %d",
+          this.minContainers, this.maxContainers));
+    }
+
+    this.autoScalingExecutor = Executors.newSingleThreadScheduledExecutor(
+        ExecutorsUtils.newThreadFactory(Optional.of(LOGGER), Optional.of("AutoScalingExecutor")));
+  }
+
+  @Override
+  protected void startUp() throws Exception {
+    LOGGER.info(String.format("Starting the %s with %d to %d containers", YarnAutoScalingManager.class.getSimpleName(),
+        this.minContainers, this.maxContainers));
+
+    this.startTimeMillis = System.currentTimeMillis();
+    this.autoScalingExecutor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          autoScale();
+        } catch (RuntimeException re) {
+          // Do not let the exception cancel the following runs
+          LOGGER.error("Failed to scale the container pool", re);
+        }
+      }
+    }, this.autoScalingIntervalSeconds, this.autoScalingIntervalSeconds, TimeUnit.SECONDS);
+  }
+
+  @Override
+  protected void shutDown() throws Exception {
+    LOGGER.info("Stopping the " + YarnAutoScalingManager.class.getSimpleName());
+
+    ExecutorsUtils.shutdownExecutorService(this.autoScalingExecutor, Optional.of(LOGGER));
+  }
+
+  private void autoScale() {
+    Map<String, Integer> runningTasksByParticipant = Maps.newHashMap();
+    int tasksContainersNeeded = getContainersNeeded(runningTasksByParticipant);
+    autoScale(tasksContainersNeeded, runningTasksByParticipant, System.currentTimeMillis());
+  }
+
+  /**
+   * Grow or shrink the container pool, made of the allocated containers not being released and the containers
+   * requested but not allocated yet, given the number of containers the tasks need.
+   *
+   * @param tasksContainersNeeded the number of containers needed by the tasks, before applying the pool bounds
+   * @param runningTasksByParticipant the number of running tasks of each Helix participant
+   * @param now the current time in milliseconds
+   */
+  @VisibleForTesting
+  void autoScale(int tasksContainersNeeded, Map<String, Integer> runningTasksByParticipant, long now) {
+    int containersNeeded = Math.max(this.minContainers, Math.min(this.maxContainers, tasksContainersNeeded));
+
+    Map<ContainerId, Map.Entry<Container, ParticipantId>> containers = this.yarnService.getContainers();
+    this.releasingContainers.retainAll(containers.keySet());
+    int poolSize =
+        containers.size() - this.releasingContainers.size() + this.yarnService.getPendingContainerRequests();
+
+    this.recentContainersNeeded.addLast(new AbstractMap.SimpleImmutableEntry<Long, Integer>(now, containersNeeded));
+    while (this.recentContainersNeeded.getFirst().getKey() < now - this.scaleDownDelayMillis) {
+      this.recentContainersNeeded.removeFirst();
+    }
+    int recentMaxContainersNeeded = 0;
+    for (Map.Entry<Long, Integer> entry : this.recentContainersNeeded) {
+      recentMaxContainersNeeded = Math.max(recentMaxContainersNeeded, entry.getValue());
+    }
+
+    Set<ContainerId> currentIdleContainers = Sets.newHashSet();
+    for (Map.Entry<ContainerId, Map.Entry<Container, ParticipantId>> entry : containers.entrySet()) {
+      if (!runningTasksByParticipant.containsKey(entry.getValue().getValue().stringify())) {
+        currentIdleContainers.add(entry.getKey());
+      }
+    }
+
+    LOGGER.info(String.format("Container pool: %d containers (%d idle, %d being released, %d requested), "
+        + "%d needed, %d needed over the scale down delay", containers.size(), currentIdleContainers.size(),
+        this.releasingContainers.size(), this.yarnService.getPendingContainerRequests(), containersNeeded,
+        recentMaxContainersNeeded));
+
+    if (containersNeeded > poolSize) {
+      LOGGER.info(String.format("Requesting %d new containers", containersNeeded - poolSize));
+      this.eventBus.post(new NewContainerRequest(containersNeeded - poolSize));
+    } else if (recentMaxContainersNeeded < poolSize && now - this.startTimeMillis >= this.scaleDownDelayMillis) {
+      releaseIdleContainers(poolSize - recentMaxContainersNeeded, containers, currentIdleContainers);
+    }
+
+    this.idleContainers = currentIdleContainers;
+  }
+
+  /**
+   * Release up to the given number of containers that ran no task in this sample and in the previous one.
+   */
+  private void releaseIdleContainers(int containersToRelease,
+      Map<ContainerId, Map.Entry<Container, ParticipantId>> containers, Set<ContainerId> currentIdleContainers) {
+    List<Container> releasedContainers = Lists.newArrayList();
+    for (ContainerId containerId : Sets.intersection(currentIdleContainers, this.idleContainers)) {
+      if (releasedContainers.size() >= containersToRelease) {
+        break;
+      }
+      if (!this.releasingContainers.contains(containerId)) {
+        releasedContainers.add(containers.get(containerId).getKey());
+      }
+    }
+
+    if (releasedContainers.isEmpty()) {
+      LOGGER.info(String.format("Waiting for running tasks to drain before releasing %d containers",
+          containersToRelease));
+      return;
+    }
+
+    LOGGER.info(String.format("Releasing %d idle containers", releasedContainers.size()));
+    for (Container container : releasedContainers) {
+      this.releasingContainers.add(container.getId());
+    }
+    this.eventBus.post(new ContainerShutdownRequest(releasedContainers));
+  }
+
+  /**
+   * Get the number of containers needed to run the tasks of Helix jobs that are not done yet.
+   *
+   * @param runningTasksByParticipant a {@link Map} filled with the number of running tasks of each participant
+   */
+  private int getContainersNeeded(Map<String, Integer> runningTasksByParticipant) {
+    double containersNeeded = 0;
+    for (String resource : this.helixManager.getClusterManagmentTool()
+        .getResourcesInCluster(this.helixManager.getClusterName())) {
+      WorkflowConfig workflowConfig = TaskUtil.getWorkflowCfg(this.helixManager, resource);
+      if (workflowConfig == null) {
+        continue;
+      }
+      WorkflowContext workflowContext = TaskUtil.getWorkflowContext(this.helixManager, resource);
+
+      for (String job : workflowConfig.getJobDag().getAllNodes()) {
+        TaskState jobState = workflowContext != null ? workflowContext.getJobState(job) : null;
+        if (jobState != null && jobState != TaskState.NOT_STARTED && jobState != TaskState.IN_PROGRESS) {
+          continue;
+        }
+        JobConfig jobConfig = TaskUtil.getJobCfg(this.helixManager, job);
+        if (jobConfig == null) {
+          continue;
+        }
+
+        int doneTasks = 0;
+        int runningTasks = 0;
+        JobContext jobContext = TaskUtil.getJobContext(this.helixManager, job);
+        if (jobContext != null) {
+          for (int partition : jobContext.getPartitionSet()) {
+            TaskPartitionState partitionState = jobContext.getPartitionState(partition);
+            if (partitionState == TaskPartitionState.RUNNING) {
+              runningTasks++;
+              String participant = jobContext.getAssignedParticipant(partition);
+              Integer participantTasks = runningTasksByParticipant.get(participant);
+              runningTasksByParticipant.put(participant, participantTasks == null ? 1 : participantTasks + 1);
+            } else if (partitionState == TaskPartitionState.COMPLETED || partitionState == TaskPartitionState.ERROR
+                || partitionState == TaskPartitionState.DROPPED) {
+              doneTasks++;
+            }
+          }
+        }
+
+        int tasksNotDone = jobConfig.getTaskConfigMap().size() - doneTasks;
+        containersNeeded += (double) Math.max(tasksNotDone, runningTasks) /
+            Math.max(1, jobConfig.getNumConcurrentTasksPerInstance());
+      }
+    }
+
+    return (int) Math.ceil(containersNeeded);
+  }
+}
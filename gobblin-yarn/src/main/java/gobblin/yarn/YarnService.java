@@ -19,6 +19,7 @@ import java.util.AbstractMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -58,8 +59,10 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Splitter;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Queues;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 import com.google.common.io.Closer;
@@ -87,6 +90,9 @@ public class YarnService extends AbstractIdleService {
 
   private final ConcurrentMap<ContainerId, Map.Entry<Container, ParticipantId>> containerMap = Maps.newConcurrentMap();
 
+  // Container requests not fulfilled yet, removed from the AMRMClientAsync as containers are allocated
+  private final Queue<AMRMClient.ContainerRequest> pendingContainerRequests = Queues.newConcurrentLinkedQueue();
+
   private final ApplicationId applicationId;
   private final String applicationName;
 
@@ -234,6 +240,20 @@ public class YarnService extends AbstractIdleService {
     }
   }
 
+  /**
+   * Get the containers currently allocated to the application and the Helix participants running in them.
+   */
+  Map<ContainerId, Map.Entry<Container, ParticipantId>> getContainers() {
+    return ImmutableMap.copyOf(this.containerMap);
+  }
+
+  /**
+   * Get the number of containers requested but not allocated yet.
+   */
+  int getPendingContainerRequests() {
+    return this.pendingContainerRequests.size();
+  }
+
   private void requestContainers(int containersRequested) throws IOException, YarnException {
     for (int i = 0; i < containersRequested; i++) {
       Priority priority = Records.newRecord(Priority.class);
@@ -247,7 +267,9 @@ public class YarnService extends AbstractIdleService {
       capability.setVirtualCores(this.requestedContainerCores <= maxCoreCapacity ?
           this.requestedContainerCores : maxCoreCapacity);
 
-      this.amrmClientAsync.addContainerRequest(new AMRMClient.ContainerRequest(capability, null, null, priority));
+      AMRMClient.ContainerRequest containerRequest = new AMRMClient.ContainerRequest(capability, null, null, priority);
+      this.amrmClientAsync.addContainerRequest(containerRequest);
+      this.pendingContainerRequests.add(containerRequest);
     }
   }
 
@@ -360,6 +382,15 @@ public class YarnService extends AbstractIdleService {
     public void onContainersAllocated(List<Container> containers) {
       for (final Container container : containers) {
         LOGGER.info(String.format("Container %s has been allocated", container.getId()));
+        // All container requests are alike, so any of them is fulfilled by the container. A request that is not
+        // removed would be sent again on the next heartbeat and get more containers allocated than needed.
+        AMRMClient.ContainerRequest containerRequest = pendingContainerRequests.poll();
+        if (containerRequest == null) {
+          LOGGER.info(String.format("Releasing container %s allocated in excess of the requests", container.getId()));
+          amrmClientAsync.releaseAssignedContainer(container.getId());
+          continue;
+        }
+        amrmClientAsync.removeContainerRequest(containerRequest);
 
         Map.Entry<Container, ParticipantId> containerParticipantPair =
             new AbstractMap.SimpleImmutableEntry<Container, ParticipantId>(container,
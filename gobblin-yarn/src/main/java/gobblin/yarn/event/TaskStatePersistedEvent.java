@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.yarn.event;
+
+/**
+ * A type of events posted when a {@link gobblin.yarn.GobblinHelixTask} reports that it has persisted the
+ * {@link gobblin.runtime.TaskState} of a completed task.
+ */
+public class TaskStatePersistedEvent {
+
+  private final String jobId;
+  private final String taskId;
+
+  public TaskStatePersistedEvent(String jobId, String taskId) {
+    this.jobId = jobId;
+    this.taskId = taskId;
+  }
+
+  /**
+   * Get the ID of the job the task belongs to.
+   *
+   * @return the job ID
+   */
+  public String getJobId() {
+    return this.jobId;
+  }
+
+  /**
+   * Get the ID of the task whose state was persisted.
+   *
+   * @return the task ID
+   */
+  public String getTaskId() {
+    return this.taskId;
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.yarn;
+
+import java.util.Map;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import gobblin.configuration.ConfigurationKeys;
+import gobblin.configuration.WorkUnitState;
+import gobblin.converter.IdentityConverter;
+import gobblin.runtime.JobState;
+import gobblin.runtime.TaskContext;
+import gobblin.runtime.TaskExecutor;
+import gobblin.source.workunit.WorkUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+/**
+ * Unit tests for {@link GobblinHelixTask}.
+ */
+@Test(groups = { "gobblin.yarn" })
+public class GobblinHelixTaskTest {
+
+  @Test
+  public void testJobPropertiesReachTask() {
+    JobState jobState = new JobState("Test", "job_Test_1");
+    jobState.setProp(ConfigurationKeys.CONVERTER_CLASSES_KEY, IdentityConverter.class.getName());
+    jobState.setProp("overridden.prop", "job");
+
+    WorkUnit workUnit = WorkUnit.createEmpty();
+    workUnit.setProp("overridden.prop", "workunit");
+
+    WorkUnitState workUnitState =
+        GobblinHelixTask.createWorkUnitState(workUnit, jobState, "job_Test_1", "task_Test_1_0");
+    Assert.assertEquals(workUnitState.getId(), "task_Test_1_0");
+    Assert.assertEquals(workUnitState.getProp(ConfigurationKeys.JOB_ID_KEY), "job_Test_1");
+    Assert.assertEquals(workUnitState.getProp(ConfigurationKeys.TASK_ID_KEY), "task_Test_1_0");
+
+    // Job-level properties are visible to constructs reading the work unit, which overrides them
+    Assert.assertEquals(workUnitState.getWorkunit().getProp(ConfigurationKeys.CONVERTER_CLASSES_KEY),
+        IdentityConverter.class.getName());
+    Assert.assertEquals(workUnitState.getWorkunit().getProp("overridden.prop"), "workunit");
+    TaskContext taskContext = new TaskContext(workUnitState);
+    Assert.assertEquals(taskContext.getConverters().size(), 1);
+    Assert.assertTrue(taskContext.getConverters().get(0) instanceof IdentityConverter);
+
+    // The shared job state is left unmodified
+    Assert.assertEquals(jobState.getProp("overridden.prop"), "job");
+    Assert.assertFalse(jobState.contains(ConfigurationKeys.TASK_ID_KEY));
+  }
+
+  @Test
+  public void testShouldRunInline() {
+    TaskExecutor fifoTaskExecutor = mock(TaskExecutor.class);
+    when(fifoTaskExecutor.isFairSchedulingEnabled()).thenReturn(false);
+    TaskExecutor fairTaskExecutor = mock(TaskExecutor.class);
+    when(fairTaskExecutor.isFairSchedulingEnabled()).thenReturn(true);
+
+    Map<String, String> inlineTaskConfigMap = ImmutableMap.of(ConfigurationKeys.TASK_ID_KEY, "task_Test_1_0",
+        GobblinYarnConfigurationKeys.RUN_TASK_INLINE, Boolean.toString(true));
+    Map<String, String> taskConfigMap = ImmutableMap.of(ConfigurationKeys.TASK_ID_KEY, "task_Test_1_0");
+
+    Assert.assertTrue(GobblinHelixTask.shouldRunInline(inlineTaskConfigMap, fifoTaskExecutor));
+    Assert.assertFalse(GobblinHelixTask.shouldRunInline(taskConfigMap, fifoTaskExecutor));
+
+    // A task run inline would bypass the fair scheduling of the TaskExecutor, so it is submitted to it instead
+    Assert.assertFalse(GobblinHelixTask.shouldRunInline(inlineTaskConfigMap, fairTaskExecutor));
+    Assert.assertFalse(GobblinHelixTask.shouldRunInline(taskConfigMap, fairTaskExecutor));
+  }
+}
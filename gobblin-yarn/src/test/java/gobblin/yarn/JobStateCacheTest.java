@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.yarn;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import gobblin.runtime.AbstractJobLauncher;
+import gobblin.runtime.JobState;
+import gobblin.util.SerializationUtils;
+
+
+/**
+ * Unit tests for {@link JobStateCache}.
+ */
+@Test(groups = { "gobblin.yarn" })
+public class JobStateCacheTest {
+
+  private final Path appWorkDir = new Path("gobblin-yarn/src/test/resources/jobStateCacheTest");
+  private FileSystem fs;
+
+  @BeforeClass
+  public void setUp() throws IOException {
+    this.fs = FileSystem.getLocal(new Configuration());
+    this.fs.delete(this.appWorkDir, true);
+    this.fs.mkdirs(this.appWorkDir);
+  }
+
+  @Test
+  public void testJobStateReadOnce() throws IOException {
+    writeJobState("job_Test_1", "value1");
+    JobStateCache cache = new JobStateCache(this.fs, this.appWorkDir, 10);
+
+    JobState jobState = cache.get("job_Test_1");
+    Assert.assertEquals(jobState.getProp("test.prop"), "value1");
+
+    // Later tasks of the job share the cached job state, even if the file changes
+    writeJobState("job_Test_1", "value2");
+    Assert.assertSame(cache.get("job_Test_1"), jobState);
+
+    // Once evicted, the job state is read again
+    cache.evict("job_Test_1");
+    JobState newJobState = cache.get("job_Test_1");
+    Assert.assertNotSame(newJobState, jobState);
+    Assert.assertEquals(newJobState.getProp("test.prop"), "value2");
+  }
+
+  @Test
+  public void testJobStatesOfDifferentJobs() throws IOException {
+    writeJobState("job_Test_2", "value2");
+    writeJobState("job_Test_3", "value3");
+    JobStateCache cache = new JobStateCache(this.fs, this.appWorkDir, 10);
+
+    Assert.assertEquals(cache.get("job_Test_2").getProp("test.prop"), "value2");
+    Assert.assertEquals(cache.get("job_Test_3").getProp("test.prop"), "value3");
+
+    // Evicting one job leaves the other cached
+    JobState jobState = cache.get("job_Test_3");
+    cache.evict("job_Test_2");
+    Assert.assertSame(cache.get("job_Test_3"), jobState);
+  }
+
+  @Test(expectedExceptions = IOException.class)
+  public void testMissingJobState() throws IOException {
+    new JobStateCache(this.fs, this.appWorkDir, 10).get("job_Test_missing");
+  }
+
+  @AfterClass
+  public void tearDown() throws IOException {
+    this.fs.delete(this.appWorkDir, true);
+  }
+
+  private void writeJobState(String jobId, String value) throws IOException {
+    JobState jobState = new JobState("Test", jobId);
+    jobState.setProp("test.prop", value);
+    SerializationUtils.serializeState(this.fs,
+        new Path(this.appWorkDir, jobId + "." + AbstractJobLauncher.JOB_STATE_FILE_NAME), jobState);
+  }
+}
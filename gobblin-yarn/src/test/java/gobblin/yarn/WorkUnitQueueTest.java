@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.yarn;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FilterFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import gobblin.configuration.ConfigurationKeys;
+
+
+/**
+ * Unit tests for {@link WorkUnitQueue}.
+ */
+@Test(groups = { "gobblin.yarn" })
+public class WorkUnitQueueTest {
+
+  private final Path testDir = new Path("gobblin-yarn/src/test/resources/workUnitQueueTest");
+  private final Path queueFile = new Path(this.testDir, "job_Test_1.queue");
+  private FileSystem fs;
+
+  @BeforeMethod
+  public void setUp() throws IOException {
+    this.fs = FileSystem.getLocal(new Configuration());
+    this.fs.delete(this.testDir, true);
+
+    List<Map<String, String>> taskConfigs = Lists.newArrayList();
+    for (int i = 0; i < 3; i++) {
+      taskConfigs.add(ImmutableMap.of(ConfigurationKeys.TASK_ID_KEY, "task" + i,
+          GobblinYarnConfigurationKeys.WORK_UNIT_FILE_PATH, "/workunits/task" + i + ".wu"));
+    }
+    WorkUnitQueue.write(this.fs, this.queueFile, taskConfigs);
+  }
+
+  @Test
+  public void testReadQueue() throws IOException {
+    List<Map<String, String>> taskConfigs = WorkUnitQueue.read(this.fs, this.queueFile).getTaskConfigs();
+    Assert.assertEquals(taskConfigs.size(), 3);
+    for (int i = 0; i < 3; i++) {
+      Assert.assertEquals(taskConfigs.get(i).get(ConfigurationKeys.TASK_ID_KEY), "task" + i);
+      Assert.assertEquals(taskConfigs.get(i).get(GobblinYarnConfigurationKeys.WORK_UNIT_FILE_PATH),
+          "/workunits/task" + i + ".wu");
+    }
+  }
+
+  @Test
+  public void testClaimAndStartOnce() throws IOException {
+    WorkUnitQueue worker0Queue = WorkUnitQueue.read(this.fs, this.queueFile);
+    WorkUnitQueue worker1Queue = WorkUnitQueue.read(this.fs, this.queueFile);
+
+    Assert.assertTrue(worker0Queue.claim("task0", "worker0"));
+    Assert.assertFalse(worker1Queue.claim("task0", "worker1"));
+    Assert.assertFalse(worker0Queue.claim("task0", "worker0"));
+    Assert.assertTrue(worker1Queue.claim("task1", "worker1"));
+    Assert.assertEquals(worker0Queue.getClaimedTaskIds(), Sets.newHashSet("task0", "task1"));
+
+    Assert.assertTrue(worker0Queue.start("task0", "worker0"));
+    Assert.assertFalse(worker1Queue.start("task0", "worker1"));
+    Assert.assertEquals(worker1Queue.getStartedTaskIds(), Sets.newHashSet("task0"));
+    Assert.assertEquals(worker1Queue.getStartingWorker("task0"), "worker0");
+  }
+
+  @Test
+  public void testStaleClaimStolen() throws IOException {
+    WorkUnitQueue worker0Queue = WorkUnitQueue.read(this.fs, this.queueFile);
+    WorkUnitQueue worker1Queue = WorkUnitQueue.read(this.fs, this.queueFile);
+
+    // A task claimed by a worker that never started it, e.g., because it died, can be started by another worker
+    Assert.assertTrue(worker0Queue.claim("task2", "worker0"));
+    Assert.assertTrue(worker1Queue.start("task2", "worker1"));
+    Assert.assertEquals(worker1Queue.getStartingWorker("task2"), "worker1");
+
+    // The worker that claimed it then finds it stolen
+    Assert.assertFalse(worker0Queue.start("task2", "worker0"));
+  }
+
+  @Test
+  public void testRelease() throws IOException {
+    WorkUnitQueue worker0Queue = WorkUnitQueue.read(this.fs, this.queueFile);
+    WorkUnitQueue worker1Queue = WorkUnitQueue.read(this.fs, this.queueFile);
+
+    Assert.assertTrue(worker0Queue.claim("task0", "worker0"));
+    Assert.assertTrue(worker0Queue.start("task0", "worker0"));
+
+    // A released task can be claimed and started again by any worker
+    worker0Queue.release("task0");
+    Assert.assertTrue(worker1Queue.getClaimedTaskIds().isEmpty());
+    Assert.assertTrue(worker1Queue.getStartedTaskIds().isEmpty());
+    Assert.assertTrue(worker1Queue.claim("task0", "worker1"));
+    Assert.assertTrue(worker1Queue.start("task0", "worker1"));
+    Assert.assertEquals(worker0Queue.getStartingWorker("task0"), "worker1");
+
+    // Releasing a task that is not claimed is a no-op
+    worker0Queue.release("task1");
+    Assert.assertTrue(worker0Queue.claim("task1", "worker0"));
+  }
+
+  @Test
+  public void testConcurrentMarkerCreation() throws IOException {
+    // A worker that does not see the marker yet loses the race to create it without overwriting it
+    FileSystem racingFs = new FilterFileSystem(this.fs) {
+      @Override
+      public boolean exists(Path path) throws IOException {
+        return !path.getParent().getName().endsWith("_claims") && super.exists(path);
+      }
+    };
+    WorkUnitQueue worker0Queue = WorkUnitQueue.read(this.fs, this.queueFile);
+    WorkUnitQueue worker1Queue = WorkUnitQueue.read(racingFs, this.queueFile);
+
+    Assert.assertTrue(worker0Queue.claim("task0", "worker0"));
+    Assert.assertFalse(worker1Queue.claim("task0", "worker1"));
+    Assert.assertTrue(worker1Queue.claim("task1", "worker1"));
+  }
+
+  @AfterMethod
+  public void tearDown() throws IOException {
+    this.fs.delete(this.testDir, true);
+  }
+}
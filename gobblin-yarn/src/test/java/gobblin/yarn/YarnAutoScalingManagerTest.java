@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2014-2015 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the
+ * License at  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR
+ * CONDITIONS OF ANY KIND, either express or implied.
+ */
+
+package gobblin.yarn;
+
+import java.util.AbstractMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.yarn.api.records.Container;
+import org.apache.hadoop.yarn.api.records.ContainerId;
+import org.apache.helix.HelixManager;
+import org.apache.helix.api.id.ParticipantId;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import gobblin.yarn.event.ContainerShutdownRequest;
+import gobblin.yarn.event.NewContainerRequest;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+/**
+ * Unit tests for {@link YarnAutoScalingManager}.
+ */
+@Test(groups = { "gobblin.yarn" })
+public class YarnAutoScalingManagerTest {
+
+  private static final long SCALE_DOWN_DELAY_SECONDS = 60;
+  // Late enough after the start of the manager for the pool to shrink
+  private static final long START = 1000000L;
+
+  private final List<NewContainerRequest> newContainerRequests = Lists.newArrayList();
+  private final List<ContainerShutdownRequest> containerShutdownRequests = Lists.newArrayList();
+
+  private YarnService yarnService;
+  private YarnAutoScalingManager autoScalingManager;
+  private final Map<ContainerId, Map.Entry<Container, ParticipantId>> containers = Maps.newHashMap();
+
+  @BeforeMethod
+  public void setUp() {
+    this.newContainerRequests.clear();
+    this.containerShutdownRequests.clear();
+    this.containers.clear();
+
+    this.yarnService = mock(YarnService.class);
+    when(this.yarnService.getContainers()).thenReturn(this.containers);
+
+    EventBus eventBus = new EventBus();
+    eventBus.register(this);
+
+    Config config = ConfigFactory.parseMap(ImmutableMap.of(
+        GobblinYarnConfigurationKeys.MIN_CONTAINERS_KEY, 1,
+        GobblinYarnConfigurationKeys.MAX_CONTAINERS_KEY, 10,
+        GobblinYarnConfigurationKeys.SCALE_DOWN_DELAY_SECONDS_KEY, SCALE_DOWN_DELAY_SECONDS));
+    this.autoScalingManager =
+        new YarnAutoScalingManager(config, mock(HelixManager.class), this.yarnService, eventBus);
+  }
+
+  @Subscribe
+  public void handleNewContainerRequest(NewContainerRequest newContainerRequest) {
+    this.newContainerRequests.add(newContainerRequest);
+  }
+
+  @Subscribe
+  public void handleContainerShutdownRequest(ContainerShutdownRequest containerShutdownRequest) {
+    this.containerShutdownRequests.add(containerShutdownRequest);
+  }
+
+  @Test
+  public void testScaleUp() {
+    addContainer("p0");
+    when(this.yarnService.getPendingContainerRequests()).thenReturn(1);
+
+    // Containers requested but not allocated yet count as part of the pool
+    this.autoScalingManager.autoScale(5, ImmutableMap.of("p0", 1), START);
+    Assert.assertEquals(this.newContainerRequests.size(), 1);
+    Assert.assertEquals(this.newContainerRequests.get(0).getNewContainersRequested(), 3);
+
+    // Never above the maximum number of containers
+    this.newContainerRequests.clear();
+    this.autoScalingManager.autoScale(50, ImmutableMap.of("p0", 1), START + 1000);
+    Assert.assertEquals(this.newContainerRequests.size(), 1);
+    Assert.assertEquals(this.newContainerRequests.get(0).getNewContainersRequested(), 8);
+    Assert.assertTrue(this.containerShutdownRequests.isEmpty());
+  }
+
+  @Test
+  public void testSteadyState() {
+    addContainer("p0");
+    addContainer("p1");
+
+    this.autoScalingManager.autoScale(2, ImmutableMap.of("p0", 1, "p1", 1), START);
+    this.autoScalingManager.autoScale(2, ImmutableMap.of("p0", 1, "p1", 1), START + 1000);
+
+    // A pending request makes up for a missing container
+    this.containers.clear();
+    addContainer("p0");
+    when(this.yarnService.getPendingContainerRequests()).thenReturn(1);
+    this.autoScalingManager.autoScale(2, ImmutableMap.of("p0", 1), START + 2000);
+
+    Assert.assertTrue(this.newContainerRequests.isEmpty());
+    Assert.assertTrue(this.containerShutdownRequests.isEmpty());
+  }
+
+  @Test
+  public void testScaleDown() {
+    Container busy = addContainer("p0");
+    Container idle = addContainer("p1");
+    Container draining = addContainer("p2");
+
+    this.autoScalingManager.autoScale(3, ImmutableMap.of("p0", 1, "p1", 1, "p2", 1), START);
+    // Not shrunk within the scale down delay of a sample needing more containers
+    this.autoScalingManager.autoScale(1, ImmutableMap.of("p0", 1, "p2", 1), START + 10000);
+    Assert.assertTrue(this.containerShutdownRequests.isEmpty());
+
+    // Only the container idle in two consecutive samples is released, the other one is left to drain first
+    long afterDelay = START + (SCALE_DOWN_DELAY_SECONDS + 1) * 1000;
+    this.autoScalingManager.autoScale(1, ImmutableMap.of("p0", 1), afterDelay);
+    Assert.assertEquals(this.containerShutdownRequests.size(), 1);
+    Assert.assertEquals(Lists.newArrayList(this.containerShutdownRequests.get(0).getContainers()),
+        Lists.newArrayList(idle));
+
+    // The container being released is no longer part of the pool, the drained container is released next
+    this.containerShutdownRequests.clear();
+    this.autoScalingManager.autoScale(1, ImmutableMap.of("p0", 1), afterDelay + 1000);
+    Assert.assertEquals(this.containerShutdownRequests.size(), 1);
+    Assert.assertEquals(Lists.newArrayList(this.containerShutdownRequests.get(0).getContainers()),
+        Lists.newArrayList(draining));
+    Assert.assertFalse(Sets.newHashSet(this.containerShutdownRequests.get(0).getContainers()).contains(busy));
+
+    // Once both are being released, the pool is at the number of containers needed
+    this.containerShutdownRequests.clear();
+    this.autoScalingManager.autoScale(1, ImmutableMap.of("p0", 1), afterDelay + 2000);
+    Assert.assertTrue(this.containerShutdownRequests.isEmpty());
+    Assert.assertTrue(this.newContainerRequests.isEmpty());
+  }
+
+  private Container addContainer(String participant) {
+    ContainerId containerId = mock(ContainerId.class);
+    Container container = mock(Container.class);
+    when(container.getId()).thenReturn(containerId);
+    this.containers.put(containerId,
+        new AbstractMap.SimpleImmutableEntry<Container, ParticipantId>(container, ParticipantId.from(participant)));
+    return container;
+  }
+}